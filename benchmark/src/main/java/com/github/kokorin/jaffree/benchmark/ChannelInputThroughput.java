@@ -0,0 +1,180 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.ffmpeg.BaseInput;
+import com.github.kokorin.jaffree.ffmpeg.ChannelInput;
+import com.github.kokorin.jaffree.ffmpeg.FFmpeg;
+import com.github.kokorin.jaffree.ffmpeg.FFmpegResult;
+import com.github.kokorin.jaffree.ffmpeg.NullOutput;
+import com.github.kokorin.jaffree.ffmpeg.UrlInput;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Measures time for ffmpeg to read a large file through {@link ChannelInput} (embedded FTP server).
+ * <p>
+ * Input is a sparse file read as 1024x1024 gray rawvideo and copied to null output, so ffmpeg
+ * does almost nothing except reading data. Compared implementations:
+ * <ul>
+ * <li>legacy - FTP server copying via streams and heap buffer</li>
+ * <li>fileChannel - current FTP server with FileChannel (zero-copy transferTo)</li>
+ * <li>seekableChannel - current FTP server with non-file channel (pooled direct buffer)</li>
+ * </ul>
+ * Requires FFMPEG_BIN system property or environment variable.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChannelInputThroughput {
+    @Param({"4096"})
+    int fileSizeMb;
+
+    private Path bin;
+    private Path file;
+
+    private static final int FRAME_WIDTH = 1024;
+    private static final int FRAME_HEIGHT = 1024;
+
+    @Setup
+    public void setUp() throws IOException {
+        String ffmpegHome = System.getProperty("FFMPEG_BIN");
+        if (ffmpegHome == null) {
+            ffmpegHome = System.getenv("FFMPEG_BIN");
+        }
+        if (ffmpegHome == null) {
+            throw new IllegalStateException("Nor command line property, neither system variable FFMPEG_BIN is set up");
+        }
+        bin = Paths.get(ffmpegHome);
+
+        file = Files.createTempFile("jaffree", ".gray");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            randomAccessFile.setLength(fileSizeMb * 1024L * 1024L);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public FFmpegResult legacy() throws Exception {
+        try (FileChannel channel = FileChannel.open(file);
+             ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread server = new Thread(new LegacyFtpServer(channel, serverSocket), "LegacyFtpServer");
+            server.start();
+
+            FFmpegResult result = read(UrlInput.fromUrl("ftp://127.0.0.1:" + serverSocket.getLocalPort() + "/input"));
+            server.join();
+            return result;
+        }
+    }
+
+    @Benchmark
+    public FFmpegResult fileChannel() throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return read(ChannelInput.fromChannel("input", channel));
+        }
+    }
+
+    @Benchmark
+    public FFmpegResult seekableChannel() throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return read(ChannelInput.fromChannel("input", new NonFileChannel(channel)));
+        }
+    }
+
+    private <T extends BaseInput<T>> FFmpegResult read(T input) {
+        return FFmpeg.atPath(bin)
+                .addInput(input
+                        .setFormat("rawvideo")
+                        .setPixelFormat("gray")
+                        .setFrameSize(FRAME_WIDTH, FRAME_HEIGHT))
+                .addOutput(new NullOutput())
+                .execute();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+
+    /**
+     * Hides FileChannel, so data is copied with buffer.
+     */
+    private static class NonFileChannel implements SeekableByteChannel {
+        private final FileChannel channel;
+
+        NonFileChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.ffmpeg.ChannelInput;
+import com.github.kokorin.jaffree.ffmpeg.FFmpeg;
+import com.github.kokorin.jaffree.ffmpeg.FFmpegResult;
+import com.github.kokorin.jaffree.ffmpeg.NullOutput;
+import com.github.kokorin.jaffree.util.ChannelProtocol;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Compares FTP and HTTP transports of {@link ChannelInput}.
+ * <ul>
+ * <li>throughput - time for ffmpeg to read a sparse file as 1024x1024 gray rawvideo to null output</li>
+ * <li>seek - time to read 4 KB at random position, client repeats requests ffmpeg sends on every seek:
+ * ABOR, EPSV, REST and RETR for FTP, new connection with Range request for HTTP</li>
+ * </ul>
+ * Requires FFMPEG_BIN system property or environment variable.
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChannelProtocolComparison {
+    @Param({"FTP", "HTTP"})
+    ChannelProtocol protocol;
+
+    @Param({"1024"})
+    int fileSizeMb;
+
+    private Path file;
+
+    private static final int FRAME_WIDTH = 1024;
+    private static final int FRAME_HEIGHT = 1024;
+    private static final int SEEK_READ_SIZE = 4096;
+    private static final Pattern EPSV_PATTERN = Pattern.compile("\\(\\|\\|\\|(\\d+)\\|\\)");
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("jaffree", ".gray");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            randomAccessFile.setLength(fileSizeMb * 1024L * 1024L);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public FFmpegResult throughput() throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return FFmpeg.atPath(getBin())
+                    .addInput(ChannelInput.fromChannel("input", channel, protocol)
+                            .setFormat("rawvideo")
+                            .setPixelFormat("gray")
+                            .setFrameSize(FRAME_WIDTH, FRAME_HEIGHT))
+                    .addOutput(new NullOutput())
+                    .execute();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(MICROSECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public byte[] seek(SeekState state) throws IOException {
+        long position = (state.random.nextLong() >>> 1) % (Files.size(file) - SEEK_READ_SIZE);
+        if (protocol == ChannelProtocol.FTP) {
+            return state.ftpSeek(position);
+        }
+        return state.httpSeek(position);
+    }
+
+    static Path getBin() {
+        String ffmpegHome = System.getProperty("FFMPEG_BIN");
+        if (ffmpegHome == null) {
+            ffmpegHome = System.getenv("FFMPEG_BIN");
+        }
+        if (ffmpegHome == null) {
+            throw new IllegalStateException("Nor command line property, neither system variable FFMPEG_BIN is set up");
+        }
+        return Paths.get(ffmpegHome);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+
+    /**
+     * Runs server during the whole trial, control connection (FTP) or idle keep-alive connection (HTTP)
+     * prevents server from finishing.
+     */
+    @State(Scope.Benchmark)
+    public static class SeekState {
+        private final Random random = new Random(42);
+        private FileChannel channel;
+        private ServerSocket serverSocket;
+        private Thread serverThread;
+        private Socket control;
+        private BufferedReader controlReader;
+        private OutputStream controlOutput;
+
+        @Setup
+        public void setUp(ChannelProtocolComparison benchmark) throws IOException {
+            channel = FileChannel.open(benchmark.file);
+            // ChannelInput listens with ServerSocketChannel, so accepted sockets have channels
+            serverSocket = ServerSocketChannel.open()
+                    .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1)
+                    .socket();
+            serverThread = new Thread(benchmark.protocol.createServer(channel, serverSocket), "ChannelServer");
+            serverThread.start();
+
+            control = connect();
+            controlReader = new BufferedReader(new InputStreamReader(control.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            controlOutput = control.getOutputStream();
+            if (benchmark.protocol == ChannelProtocol.FTP) {
+                expect("220");
+                command("USER anonymous", "230");
+                command("TYPE I", "200");
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            control.close();
+            serverThread.join();
+            serverSocket.close();
+            channel.close();
+        }
+
+        byte[] ftpSeek(long position) throws IOException {
+            Matcher matcher = EPSV_PATTERN.matcher(command("EPSV", "229"));
+            if (!matcher.find()) {
+                throw new IOException("Unexpected EPSV reply");
+            }
+            byte[] result;
+            try (Socket dataSocket = new Socket(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(matcher.group(1)))) {
+                command("REST " + position, "350");
+                command("RETR input", "150");
+                result = readFully(dataSocket.getInputStream());
+                send("ABOR");
+            }
+            // transfer status (426 or 226) and ABOR status
+            expect("4", "2");
+            expect("2");
+            return result;
+        }
+
+        byte[] httpSeek(long position) throws IOException {
+            try (Socket socket = connect()) {
+                socket.getOutputStream().write(("GET /input HTTP/1.1\r\n"
+                        + "Range: bytes=" + position + "-\r\n"
+                        + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                // skip status line and headers
+                int matched = 0;
+                while (matched < 4) {
+                    int b = input.read();
+                    if (b < 0) {
+                        throw new IOException("Unexpected end of response");
+                    }
+                    matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (b == '\r' ? 1 : 0);
+                }
+                return readFully(input);
+            }
+        }
+
+        private Socket connect() throws IOException {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+
+        private static byte[] readFully(InputStream input) throws IOException {
+            byte[] result = new byte[SEEK_READ_SIZE];
+            new DataInputStream(input).readFully(result);
+            return result;
+        }
+
+        private void send(String command) throws IOException {
+            controlOutput.write((command + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            controlOutput.flush();
+        }
+
+        private String command(String command, String expectedStatus) throws IOException {
+            send(command);
+            return expect(expectedStatus);
+        }
+
+        private String expect(String... expectedPrefixes) throws IOException {
+            String line = controlReader.readLine();
+            if (line == null) {
+                throw new IOException("Control connection closed");
+            }
+            for (String prefix : expectedPrefixes) {
+                if (line.startsWith(prefix)) {
+                    return line;
+                }
+            }
+            throw new IOException("Unexpected reply: " + line);
+        }
+    }
+}
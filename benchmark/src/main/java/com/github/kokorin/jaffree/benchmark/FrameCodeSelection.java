@@ -0,0 +1,132 @@
+/*
+ *    Copyright  2017 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.nut.FrameCode;
+import com.github.kokorin.jaffree.nut.FrameCode.Flag;
+import com.github.kokorin.jaffree.nut.FrameCodeSelector;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumSet;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Compares {@link FrameCodeSelector} with {@link LegacyFrameCodeSelection} (EnumSet based loop over all
+ * 256 frame codes) for a mix of audio and video frames.
+ * <p>
+ * Run with {@code -prof gc} to see allocation rate: FrameCodeSelector allocates nothing per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrameCodeSelection {
+    static final int FRAME_COUNT = 1024;
+    static final int STREAM_COUNT = 2;
+
+    LegacyFrameCodeSelection legacy;
+    FrameCodeSelector selector;
+
+    int[] streamIds;
+    boolean[] keyframes;
+    boolean[] checksums;
+    long[] dataSizes;
+    long[] ptsDeltas;
+
+    @Setup
+    public void setUp() {
+        FrameCode[] frameCodes = createFrameCodes();
+        legacy = new LegacyFrameCodeSelection(frameCodes);
+        selector = new FrameCodeSelector(frameCodes, STREAM_COUNT);
+
+        Random random = new Random(42);
+        streamIds = new int[FRAME_COUNT];
+        keyframes = new boolean[FRAME_COUNT];
+        checksums = new boolean[FRAME_COUNT];
+        dataSizes = new long[FRAME_COUNT];
+        ptsDeltas = new long[FRAME_COUNT];
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            streamIds[i] = random.nextInt(STREAM_COUNT);
+            keyframes[i] = streamIds[i] == 1 || random.nextInt(25) == 0;
+            checksums[i] = random.nextInt(50) == 0;
+            dataSizes[i] = streamIds[i] == 0 ? random.nextInt(100_000) : 4096 + random.nextInt(4) * 4;
+            ptsDeltas[i] = 1 + random.nextInt(2);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAME_COUNT)
+    public long legacy() {
+        long result = 0;
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            result += legacy.select(streamIds[i], keyframes[i], false, checksums[i], dataSizes[i], ptsDeltas[i]);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAME_COUNT)
+    public long selector() {
+        long result = 0;
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            result += selector.select(streamIds[i], keyframes[i], false, checksums[i], dataSizes[i], ptsDeltas[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Frame codes similar to ones used by ffmpeg: a generic one with coded flags, keyframe and non-keyframe
+     * codes for video stream and fixed size codes for audio stream.
+     */
+    static FrameCode[] createFrameCodes() {
+        FrameCode[] frameCodes = new FrameCode[256];
+        for (int i = 0; i < frameCodes.length; i++) {
+            frameCodes[i] = FrameCode.INVALID;
+        }
+
+        int i = 1;
+        frameCodes[i++] = new FrameCode(EnumSet.of(Flag.CODED_FLAGS), 0, 1, 0, 0, 0, 0, 0);
+        for (int ptsDelta = 1; ptsDelta <= 2; ptsDelta++) {
+            frameCodes[i++] = new FrameCode(EnumSet.of(Flag.KEYFRAME, Flag.SIZE_MSB), 0, 1, 0, ptsDelta, 0, 0, 0);
+            frameCodes[i++] = new FrameCode(EnumSet.of(Flag.SIZE_MSB), 0, 1, 0, ptsDelta, 0, 0, 0);
+        }
+        for (int size = 4096; i < 'N'; size += 4) {
+            frameCodes[i++] = new FrameCode(EnumSet.of(Flag.KEYFRAME), 1, 1, size, 1, 0, 0, 0);
+        }
+        return frameCodes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
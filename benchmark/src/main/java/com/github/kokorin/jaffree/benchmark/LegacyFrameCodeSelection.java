@@ -0,0 +1,135 @@
+/*
+ *    Copyright  2017 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.nut.FrameCode;
+import com.github.kokorin.jaffree.nut.FrameCode.Flag;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Copy of frame code selection from NutWriter.writeFrameInternal before
+ * {@link com.github.kokorin.jaffree.nut.FrameCodeSelector}, kept to compare with current implementation.
+ */
+public class LegacyFrameCodeSelection {
+    private final FrameCode[] frameCodes;
+
+    public LegacyFrameCodeSelection(FrameCode[] frameCodes) {
+        this.frameCodes = frameCodes;
+    }
+
+    /**
+     * @return frame code index in lower 8 bits and flags in higher bits, or -1
+     */
+    public long select(int streamId, boolean keyframe, boolean eor, boolean checksum, long dataSize,
+                       long pts_delta) {
+        int i, ftnum = -1, size = 0;
+        Set<Flag> codedFlags = Collections.emptySet();
+
+        for (i = 0; i < 256; i++) {
+            int len = 1; // frame code
+            FrameCode ft = frameCodes[i];
+
+            Set<Flag> flags = ft.flags;
+            if (flags.contains(Flag.INVALID)) {
+                continue;
+            }
+
+            Set<Flag> fdFlags = EnumSet.noneOf(Flag.class);
+            if (keyframe) {
+                fdFlags.add(Flag.KEYFRAME);
+            }
+            if (eor) {
+                fdFlags.add(Flag.EOR);
+            }
+
+            if (flags.contains(Flag.CODED_FLAGS)) {
+                flags = EnumSet.copyOf(fdFlags);
+
+                if (ft.streamId != streamId) {
+                    flags.add(Flag.STREAM_ID);
+                }
+                if (ft.ptsDelta != pts_delta) {
+                    flags.add(Flag.CODED_PTS);
+                }
+                if (ft.dataSizeLsb != dataSize) {
+                    flags.add(Flag.SIZE_MSB);
+                }
+                if (checksum) {
+                    flags.add(Flag.CHECKSUM);
+                }
+                flags.add(Flag.CODED_FLAGS);
+            }
+
+            Set<Flag> xor = Flag.xor(flags, fdFlags);
+            if (xor.contains(Flag.KEYFRAME) || xor.contains(Flag.EOR)) {
+                continue;
+            }
+
+            if (!flags.contains(Flag.STREAM_ID) && ft.streamId != streamId) {
+                continue;
+            }
+
+            if (!flags.contains(Flag.CODED_PTS) && ft.ptsDelta != pts_delta) {
+                continue;
+            }
+
+            if (flags.contains(Flag.SIZE_MSB)) {
+                if ((dataSize - ft.dataSizeLsb) % ft.dataSizeMul != 0) {
+                    continue;
+                }
+            } else {
+                if (ft.dataSizeLsb != dataSize) {
+                    continue;
+                }
+            }
+
+            if (!flags.contains(Flag.CHECKSUM) && checksum) {
+                continue;
+            }
+
+            if (flags.contains(Flag.CODED_FLAGS)) {
+                len += 8;
+            }
+            if (flags.contains(Flag.STREAM_ID)) {
+                len += 8;
+            }
+            if (flags.contains(Flag.CODED_PTS)) {
+                len += 8;
+            }
+            if (flags.contains(Flag.SIZE_MSB)) {
+                len += 8;
+            }
+            if (flags.contains(Flag.CHECKSUM)) {
+                len += 4;
+            }
+
+            if (size == 0 || len < size) {
+                ftnum = i;
+                codedFlags = flags;
+                size = len;
+            }
+        }
+
+        if (ftnum == -1) {
+            return -1;
+        }
+        return Flag.toBitCode(codedFlags) << 8 | ftnum;
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.nut.NutInputStream;
+import com.github.kokorin.jaffree.nut.NutOutputStream;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Compares parsing of NUT primitives by current {@link NutInputStream} (from InputStream and from channel)
+ * and by {@link LegacyNutInputStream}.
+ * <p>
+ * Data imitates frame headers of raw audio: frame code, a few variable length values, a checksum and
+ * a short payload per record.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NutInputStreamThroughput {
+    static final int RECORD_COUNT = 100_000;
+    static final int PAYLOAD_SIZE = 16;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (NutOutputStream output = new NutOutputStream(bytes)) {
+            byte[] payload = new byte[PAYLOAD_SIZE];
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                output.writeByte(i & 0x7F);
+                output.writeValue(i);
+                output.writeValue(i * 1024L * 1024L);
+                output.writeSignedValue(-i);
+                output.writeInt(i);
+                output.writeBytes(payload);
+            }
+        }
+        data = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public long legacyReader() throws IOException {
+        LegacyNutInputStream input = new LegacyNutInputStream(new ByteArrayInputStream(data));
+        long result = 0;
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            result += input.readByte();
+            result += input.readValue();
+            result += input.readValue();
+            result += input.readSignedValue();
+            result += input.readInt();
+            result += input.readBytes(PAYLOAD_SIZE).length;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long reader() throws IOException {
+        return read(new NutInputStream(new ByteArrayInputStream(data)));
+    }
+
+    @Benchmark
+    public long readerFromChannel() throws IOException {
+        return read(new NutInputStream(Channels.newChannel(new ByteArrayInputStream(data))));
+    }
+
+    private static long read(NutInputStream input) throws IOException {
+        long result = 0;
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            result += input.readByte();
+            result += input.readValue();
+            result += input.readValue();
+            result += input.readSignedValue();
+            result += input.readInt();
+            result += input.readBytes(PAYLOAD_SIZE).length;
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.ffmpeg.FFmpeg;
+import com.github.kokorin.jaffree.ffmpeg.FFmpegResult;
+import com.github.kokorin.jaffree.ffmpeg.NullOutput;
+import com.github.kokorin.jaffree.ffmpeg.UrlInput;
+import com.github.kokorin.jaffree.ffprobe.FFprobe;
+import com.github.kokorin.jaffree.ffprobe.FFprobeResult;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Measures wall-clock latency of many tiny ffmpeg &amp; ffprobe runs.
+ * <p>
+ * Run time of such processes is tens of milliseconds, so any fixed delay in process handling
+ * (e.g. polling for helper threads to stop) is clearly visible.
+ * <p>
+ * Requires FFMPEG_BIN system property or environment variable.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 2, time = 5, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessLatency {
+    private Path bin;
+
+    @Setup
+    public void setUp() {
+        String ffmpegHome = System.getProperty("FFMPEG_BIN");
+        if (ffmpegHome == null) {
+            ffmpegHome = System.getenv("FFMPEG_BIN");
+        }
+        if (ffmpegHome == null) {
+            throw new IllegalStateException("Nor command line property, neither system variable FFMPEG_BIN is set up");
+        }
+        bin = Paths.get(ffmpegHome);
+    }
+
+    @Benchmark
+    public FFprobeResult ffprobeVersion() {
+        return FFprobe.atPath(bin)
+                .setShowProgramVersion(true)
+                .execute();
+    }
+
+    @Benchmark
+    public FFmpegResult ffmpegSingleFrame() {
+        return FFmpeg.atPath(bin)
+                .addInput(UrlInput.fromUrl("color=size=16x16:duration=0.04").setFormat("lavfi"))
+                .addOutput(new NullOutput())
+                .execute();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
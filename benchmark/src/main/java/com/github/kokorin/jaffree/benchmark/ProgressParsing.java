@@ -0,0 +1,96 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.ffmpeg.FFmpegProgress;
+import com.github.kokorin.jaffree.ffmpeg.FFmpegResult;
+import com.github.kokorin.jaffree.ffmpeg.FFmpegResultReader;
+import com.github.kokorin.jaffree.ffmpeg.ProgressListener;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Compares parsing of captured ffmpeg stderr (mpeg4 + aac encoding, ffmpeg 6.0, -stats_period 0.02)
+ * by current {@link FFmpegResultReader} and by {@link LegacyFFmpegResultReader}.
+ * <p>
+ * Run with {@code -prof gc} to compare allocation rate as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProgressParsing {
+    private static final String STDERR_RESOURCE = "ffmpeg-stderr.txt";
+
+    private byte[] stderr;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream input = ProgressParsing.class.getClassLoader().getResourceAsStream(STDERR_RESOURCE)) {
+            if (input == null) {
+                throw new IllegalStateException("Resource not found: " + STDERR_RESOURCE);
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            stderr = output.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public FFmpegResult legacyReader(Blackhole blackhole) {
+        return new LegacyFFmpegResultReader(new BlackholeProgressListener(blackhole), null)
+                .read(new ByteArrayInputStream(stderr));
+    }
+
+    @Benchmark
+    public FFmpegResult reader(Blackhole blackhole) {
+        return new FFmpegResultReader(new BlackholeProgressListener(blackhole), null)
+                .read(new ByteArrayInputStream(stderr));
+    }
+
+    @Benchmark
+    public FFmpegResult readerWithoutProgressListener() {
+        return new FFmpegResultReader(null, null)
+                .read(new ByteArrayInputStream(stderr));
+    }
+
+    private static class BlackholeProgressListener implements ProgressListener {
+        private final Blackhole blackhole;
+
+        BlackholeProgressListener(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onProgress(FFmpegProgress progress) {
+            blackhole.consume(progress);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.ffmpeg.FFmpeg;
+import com.github.kokorin.jaffree.ffmpeg.PipeOutput;
+import com.github.kokorin.jaffree.ffmpeg.TcpOutput;
+import com.github.kokorin.jaffree.ffmpeg.UrlInput;
+import com.github.kokorin.jaffree.util.SocketTransport;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Measures time to receive raw video from ffmpeg via loopback TCP and Unix domain socket.
+ * <p>
+ * ffmpeg generates 250 frames of 1280x720 rgb24 (about 690 MB), so transport overhead dominates.
+ * <p>
+ * Requires FFMPEG_BIN system property or environment variable.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 2, time = 5, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SocketTransportThroughput {
+    @Param({"tcp", "unix"})
+    String transport;
+
+    private Path bin;
+
+    @Setup
+    public void setUp() {
+        String ffmpegHome = System.getProperty("FFMPEG_BIN");
+        if (ffmpegHome == null) {
+            ffmpegHome = System.getenv("FFMPEG_BIN");
+        }
+        if (ffmpegHome == null) {
+            throw new IllegalStateException("Nor command line property, neither system variable FFMPEG_BIN is set up");
+        }
+        bin = Paths.get(ffmpegHome);
+    }
+
+    @Benchmark
+    public long rawVideo() {
+        final AtomicLong received = new AtomicLong();
+
+        PipeOutput output = PipeOutput.withConsumer(new TcpOutput.Consumer() {
+            @Override
+            public void consumeAndClose(InputStream in) {
+                byte[] buffer = new byte[1 << 16];
+                try (Closeable toClose = in) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        received.addAndGet(read);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        if ("unix".equals(transport)) {
+            output.setTransport(SocketTransport.unix());
+        }
+
+        FFmpeg.atPath(bin)
+                .addInput(UrlInput.fromUrl("color=size=1280x720:rate=25:duration=10").setFormat("lavfi"))
+                .addOutput(output
+                        .setFormat("rawvideo")
+                        .setPixelFormat("rgb24"))
+                .execute();
+
+        return received.get();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChannelInputThroughputTest {
+    private ChannelInputThroughput throughput;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(System.getProperty("FFMPEG_BIN") != null || System.getenv("FFMPEG_BIN") != null);
+
+        throughput = new ChannelInputThroughput();
+        throughput.fileSizeMb = 16;
+        throughput.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (throughput != null) {
+            throughput.tearDown();
+        }
+    }
+
+    @Test
+    public void legacy() throws Exception {
+        Assert.assertTrue(throughput.legacy().getVideoSize() >= 16_000_000L);
+    }
+
+    @Test
+    public void fileChannel() throws Exception {
+        Assert.assertTrue(throughput.fileChannel().getVideoSize() >= 16_000_000L);
+    }
+
+    @Test
+    public void seekableChannel() throws Exception {
+        Assert.assertTrue(throughput.seekableChannel().getVideoSize() >= 16_000_000L);
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.util.ChannelProtocol;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChannelProtocolComparisonTest {
+    private ChannelProtocolComparison comparison;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(System.getProperty("FFMPEG_BIN") != null || System.getenv("FFMPEG_BIN") != null);
+
+        comparison = new ChannelProtocolComparison();
+        comparison.fileSizeMb = 16;
+        comparison.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (comparison != null) {
+            comparison.tearDown();
+        }
+    }
+
+    @Test
+    public void ftp() throws Exception {
+        test(ChannelProtocol.FTP);
+    }
+
+    @Test
+    public void http() throws Exception {
+        test(ChannelProtocol.HTTP);
+    }
+
+    private void test(ChannelProtocol protocol) throws Exception {
+        comparison.protocol = protocol;
+        Assert.assertTrue(comparison.throughput().getVideoSize() >= 16_000_000L);
+
+        ChannelProtocolComparison.SeekState state = new ChannelProtocolComparison.SeekState();
+        state.setUp(comparison);
+        try {
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals(4096, comparison.seek(state).length);
+            }
+        } finally {
+            state.tearDown();
+        }
+    }
+}
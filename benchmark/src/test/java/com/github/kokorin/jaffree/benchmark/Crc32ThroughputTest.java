@@ -0,0 +1,23 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class Crc32ThroughputTest {
+    private Crc32Throughput throughput;
+
+    @Before
+    public void setUp() {
+        throughput = new Crc32Throughput();
+        throughput.setUp();
+    }
+
+    @Test
+    public void currentAndLegacyAgree() {
+        long expected = throughput.legacy();
+
+        Assert.assertEquals(expected, throughput.slicingBy8());
+        Assert.assertEquals(expected, throughput.slicingBy8Direct());
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameCodeSelectionTest {
+    private FrameCodeSelection selection;
+
+    @Before
+    public void setUp() {
+        selection = new FrameCodeSelection();
+        selection.setUp();
+    }
+
+    @Test
+    public void currentAndLegacyAgree() {
+        for (int i = 0; i < FrameCodeSelection.FRAME_COUNT; i++) {
+            for (boolean eor : new boolean[]{false, true}) {
+                int streamId = selection.streamIds[i];
+                boolean keyframe = selection.keyframes[i];
+                boolean checksum = selection.checksums[i];
+                long dataSize = selection.dataSizes[i];
+                long ptsDelta = selection.ptsDeltas[i];
+
+                long expected = selection.legacy.select(streamId, keyframe, eor, checksum, dataSize, ptsDelta);
+                long actual = selection.selector.select(streamId, keyframe, eor, checksum, dataSize, ptsDelta);
+                Assert.assertEquals("Frame " + i, expected, actual);
+            }
+        }
+
+        Assert.assertEquals(selection.legacy(), selection.selector());
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NutInputStreamThroughputTest {
+    private NutInputStreamThroughput throughput;
+
+    @Before
+    public void setUp() throws Exception {
+        throughput = new NutInputStreamThroughput();
+        throughput.setUp();
+    }
+
+    @Test
+    public void currentAndLegacyReadersAgree() throws Exception {
+        long expected = throughput.legacyReader();
+
+        Assert.assertEquals(expected, throughput.reader());
+        Assert.assertEquals(expected, throughput.readerFromChannel());
+    }
+}
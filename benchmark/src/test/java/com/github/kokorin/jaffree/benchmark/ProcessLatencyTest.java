@@ -0,0 +1,27 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessLatencyTest {
+    private ProcessLatency processLatency;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(System.getProperty("FFMPEG_BIN") != null || System.getenv("FFMPEG_BIN") != null);
+
+        processLatency = new ProcessLatency();
+        processLatency.setUp();
+    }
+
+    @Test
+    public void ffprobeVersion() {
+        processLatency.ffprobeVersion();
+    }
+
+    @Test
+    public void ffmpegSingleFrame() {
+        processLatency.ffmpegSingleFrame();
+    }
+}
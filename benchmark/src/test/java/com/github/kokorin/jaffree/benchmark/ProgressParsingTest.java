@@ -0,0 +1,85 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.ffmpeg.FFmpegProgress;
+import com.github.kokorin.jaffree.ffmpeg.FFmpegResult;
+import com.github.kokorin.jaffree.ffmpeg.FFmpegResultReader;
+import com.github.kokorin.jaffree.ffmpeg.ProgressListener;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProgressParsingTest {
+    private ProgressParsing progressParsing;
+
+    @Before
+    public void setUp() throws Exception {
+        progressParsing = new ProgressParsing();
+        progressParsing.setUp();
+    }
+
+    @Test
+    public void readerWithoutProgressListener() {
+        Assert.assertNotNull(progressParsing.readerWithoutProgressListener());
+    }
+
+    @Test
+    public void currentAndLegacyReadersAgree() throws Exception {
+        byte[] stderr = readStderr();
+
+        CollectingListener legacyProgress = new CollectingListener();
+        FFmpegResult legacyResult = new LegacyFFmpegResultReader(legacyProgress, null)
+                .read(new ByteArrayInputStream(stderr));
+
+        CollectingListener progress = new CollectingListener();
+        FFmpegResult result = new FFmpegResultReader(progress, null)
+                .read(new ByteArrayInputStream(stderr));
+
+        Assert.assertFalse(progress.items.isEmpty());
+        Assert.assertEquals(legacyProgress.items.size(), progress.items.size());
+        for (int i = 0; i < progress.items.size(); i++) {
+            FFmpegProgress expected = legacyProgress.items.get(i);
+            FFmpegProgress actual = progress.items.get(i);
+
+            Assert.assertEquals(expected.getFrame(), actual.getFrame());
+            Assert.assertEquals(expected.getFps(), actual.getFps());
+            Assert.assertEquals(expected.getQ(), actual.getQ());
+            Assert.assertEquals(expected.getTimeMillis(), actual.getTimeMillis());
+            Assert.assertEquals(expected.getBitrate(), actual.getBitrate());
+            Assert.assertEquals(expected.getSpeed(), actual.getSpeed());
+        }
+
+        Assert.assertEquals(legacyResult.getVideoSize(), result.getVideoSize());
+        Assert.assertEquals(legacyResult.getAudioSize(), result.getAudioSize());
+        Assert.assertEquals(legacyResult.getMuxingOverheadRatio(), result.getMuxingOverheadRatio());
+    }
+
+    private byte[] readStderr() throws Exception {
+        InputStream input = getClass().getClassLoader().getResourceAsStream("ffmpeg-stderr.txt");
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static class CollectingListener implements ProgressListener {
+        private final List<FFmpegProgress> items = new ArrayList<>();
+
+        @Override
+        public void onProgress(FFmpegProgress progress) {
+            items.add(progress);
+        }
+    }
+}
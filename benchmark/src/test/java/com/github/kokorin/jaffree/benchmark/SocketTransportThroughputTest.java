@@ -0,0 +1,33 @@
+package com.github.kokorin.jaffree.benchmark;
+
+import com.github.kokorin.jaffree.util.SocketTransport;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SocketTransportThroughputTest {
+    private SocketTransportThroughput throughput;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(System.getProperty("FFMPEG_BIN") != null || System.getenv("FFMPEG_BIN") != null);
+
+        throughput = new SocketTransportThroughput();
+        throughput.setUp();
+    }
+
+    @Test
+    public void tcp() {
+        throughput.transport = "tcp";
+        Assert.assertEquals(1280L * 720 * 3 * 250, throughput.rawVideo());
+    }
+
+    @Test
+    public void unix() {
+        Assume.assumeTrue(SocketTransport.isUnixSupported());
+
+        throughput.transport = "unix";
+        Assert.assertEquals(1280L * 720 * 3 * 250, throughput.rawVideo());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *    Copyright  2017 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+package com.github.kokorin.jaffree;
+
+/**
+ * Overflow-safe arithmetic on {@code long} values, which doesn't allocate.
+ */
+public final class LongMath {
+    private LongMath() {
+    }
+
+    /**
+     * Returns the most significant 64 bits of the 128-bit product of two signed 64-bit values,
+     * the same as {@code Math.multiplyHigh(long, long)}, which is available only since 9.
+     *
+     * @param x the first value
+     * @param y the second value
+     * @return high 64 bits of {@code x * y}
+     */
+    public static long multiplyHigh(long x, long y) {
+        // schoolbook multiplication with signed high and unsigned low 32-bit halves
+        long xHigh = x >> 32;
+        long xLow = x & 0xFFFFFFFFL;
+        long yHigh = y >> 32;
+        long yLow = y & 0xFFFFFFFFL;
+
+        long lowLow = xLow * yLow;
+        long t = xHigh * yLow + (lowLow >>> 32);
+        long middle = (t & 0xFFFFFFFFL) + xLow * yHigh;
+        return xHigh * yHigh + (t >> 32) + (middle >> 32);
+    }
+
+    /**
+     * Compares products {@code a * b} and {@code c * d} without overflow.
+     *
+     * @return the value {@code 0} if {@code a * b == c * d}; a value less than {@code 0} if
+     * {@code a * b < c * d}; and a value greater than {@code 0} if {@code a * b > c * d}
+     */
+    public static int compareProducts(long a, long b, long c, long d) {
+        long high1 = multiplyHigh(a, b);
+        long high2 = multiplyHigh(c, d);
+        if (high1 != high2) {
+            return Long.compare(high1, high2);
+        }
+        return Long.compareUnsigned(a * b, c * d);
+    }
+
+    /**
+     * Greatest common divisor of two non-negative numbers.
+     *
+     * @param a the first number
+     * @param b the second number
+     * @return greatest common divisor
+     */
+    public static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
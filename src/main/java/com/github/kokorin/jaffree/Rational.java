@@ -18,7 +18,6 @@
 package com.github.kokorin.jaffree;
 
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.util.Objects;
 
 public class Rational extends Number implements Comparable<Rational> {
@@ -38,7 +37,8 @@ public class Rational extends Number implements Comparable<Rational> {
 
     @Override
     public int compareTo(Rational that) {
-        return Long.compare(this.numerator * that.denominator, this.denominator * that.numerator);
+        // cross products may exceed 64 bits
+        return LongMath.compareProducts(this.numerator, that.denominator, that.numerator, this.denominator);
     }
 
     @Override
@@ -100,7 +100,7 @@ public class Rational extends Number implements Comparable<Rational> {
     }
 
     public Rational simplify() {
-        long gcd = gcd(Math.abs(numerator), denominator);
+        long gcd = LongMath.gcd(Math.abs(numerator), denominator);
         return new Rational(numerator / gcd, denominator / gcd);
     }
 
@@ -122,7 +122,7 @@ public class Rational extends Number implements Comparable<Rational> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Rational that = (Rational) o;
-        return this.numerator * that.denominator == this.denominator * that.numerator;
+        return compareTo(that) == 0;
     }
 
     @Override
@@ -177,10 +177,4 @@ public class Rational extends Number implements Comparable<Rational> {
 
         return valueOf(value.longValue());
     }
-
-    private static long gcd(long a, long b) {
-        BigInteger bigA = BigInteger.valueOf(a);
-        BigInteger bigB = BigInteger.valueOf(b);
-        return bigA.gcd(bigB).longValue();
-    }
 }
@@ -0,0 +1,140 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.ffmpeg;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settings of asynchronous dispatching of {@link ProgressListener} and {@link OutputListener} events.
+ * <p>
+ * ffmpeg output is still parsed in a thread which reads ffmpeg stderr, but listeners are invoked
+ * in a separate helper thread. So slow listener (e.g. one which stores progress to database) doesn't block
+ * reading of stderr, otherwise ffmpeg itself could stall when stderr pipe is full.
+ * <ul>
+ * <li>progress is coalesced: only the latest progress is passed to listener,
+ * and not more often than {@link #setProgressInterval(long) progress interval}.
+ * Final progress is always passed</li>
+ * <li>output lines are put into bounded queue, when queue is full lines are dropped
+ * according to {@link DropPolicy}</li>
+ * </ul>
+ * <b>Note</b>: with asynchronous dispatching return value of {@link OutputListener#onOutput(String)}
+ * is ignored and every line which is neither progress, nor result, is treated as possible error message.
+ * <p>
+ * Settings can be shared between several ffmpeg executions, dropped lines are counted for all of them.
+ *
+ * @see FFmpeg#setAsyncListeners(AsyncListeners)
+ */
+public class AsyncListeners {
+    private long progressIntervalMillis = 0;
+    private int outputQueueCapacity = 1024;
+    private DropPolicy dropPolicy = DropPolicy.DROP_OLDEST;
+
+    private final AtomicLong droppedOutputLines = new AtomicLong();
+
+    /**
+     * What to do with a new output line if output queue is full.
+     */
+    public enum DropPolicy {
+        /**
+         * Drop the new line.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest line in queue and put the new line.
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * Set minimum interval between two progress events. 0 (no limit) by default.
+     *
+     * @param progressIntervalMillis interval in milliseconds
+     * @return this
+     */
+    public AsyncListeners setProgressInterval(long progressIntervalMillis) {
+        if (progressIntervalMillis < 0) {
+            throw new IllegalArgumentException("Progress interval must not be negative");
+        }
+        this.progressIntervalMillis = progressIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Set minimum interval between two progress events. 0 (no limit) by default.
+     *
+     * @param progressInterval interval
+     * @param timeUnit         time unit
+     * @return this
+     */
+    public AsyncListeners setProgressInterval(Number progressInterval, TimeUnit timeUnit) {
+        long millis = (long) (progressInterval.doubleValue() * timeUnit.toMillis(1));
+        return setProgressInterval(millis);
+    }
+
+    /**
+     * Set maximum number of output lines waiting to be passed to {@link OutputListener}. 1024 by default.
+     *
+     * @param outputQueueCapacity queue capacity
+     * @return this
+     */
+    public AsyncListeners setOutputQueueCapacity(int outputQueueCapacity) {
+        if (outputQueueCapacity <= 0) {
+            throw new IllegalArgumentException("Output queue capacity must be positive");
+        }
+        this.outputQueueCapacity = outputQueueCapacity;
+        return this;
+    }
+
+    /**
+     * Set policy to apply when output queue is full. {@link DropPolicy#DROP_OLDEST} by default.
+     *
+     * @param dropPolicy drop policy
+     * @return this
+     */
+    public AsyncListeners setDropPolicy(DropPolicy dropPolicy) {
+        if (dropPolicy == null) {
+            throw new IllegalArgumentException("Drop policy must be set");
+        }
+        this.dropPolicy = dropPolicy;
+        return this;
+    }
+
+    /**
+     * @return number of output lines dropped because of full output queue
+     */
+    public long getDroppedOutputLines() {
+        return droppedOutputLines.get();
+    }
+
+    long getProgressIntervalMillis() {
+        return progressIntervalMillis;
+    }
+
+    int getOutputQueueCapacity() {
+        return outputQueueCapacity;
+    }
+
+    DropPolicy getDropPolicy() {
+        return dropPolicy;
+    }
+
+    void onOutputLineDropped() {
+        droppedOutputLines.incrementAndGet();
+    }
+}
@@ -17,35 +17,125 @@
 
 package com.github.kokorin.jaffree.ffmpeg;
 
-import com.github.kokorin.jaffree.util.FtpServer;
+import com.github.kokorin.jaffree.util.ChannelProtocol;
+import com.github.kokorin.jaffree.util.ChannelServer;
+import com.github.kokorin.jaffree.util.VirtualFileSystem;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.ServerSocket;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.ServerSocketChannel;
 
 public class ChannelInput extends SocketInput<ChannelInput> implements Input {
     private final SeekableByteChannel channel;
+    private final VirtualFileSystem fileSystem;
+    private final ChannelProtocol protocol;
+    private volatile ChannelServer server;
+    private volatile boolean processFinished = false;
 
     public ChannelInput(String fileName, SeekableByteChannel channel) {
-        super("ftp", "/" + fileName);
+        this(fileName, channel, ChannelProtocol.FTP);
+    }
+
+    /**
+     * Creates {@link ChannelInput}.
+     *
+     * @param fileName file name, ffmpeg may use its extension to detect format
+     * @param channel  channel to read from
+     * @param protocol protocol to pass channel to ffmpeg with
+     */
+    public ChannelInput(String fileName, SeekableByteChannel channel, ChannelProtocol protocol) {
+        super(protocol.getScheme(), "/" + fileName);
         this.channel = channel;
+        this.fileSystem = null;
+        this.protocol = protocol;
+    }
+
+    /**
+     * Creates {@link ChannelInput}, which reads file from {@link VirtualFileSystem}.
+     * <p>
+     * ffmpeg can read other files of the file system (e.g. files listed in concat list or HLS playlist)
+     * by relative paths.
+     * <p>
+     * <b>Note</b>: ffmpeg can't check file existence via FTP and hls demuxer opens segments only via HTTP,
+     * so image sequences (e.g. img%03d.png) and HLS playlists can be read only with {@link ChannelProtocol#HTTP}.
+     *
+     * @param fileName   path of the file in the file system
+     * @param fileSystem file system
+     * @param protocol   protocol to pass files to ffmpeg with
+     */
+    public ChannelInput(String fileName, VirtualFileSystem fileSystem, ChannelProtocol protocol) {
+        super(protocol.getScheme(), "/" + fileName);
+        this.channel = null;
+        this.fileSystem = fileSystem;
+        this.protocol = protocol;
+        // nested files are opened with protocols whitelisted by ftp or http protocol, i.e. tcp only
+        this.addArguments("-protocol_whitelist", protocol.getScheme() + ",tcp");
     }
 
     @Override
     Negotiator negotiator() {
         return new Negotiator() {
             @Override
-            public void negotiateAndClose(ServerSocket serverSocket) throws IOException {
-                try (Closeable toClose = serverSocket) {
-                    Runnable server = new FtpServer(channel, serverSocket);
-                    server.run();
+            public void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException {
+                try (Closeable toClose = serverChannel) {
+                    ChannelServer channelServer;
+                    if (fileSystem != null) {
+                        channelServer = protocol.createServer(fileSystem, serverChannel.socket());
+                    } else {
+                        channelServer = protocol.createServer(channel, serverChannel.socket());
+                    }
+                    channelServer.setExecutorService(getExecutorService());
+                    server = channelServer;
+                    if (processFinished) {
+                        channelServer.stop();
+                    }
+                    channelServer.run();
                 }
             }
         };
     }
 
+    /**
+     * ffmpeg may reconnect to read the channel (or files of {@link VirtualFileSystem}) at any moment,
+     * so the server is stopped only when ffmpeg has finished.
+     */
+    @Override
+    void onProcessFinished() {
+        processFinished = true;
+        ChannelServer current = server;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    /**
+     * Returns statistics of the server, which has served the channel: number of seeks, bytes re-read, etc.
+     *
+     * @return statistics or null if channel hasn't been served yet
+     */
+    public ChannelServer.Statistics getStatistics() {
+        ChannelServer current = server;
+        if (current == null) {
+            return null;
+        }
+        return current.getStatistics();
+    }
+
     public static ChannelInput fromChannel(String fileName, SeekableByteChannel channel) {
         return new ChannelInput(fileName, channel);
     }
+
+    public static ChannelInput fromChannel(String fileName, SeekableByteChannel channel, ChannelProtocol protocol) {
+        return new ChannelInput(fileName, channel, protocol);
+    }
+
+    public static ChannelInput fromFileSystem(String fileName, VirtualFileSystem fileSystem) {
+        return new ChannelInput(fileName, fileSystem, ChannelProtocol.FTP);
+    }
+
+    public static ChannelInput fromFileSystem(String fileName, VirtualFileSystem fileSystem,
+                                              ChannelProtocol protocol) {
+        return new ChannelInput(fileName, fileSystem, protocol);
+    }
 }
@@ -17,20 +17,64 @@
 
 package com.github.kokorin.jaffree.ffmpeg;
 
-import com.github.kokorin.jaffree.util.FtpServer;
+import com.github.kokorin.jaffree.util.ChannelProtocol;
+import com.github.kokorin.jaffree.util.ChannelServer;
+import com.github.kokorin.jaffree.util.VirtualFileSystem;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.ServerSocket;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.ServerSocketChannel;
 
 public class ChannelOutput extends SocketOutput<ChannelOutput> implements Output {
     private final SeekableByteChannel channel;
+    private final VirtualFileSystem fileSystem;
+    private final ChannelProtocol protocol;
+    private volatile ChannelServer server;
+    private volatile boolean processFinished = false;
 
     public ChannelOutput(String filename, SeekableByteChannel channel) {
-        super("ftp", "/" + filename);
+        this(filename, channel, ChannelProtocol.FTP);
+    }
+
+    /**
+     * Creates {@link ChannelOutput}.
+     * <p>
+     * <b>Note</b>: ffmpeg can't seek in HTTP output, so only streaming formats can be written with
+     * {@link ChannelProtocol#HTTP}.
+     *
+     * @param filename file name, ffmpeg may use its extension to detect format
+     * @param channel  channel to write to
+     * @param protocol protocol to pass channel to ffmpeg with
+     */
+    public ChannelOutput(String filename, SeekableByteChannel channel, ChannelProtocol protocol) {
+        this(filename, channel, null, protocol);
+    }
+
+    /**
+     * Creates {@link ChannelOutput}, which writes files to {@link VirtualFileSystem}.
+     * <p>
+     * Muxers which produce several files (e.g. image2, segment or hls) create them in the file system,
+     * files are created in memory if the file system doesn't have them already.
+     *
+     * @param filename   path of the file in the file system, may be a pattern (e.g. img%03d.png)
+     * @param fileSystem file system
+     * @param protocol   protocol to pass files to ffmpeg with
+     * @see VirtualFileSystem#setFileListener(VirtualFileSystem.FileListener)
+     */
+    public ChannelOutput(String filename, VirtualFileSystem fileSystem, ChannelProtocol protocol) {
+        this(filename, null, fileSystem, protocol);
+    }
+
+    private ChannelOutput(String filename, SeekableByteChannel channel, VirtualFileSystem fileSystem,
+                          ChannelProtocol protocol) {
+        super(protocol.getScheme(), "/" + filename);
         this.channel = channel;
-        this.addArguments("-ftp-write-seekable", "1");
+        this.fileSystem = fileSystem;
+        this.protocol = protocol;
+        if (protocol == ChannelProtocol.FTP) {
+            this.addArguments("-ftp-write-seekable", "1");
+        }
     }
 
     @Override
@@ -38,16 +82,52 @@ public class ChannelOutput extends SocketOutput<ChannelOutput> implements Output
 
         return new Negotiator() {
             @Override
-            public void negotiateAndClose(ServerSocket serverSocket) throws IOException {
-                try (Closeable toClose = serverSocket) {
-                    Runnable server = new FtpServer(channel, serverSocket);
-                    server.run();
+            public void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException {
+                try (Closeable toClose = serverChannel) {
+                    ChannelServer channelServer;
+                    if (fileSystem != null) {
+                        channelServer = protocol.createServer(fileSystem, serverChannel.socket());
+                    } else {
+                        channelServer = protocol.createServer(channel, serverChannel.socket());
+                    }
+                    channelServer.setExecutorService(getExecutorService());
+                    server = channelServer;
+                    if (processFinished) {
+                        channelServer.stop();
+                    }
+                    channelServer.run();
                 }
             }
         };
     }
 
+    /**
+     * ffmpeg may reconnect to write the channel (or files of {@link VirtualFileSystem}) at any moment,
+     * so the server is stopped only when ffmpeg has finished.
+     */
+    @Override
+    void onProcessFinished() {
+        processFinished = true;
+        ChannelServer current = server;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
     public static ChannelOutput toChannel(String filename, SeekableByteChannel channel) {
         return new ChannelOutput(filename, channel);
     }
+
+    public static ChannelOutput toChannel(String filename, SeekableByteChannel channel, ChannelProtocol protocol) {
+        return new ChannelOutput(filename, channel, protocol);
+    }
+
+    public static ChannelOutput toFileSystem(String filename, VirtualFileSystem fileSystem) {
+        return new ChannelOutput(filename, fileSystem, ChannelProtocol.FTP);
+    }
+
+    public static ChannelOutput toFileSystem(String filename, VirtualFileSystem fileSystem,
+                                             ChannelProtocol protocol) {
+        return new ChannelOutput(filename, fileSystem, protocol);
+    }
 }
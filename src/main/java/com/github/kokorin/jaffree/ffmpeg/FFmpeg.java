@@ -19,13 +19,18 @@ package com.github.kokorin.jaffree.ffmpeg;
 
 import com.github.kokorin.jaffree.LogLevel;
 import com.github.kokorin.jaffree.StreamType;
+import com.github.kokorin.jaffree.process.JobScheduler;
 import com.github.kokorin.jaffree.process.LoggingStdReader;
 import com.github.kokorin.jaffree.process.ProcessHandler;
+import com.github.kokorin.jaffree.process.ProcessListener;
 import com.github.kokorin.jaffree.process.StdReader;
+import com.github.kokorin.jaffree.process.StdWriter;
 import com.github.kokorin.jaffree.process.Stopper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -33,8 +38,11 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class FFmpeg {
     private final List<Input> inputs = new ArrayList<>();
@@ -43,7 +51,11 @@ public class FFmpeg {
     private boolean overwriteOutput;
     private ProgressListener progressListener;
     private OutputListener outputListener;
-    //-progress url (global)
+    private ResourceUsageListener resourceUsageListener;
+    private boolean benchmark;
+    private boolean progressOverSocket;
+    private Long statsPeriod;
+    private AsyncListeners asyncListeners;
     //-filter_threads nb_threads (global)
     //-debug_ts (global)
     private FilterGraph complexFilter;
@@ -55,6 +67,7 @@ public class FFmpeg {
 
     private LogLevel logLevel = null;
     private String contextName = null;
+    private ExecutorService executorService = null;
 
     private final Path executable;
 
@@ -198,6 +211,97 @@ public class FFmpeg {
         return this;
     }
 
+    /**
+     * Supply custom ResourceUsageListener to receive resources used by ffmpeg.
+     * <p>
+     * Resource usage is also available with {@link FFmpegResult#getResourceUsage()}.
+     *
+     * @param resourceUsageListener listener
+     * @return this
+     * @see #setBenchmark(boolean)
+     */
+    public FFmpeg setResourceUsageListener(ResourceUsageListener resourceUsageListener) {
+        this.resourceUsageListener = resourceUsageListener;
+        return this;
+    }
+
+    /**
+     * Invoke {@link ProgressListener} and {@link OutputListener} asynchronously, so slow listeners
+     * don't block reading of ffmpeg output. By default listeners are invoked in a thread which reads
+     * ffmpeg output.
+     *
+     * @param asyncListeners asynchronous dispatching settings, null to invoke listeners synchronously
+     * @return this
+     * @see AsyncListeners
+     */
+    public FFmpeg setAsyncListeners(AsyncListeners asyncListeners) {
+        this.asyncListeners = asyncListeners;
+        return this;
+    }
+
+    /**
+     * Whether to show benchmarking information at the end of an encode (-benchmark option).
+     * <p>
+     * ffmpeg reports CPU time used and maximum memory consumption, which are available with
+     * {@link ResourceUsage}. False by default.
+     *
+     * @param benchmark true to enable benchmarking information
+     * @return this
+     */
+    public FFmpeg setBenchmark(boolean benchmark) {
+        this.benchmark = benchmark;
+        return this;
+    }
+
+    /**
+     * Whether to receive progress via loopback TCP socket (-progress option) instead of parsing stderr.
+     * False by default.
+     * <p>
+     * ffmpeg reports progress with machine-readable key=value blocks, which additionally contain
+     * {@link FFmpegProgress#getTimeMicros() time in microseconds},
+     * {@link FFmpegProgress#getStreamQ() quality per stream} and
+     * {@link FFmpegProgress#isEnd() end of progress} marker.
+     * <p>
+     * Progress lines are not printed to stderr (-nostats), so stderr can be kept at quiet
+     * {@link #setLogLevel(LogLevel) log level}. <b>Note</b>: {@link FFmpegResult} sizes are parsed
+     * from stderr, they are null if log level is lower than {@link LogLevel#INFO}.
+     *
+     * @param progressOverSocket true to report progress via socket
+     * @return this
+     * @see #setStatsPeriod(long)
+     */
+    public FFmpeg setProgressOverSocket(boolean progressOverSocket) {
+        this.progressOverSocket = progressOverSocket;
+        return this;
+    }
+
+    /**
+     * Set period at which progress is reported (-stats_period option). 500 milliseconds by default.
+     * <p>
+     * Requires ffmpeg 4.4 or later.
+     *
+     * @param statsPeriodMillis period in milliseconds
+     * @return this
+     */
+    public FFmpeg setStatsPeriod(long statsPeriodMillis) {
+        this.statsPeriod = statsPeriodMillis;
+        return this;
+    }
+
+    /**
+     * Set period at which progress is reported (-stats_period option). 500 milliseconds by default.
+     * <p>
+     * Requires ffmpeg 4.4 or later.
+     *
+     * @param statsPeriod period
+     * @param timeUnit    time unit
+     * @return this
+     */
+    public FFmpeg setStatsPeriod(Number statsPeriod, TimeUnit timeUnit) {
+        long millis = (long) (statsPeriod.doubleValue() * timeUnit.toMillis(1));
+        return setStatsPeriod(millis);
+    }
+
     public FFmpeg setLogLevel(LogLevel logLevel) {
         this.logLevel = logLevel;
         return this;
@@ -214,6 +318,21 @@ public class FFmpeg {
         return this;
     }
 
+    /**
+     * Set {@link ExecutorService} to run helper threads and async runner with.
+     * <p>
+     * Executor service can be shared between many ffmpeg (and ffprobe) executions,
+     * see {@link com.github.kokorin.jaffree.process.ExecutorServices}.
+     * <b>Note</b>: executor must not queue tasks, otherwise ffmpeg may block.
+     *
+     * @param executorService executor service
+     * @return this
+     */
+    public FFmpeg setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
     public FFmpegResult execute() {
         ProcessHandler<FFmpegResult> processHandler = createProcessHandler();
         return processHandler.execute();
@@ -222,24 +341,76 @@ public class FFmpeg {
     /**
      * Runs ffmpeg in separate Thread.
      * <p>
+     * If {@link ExecutorService} is set, ffmpeg is run with it, otherwise new thread is started.
      *
      * @return ffmpeg result future
+     * @see #executeAsync(Executor)
      */
     public FFmpegResultFuture executeAsync() {
+        if (executorService != null) {
+            return executeAsync(executorService);
+        }
+
+        return executeAsync(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Thread runner = new Thread(command, "FFmpeg-async-runner");
+                runner.setDaemon(true);
+                runner.start();
+            }
+        });
+    }
+
+    /**
+     * Runs ffmpeg with provided {@link Executor}.
+     * <p>
+     * Returned future can be converted to {@link CompletableFuture} to compose ffmpeg execution
+     * with other asynchronous tasks (e.g. ffprobe executions) without blocking.
+     *
+     * @param executor executor to run ffmpeg with
+     * @return ffmpeg result future
+     * @see FFmpegResultFuture#toCompletableFuture()
+     */
+    public FFmpegResultFuture executeAsync(Executor executor) {
         final ProcessHandler<FFmpegResult> processHandler = createProcessHandler();
         Stopper stopper = createStopper();
         processHandler.setStopper(stopper);
 
-        FutureTask<FFmpegResult> resultFuture = new FutureTask<>(new Callable<FFmpegResult>() {
+        CompletableFuture<FFmpegResult> resultFuture = CompletableFuture.supplyAsync(new Supplier<FFmpegResult>() {
             @Override
-            public FFmpegResult call() throws Exception {
+            public FFmpegResult get() {
                 return processHandler.execute();
             }
-        });
+        }, executor);
 
-        Thread runner = new Thread(resultFuture, "FFmpeg-async-runner");
-        runner.setDaemon(true);
-        runner.start();
+        return new FFmpegResultFuture(resultFuture, stopper);
+    }
+
+    /**
+     * Submits ffmpeg execution to {@link JobScheduler}.
+     * <p>
+     * ffmpeg process is started when scheduler has a free slot. Cancelling
+     * {@link FFmpegResultFuture#toCompletableFuture() completable future} of a queued job
+     * removes it from the queue without starting ffmpeg.
+     *
+     * @param scheduler scheduler
+     * @param priority  job priority
+     * @param tenant    tenant which submits job
+     * @return ffmpeg result future
+     */
+    public FFmpegResultFuture executeAsync(JobScheduler scheduler, JobScheduler.Priority priority, String tenant) {
+        final Stopper stopper = createStopper();
+
+        // Process handler opens sockets and creates helpers, so it's created only when job starts:
+        // nothing is left open by jobs which are cancelled in queue
+        CompletableFuture<FFmpegResult> resultFuture = scheduler.submit(new Supplier<FFmpegResult>() {
+            @Override
+            public FFmpegResult get() {
+                ProcessHandler<FFmpegResult> processHandler = createProcessHandler();
+                processHandler.setStopper(stopper);
+                return processHandler.execute();
+            }
+        }, priority, tenant);
 
         return new FFmpegResultFuture(resultFuture, stopper);
     }
@@ -260,35 +431,175 @@ public class FFmpeg {
             }
         }
 
+        ProgressListener actualProgressListener = progressListener;
+        OutputListener actualOutputListener = outputListener;
+        ListenerDispatcher dispatcher = null;
+        if (asyncListeners != null && (progressListener != null || outputListener != null)) {
+            // stderr reader and progress socket (if any) produce events
+            int producers = progressOverSocket ? 2 : 1;
+            dispatcher = new ListenerDispatcher(progressListener, outputListener, asyncListeners, producers);
+            actualProgressListener = dispatcher.progressListener();
+            actualOutputListener = dispatcher.outputListener();
+            helpers.add(dispatcher.helperThread());
+        }
+
+        TcpProgressOutput progressOutput = null;
+        if (progressOverSocket) {
+            progressOutput = new TcpProgressOutput(actualProgressListener);
+            Runnable helper = progressOutput.helperThread();
+            if (dispatcher != null) {
+                helper = dispatcher.producer(helper);
+            }
+            helpers.add(helper);
+        }
+
+        List<String> arguments = buildArguments();
+        if (progressOutput != null) {
+            // -progress is a global option, ffmpeg opens progress URL while parsing it
+            arguments.addAll(0, Arrays.asList("-progress", progressOutput.getUrl()));
+        }
+
+        // with progress over socket stderr doesn't contain progress
+        StdReader<FFmpegResult> stdErrReader = createStdErrReader(
+                progressOverSocket ? null : actualProgressListener, actualOutputListener);
+        ProcessListener processListener = null;
+        if (stdErrReader instanceof ProcessListener) {
+            processListener = (ProcessListener) stdErrReader;
+        }
+        if (dispatcher != null) {
+            stdErrReader = dispatcher.producer(stdErrReader);
+        }
+
+        TcpInput<?> stdInInput = findStdInInput();
+        TcpOutput<?> stdOutOutput = findStdOutOutput();
+
         return new ProcessHandler<FFmpegResult>(executable, contextName)
-                .setStdErrReader(createStdErrReader())
-                .setStdOutReader(createStdOutReader())
+                .setStdErrReader(stdErrReader)
+                .setStdOutReader(stdOutOutput != null
+                        ? createStdOutReader(stdOutOutput.consumer())
+                        : createStdOutReader())
+                .setStdInWriter(stdInInput != null ? createStdInWriter(stdInInput.supplier()) : null)
+                .setProcessListener(processListener)
                 .setRunnables(helpers)
-                .setArguments(buildArguments());
+                .setExecutorService(executorService)
+                .setArguments(arguments);
     }
 
     protected Stopper createStopper() {
-        return new FFmpegStopper();
+        return new FFmpegStopper(findStdInInput() != null);
     }
 
+    /**
+     * Creates stderr reader with configured listeners.
+     *
+     * @return stderr reader
+     * @deprecated it isn't used to create process, override
+     * {@link #createStdErrReader(ProgressListener, OutputListener)} instead
+     */
+    @Deprecated
     protected StdReader<FFmpegResult> createStdErrReader() {
-        return new FFmpegResultReader(progressListener, outputListener);
+        return createStdErrReader(progressListener, outputListener);
+    }
+
+    /**
+     * Creates stderr reader, which reports events to the specified listeners. Override this method to provide
+     * custom reader.
+     * <p>
+     * Listeners are created per execution: they are adjusted for asynchronous dispatching and progress
+     * over socket.
+     *
+     * @param progressListener progress listener, null if stderr progress must not be reported
+     * @param outputListener   output listener
+     * @return stderr reader
+     */
+    protected StdReader<FFmpegResult> createStdErrReader(ProgressListener progressListener,
+                                                         OutputListener outputListener) {
+        return new FFmpegResultReader(progressListener, outputListener, resourceUsageListener);
     }
 
     protected StdReader<FFmpegResult> createStdOutReader() {
         return new LoggingStdReader<>();
     }
 
+    /**
+     * Creates stdout reader for output which receives data via ffmpeg stdout.
+     *
+     * @param consumer output consumer
+     * @return stdout reader
+     */
+    protected StdReader<FFmpegResult> createStdOutReader(final TcpOutput.Consumer consumer) {
+        return new StdReader<FFmpegResult>() {
+            @Override
+            public FFmpegResult read(InputStream stdOut) {
+                consumer.consumeAndClose(stdOut);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Creates stdin writer for input which passes data via ffmpeg stdin.
+     *
+     * @param supplier input supplier
+     * @return stdin writer
+     */
+    protected StdWriter createStdInWriter(final TcpInput.Supplier supplier) {
+        return new StdWriter() {
+            @Override
+            public void write(OutputStream stdIn) {
+                supplier.supplyAndClose(new StdInOutputStream(stdIn));
+            }
+        };
+    }
+
+    private TcpInput<?> findStdInInput() {
+        TcpInput<?> result = null;
+        for (Input input : inputs) {
+            if (input instanceof TcpInput && ((TcpInput<?>) input).isStdIn()) {
+                if (result != null) {
+                    throw new RuntimeException("Only one input can read ffmpeg stdin");
+                }
+                result = (TcpInput<?>) input;
+            }
+        }
+        return result;
+    }
+
+    private TcpOutput<?> findStdOutOutput() {
+        TcpOutput<?> result = null;
+        for (Output output : outputs) {
+            if (output instanceof TcpOutput && ((TcpOutput<?>) output).isStdOut()) {
+                if (result != null) {
+                    throw new RuntimeException("Only one output can write ffmpeg stdout");
+                }
+                result = (TcpOutput<?>) output;
+            }
+        }
+        return result;
+    }
+
     protected List<String> buildArguments() {
         List<String> result = new ArrayList<>();
 
         if (logLevel != null) {
-            if (progressListener != null && logLevel.code() < LogLevel.INFO.code()) {
+            if (progressListener != null && !progressOverSocket && logLevel.code() < LogLevel.INFO.code()) {
                 throw new RuntimeException("Specified log level " + logLevel + " hides ffmpeg progress output");
             }
             result.addAll(Arrays.asList("-loglevel", Integer.toString(logLevel.code())));
         }
 
+        if (benchmark) {
+            result.add("-benchmark");
+        }
+
+        if (progressOverSocket) {
+            result.add("-nostats");
+        }
+
+        if (statsPeriod != null) {
+            result.addAll(Arrays.asList("-stats_period", BaseInOut.formatDuration(statsPeriod)));
+        }
+
         for (Input input : inputs) {
             result.addAll(input.buildArguments());
         }
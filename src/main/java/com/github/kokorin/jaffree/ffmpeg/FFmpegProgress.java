@@ -17,6 +17,8 @@
 
 package com.github.kokorin.jaffree.ffmpeg;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 public class FFmpegProgress {
@@ -29,8 +31,32 @@ public class FFmpegProgress {
     private final Long drop;
     private final Double bitrate;
     private final Double speed;
+    private final Long timeMicros;
+    private final Map<String, Double> streamQ;
+    private final boolean end;
 
     public FFmpegProgress(Long frame, Double fps, Double q, Long size, Long time, Long dup, Long drop, Double bitrate, Double speed) {
+        this(frame, fps, q, size, time, dup, drop, bitrate, speed, null, null, false);
+    }
+
+    /**
+     * Creates progress with additional values, which are reported by ffmpeg only via -progress option.
+     *
+     * @param frame      frame
+     * @param fps        fps
+     * @param q          quality of the first encoded stream
+     * @param size       size in bytes
+     * @param time       time in milliseconds
+     * @param dup        duplicated frames
+     * @param drop       dropped frames
+     * @param bitrate    bitrate in kbits/s
+     * @param speed      speed
+     * @param timeMicros time in microseconds
+     * @param streamQ    quality per encoded stream, keyed with "file:stream" (e.g. "0:1")
+     * @param end        true if this is the last progress report
+     */
+    public FFmpegProgress(Long frame, Double fps, Double q, Long size, Long time, Long dup, Long drop, Double bitrate,
+                          Double speed, Long timeMicros, Map<String, Double> streamQ, boolean end) {
         this.frame = frame;
         this.fps = fps;
         this.q = q;
@@ -40,6 +66,11 @@ public class FFmpegProgress {
         this.drop = drop;
         this.bitrate = bitrate;
         this.speed = speed;
+        this.timeMicros = timeMicros;
+        this.streamQ = streamQ == null
+                ? Collections.<String, Double>emptyMap()
+                : Collections.unmodifiableMap(streamQ);
+        this.end = end;
     }
 
     public Long getFrame() {
@@ -69,6 +100,10 @@ public class FFmpegProgress {
     }
 
     public Long getTime(TimeUnit timeUnit) {
+        if (timeMicros != null) {
+            return timeUnit.convert(timeMicros, TimeUnit.MICROSECONDS);
+        }
+
         if (time == null) {
             return null;
         }
@@ -76,6 +111,15 @@ public class FFmpegProgress {
         return timeUnit.convert(time, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Available only with {@link FFmpeg#setProgressOverSocket(boolean) progress over socket}.
+     *
+     * @return time in microseconds
+     */
+    public Long getTimeMicros() {
+        return timeMicros;
+    }
+
 
     public Long getDup() {
         return dup;
@@ -93,6 +137,24 @@ public class FFmpegProgress {
         return speed;
     }
 
+    /**
+     * Available only with {@link FFmpeg#setProgressOverSocket(boolean) progress over socket}.
+     *
+     * @return quality per encoded stream, keyed with "file:stream" (e.g. "0:1"), never null
+     */
+    public Map<String, Double> getStreamQ() {
+        return streamQ;
+    }
+
+    /**
+     * Available only with {@link FFmpeg#setProgressOverSocket(boolean) progress over socket}.
+     *
+     * @return true if this is the last progress report
+     */
+    public boolean isEnd() {
+        return end;
+    }
+
     @Override
     public String toString() {
         return "FFmpegProgress{" +
@@ -105,6 +167,9 @@ public class FFmpegProgress {
                 ", drop=" + drop +
                 ", bitrate=" + bitrate +
                 ", speed=" + speed +
+                ", timeMicros=" + timeMicros +
+                ", streamQ=" + streamQ +
+                ", end=" + end +
                 '}';
     }
 }
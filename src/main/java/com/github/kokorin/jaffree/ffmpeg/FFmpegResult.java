@@ -24,14 +24,20 @@ public class FFmpegResult {
     private final Long otherStreamsSize;
     private final Long globalHeadersSize;
     private final Double muxingOverheadRatio;
+    private final ResourceUsage resourceUsage;
 
     public FFmpegResult(Long videoSize, Long audioSize, Long subtitleSize, Long otherStreamsSize, Long globalHeadersSize, Double muxingOverheadRatio) {
+        this(videoSize, audioSize, subtitleSize, otherStreamsSize, globalHeadersSize, muxingOverheadRatio, null);
+    }
+
+    public FFmpegResult(Long videoSize, Long audioSize, Long subtitleSize, Long otherStreamsSize, Long globalHeadersSize, Double muxingOverheadRatio, ResourceUsage resourceUsage) {
         this.videoSize = videoSize;
         this.audioSize = audioSize;
         this.subtitleSize = subtitleSize;
         this.otherStreamsSize = otherStreamsSize;
         this.globalHeadersSize = globalHeadersSize;
         this.muxingOverheadRatio = muxingOverheadRatio;
+        this.resourceUsage = resourceUsage;
     }
 
     /**
@@ -75,4 +81,12 @@ public class FFmpegResult {
     public Double getMuxingOverheadRatio() {
         return muxingOverheadRatio;
     }
+
+    /**
+     * @return resources used by ffmpeg
+     * @see FFmpeg#setBenchmark(boolean)
+     */
+    public ResourceUsage getResourceUsage() {
+        return resourceUsage;
+    }
 }
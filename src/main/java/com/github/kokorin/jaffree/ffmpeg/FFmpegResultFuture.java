@@ -20,6 +20,7 @@ package com.github.kokorin.jaffree.ffmpeg;
 import com.github.kokorin.jaffree.process.Stopper;
 
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -28,10 +29,36 @@ import java.util.concurrent.TimeoutException;
 public class FFmpegResultFuture {
     private final Future<FFmpegResult> resultFuture;
     private final Stopper stopper;
+    private CompletableFuture<FFmpegResult> completableFuture;
 
     public FFmpegResultFuture(Future<FFmpegResult> resultFuture, Stopper stopper) {
         this.resultFuture = resultFuture;
         this.stopper = stopper;
+        if (resultFuture instanceof CompletableFuture) {
+            this.completableFuture = (CompletableFuture<FFmpegResult>) resultFuture;
+        }
+    }
+
+    public FFmpegResultFuture(CompletableFuture<FFmpegResult> resultFuture, Stopper stopper) {
+        this((Future<FFmpegResult>) resultFuture, stopper);
+    }
+
+    /**
+     * Returns {@link CompletableFuture} which completes when ffmpeg process completes.
+     * <p>
+     * <b>Note</b>: cancelling returned future prevents ffmpeg from starting (if it's not yet started),
+     * but doesn't stop running ffmpeg process. Use {@link #forceStop()} or {@link #graceStop()} instead.
+     *
+     * If this instance was created with plain {@link Future}, the returned future is completed
+     * by a daemon thread, which waits for the plain one.
+     *
+     * @return completable future
+     */
+    public synchronized CompletableFuture<FFmpegResult> toCompletableFuture() {
+        if (completableFuture == null) {
+            completableFuture = adapt(resultFuture);
+        }
+        return completableFuture;
     }
 
     /**
@@ -120,4 +147,33 @@ public class FFmpegResultFuture {
     public boolean isDone() {
         return resultFuture.isDone();
     }
+
+    private static CompletableFuture<FFmpegResult> adapt(final Future<FFmpegResult> future) {
+        final CompletableFuture<FFmpegResult> result = new CompletableFuture<FFmpegResult>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                future.cancel(false);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.complete(future.get());
+                } catch (CancellationException e) {
+                    result.cancel(false);
+                } catch (ExecutionException e) {
+                    result.completeExceptionally(e.getCause());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        }, "FFmpegResultFuture-Waiter");
+        waiter.setDaemon(true);
+        waiter.start();
+
+        return result;
+    }
 }
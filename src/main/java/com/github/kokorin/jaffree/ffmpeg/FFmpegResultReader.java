@@ -17,7 +17,7 @@
 
 package com.github.kokorin.jaffree.ffmpeg;
 
-import com.github.kokorin.jaffree.SizeUnit;
+import com.github.kokorin.jaffree.process.ProcessListener;
 import com.github.kokorin.jaffree.process.StdReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,16 +28,43 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-public class FFmpegResultReader implements StdReader<FFmpegResult> {
+public class FFmpegResultReader implements StdReader<FFmpegResult>, ProcessListener {
     private final ProgressListener progressListener;
     private final OutputListener outputListener;
+    private final ResourceUsageListener resourceUsageListener;
+    private final ProgressLineParser lineParser = new ProgressLineParser();
+
+    private volatile long processStartingNanos;
+    private volatile long processStartedNanos;
+    private long firstProgressNanos;
+    private Long userCpuTime;
+    private Long systemCpuTime;
+    private Long realTime;
+    private Long maxResidentSetSize;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FFmpegResultReader.class);
 
     public FFmpegResultReader(ProgressListener progressListener, OutputListener outputListener) {
+        this(progressListener, outputListener, null);
+    }
+
+    public FFmpegResultReader(ProgressListener progressListener, OutputListener outputListener,
+                              ResourceUsageListener resourceUsageListener) {
         this.progressListener = progressListener;
         this.outputListener = outputListener;
+        this.resourceUsageListener = resourceUsageListener;
+    }
+
+    @Override
+    public void onProcessStarting() {
+        processStartingNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onProcessStarted(Process process) {
+        processStartedNanos = System.nanoTime();
     }
 
     @Override
@@ -52,19 +79,21 @@ public class FFmpegResultReader implements StdReader<FFmpegResult> {
         try {
             while ((line = reader.readLine()) != null) {
                 LOGGER.debug(line);
-                FFmpegProgress progress = parseProgress(line);
-                if (progress != null) {
+                if (lineParser.parseProgress(line)) {
+                    if (firstProgressNanos == 0) {
+                        firstProgressNanos = System.nanoTime();
+                    }
                     if (progressListener != null) {
-                        progressListener.onProgress(progress);
+                        progressListener.onProgress(lineParser.toProgress());
                     }
                     errorMessage = null;
                     continue;
                 }
 
-                FFmpegResult possibleResult = parsResult(line);
+                parseBenchmark(line);
 
-                if (possibleResult != null) {
-                    result = possibleResult;
+                if (lineParser.parseResult(line)) {
+                    result = lineParser.toResult();
                     errorMessage = null;
                     continue;
                 }
@@ -87,6 +116,19 @@ public class FFmpegResultReader implements StdReader<FFmpegResult> {
             throw new RuntimeException("Exception while reading ffmpeg output", e);
         }
 
+        ResourceUsage resourceUsage = createResourceUsage(System.nanoTime());
+        if (resourceUsageListener != null) {
+            resourceUsageListener.onResourceUsage(resourceUsage);
+        }
+        if (result != null) {
+            result = new FFmpegResult(result.getVideoSize(), result.getAudioSize(), result.getSubtitleSize(),
+                    result.getOtherStreamsSize(), result.getGlobalHeadersSize(), result.getMuxingOverheadRatio(),
+                    resourceUsage);
+        } else {
+            // ffmpeg doesn't print result with log level lower than info
+            result = new FFmpegResult(null, null, null, null, null, null, resourceUsage);
+        }
+
         if (errorMessage != null) {
             throw new RuntimeException("ffmpeg exited with message: " + errorMessage);
         }
@@ -94,64 +136,81 @@ public class FFmpegResultReader implements StdReader<FFmpegResult> {
         return result;
     }
 
-    static FFmpegProgress parseProgress(String value) {
-        if (value == null) {
-            return null;
+    /**
+     * Parses lines printed by ffmpeg with -benchmark option:
+     * <pre>
+     * bench: utime=0.009s stime=0.000s rtime=0.009s
+     * bench: maxrss=16956kB
+     * </pre>
+     *
+     * @param line line to parse
+     */
+    private void parseBenchmark(String line) {
+        if (!line.startsWith("bench:")) {
+            return;
         }
 
         try {
-            // Replace "frame=  495 fps= 89" with "frame=495 fps=89"
-            value = value.replaceAll("= +", "=");
-            Map<String, String> map = parseKeyValues(value, "=");
-
-            Long frame = parseLong(map.get("frame"));
-            Double fps = parseDouble(map.get("fps"));
-            Double q = parseDouble(map.get("q"));
-            Long size = parseSizeInBytes(map.get("Lsize"));
-            Long timeMillis = parseTimeInMillis(map.get("time"));
-            Long dup = parseLong(map.get("dup"));
-            Long drop = parseLong(map.get("drop"));
-            Double bitrate = parseBitrateInKBits(map.get("bitrate"));
-            Double speed = parseSpeed(map.get("speed"));
-
-            if (hasNonNull(frame, fps, q, size, timeMillis, dup, drop, bitrate, speed)) {
-                return new FFmpegProgress(frame, fps, q, size, timeMillis, dup, drop, bitrate, speed);
+            Map<String, String> map = parseKeyValues(line.substring("bench:".length()).trim(), "=");
+
+            Long utime = parseSecondsInMillis(map.get("utime"));
+            Long stime = parseSecondsInMillis(map.get("stime"));
+            Long rtime = parseSecondsInMillis(map.get("rtime"));
+            Long maxrss = parseMaxRss(map.get("maxrss"));
+
+            if (utime != null) {
+                userCpuTime = utime;
+            }
+            if (stime != null) {
+                systemCpuTime = stime;
+            }
+            if (rtime != null) {
+                realTime = rtime;
+            }
+            if (maxrss != null) {
+                maxResidentSetSize = maxrss;
             }
         } catch (Exception e) {
             // suppress
         }
-
-        return null;
     }
 
+    private ResourceUsage createResourceUsage(long exitNanos) {
+        Long spawnTime = null;
+        Long firstProgressTime = null;
+        Long exitTime = null;
 
-    static FFmpegResult parsResult(String value) {
-        if (value == null || value.isEmpty()) {
-            return null;
+        if (processStartedNanos != 0) {
+            if (processStartingNanos != 0) {
+                spawnTime = nanosToMillis(processStartedNanos - processStartingNanos);
+            }
+            if (firstProgressNanos != 0) {
+                firstProgressTime = nanosToMillis(firstProgressNanos - processStartedNanos);
+            }
+            exitTime = nanosToMillis(exitNanos - processStartedNanos);
         }
 
-        try {
-            value = value
-                    .replaceAll("other streams", "other_streams")
-                    .replaceAll("global headers", "global_headers")
-                    .replaceAll("muxing overhead", "muxing_overhead")
-                    .replaceAll(":\\s+", ":");
+        return new ResourceUsage(userCpuTime, systemCpuTime, realTime, maxResidentSetSize,
+                spawnTime, firstProgressTime, exitTime);
+    }
 
-            Map<String, String> map = parseKeyValues(value, ":");
+    private static long nanosToMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
 
+    static FFmpegProgress parseProgress(String value) {
+        ProgressLineParser parser = new ProgressLineParser();
+        if (parser.parseProgress(value)) {
+            return parser.toProgress();
+        }
 
-            Long videoSize = parseSizeInBytes(map.get("video"));
-            Long audioSize = parseSizeInBytes(map.get("audio"));
-            Long subtitleSize = parseSizeInBytes(map.get("subtitle"));
-            Long otherStreamsSize = parseSizeInBytes(map.get("other_streams"));
-            Long globalHeadersSize = parseSizeInBytes(map.get("global_headers"));
-            Double muxOverhead = parseRatio(map.get("muxing_overhead"));
+        return null;
+    }
 
-            if (hasNonNull(videoSize, audioSize, subtitleSize, otherStreamsSize, globalHeadersSize, muxOverhead)) {
-                return new FFmpegResult(videoSize, audioSize, subtitleSize, otherStreamsSize, globalHeadersSize, muxOverhead);
-            }
-        } catch (Exception e) {
-            // supress
+    static FFmpegResult parsResult(String value) {
+        ProgressLineParser parser = new ProgressLineParser();
+        if (parser.parseResult(value)) {
+            return parser.toResult();
         }
 
         return null;
@@ -197,118 +256,38 @@ public class FFmpegResultReader implements StdReader<FFmpegResult> {
         return null;
     }
 
-    private static Long parseSizeInBytes(String value) {
-        return parseSize(value, SizeUnit.B);
-    }
-
-    private static Long parseSize(String value, SizeUnit unit) {
-        String[] sizeAndUnit = splitValueAndUnit(value);
-        Long parsedValue = parseLong(sizeAndUnit[0]);
-        if (parsedValue == null) {
+    private static Long parseSecondsInMillis(String value) {
+        if (value == null || !value.endsWith("s")) {
             return null;
         }
 
-        SizeUnit valueUnit = parseSizeUnit(sizeAndUnit[1]);
-        if (valueUnit == null) {
+        Double seconds = parseDouble(value.substring(0, value.length() - 1));
+        if (seconds == null) {
             return null;
         }
 
-        return valueUnit.convertTo(parsedValue, unit);
+        return Math.round(seconds * 1000);
     }
 
-    private static Double parseBitrateInKBits(String value) {
-        if (value == null || value.isEmpty()) {
-            return null;
-        }
-
-        value = value.replace("kbits/s", "");
-
-        return parseDouble(value);
-    }
-
-    private static Double parseRatio(String value) {
-        if (value == null || value.isEmpty()) {
-            return null;
-        }
-
-        double multiplier = 1;
-        if (value.endsWith("%")) {
-            value = value.substring(0, value.length() - 1);
-            multiplier = 1. / 100;
-        }
-
-        Double valueDouble = parseDouble(value);
-        if (valueDouble == null) {
-            return null;
-        }
-
-        return multiplier * valueDouble;
-    }
-
-    private static Long parseTimeInMillis(String value) {
-        if (value == null || value.isEmpty()) {
-            return null;
-        }
-
-        String[] timeParts = value.split(":");
-        if (timeParts.length != 3) {
+    private static Long parseMaxRss(String value) {
+        if (value == null) {
             return null;
         }
 
-        Long hours = parseLong(timeParts[0]);
-        Long minutes = parseLong(timeParts[1]);
-        Double seconds = parseDouble(timeParts[2]);
-
-        if (hours == null || minutes == null || seconds == null) {
+        // ffmpeg prints either kB (older versions) or KiB, both mean 1024 bytes
+        if (value.endsWith("KiB")) {
+            value = value.substring(0, value.length() - 3);
+        } else if (value.endsWith("kB")) {
+            value = value.substring(0, value.length() - 2);
+        } else {
             return null;
         }
 
-        return (long) (((hours * 60 + minutes) * 60 + seconds) * 1000);
-    }
-
-    private static Double parseSpeed(String value) {
-        if (value == null || value.isEmpty()) {
+        Long kibibytes = parseLong(value);
+        if (kibibytes == null) {
             return null;
         }
 
-        if (value.endsWith("x")) {
-            value = value.substring(0, value.length() - 1);
-        }
-
-        return parseDouble(value);
-    }
-
-    private static String[] splitValueAndUnit(String string) {
-        if (string == null) {
-            return new String[]{"", ""};
-        }
-
-        for (int i = 0; i < string.length(); i++) {
-            char c = string.charAt(i);
-            if ((c < '0' || c > '9') && c != '.') {
-                return new String[]{string.substring(0, i), string.substring(i)};
-            }
-        }
-        return new String[]{string, ""};
-    }
-
-    private static SizeUnit parseSizeUnit(String value) {
-        for (SizeUnit unit : SizeUnit.values()) {
-            if (unit.name().equalsIgnoreCase(value)) {
-                return unit;
-            }
-        }
-
-        return null;
-    }
-
-    private static boolean hasNonNull(Object... items) {
-        for (Object item : items) {
-            if (item != null) {
-                return true;
-            }
-        }
-
-        return false;
+        return kibibytes * 1024;
     }
 }
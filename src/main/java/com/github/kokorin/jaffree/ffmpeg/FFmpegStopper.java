@@ -17,18 +17,34 @@
 
 package com.github.kokorin.jaffree.ffmpeg;
 
+import com.github.kokorin.jaffree.OS;
 import com.github.kokorin.jaffree.process.Stopper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 
 public class FFmpegStopper implements Stopper {
+    private final boolean stdInOccupied;
     private volatile Process process;
+    private volatile boolean sigIntSent;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FFmpegStopper.class);
 
+    public FFmpegStopper() {
+        this(false);
+    }
+
+    /**
+     * @param stdInOccupied true if ffmpeg stdin is used for input data, so grace stop is done with SIGINT
+     */
+    public FFmpegStopper(boolean stdInOccupied) {
+        this.stdInOccupied = stdInOccupied;
+    }
+
     @Override
     public void graceStop() {
         if (process == null) {
@@ -36,6 +52,18 @@ public class FFmpegStopper implements Stopper {
             return;
         }
 
+        if (stdInOccupied) {
+            // ffmpeg handles SIGINT the same way as 'q' command: it stops reading input and finalizes output
+            // set before sending: ffmpeg may exit before sendSigInt returns
+            sigIntSent = true;
+            if (!sendSigInt(process)) {
+                sigIntSent = false;
+                LOGGER.warn("Failed to send SIGINT to ffmpeg, stopping forcefully");
+                process.destroy();
+            }
+            return;
+        }
+
         try (OutputStream stdIn = process.getOutputStream()) {
             stdIn.write('q');
             stdIn.flush();
@@ -58,4 +86,59 @@ public class FFmpegStopper implements Stopper {
     public void setProcess(Process process) {
         this.process = process;
     }
+
+    /**
+     * ffmpeg exits with status 255 when it's stopped with signal, although output is finalized.
+     *
+     * @param status process exit status
+     * @return true if SIGINT has been sent and ffmpeg exited with 255
+     */
+    @Override
+    public boolean isGraceStopStatus(int status) {
+        return sigIntSent && status == 255;
+    }
+
+    private static boolean sendSigInt(Process process) {
+        if (OS.IS_WINDOWS) {
+            return false;
+        }
+
+        Long pid = getPid(process);
+        if (pid == null) {
+            return false;
+        }
+
+        try {
+            Process kill = new ProcessBuilder("kill", "-INT", pid.toString()).start();
+            return kill.waitFor() == 0;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to execute kill", e);
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while executing kill");
+            Thread.currentThread().interrupt();
+        }
+
+        return false;
+    }
+
+    private static Long getPid(Process process) {
+        try {
+            // Java 9+
+            Method pid = Process.class.getMethod("pid");
+            return (Long) pid.invoke(process);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.debug("Process.pid() isn't available: {}", e.toString());
+        }
+
+        try {
+            // Java 8 on Unix-like systems
+            Field pid = process.getClass().getDeclaredField("pid");
+            pid.setAccessible(true);
+            return ((Number) pid.get(process)).longValue();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Failed to get process pid: {}", e.toString());
+        }
+
+        return null;
+    }
 }
@@ -0,0 +1,232 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.ffmpeg;
+
+import com.github.kokorin.jaffree.process.StdReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes events from threads, which read ffmpeg output, to listeners in a separate helper thread.
+ * <p>
+ * One dispatcher serves single ffmpeg execution. Every event producer (stderr reader, progress socket)
+ * must report that it has finished, after that dispatcher passes remaining events and its helper thread stops.
+ *
+ * @see AsyncListeners
+ */
+class ListenerDispatcher {
+    private final ProgressListener progressListener;
+    private final OutputListener outputListener;
+    private final AsyncListeners settings;
+    private final long progressIntervalNanos;
+    private final int outputQueueCapacity;
+    private final AsyncListeners.DropPolicy dropPolicy;
+
+    private final Object lock = new Object();
+    private final Deque<String> outputQueue = new ArrayDeque<>();
+    private FFmpegProgress pendingProgress;
+    private long lastProgressNanos;
+    private boolean progressDispatched;
+    private int runningProducers;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ListenerDispatcher.class);
+
+    /**
+     * @param progressListener progress listener, may be null
+     * @param outputListener   output listener, may be null
+     * @param settings         dispatch settings
+     * @param producers        number of event producers
+     */
+    ListenerDispatcher(ProgressListener progressListener, OutputListener outputListener,
+                       AsyncListeners settings, int producers) {
+        this.progressListener = progressListener;
+        this.outputListener = outputListener;
+        this.settings = settings;
+        this.progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.getProgressIntervalMillis());
+        this.outputQueueCapacity = settings.getOutputQueueCapacity();
+        this.dropPolicy = settings.getDropPolicy();
+        this.runningProducers = producers;
+    }
+
+    /**
+     * @return listener to pass progress to, or null if there is no progress listener
+     */
+    public ProgressListener progressListener() {
+        if (progressListener == null) {
+            return null;
+        }
+
+        return new ProgressListener() {
+            @Override
+            public void onProgress(FFmpegProgress progress) {
+                synchronized (lock) {
+                    // latest wins
+                    pendingProgress = progress;
+                    lock.notifyAll();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return listener to pass output to, or null if there is no output listener
+     */
+    public OutputListener outputListener() {
+        if (outputListener == null) {
+            return null;
+        }
+
+        return new OutputListener() {
+            @Override
+            public boolean onOutput(String line) {
+                synchronized (lock) {
+                    if (outputQueue.size() >= outputQueueCapacity) {
+                        settings.onOutputLineDropped();
+                        if (dropPolicy == AsyncListeners.DropPolicy.DROP_NEWEST) {
+                            return true;
+                        }
+                        outputQueue.pollFirst();
+                    }
+                    outputQueue.addLast(line);
+                    lock.notifyAll();
+                }
+
+                // result isn't known yet, so treat line as it would be treated without listener
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Wraps producer {@link StdReader}, so it reports to dispatcher when it finishes reading.
+     *
+     * @param reader reader to wrap
+     * @param <T>    result type
+     * @return reader
+     */
+    public <T> StdReader<T> producer(final StdReader<T> reader) {
+        return new StdReader<T>() {
+            @Override
+            public T read(InputStream stdOut) {
+                try {
+                    return reader.read(stdOut);
+                } finally {
+                    producerFinished();
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps producer helper thread, so it reports to dispatcher when it finishes.
+     *
+     * @param runnable runnable to wrap
+     * @return runnable
+     */
+    public Runnable producer(final Runnable runnable) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } finally {
+                    producerFinished();
+                }
+            }
+        };
+    }
+
+    public Runnable helperThread() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    dispatch();
+                } catch (InterruptedException e) {
+                    LOGGER.warn("Listener dispatching has been interrupted");
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private void producerFinished() {
+        synchronized (lock) {
+            runningProducers--;
+            lock.notifyAll();
+        }
+    }
+
+    private void dispatch() throws InterruptedException {
+        while (true) {
+            String line;
+            FFmpegProgress progress = null;
+
+            synchronized (lock) {
+                while (true) {
+                    boolean finished = runningProducers <= 0;
+                    long waitNanos = 0;
+                    if (pendingProgress != null) {
+                        waitNanos = progressIntervalNanos - (System.nanoTime() - lastProgressNanos);
+                        if (finished || !progressDispatched || waitNanos <= 0) {
+                            break;
+                        }
+                    }
+
+                    if (!outputQueue.isEmpty()) {
+                        break;
+                    }
+
+                    if (finished) {
+                        LOGGER.debug("All events have been dispatched");
+                        return;
+                    }
+
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, waitNanos);
+                    } else {
+                        lock.wait();
+                    }
+                }
+
+                line = outputQueue.pollFirst();
+
+                boolean progressDue = runningProducers <= 0 || !progressDispatched
+                        || System.nanoTime() - lastProgressNanos >= progressIntervalNanos;
+                if (pendingProgress != null && progressDue) {
+                    progress = pendingProgress;
+                    pendingProgress = null;
+                    lastProgressNanos = System.nanoTime();
+                    progressDispatched = true;
+                }
+            }
+
+            if (line != null) {
+                outputListener.onOutput(line);
+            }
+            if (progress != null) {
+                progressListener.onProgress(progress);
+            }
+        }
+    }
+}
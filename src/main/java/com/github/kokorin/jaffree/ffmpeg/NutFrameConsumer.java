@@ -64,12 +64,18 @@ public class NutFrameConsumer implements TcpOutput.Consumer {
 
         LOGGER.debug("Streams: {}", (Object) streamHeaders);
 
-        NutFrame nutFrame;
-        while ((nutFrame = nutReader.readFrame()) != null) {
-            LOGGER.trace("NutFrame: {}", nutFrame);
-
-            int trackNo = nutFrame.streamId;
-            Frame frame = parseFrame(streamHeaders[trackNo], nutFrame);
+        // frame header and audio buffer are reused, frame data which can't be parsed isn't read at all
+        NutFrameHeader frameHeader = new NutFrameHeader();
+        ByteBuffer audioBuffer = ByteBuffer.allocate(0);
+        while (nutReader.readFrameHeader(frameHeader) != null) {
+            LOGGER.trace("NutFrame: {}", frameHeader);
+
+            int trackNo = frameHeader.getStreamId();
+            StreamHeader track = streamHeaders[trackNo];
+            if (track.streamType == StreamHeader.Type.AUDIO && audioBuffer.capacity() < frameHeader.getDataSize()) {
+                audioBuffer = ByteBuffer.allocate(frameHeader.getDataSize());
+            }
+            Frame frame = parseFrame(track, frameHeader, nutReader, audioBuffer);
             LOGGER.trace("Parsed frame: {}", frame);
 
             if (frame == null) {
@@ -115,8 +121,9 @@ public class NutFrameConsumer implements TcpOutput.Consumer {
         return result;
     }
 
-    private Frame parseFrame(StreamHeader track, NutFrame frame) {
-        if (frame == null || frame.data == null || frame.data.length == 0 || frame.eor) {
+    private Frame parseFrame(StreamHeader track, NutFrameHeader frame, NutReader nutReader, ByteBuffer audioBuffer)
+            throws IOException {
+        if (frame.getDataSize() == 0 || frame.isEor()) {
             return null;
         }
 
@@ -128,12 +135,18 @@ public class NutFrameConsumer implements TcpOutput.Consumer {
             int height = track.video.height;
 
             // Sometimes if duration limit is specified, ffmpeg creates NutFrame with insufficient data
-            if (!alpha && width * height * 3 != frame.data.length
-                    || alpha && width * height * 4 != frame.data.length) {
+            if (!alpha && width * height * 3 != frame.getDataSize()
+                    || alpha && width * height * 4 != frame.getDataSize()) {
                 return null;
             }
 
-            DataBuffer buffer = new DataBufferByte(frame.data, frame.data.length);
+            // image data is passed to FrameConsumer, so it can't be reused
+            byte[] data = new byte[frame.getDataSize()];
+            if (!nutReader.readFrameData(data, 0)) {
+                return null;
+            }
+
+            DataBuffer buffer = new DataBufferByte(data, data.length);
             ColorSpace cs = ColorSpace.getInstance(ColorSpace.CS_sRGB);
 
             final ColorModel colorModel;
@@ -163,15 +176,19 @@ public class NutFrameConsumer implements TcpOutput.Consumer {
 
             image = new BufferedImage(colorModel, raster, false, null);
         } else if (track.streamType == StreamHeader.Type.AUDIO) {
-            ByteBuffer data = ByteBuffer.wrap(frame.data);
+            audioBuffer.clear();
+            if (!nutReader.readFrameData(audioBuffer)) {
+                return null;
+            }
+            audioBuffer.flip();
 
-            IntBuffer intData = data.asIntBuffer();
+            IntBuffer intData = audioBuffer.asIntBuffer();
             samples = new int[intData.limit()];
             intData.get(samples);
         }
 
         if (image != null || samples != null) {
-            return new Frame(track.streamId, frame.pts, image, samples);
+            return new Frame(track.streamId, frame.getPts(), image, samples);
         }
 
         return null;
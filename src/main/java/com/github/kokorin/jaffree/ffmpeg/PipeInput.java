@@ -25,7 +25,9 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.SocketException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class PipeInput extends TcpInput<PipeInput> implements Input {
     private final Supplier supplier;
@@ -47,31 +49,70 @@ public class PipeInput extends TcpInput<PipeInput> implements Input {
         return pumpFrom(source, 1_000_000);
     }
 
+    /**
+     * Creates input which copies data from source to ffmpeg.
+     * <p>
+     * If source is {@link java.io.FileInputStream} data is transferred with zero-copy
+     * (see {@link #pumpFrom(ReadableByteChannel, int)}).
+     *
+     * @param source     source
+     * @param bufferSize buffer size
+     * @return input
+     */
     public static PipeInput pumpFrom(InputStream source, int bufferSize) {
-        return new PipeInput(new PipeSupplier(source, bufferSize));
+        return new PipeInput(new PipeSupplier(source, IOUtil.getChannel(source), bufferSize));
+    }
+
+    public static PipeInput pumpFrom(ReadableByteChannel source) {
+        return pumpFrom(source, 1_000_000);
+    }
+
+    /**
+     * Creates input which copies data from source channel to ffmpeg.
+     * <p>
+     * {@link java.nio.channels.FileChannel} is transferred to socket without copying data to user space
+     * (sendfile), other channels are copied with pooled direct buffer. File position is respected.
+     *
+     * @param source     source
+     * @param bufferSize direct buffer size
+     * @return input
+     */
+    public static PipeInput pumpFrom(ReadableByteChannel source, int bufferSize) {
+        return new PipeInput(new PipeSupplier(null, source, bufferSize));
     }
 
     private static class PipeSupplier implements Supplier {
         private final InputStream source;
+        private final ReadableByteChannel sourceChannel;
         private final int bufferSize;
 
         private static final Logger LOGGER = LoggerFactory.getLogger(PipeSupplier.class);
 
 
-        public PipeSupplier(InputStream source, int bufferSize) {
+        public PipeSupplier(InputStream source, ReadableByteChannel sourceChannel, int bufferSize) {
             this.source = source;
+            this.sourceChannel = sourceChannel;
             this.bufferSize = bufferSize;
         }
 
         @Override
         public void supplyAndClose(OutputStream destination) {
             try (Closeable toClose = destination) {
-                IOUtil.copy(source, destination, bufferSize);
-            } catch (SocketException e) {
+                if (sourceChannel != null) {
+                    WritableByteChannel destinationChannel = IOUtil.getChannel(destination);
+                    if (destinationChannel == null) {
+                        destinationChannel = Channels.newChannel(destination);
+                    }
+                    IOUtil.copy(sourceChannel, destinationChannel, bufferSize);
+                } else {
+                    IOUtil.copy(source, destination, bufferSize);
+                }
+            } catch (IOException e) {
+                if (!IOUtil.isClosedByPeer(e)) {
+                    throw new RuntimeException("Failed to copy data", e);
+                }
                 // client has no way to notify server that no more data is needed
                 LOGGER.debug("Ignoring exception: " + e.getMessage());
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to copy data", e);
             }
         }
     }
@@ -25,6 +25,9 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Provides possibility to consume ffmpeg output via TCP socket.
@@ -54,23 +57,59 @@ public class PipeOutput extends TcpOutput<PipeOutput> implements Output {
         return pumpTo(destination, 1_000_000);
     }
 
+    /**
+     * Creates output which copies data from ffmpeg to destination.
+     * <p>
+     * If destination is {@link java.io.FileOutputStream} data is copied via its channel
+     * (see {@link #pumpTo(WritableByteChannel, int)}).
+     *
+     * @param destination destination
+     * @param bufferSize  buffer size
+     * @return output
+     */
     public static PipeOutput pumpTo(OutputStream destination, int bufferSize) {
-        return new PipeOutput(new PipeConsumer(destination, bufferSize));
+        return new PipeOutput(new PipeConsumer(destination, IOUtil.getChannel(destination), bufferSize));
+    }
+
+    public static PipeOutput pumpTo(WritableByteChannel destination) {
+        return pumpTo(destination, 1_000_000);
+    }
+
+    /**
+     * Creates output which copies data from ffmpeg to destination channel with pooled direct buffer,
+     * so data isn't copied to Java heap. File position is respected.
+     *
+     * @param destination destination
+     * @param bufferSize  direct buffer size
+     * @return output
+     */
+    public static PipeOutput pumpTo(WritableByteChannel destination, int bufferSize) {
+        return new PipeOutput(new PipeConsumer(null, destination, bufferSize));
     }
 
     private static class PipeConsumer implements Consumer {
         private final OutputStream destination;
+        private final WritableByteChannel destinationChannel;
         private final int bufferSize;
 
-        public PipeConsumer(OutputStream destination, int bufferSize) {
+        public PipeConsumer(OutputStream destination, WritableByteChannel destinationChannel, int bufferSize) {
             this.destination = destination;
+            this.destinationChannel = destinationChannel;
             this.bufferSize = bufferSize;
         }
 
         @Override
         public void consumeAndClose(InputStream source) {
             try (Closeable toClose = source) {
-                IOUtil.copy(source, destination, bufferSize);
+                if (destinationChannel != null) {
+                    ReadableByteChannel sourceChannel = IOUtil.getChannel(source);
+                    if (sourceChannel == null) {
+                        sourceChannel = Channels.newChannel(source);
+                    }
+                    IOUtil.copy(sourceChannel, destinationChannel, bufferSize);
+                } else {
+                    IOUtil.copy(source, destination, bufferSize);
+                }
             } catch (IOException e) {
                 throw new RuntimeException("Failed to copy data", e);
             }
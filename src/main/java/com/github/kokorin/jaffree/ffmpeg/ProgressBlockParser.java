@@ -0,0 +1,184 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.ffmpeg;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses machine-readable progress, which ffmpeg writes with -progress option.
+ * <p>
+ * Progress is reported with blocks of key=value lines, every block ends with "progress" key:
+ * <pre>
+ * frame=75
+ * fps=0.00
+ * stream_0_0_q=2.0
+ * bitrate= 407.8kbits/s
+ * total_size=152695
+ * out_time_us=2995374
+ * out_time_ms=2995374
+ * out_time=00:00:02.995374
+ * dup_frames=0
+ * drop_frames=0
+ * speed=12.4x
+ * progress=end
+ * </pre>
+ * Not thread-safe.
+ */
+class ProgressBlockParser {
+    private static final long INVALID_LONG = Long.MIN_VALUE;
+    private static final String STREAM_PREFIX = "stream_";
+    private static final String Q_SUFFIX = "_q";
+    private static final String BITRATE_SUFFIX = "kbits/s";
+
+    private Long frame;
+    private Double fps;
+    private Double firstQ;
+    private Map<String, Double> streamQ;
+    private Double bitrate;
+    private Long totalSize;
+    private Long outTimeMicros;
+    private Long dup;
+    private Long drop;
+    private Double speed;
+
+    /**
+     * Parses one line of progress block.
+     *
+     * @param line line to parse
+     * @return progress if the line completes progress block, otherwise null
+     */
+    public FFmpegProgress parseLine(String line) {
+        if (line == null) {
+            return null;
+        }
+
+        int separator = line.indexOf('=');
+        if (separator <= 0) {
+            return null;
+        }
+
+        String key = line.substring(0, separator);
+        int start = skipSpaces(line, separator + 1);
+        int end = line.length();
+        while (end > start && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+
+        switch (key) {
+            case "frame":
+                frame = toLong(ProgressLineParser.parseLong(line, start, end));
+                break;
+            case "fps":
+                fps = toDouble(ProgressLineParser.parseDouble(line, start, end));
+                break;
+            case "bitrate":
+                if (line.startsWith(BITRATE_SUFFIX, end - BITRATE_SUFFIX.length())) {
+                    end -= BITRATE_SUFFIX.length();
+                }
+                bitrate = toDouble(ProgressLineParser.parseDouble(line, start, end));
+                break;
+            case "total_size":
+                totalSize = toLong(ProgressLineParser.parseLong(line, start, end));
+                break;
+            case "out_time_us":
+                outTimeMicros = toLong(ProgressLineParser.parseLong(line, start, end));
+                break;
+            case "dup_frames":
+                dup = toLong(ProgressLineParser.parseLong(line, start, end));
+                break;
+            case "drop_frames":
+                drop = toLong(ProgressLineParser.parseLong(line, start, end));
+                break;
+            case "speed":
+                if (end > start && line.charAt(end - 1) == 'x') {
+                    end--;
+                }
+                speed = toDouble(ProgressLineParser.parseDouble(line, start, end));
+                break;
+            case "progress":
+                return completeBlock("end".equals(line.substring(start, end)));
+            default:
+                if (key.startsWith(STREAM_PREFIX) && key.endsWith(Q_SUFFIX)) {
+                    parseStreamQ(key, line, start, end);
+                }
+                // out_time_ms & out_time duplicate out_time_us, other keys are ignored
+        }
+
+        return null;
+    }
+
+    private void parseStreamQ(String key, String line, int start, int end) {
+        // stream_0_1_q -> 0:1
+        String stream = key.substring(STREAM_PREFIX.length(), key.length() - Q_SUFFIX.length())
+                .replace('_', ':');
+        Double q = toDouble(ProgressLineParser.parseDouble(line, start, end));
+        if (q == null) {
+            return;
+        }
+
+        if (streamQ == null) {
+            streamQ = new LinkedHashMap<>();
+        }
+        streamQ.put(stream, q);
+        if (firstQ == null) {
+            firstQ = q;
+        }
+    }
+
+    private FFmpegProgress completeBlock(boolean end) {
+        Long timeMillis = outTimeMicros == null ? null : outTimeMicros / 1000;
+
+        FFmpegProgress result = new FFmpegProgress(frame, fps, firstQ, totalSize, timeMillis, dup, drop,
+                bitrate, speed, outTimeMicros, streamQ, end);
+
+        frame = null;
+        fps = null;
+        firstQ = null;
+        streamQ = null;
+        bitrate = null;
+        totalSize = null;
+        outTimeMicros = null;
+        dup = null;
+        drop = null;
+        speed = null;
+
+        return result;
+    }
+
+    private static int skipSpaces(String line, int i) {
+        while (i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static Long toLong(long value) {
+        if (value == INVALID_LONG) {
+            return null;
+        }
+        return value;
+    }
+
+    private static Double toDouble(double value) {
+        if (Double.isNaN(value)) {
+            return null;
+        }
+        return value;
+    }
+}
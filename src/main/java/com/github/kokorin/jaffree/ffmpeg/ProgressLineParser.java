@@ -0,0 +1,489 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.ffmpeg;
+
+import com.github.kokorin.jaffree.SizeUnit;
+
+/**
+ * Single-pass parser for ffmpeg progress and result lines.
+ * <p>
+ * Lines are scanned char by char without regular expressions, splitting or boxing.
+ * Parsed values are kept in primitive fields, so one instance is expected to be reused
+ * for every line of a single ffmpeg output. {@link FFmpegProgress} and {@link FFmpegResult}
+ * are created only on demand.
+ * <p>
+ * Examples of lines to parse:
+ * <pre>
+ * frame=  495 fps= 89 q=28.0 size=     124kB time=00:00:20.15 bitrate=  50.3kbits/s dup=1 drop=0 speed=3.63x
+ * video:1417kB audio:113kB subtitle:0kB other streams:0kB global headers:0kB muxing overhead: unknown
+ * </pre>
+ * Not thread-safe.
+ */
+class ProgressLineParser {
+    private static final int FRAME = 1;
+    private static final int FPS = 1 << 1;
+    private static final int Q = 1 << 2;
+    private static final int SIZE = 1 << 3;
+    private static final int TIME = 1 << 4;
+    private static final int DUP = 1 << 5;
+    private static final int DROP = 1 << 6;
+    private static final int BITRATE = 1 << 7;
+    private static final int SPEED = 1 << 8;
+
+    private static final int VIDEO = 1;
+    private static final int AUDIO = 1 << 1;
+    private static final int SUBTITLE = 1 << 2;
+    private static final int OTHER_STREAMS = 1 << 3;
+    private static final int GLOBAL_HEADERS = 1 << 4;
+    private static final int MUXING_OVERHEAD = 1 << 5;
+
+    private static final String[] RESULT_KEYS = {
+            "video:", "audio:", "subtitle:", "other streams:", "global headers:", "muxing overhead:"
+    };
+    private static final int[] RESULT_FLAGS = {
+            VIDEO, AUDIO, SUBTITLE, OTHER_STREAMS, GLOBAL_HEADERS, MUXING_OVERHEAD
+    };
+
+    private static final SizeUnit[] SIZE_UNITS = SizeUnit.values();
+    private static final String BITRATE_SUFFIX = "kbits/s";
+
+    private static final long INVALID_LONG = Long.MIN_VALUE;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private int progressMask;
+    private long frame;
+    private double fps;
+    private double q;
+    private long size;
+    private long timeMillis;
+    private long dup;
+    private long drop;
+    private double bitrate;
+    private double speed;
+
+    private int resultMask;
+    private long videoSize;
+    private long audioSize;
+    private long subtitleSize;
+    private long otherStreamsSize;
+    private long globalHeadersSize;
+    private double muxingOverheadRatio;
+
+    /**
+     * Parses progress line.
+     *
+     * @param line line to parse
+     * @return true if at least one progress value was parsed
+     */
+    public boolean parseProgress(String line) {
+        progressMask = 0;
+        if (line == null) {
+            return false;
+        }
+
+        final int length = line.length();
+        int i = 0;
+        while (i < length) {
+            i = skipWhitespace(line, i);
+            int keyStart = i;
+            while (i < length && line.charAt(i) != '=' && !isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i >= length || line.charAt(i) != '=') {
+                continue;
+            }
+            int keyEnd = i;
+
+            // "frame=  495" is the same as "frame=495"
+            i = skipWhitespace(line, i + 1);
+            int valueStart = i;
+            boolean valid = true;
+            while (i < length && !isWhitespace(line.charAt(i))) {
+                if (line.charAt(i) == '=') {
+                    valid = false;
+                }
+                i++;
+            }
+
+            if (valid && valueStart < i) {
+                parseProgressValue(line, keyStart, keyEnd, valueStart, i);
+            }
+        }
+
+        return progressMask != 0;
+    }
+
+    /**
+     * Parses result line.
+     *
+     * @param line line to parse
+     * @return true if at least one result value was parsed
+     */
+    public boolean parseResult(String line) {
+        resultMask = 0;
+        if (line == null) {
+            return false;
+        }
+
+        final int length = line.length();
+        int i = skipWhitespace(line, 0);
+        while (i < length) {
+            int key = -1;
+            for (int k = 0; k < RESULT_KEYS.length; k++) {
+                if (line.startsWith(RESULT_KEYS[k], i)) {
+                    key = k;
+                    break;
+                }
+            }
+
+            if (key == -1) {
+                // skip unknown token
+                while (i < length && !isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                i = skipWhitespace(line, i);
+                continue;
+            }
+
+            i = skipWhitespace(line, i + RESULT_KEYS[key].length());
+            int valueStart = i;
+            while (i < length && !isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            parseResultValue(line, RESULT_FLAGS[key], valueStart, i);
+            i = skipWhitespace(line, i);
+        }
+
+        return resultMask != 0;
+    }
+
+    /**
+     * @return progress parsed by last {@link #parseProgress(String)} call, or null
+     */
+    public FFmpegProgress toProgress() {
+        if (progressMask == 0) {
+            return null;
+        }
+
+        return new FFmpegProgress(
+                has(progressMask, FRAME) ? (Long) frame : null,
+                has(progressMask, FPS) ? (Double) fps : null,
+                has(progressMask, Q) ? (Double) q : null,
+                has(progressMask, SIZE) ? (Long) size : null,
+                has(progressMask, TIME) ? (Long) timeMillis : null,
+                has(progressMask, DUP) ? (Long) dup : null,
+                has(progressMask, DROP) ? (Long) drop : null,
+                has(progressMask, BITRATE) ? (Double) bitrate : null,
+                has(progressMask, SPEED) ? (Double) speed : null
+        );
+    }
+
+    /**
+     * @return result parsed by last {@link #parseResult(String)} call, or null
+     */
+    public FFmpegResult toResult() {
+        if (resultMask == 0) {
+            return null;
+        }
+
+        return new FFmpegResult(
+                has(resultMask, VIDEO) ? (Long) videoSize : null,
+                has(resultMask, AUDIO) ? (Long) audioSize : null,
+                has(resultMask, SUBTITLE) ? (Long) subtitleSize : null,
+                has(resultMask, OTHER_STREAMS) ? (Long) otherStreamsSize : null,
+                has(resultMask, GLOBAL_HEADERS) ? (Long) globalHeadersSize : null,
+                has(resultMask, MUXING_OVERHEAD) ? (Double) muxingOverheadRatio : null
+        );
+    }
+
+    private void parseProgressValue(String line, int keyStart, int keyEnd, int start, int end) {
+        if (keyIs(line, keyStart, keyEnd, "frame")) {
+            frame = parseLong(line, start, end);
+            setProgress(FRAME, frame != INVALID_LONG);
+        } else if (keyIs(line, keyStart, keyEnd, "fps")) {
+            fps = parseDouble(line, start, end);
+            setProgress(FPS, !Double.isNaN(fps));
+        } else if (keyIs(line, keyStart, keyEnd, "q")) {
+            q = parseDouble(line, start, end);
+            setProgress(Q, !Double.isNaN(q));
+        } else if (keyIs(line, keyStart, keyEnd, "Lsize") || keyIs(line, keyStart, keyEnd, "size")) {
+            size = parseSizeInBytes(line, start, end);
+            setProgress(SIZE, size != INVALID_LONG);
+        } else if (keyIs(line, keyStart, keyEnd, "time")) {
+            timeMillis = parseTimeInMillis(line, start, end);
+            setProgress(TIME, timeMillis != INVALID_LONG);
+        } else if (keyIs(line, keyStart, keyEnd, "dup")) {
+            dup = parseLong(line, start, end);
+            setProgress(DUP, dup != INVALID_LONG);
+        } else if (keyIs(line, keyStart, keyEnd, "drop")) {
+            drop = parseLong(line, start, end);
+            setProgress(DROP, drop != INVALID_LONG);
+        } else if (keyIs(line, keyStart, keyEnd, "bitrate")) {
+            if (line.startsWith(BITRATE_SUFFIX, end - BITRATE_SUFFIX.length())) {
+                end -= BITRATE_SUFFIX.length();
+            }
+            bitrate = parseDouble(line, start, end);
+            setProgress(BITRATE, !Double.isNaN(bitrate));
+        } else if (keyIs(line, keyStart, keyEnd, "speed")) {
+            if (end > start && line.charAt(end - 1) == 'x') {
+                end--;
+            }
+            speed = parseDouble(line, start, end);
+            setProgress(SPEED, !Double.isNaN(speed));
+        }
+    }
+
+    private void parseResultValue(String line, int flag, int start, int end) {
+        if (flag == MUXING_OVERHEAD) {
+            double multiplier = 1;
+            if (end > start && line.charAt(end - 1) == '%') {
+                end--;
+                multiplier = 1. / 100;
+            }
+            double ratio = parseDouble(line, start, end);
+            if (!Double.isNaN(ratio)) {
+                muxingOverheadRatio = multiplier * ratio;
+                resultMask |= flag;
+            }
+            return;
+        }
+
+        long value = parseSizeInBytes(line, start, end);
+        if (value == INVALID_LONG) {
+            return;
+        }
+
+        switch (flag) {
+            case VIDEO:
+                videoSize = value;
+                break;
+            case AUDIO:
+                audioSize = value;
+                break;
+            case SUBTITLE:
+                subtitleSize = value;
+                break;
+            case OTHER_STREAMS:
+                otherStreamsSize = value;
+                break;
+            case GLOBAL_HEADERS:
+                globalHeadersSize = value;
+                break;
+            default:
+                return;
+        }
+        resultMask |= flag;
+    }
+
+    private void setProgress(int flag, boolean valid) {
+        if (valid) {
+            progressMask |= flag;
+        } else {
+            progressMask &= ~flag;
+        }
+    }
+
+    private static boolean has(int mask, int flag) {
+        return (mask & flag) != 0;
+    }
+
+    private static boolean keyIs(String line, int start, int end, String key) {
+        return end - start == key.length() && line.startsWith(key, start);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+
+    private static int skipWhitespace(String line, int i) {
+        while (i < line.length() && isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Parses size like "124kB" or "2mB" into bytes. Unit is matched case-insensitively
+     * against {@link SizeUnit} names.
+     */
+    private static long parseSizeInBytes(String line, int start, int end) {
+        int unitStart = start;
+        while (unitStart < end && isDigit(line.charAt(unitStart))) {
+            unitStart++;
+        }
+        if (unitStart == start || unitStart == end) {
+            return INVALID_LONG;
+        }
+
+        long value = parseLong(line, start, unitStart);
+        if (value == INVALID_LONG) {
+            return INVALID_LONG;
+        }
+
+        int unitLength = end - unitStart;
+        for (SizeUnit unit : SIZE_UNITS) {
+            String name = unit.name();
+            if (name.length() == unitLength && line.regionMatches(true, unitStart, name, 0, unitLength)) {
+                long multiplier = unit.multiplier();
+                long bytesMultiplier = SizeUnit.B.multiplier();
+                if (value > Long.MAX_VALUE / multiplier) {
+                    return unit.convertTo(value, SizeUnit.B);
+                }
+                // the same rounding as SizeUnit.convertTo, but without BigDecimal
+                long bits = value * multiplier;
+                return bits / bytesMultiplier + (bits % bytesMultiplier == 0 ? 0 : 1);
+            }
+        }
+
+        return INVALID_LONG;
+    }
+
+    /**
+     * Parses time like "00:02:47.20" into milliseconds.
+     */
+    private static long parseTimeInMillis(String line, int start, int end) {
+        int firstColon = line.indexOf(':', start);
+        if (firstColon == -1 || firstColon >= end) {
+            return INVALID_LONG;
+        }
+        int secondColon = line.indexOf(':', firstColon + 1);
+        if (secondColon == -1 || secondColon >= end || line.indexOf(':', secondColon + 1) != -1
+                && line.indexOf(':', secondColon + 1) < end) {
+            return INVALID_LONG;
+        }
+
+        long hours = parseLong(line, start, firstColon);
+        long minutes = parseLong(line, firstColon + 1, secondColon);
+        double seconds = parseDouble(line, secondColon + 1, end);
+
+        if (hours == INVALID_LONG || minutes == INVALID_LONG || Double.isNaN(seconds)) {
+            return INVALID_LONG;
+        }
+
+        return (long) (((hours * 60 + minutes) * 60 + seconds) * 1000);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return parsed value or {@link #INVALID_LONG}
+     */
+    static long parseLong(String line, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return INVALID_LONG;
+        }
+
+        long result = 0;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (!isDigit(c)) {
+                return INVALID_LONG;
+            }
+            result = result * 10 + (c - '0');
+        }
+
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses decimal number like "25.1", "-1.0" or "1.23e+003".
+     *
+     * @return parsed value or {@link Double#NaN}
+     */
+    static double parseDouble(String line, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean dot = false;
+        boolean anyDigit = false;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (isDigit(c)) {
+                anyDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (dot) {
+                        exponent--;
+                    }
+                } else if (!dot) {
+                    // precision of double is exceeded anyway
+                    exponent++;
+                }
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+
+        if (!anyDigit) {
+            return Double.NaN;
+        }
+
+        if (i < end) {
+            char c = line.charAt(i);
+            if (c != 'e' && c != 'E') {
+                return Double.NaN;
+            }
+            long explicitExponent = parseLong(line, i + 1, end);
+            if (explicitExponent == INVALID_LONG) {
+                return Double.NaN;
+            }
+            exponent += explicitExponent;
+        }
+
+        double result;
+        if (mantissa == 0) {
+            result = 0;
+        } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            result = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            result = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            // rare case, fall back to JDK
+            try {
+                return Double.parseDouble(line.substring(start, end));
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        return negative ? -result : result;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.ffmpeg;
+
+/**
+ * Resources used by single ffmpeg execution.
+ * <p>
+ * CPU time and memory usage are reported by ffmpeg itself only if it's started with
+ * {@link FFmpeg#setBenchmark(boolean) -benchmark} option, otherwise corresponding values are null.
+ * <p>
+ * Wall-clock phases are measured by Jaffree:
+ * <ul>
+ *     <li>spawn - from the moment process is being started till it's started</li>
+ *     <li>first progress - from process start till the first progress report</li>
+ *     <li>exit - from process start till ffmpeg closes its output (i.e. exits)</li>
+ * </ul>
+ */
+public class ResourceUsage {
+    private final Long userCpuTime;
+    private final Long systemCpuTime;
+    private final Long realTime;
+    private final Long maxResidentSetSize;
+    private final Long spawnTime;
+    private final Long firstProgressTime;
+    private final Long exitTime;
+
+    public ResourceUsage(Long userCpuTime, Long systemCpuTime, Long realTime, Long maxResidentSetSize,
+                         Long spawnTime, Long firstProgressTime, Long exitTime) {
+        this.userCpuTime = userCpuTime;
+        this.systemCpuTime = systemCpuTime;
+        this.realTime = realTime;
+        this.maxResidentSetSize = maxResidentSetSize;
+        this.spawnTime = spawnTime;
+        this.firstProgressTime = firstProgressTime;
+        this.exitTime = exitTime;
+    }
+
+    /**
+     * @return CPU time in user mode in milliseconds (requires -benchmark)
+     */
+    public Long getUserCpuTimeMillis() {
+        return userCpuTime;
+    }
+
+    /**
+     * @return CPU time in kernel mode in milliseconds (requires -benchmark)
+     */
+    public Long getSystemCpuTimeMillis() {
+        return systemCpuTime;
+    }
+
+    /**
+     * @return real time measured by ffmpeg in milliseconds (requires -benchmark)
+     */
+    public Long getRealTimeMillis() {
+        return realTime;
+    }
+
+    /**
+     * @return peak resident set size in bytes (requires -benchmark)
+     */
+    public Long getMaxResidentSetSize() {
+        return maxResidentSetSize;
+    }
+
+    /**
+     * @return time spent to start ffmpeg process in milliseconds
+     */
+    public Long getSpawnTimeMillis() {
+        return spawnTime;
+    }
+
+    /**
+     * @return time from process start till the first progress report in milliseconds,
+     * null if ffmpeg hasn't reported any progress
+     */
+    public Long getFirstProgressTimeMillis() {
+        return firstProgressTime;
+    }
+
+    /**
+     * @return time from process start till its exit in milliseconds
+     */
+    public Long getExitTimeMillis() {
+        return exitTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceUsage{" +
+                "userCpuTime=" + userCpuTime +
+                ", systemCpuTime=" + systemCpuTime +
+                ", realTime=" + realTime +
+                ", maxResidentSetSize=" + maxResidentSetSize +
+                ", spawnTime=" + spawnTime +
+                ", firstProgressTime=" + firstProgressTime +
+                ", exitTime=" + exitTime +
+                '}';
+    }
+}
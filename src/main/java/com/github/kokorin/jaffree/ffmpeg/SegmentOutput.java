@@ -0,0 +1,111 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.ffmpeg;
+
+import com.github.kokorin.jaffree.util.ChannelProtocol;
+import com.github.kokorin.jaffree.util.ChannelServer;
+import com.github.kokorin.jaffree.util.StreamingFileSystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Output for muxers, which write several files (hls, dash, segment): every segment and every playlist
+ * update is passed to {@link StreamingFileSystem.FileConsumer} as soon as ffmpeg closes it, nothing
+ * is written to disk.
+ * <p>
+ * Files which are being written or haven't been consumed yet are kept in memory within
+ * {@link #setMaxBufferedBytes(long)} budget, when it's exceeded the server stops reading ffmpeg output
+ * till consumer catches up. Consumer is invoked in a single thread, ffmpeg
+ * invocation completes only after all files are consumed.
+ *
+ * @see StreamingFileSystem
+ */
+public class SegmentOutput extends SocketOutput<SegmentOutput> implements Output {
+    private final StreamingFileSystem.FileConsumer consumer;
+    private final ChannelProtocol protocol;
+    private long maxBufferedBytes = StreamingFileSystem.DEFAULT_MAX_BUFFERED_BYTES;
+    private volatile ChannelServer server;
+    private volatile boolean processFinished = false;
+
+    /**
+     * Creates {@link SegmentOutput}.
+     *
+     * @param filename path of the main file (e.g. playlist.m3u8, manifest.mpd or segment%03d.ts),
+     *                 other files are written relative to it
+     * @param consumer consumer of finished files
+     * @param protocol protocol to pass files to ffmpeg with
+     */
+    public SegmentOutput(String filename, StreamingFileSystem.FileConsumer consumer, ChannelProtocol protocol) {
+        super(protocol.getScheme(), "/" + filename);
+        this.consumer = consumer;
+        this.protocol = protocol;
+    }
+
+    /**
+     * Sets memory budget for files which are being written by ffmpeg or haven't been consumed yet.
+     *
+     * @param maxBufferedBytes memory budget in bytes
+     * @return this
+     */
+    public SegmentOutput setMaxBufferedBytes(long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+        return this;
+    }
+
+    @Override
+    Negotiator negotiator() {
+        final StreamingFileSystem fileSystem = new StreamingFileSystem(consumer, maxBufferedBytes);
+
+        return new Negotiator() {
+            @Override
+            public void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException {
+                // file system is closed after the server, so every received file is delivered
+                try (Closeable closeFileSystem = fileSystem;
+                     Closeable closeServerChannel = serverChannel) {
+                    ChannelServer channelServer = protocol.createServer(fileSystem, serverChannel.socket());
+                    channelServer.setExecutorService(getExecutorService());
+                    server = channelServer;
+                    if (processFinished) {
+                        channelServer.stop();
+                    }
+                    channelServer.run();
+                }
+            }
+        };
+    }
+
+    @Override
+    void onProcessFinished() {
+        processFinished = true;
+        ChannelServer current = server;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    public static SegmentOutput toConsumer(String filename, StreamingFileSystem.FileConsumer consumer) {
+        return new SegmentOutput(filename, consumer, ChannelProtocol.FTP);
+    }
+
+    public static SegmentOutput toConsumer(String filename, StreamingFileSystem.FileConsumer consumer,
+                                           ChannelProtocol protocol) {
+        return new SegmentOutput(filename, consumer, protocol);
+    }
+}
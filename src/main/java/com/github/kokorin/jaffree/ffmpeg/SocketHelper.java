@@ -0,0 +1,64 @@
+/*
+ *    Copyright  2019 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.ffmpeg;
+
+import com.github.kokorin.jaffree.process.ExecutorServiceAware;
+import com.github.kokorin.jaffree.process.ProcessListener;
+import com.github.kokorin.jaffree.util.SocketTransport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Helper of {@link SocketInput} and {@link SocketOutput}, which negotiates with ffmpeg via listening socket.
+ * <p>
+ * Helper is closed by {@link com.github.kokorin.jaffree.process.ProcessHandler} after execution,
+ * so listening socket is closed even if helper has never been started (e.g. process failed to start).
+ */
+abstract class SocketHelper implements Runnable, ProcessListener, ExecutorServiceAware, Closeable {
+    private final SocketTransport.Endpoint endpoint;
+
+    SocketHelper(SocketTransport.Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public void run() {
+        try {
+            negotiateAndClose(endpoint.getChannel());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to negotiate via socket " + endpoint, e);
+        } finally {
+            endpoint.release();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        endpoint.close();
+    }
+
+    /**
+     * Negotiates with ffmpeg, <b>must</b> close passed in {@code ServerSocketChannel}.
+     *
+     * @param serverChannel socket to communicate
+     * @throws IOException if negotiation fails
+     */
+    abstract void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException;
+}
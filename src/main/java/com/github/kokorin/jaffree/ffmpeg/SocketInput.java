@@ -17,46 +17,93 @@
 
 package com.github.kokorin.jaffree.ffmpeg;
 
+import com.github.kokorin.jaffree.util.SocketTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
 
 public abstract class SocketInput<T extends SocketInput<T>> extends BaseInput<T> implements Input {
-    private final ServerSocket serverSocket;
+    private final String protocol;
+    private final String suffix;
+    private SocketTransport.Endpoint endpoint;
+    private volatile ExecutorService executorService;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SocketInput.class);
 
     public SocketInput(String protocol) {
         this(protocol, "");
     }
 
     public SocketInput(String protocol, String suffix) {
-        this.serverSocket = allocateSocket();
-        super.setInput(protocol + "://127.0.0.1:" + serverSocket.getLocalPort() + suffix);
+        this.protocol = protocol;
+        this.suffix = suffix;
+        allocateEndpoint(SocketTransport.tcp());
     }
 
-    protected ServerSocket allocateSocket() {
+    /**
+     * Allocates listening socket with specified transport, previously allocated socket is closed.
+     *
+     * @param transport transport
+     */
+    protected void allocateEndpoint(SocketTransport transport) {
+        closeEndpoint();
+
         try {
-            return new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            endpoint = transport.listen();
         } catch (IOException e) {
             throw new RuntimeException("Failed to allocate socket", e);
         }
+
+        super.setInput(endpoint.getUrl(protocol, suffix));
+    }
+
+    /**
+     * Closes listening socket, ffmpeg reads specified input instead and no helper thread is needed.
+     *
+     * @param input input to pass to ffmpeg, e.g. pipe:0
+     */
+    protected void releaseEndpoint(String input) {
+        closeEndpoint();
+        super.setInput(input);
     }
 
     @Override
     public final Runnable helperThread() {
+        if (endpoint == null) {
+            return null;
+        }
+
         final Negotiator negotiator = negotiator();
 
-        return new Runnable() {
+        return new SocketHelper(endpoint) {
+            @Override
+            void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException {
+                negotiator.negotiateAndClose(serverChannel);
+            }
+
+            @Override
+            public void onProcessFinished(int status) {
+                SocketInput.this.onProcessFinished();
+            }
+
             @Override
-            public void run() {
-                try {
-                    negotiator.negotiateAndClose(serverSocket);
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to negotiate via socket " + serverSocket, e);
-                }
+            public void setExecutorService(ExecutorService executorService) {
+                SocketInput.this.executorService = executorService;
             }
         };
     }
 
+    /**
+     * Invoked when ffmpeg process has finished. Negotiators, which keep waiting for connections
+     * (e.g. channel servers), should stop.
+     */
+    void onProcessFinished() {
+        // nothing to do by default
+    }
+
     @Override
     public T setInput(String input) {
         throw new RuntimeException("SocketInput input can't be changed");
@@ -64,12 +111,40 @@ public abstract class SocketInput<T extends SocketInput<T>> extends BaseInput<T>
 
     abstract Negotiator negotiator();
 
+    /**
+     * @return executor service, which runs helper threads of the process, null if every helper gets its own
+     * thread
+     */
+    ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * @return listening socket, null if ffmpeg doesn't connect to socket
+     */
+    SocketTransport.Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    private void closeEndpoint() {
+        if (endpoint == null) {
+            return;
+        }
+
+        try {
+            endpoint.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close socket " + endpoint, e);
+        }
+        endpoint = null;
+    }
+
     interface Negotiator {
         /**
-         * Negotiator <b>must</b> close passed in {@code ServerSocket}
-         * @param serverSocket socket to communicate
+         * Negotiator <b>must</b> close passed in {@code ServerSocketChannel}
+         * @param serverChannel socket to communicate
          * @throws IOException
          */
-        void negotiateAndClose(ServerSocket serverSocket) throws IOException;
+        void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException;
     }
 }
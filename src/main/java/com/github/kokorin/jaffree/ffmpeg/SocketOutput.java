@@ -17,45 +17,94 @@
 
 package com.github.kokorin.jaffree.ffmpeg;
 
+import com.github.kokorin.jaffree.util.SocketTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
 
 public abstract class SocketOutput<T extends SocketOutput<T>> extends BaseOutput<T> implements Output {
-    private final ServerSocket serverSocket;
+    private final String protocol;
+    private final String suffix;
+    private SocketTransport.Endpoint endpoint;
+    private volatile ExecutorService executorService;
+    private String url;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SocketOutput.class);
 
     public SocketOutput(String protocol) {
         this(protocol, "");
     }
 
     public SocketOutput(String protocol, String suffix) {
-        this.serverSocket = allocateSocket();
+        this.protocol = protocol;
+        this.suffix = suffix;
+        allocateEndpoint(SocketTransport.tcp());
+    }
+
+    /**
+     * Allocates listening socket with specified transport, previously allocated socket is closed.
+     *
+     * @param transport transport
+     */
+    protected void allocateEndpoint(SocketTransport transport) {
+        closeEndpoint();
+
+        try {
+            endpoint = transport.listen();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to allocate socket", e);
+        }
 
-        super.setOutput(protocol + "://127.0.0.1:" + serverSocket.getLocalPort() + suffix);
+        url = endpoint.getUrl(protocol, suffix);
+        super.setOutput(url);
+    }
+
+    /**
+     * Closes listening socket, ffmpeg writes to specified output instead and no helper thread is needed.
+     *
+     * @param output output to pass to ffmpeg, e.g. pipe:1
+     */
+    protected void releaseEndpoint(String output) {
+        closeEndpoint();
+        url = output;
+        super.setOutput(output);
     }
 
     @Override
     public final Runnable helperThread() {
+        if (endpoint == null) {
+            return null;
+        }
+
         final Negotiator negotiator = negotiator();
 
-        return new Runnable() {
+        return new SocketHelper(endpoint) {
+            @Override
+            void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException {
+                negotiator.negotiateAndClose(serverChannel);
+            }
+
+            @Override
+            public void onProcessFinished(int status) {
+                SocketOutput.this.onProcessFinished();
+            }
+
             @Override
-            public void run() {
-                try {
-                    negotiator.negotiateAndClose(serverSocket);
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to negotiate via socket " + serverSocket, e);
-                }
+            public void setExecutorService(ExecutorService executorService) {
+                SocketOutput.this.executorService = executorService;
             }
         };
     }
 
-    protected ServerSocket allocateSocket() {
-        try {
-            return new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to allocate socket", e);
-        }
+    /**
+     * Invoked when ffmpeg process has finished. Negotiators, which keep waiting for connections
+     * (e.g. channel servers), should stop.
+     */
+    void onProcessFinished() {
+        // nothing to do by default
     }
 
     @Override
@@ -63,15 +112,47 @@ public abstract class SocketOutput<T extends SocketOutput<T>> extends BaseOutput
         throw new RuntimeException("SocketOutput output can't be changed");
     }
 
+    String getUrl() {
+        return url;
+    }
+
     abstract Negotiator negotiator();
 
+    /**
+     * @return executor service, which runs helper threads of the process, null if every helper gets its own
+     * thread
+     */
+    ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * @return listening socket, null if ffmpeg doesn't connect to socket
+     */
+    SocketTransport.Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    private void closeEndpoint() {
+        if (endpoint == null) {
+            return;
+        }
+
+        try {
+            endpoint.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close socket " + endpoint, e);
+        }
+        endpoint = null;
+    }
+
     interface Negotiator {
         /**
-         * Negotiator <b>must</b> close passed in {@code ServerSocket}
+         * Negotiator <b>must</b> close passed in {@code ServerSocketChannel}
          *
-         * @param serverSocket socket to communicate
+         * @param serverChannel socket to communicate
          * @throws IOException
          */
-        void negotiateAndClose(ServerSocket serverSocket) throws IOException;
+        void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException;
     }
 }
@@ -0,0 +1,78 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.ffmpeg;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+
+/**
+ * Wraps ffmpeg stdin, so {@link TcpInput.Supplier} can't distinguish it from socket.
+ * <p>
+ * ffmpeg closes stdin when it doesn't need more data (e.g. input duration is limited). Write failures
+ * are reported as {@link SocketException}, exactly like when ffmpeg closes socket connection.
+ */
+class StdInOutputStream extends FilterOutputStream {
+
+    StdInOutputStream(OutputStream stdIn) {
+        super(stdIn);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        try {
+            out.write(b);
+        } catch (IOException e) {
+            throw closedByFFmpeg(e);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        try {
+            out.write(b, off, len);
+        } catch (IOException e) {
+            throw closedByFFmpeg(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw closedByFFmpeg(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw closedByFFmpeg(e);
+        }
+    }
+
+    private static SocketException closedByFFmpeg(IOException cause) {
+        SocketException result = new SocketException("ffmpeg stdin is closed: " + cause.getMessage());
+        result.initCause(cause);
+        return result;
+    }
+}
@@ -18,33 +18,78 @@
 package com.github.kokorin.jaffree.ffmpeg;
 
 import com.github.kokorin.jaffree.util.SocketOutputStream;
+import com.github.kokorin.jaffree.util.SocketTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 public abstract class TcpInput<T extends TcpInput<T>> extends SocketInput<T> implements Input {
+    private boolean stdIn;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(TcpInput.class);
 
     public TcpInput() {
         super("tcp");
     }
 
+    /**
+     * Set transport to pass data to ffmpeg with. Loopback TCP by default.
+     *
+     * <p>
+     * Note: ffmpeg doesn't treat unix:// protocol as streamed, so with Unix domain socket transport
+     * only streaming formats (e.g. nut, flv, mpegts or raw) can be used.
+     *
+     * @param transport transport
+     * @return this
+     * @see SocketTransport#unix(java.nio.file.Path)
+     */
+    public T setTransport(SocketTransport transport) {
+        allocateEndpoint(transport);
+        stdIn = false;
+        return thisAsT();
+    }
+
+    /**
+     * Pass data to ffmpeg via its stdin (pipe:0) instead of socket.
+     * <p>
+     * There is no socket handshake and no listening port then. Only one input can use stdin.
+     * Since ffmpeg stdin is occupied, grace stop is done by sending SIGINT to ffmpeg (not supported on Windows).
+     *
+     * @param stdIn true to use stdin
+     * @return this
+     */
+    public T setStdIn(boolean stdIn) {
+        if (stdIn) {
+            releaseEndpoint("pipe:0");
+        } else if (this.stdIn) {
+            allocateEndpoint(SocketTransport.tcp());
+        }
+        this.stdIn = stdIn;
+        return thisAsT();
+    }
+
+    boolean isStdIn() {
+        return stdIn;
+    }
+
     protected abstract Supplier supplier();
 
     @Override
     final Negotiator negotiator() {
         final Supplier supplier = supplier();
+        final SocketTransport.Endpoint endpoint = getEndpoint();
 
         return new Negotiator() {
             @Override
-            public void negotiateAndClose(ServerSocket serverSocket) throws IOException {
-                LOGGER.debug("Accepting connection: {}", serverSocket);
-                Socket socket = serverSocket.accept();
-                OutputStream outputStream = new SocketOutputStream(serverSocket, socket);
+            public void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException {
+                LOGGER.debug("Accepting connection: {}", serverChannel);
+                // Unix domain socket file is deleted right after connection is accepted
+                SocketChannel channel = endpoint.accept();
+                OutputStream outputStream = new SocketOutputStream(serverChannel, channel);
                 LOGGER.debug("Passing output stream to supplier: {}", supplier);
                 supplier.supplyAndClose(outputStream);
             }
@@ -18,13 +18,14 @@
 package com.github.kokorin.jaffree.ffmpeg;
 
 import com.github.kokorin.jaffree.util.SocketInputStream;
+import com.github.kokorin.jaffree.util.SocketTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 /**
  * Provides possibility to consume ffmpeg output via TCP socket.
@@ -32,23 +33,67 @@ import java.net.Socket;
  * @param <T>
  */
 public abstract class TcpOutput<T extends TcpOutput<T>> extends SocketOutput<T> implements Output {
+    private boolean stdOut;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(TcpOutput.class);
+
     public TcpOutput() {
         super("tcp");
     }
 
+    /**
+     * Set transport to receive data from ffmpeg with. Loopback TCP by default.
+     *
+     * <p>
+     * Note: ffmpeg doesn't treat unix:// protocol as streamed, so with Unix domain socket transport
+     * only streaming formats (e.g. nut, flv, mpegts or raw) can be used.
+     *
+     * @param transport transport
+     * @return this
+     * @see SocketTransport#unix(java.nio.file.Path)
+     */
+    public T setTransport(SocketTransport transport) {
+        allocateEndpoint(transport);
+        stdOut = false;
+        return thisAsT();
+    }
+
+    /**
+     * Receive data from ffmpeg via its stdout (pipe:1) instead of socket.
+     * <p>
+     * There is no socket handshake and no listening port then. Only one output can use stdout.
+     *
+     * @param stdOut true to use stdout
+     * @return this
+     */
+    public T setStdOut(boolean stdOut) {
+        if (stdOut) {
+            releaseEndpoint("pipe:1");
+        } else if (this.stdOut) {
+            allocateEndpoint(SocketTransport.tcp());
+        }
+        this.stdOut = stdOut;
+        return thisAsT();
+    }
+
+    boolean isStdOut() {
+        return stdOut;
+    }
+
     protected abstract Consumer consumer();
 
     @Override
     Negotiator negotiator() {
         final Consumer consumer = consumer();
+        final SocketTransport.Endpoint endpoint = getEndpoint();
 
         return new Negotiator() {
             @Override
-            public void negotiateAndClose(ServerSocket serverSocket) throws IOException {
-                LOGGER.debug("Accepting connection: {}", serverSocket);
-                Socket socket = serverSocket.accept();
-                InputStream inputStream = new SocketInputStream(serverSocket, socket);
+            public void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException {
+                LOGGER.debug("Accepting connection: {}", serverChannel);
+                // Unix domain socket file is deleted right after connection is accepted
+                SocketChannel channel = endpoint.accept();
+                InputStream inputStream = new SocketInputStream(serverChannel, channel);
                 LOGGER.debug("Passing output stream to consumer: {}", consumer);
                 consumer.consumeAndClose(inputStream);
             }
@@ -0,0 +1,67 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.ffmpeg;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loopback endpoint for ffmpeg -progress option.
+ * <p>
+ * It's not added to ffmpeg outputs: its URL is passed with -progress option and its helper thread
+ * parses key=value blocks and passes them to {@link ProgressListener}.
+ */
+class TcpProgressOutput extends TcpOutput<TcpProgressOutput> {
+    private final ProgressListener progressListener;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpProgressOutput.class);
+
+    TcpProgressOutput(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    protected Consumer consumer() {
+        return new Consumer() {
+            @Override
+            public void consumeAndClose(InputStream in) {
+                ProgressBlockParser parser = new ProgressBlockParser();
+
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        FFmpegProgress progress = parser.parseLine(line);
+                        if (progress != null && progressListener != null) {
+                            progressListener.onProgress(progress);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to read ffmpeg progress", e);
+                }
+
+                LOGGER.debug("Progress has been read");
+            }
+        };
+    }
+}
@@ -17,31 +17,58 @@
 
 package com.github.kokorin.jaffree.ffprobe;
 
-import com.github.kokorin.jaffree.util.FtpServer;
+import com.github.kokorin.jaffree.util.ChannelProtocol;
+import com.github.kokorin.jaffree.util.ChannelServer;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.ServerSocket;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.ServerSocketChannel;
 
 public class ChannelInput extends SocketInput {
     private final SeekableByteChannel channel;
+    private final ChannelProtocol protocol;
+    private volatile ChannelServer server;
+    private volatile boolean processFinished = false;
 
     public ChannelInput(SeekableByteChannel channel) {
-        super("ftp");
+        this(channel, ChannelProtocol.FTP);
+    }
+
+    public ChannelInput(SeekableByteChannel channel, ChannelProtocol protocol) {
+        super(protocol.getScheme());
         this.channel = channel;
+        this.protocol = protocol;
     }
 
     @Override
     Negotiator negotiator() {
         return new Negotiator() {
             @Override
-            public void negotiateAndClose(ServerSocket serverSocket) throws IOException {
-                try (Closeable toClose = serverSocket) {
-                    Runnable server = new FtpServer(channel, serverSocket);
-                    server.run();
+            public void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException {
+                try (Closeable toClose = serverChannel) {
+                    ChannelServer channelServer = protocol.createServer(channel, serverChannel.socket());
+                    channelServer.setExecutorService(getExecutorService());
+                    server = channelServer;
+                    if (processFinished) {
+                        channelServer.stop();
+                    }
+                    channelServer.run();
                 }
             }
         };
     }
+
+    /**
+     * ffprobe may reconnect to read the channel at any moment, so the server is stopped only
+     * when ffprobe has finished.
+     */
+    @Override
+    void onProcessFinished() {
+        processFinished = true;
+        ChannelServer current = server;
+        if (current != null) {
+            current.stop();
+        }
+    }
 }
@@ -21,10 +21,12 @@ import com.github.kokorin.jaffree.LogLevel;
 import com.github.kokorin.jaffree.StreamType;
 import com.github.kokorin.jaffree.ffprobe.data.FlatFormatParser;
 import com.github.kokorin.jaffree.ffprobe.data.FormatParser;
+import com.github.kokorin.jaffree.process.JobScheduler;
 import com.github.kokorin.jaffree.process.LoggingStdReader;
 import com.github.kokorin.jaffree.process.ProcessHandler;
 import com.github.kokorin.jaffree.process.StdReader;
 import com.github.kokorin.jaffree.process.ThrowingStdReader;
+import com.github.kokorin.jaffree.util.ChannelProtocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,7 +37,11 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class FFprobe {
     private final LogLevel logLevel = LogLevel.ERROR;
@@ -70,6 +76,7 @@ public class FFprobe {
     private Input input;
 
     private FormatParser parser = new FlatFormatParser();
+    private ExecutorService executorService = null;
 
     private final Path executable;
 
@@ -421,6 +428,11 @@ public class FFprobe {
         return this;
     }
 
+    public FFprobe setInput(SeekableByteChannel channel, ChannelProtocol protocol) {
+        this.input = new ChannelInput(channel, protocol);
+        return this;
+    }
+
 
     public FFprobe setFormatParser(FormatParser parser) {
         if (parser == null) {
@@ -431,7 +443,88 @@ public class FFprobe {
         return this;
     }
 
+    /**
+     * Set {@link ExecutorService} to run helper threads with.
+     * <p>
+     * Executor service can be shared between many ffprobe (and ffmpeg) executions,
+     * see {@link com.github.kokorin.jaffree.process.ExecutorServices}.
+     * <b>Note</b>: executor must not queue tasks, otherwise ffprobe may block.
+     *
+     * @param executorService executor service
+     * @return this
+     */
+    public FFprobe setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
     public FFprobeResult execute() {
+        return createProcessHandler().execute();
+    }
+
+    /**
+     * Runs ffprobe in separate Thread.
+     * <p>
+     * If {@link ExecutorService} is set, ffprobe is run with it, otherwise new thread is started.
+     *
+     * @return ffprobe result future
+     * @see #executeAsync(Executor)
+     */
+    public CompletableFuture<FFprobeResult> executeAsync() {
+        if (executorService != null) {
+            return executeAsync(executorService);
+        }
+
+        return executeAsync(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Thread runner = new Thread(command, "FFprobe-async-runner");
+                runner.setDaemon(true);
+                runner.start();
+            }
+        });
+    }
+
+    /**
+     * Runs ffprobe with provided {@link Executor}.
+     *
+     * @param executor executor to run ffprobe with
+     * @return ffprobe result future
+     */
+    public CompletableFuture<FFprobeResult> executeAsync(Executor executor) {
+        final ProcessHandler<FFprobeResult> processHandler = createProcessHandler();
+
+        return CompletableFuture.supplyAsync(new Supplier<FFprobeResult>() {
+            @Override
+            public FFprobeResult get() {
+                return processHandler.execute();
+            }
+        }, executor);
+    }
+
+    /**
+     * Submits ffprobe execution to {@link JobScheduler}.
+     * <p>
+     * ffprobe process is started when scheduler has a free slot. Cancelling returned future
+     * of a queued job removes it from the queue without starting ffprobe.
+     *
+     * @param scheduler scheduler
+     * @param priority  job priority
+     * @param tenant    tenant which submits job
+     * @return ffprobe result future
+     */
+    public CompletableFuture<FFprobeResult> executeAsync(JobScheduler scheduler, JobScheduler.Priority priority,
+                                                         String tenant) {
+        // process handler is created only when job starts, so nothing is left open by cancelled jobs
+        return scheduler.submit(new Supplier<FFprobeResult>() {
+            @Override
+            public FFprobeResult get() {
+                return createProcessHandler().execute();
+            }
+        }, priority, tenant);
+    }
+
+    protected ProcessHandler<FFprobeResult> createProcessHandler() {
         List<Runnable> helpers = new ArrayList<>();
         if (input != null) {
             Runnable helper = input.helperThread();
@@ -444,8 +537,8 @@ public class FFprobe {
                 .setStdOutReader(createStdOutReader())
                 .setStdErrReader(createStdErrReader())
                 .setRunnables(helpers)
-                .setArguments(buildArguments())
-                .execute();
+                .setExecutorService(executorService)
+                .setArguments(buildArguments());
     }
 
     protected List<String> buildArguments() {
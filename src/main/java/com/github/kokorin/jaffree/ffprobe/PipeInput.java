@@ -24,10 +24,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 public class PipeInput extends SocketInput {
     private final InputStream inputStream;
@@ -45,14 +44,23 @@ public class PipeInput extends SocketInput {
     Negotiator negotiator() {
         return new Negotiator() {
             @Override
-            public void negotiateAndClose(ServerSocket serverSocket) throws IOException {
-                LOGGER.debug("Accepting connection: {}", serverSocket);
+            public void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException {
+                LOGGER.debug("Accepting connection: {}", serverChannel);
 
-                try (Socket socket = serverSocket.accept();
-                     OutputStream outputStream = new SocketOutputStream(serverSocket, socket)) {
+                SocketChannel channel = serverChannel.accept();
+                try (SocketOutputStream outputStream = new SocketOutputStream(serverChannel, channel)) {
                     LOGGER.debug("Connection accepted, copying");
-                    IOUtil.copy(inputStream, outputStream, bufferSize);
-                } catch (SocketException e) {
+                    // FileInputStream is transferred to socket without copying to user space
+                    ReadableByteChannel inputChannel = IOUtil.getChannel(inputStream);
+                    if (inputChannel != null) {
+                        IOUtil.copy(inputChannel, outputStream.getChannel(), bufferSize);
+                    } else {
+                        IOUtil.copy(inputStream, outputStream, bufferSize);
+                    }
+                } catch (IOException e) {
+                    if (!IOUtil.isClosedByPeer(e)) {
+                        throw e;
+                    }
                     // client has no way to notify server that no more data is needed
                     LOGGER.debug("Ignoring exception: " + e.getMessage());
                 }
@@ -17,43 +17,53 @@
 
 package com.github.kokorin.jaffree.ffprobe;
 
+import com.github.kokorin.jaffree.process.ExecutorServiceAware;
+import com.github.kokorin.jaffree.process.ProcessListener;
+import com.github.kokorin.jaffree.util.SocketTransport;
+
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
 
 public abstract class SocketInput implements Input {
     private final String protocol;
-    private final ServerSocket serverSocket;
+    private final SocketTransport.Endpoint endpoint;
+    private volatile ExecutorService executorService;
 
     public SocketInput(String protocol) {
         this.protocol = protocol;
-        this.serverSocket = allocateSocket();
+        this.endpoint = allocateEndpoint();
     }
 
     @Override
     public final String getUrl() {
-        return protocol + "://127.0.0.1:" + serverSocket.getLocalPort();
+        return endpoint.getUrl(protocol, "");
     }
 
     @Override
     public final Runnable helperThread() {
-        final Negotiator negotiator = negotiator();
-
-        return new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    negotiator.negotiateAndClose(serverSocket);
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to negotiate via socket " + serverSocket, e);
-                }
-            }
-        };
+        return new Helper(negotiator());
     }
 
-    protected ServerSocket allocateSocket() {
+    /**
+     * Invoked when ffprobe process has finished. Negotiators, which keep waiting for connections
+     * (e.g. channel servers), should stop.
+     */
+    void onProcessFinished() {
+        // nothing to do by default
+    }
+
+    /**
+     * @return executor service, which runs helper threads of the process, null if every helper gets its own
+     * thread
+     */
+    ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    protected SocketTransport.Endpoint allocateEndpoint() {
         try {
-            return new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            return SocketTransport.tcp().listen();
         } catch (IOException e) {
             throw new RuntimeException("Failed to allocate socket", e);
         }
@@ -61,13 +71,40 @@ public abstract class SocketInput implements Input {
 
     abstract Negotiator negotiator();
 
+    private class Helper implements Runnable, ProcessListener, ExecutorServiceAware {
+        private final Negotiator negotiator;
+
+        Helper(Negotiator negotiator) {
+            this.negotiator = negotiator;
+        }
+
+        @Override
+        public void run() {
+            try {
+                negotiator.negotiateAndClose(endpoint.getChannel());
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to negotiate via socket " + endpoint, e);
+            }
+        }
+
+        @Override
+        public void onProcessFinished(int status) {
+            SocketInput.this.onProcessFinished();
+        }
+
+        @Override
+        public void setExecutorService(ExecutorService executorService) {
+            SocketInput.this.executorService = executorService;
+        }
+    }
+
     interface Negotiator {
         /**
-         * Negotiator <b>must</b> close passed in {@code ServerSocket}
+         * Negotiator <b>must</b> close passed in {@code ServerSocketChannel}
          *
-         * @param serverSocket socket to communicate
+         * @param serverChannel socket to communicate
          * @throws IOException
          */
-        void negotiateAndClose(ServerSocket serverSocket) throws IOException;
+        void negotiateAndClose(ServerSocketChannel serverChannel) throws IOException;
     }
 }
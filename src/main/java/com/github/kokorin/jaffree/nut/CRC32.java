@@ -17,40 +17,119 @@
 
 package com.github.kokorin.jaffree.nut;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * CRC32 implementation used in NUT.
  * <p>
- * Generator polynomial is 0x104C11DB7. Starting value is zero.
+ * Generator polynomial is 0x104C11DB7 (MSB-first). Starting value is zero.
  * <p>
  * Can't be replaced with java.util.zip.CRC32 because it has different polynomial generator
+ * <p>
+ * Bulk updates process 8 bytes per step with slicing-by-8 tables.
  */
-class CRC32 {
+public class CRC32 {
     private int crc = 0;
 
-    private static int[] table = {
-            0x00000000, 0x04C11DB7, 0x09823B6E, 0x0D4326D9,
-            0x130476DC, 0x17C56B6B, 0x1A864DB2, 0x1E475005,
-            0x2608EDB8, 0x22C9F00F, 0x2F8AD6D6, 0x2B4BCB61,
-            0x350C9B64, 0x31CD86D3, 0x3C8EA00A, 0x384FBDBD,
-    };
+    private static final int POLYNOMIAL = 0x04C11DB7;
+
+    // TABLES[k][b] is CRC of byte b followed by k zero bytes
+    private static final int[][] TABLES = createTables();
+    private static final int[] T0 = TABLES[0];
+    private static final int[] T1 = TABLES[1];
+    private static final int[] T2 = TABLES[2];
+    private static final int[] T3 = TABLES[3];
+    private static final int[] T4 = TABLES[4];
+    private static final int[] T5 = TABLES[5];
+    private static final int[] T6 = TABLES[6];
+    private static final int[] T7 = TABLES[7];
 
     public void reset() {
         crc = 0;
     }
 
+    /**
+     * Updates CRC with single byte.
+     *
+     * @param value byte, only 8 lower bits are used
+     */
     public void update(int value) {
-        crc ^= value << 24;
-        crc = (crc << 4) ^ table[crc >>> 28];
-        crc = (crc << 4) ^ table[crc >>> 28];
+        crc = (crc << 8) ^ T0[((crc >>> 24) ^ value) & 0xFF];
     }
 
     public void update(byte[] data) {
-        for (int value : data) {
-            update(value);
+        update(data, 0, data.length);
+    }
+
+    public void update(byte[] data, int offset, int length) {
+        int c = crc;
+        int end = offset + length;
+
+        for (int blockEnd = end - 7; offset < blockEnd; offset += 8) {
+            int high = c ^ ((data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                    | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF));
+            c = T7[high >>> 24] ^ T6[(high >>> 16) & 0xFF] ^ T5[(high >>> 8) & 0xFF] ^ T4[high & 0xFF]
+                    ^ T3[data[offset + 4] & 0xFF] ^ T2[data[offset + 5] & 0xFF]
+                    ^ T1[data[offset + 6] & 0xFF] ^ T0[data[offset + 7] & 0xFF];
         }
+
+        for (; offset < end; offset++) {
+            c = (c << 8) ^ T0[((c >>> 24) ^ data[offset]) & 0xFF];
+        }
+
+        crc = c;
+    }
+
+    /**
+     * Updates CRC with remaining bytes of the buffer, buffer position is moved to its limit.
+     *
+     * @param buffer buffer
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int position = buffer.position();
+            update(buffer.array(), buffer.arrayOffset() + position, buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int c = crc;
+        while (buffer.remaining() >= 8) {
+            long value = bigEndian ? buffer.getLong() : Long.reverseBytes(buffer.getLong());
+            int high = c ^ (int) (value >>> 32);
+            int low = (int) value;
+            c = T7[high >>> 24] ^ T6[(high >>> 16) & 0xFF] ^ T5[(high >>> 8) & 0xFF] ^ T4[high & 0xFF]
+                    ^ T3[low >>> 24] ^ T2[(low >>> 16) & 0xFF] ^ T1[(low >>> 8) & 0xFF] ^ T0[low & 0xFF];
+        }
+        while (buffer.hasRemaining()) {
+            c = (c << 8) ^ T0[((c >>> 24) ^ buffer.get()) & 0xFF];
+        }
+        crc = c;
     }
 
     public long getValue() {
         return (long) crc & 0xffffffffL;
     }
+
+    private static int[][] createTables() {
+        int[][] tables = new int[8][256];
+        for (int b = 0; b < 256; b++) {
+            int c = b << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                c = (c << 1) ^ ((c >> 31) & POLYNOMIAL);
+            }
+            tables[0][b] = c;
+        }
+
+        for (int k = 1; k < 8; k++) {
+            for (int b = 0; b < 256; b++) {
+                int previous = tables[k - 1][b];
+                tables[k][b] = (previous << 8) ^ tables[0][previous >>> 24];
+            }
+        }
+
+        return tables;
+    }
 }
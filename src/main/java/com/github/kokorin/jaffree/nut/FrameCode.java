@@ -23,6 +23,11 @@ import java.util.Set;
 public class FrameCode {
     public final Set<Flag> flags;
 
+    /**
+     * {@link #flags} as bit code.
+     */
+    public final long flagBits;
+
     public final int streamId;
 
     /**
@@ -85,6 +90,7 @@ public class FrameCode {
 
     public FrameCode(Set<Flag> flags, int streamId, int dataSizeMul, int dataSizeLsb, long ptsDelta, long reservedCount, long matchTimeDelta, long headerIdx) {
         this.flags = flags;
+        this.flagBits = Flag.toBitCode(flags);
         this.streamId = streamId;
         this.dataSizeMul = dataSizeMul;
         this.dataSizeLsb = dataSizeLsb;
@@ -178,7 +184,7 @@ public class FrameCode {
          */
         INVALID(1 << 13);
 
-        private final long code;
+        public final long code;
 
         Flag(long code) {
             this.code = code;
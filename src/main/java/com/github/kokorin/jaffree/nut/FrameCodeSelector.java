@@ -0,0 +1,289 @@
+/*
+ *    Copyright  2017 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.nut;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Selects {@link FrameCode}, which gives the shortest frame header.
+ * <p>
+ * Frame codes are grouped once per (stream, keyframe, eor, checksum) combination: group contains only frame
+ * codes, which are compatible with it. Frame codes with fixed data size are sorted by size, so they are looked
+ * up with binary search. Other frame codes are sorted by the shortest header they can produce and are checked
+ * till remaining frame codes can't produce shorter header. Flags are handled as bit codes, selection allocates
+ * nothing.
+ */
+public class FrameCodeSelector {
+    private final FrameCode[] frameCodes;
+
+    // frame codes without SIZE_MSB and CODED_FLAGS, sorted by data size, header length and index
+    private final int[][] fixedSizeCodes;
+    private final long[][] fixedSizes;
+    // other frame codes sorted by the shortest header length and index
+    private final int[][] variableSizeCodes;
+    private final int[][] variableSizeMinLengths;
+
+    private static final long KEYFRAME = FrameCode.Flag.KEYFRAME.code;
+    private static final long EOR = FrameCode.Flag.EOR.code;
+    private static final long CODED_PTS = FrameCode.Flag.CODED_PTS.code;
+    private static final long STREAM_ID = FrameCode.Flag.STREAM_ID.code;
+    private static final long SIZE_MSB = FrameCode.Flag.SIZE_MSB.code;
+    private static final long CHECKSUM = FrameCode.Flag.CHECKSUM.code;
+    private static final long CODED_FLAGS = FrameCode.Flag.CODED_FLAGS.code;
+    private static final long INVALID = FrameCode.Flag.INVALID.code;
+
+    private static final int GROUPS_PER_STREAM = 8;
+
+    public FrameCodeSelector(FrameCode[] frameCodes, int streamCount) {
+        this.frameCodes = frameCodes;
+
+        int groupCount = streamCount * GROUPS_PER_STREAM;
+        this.fixedSizeCodes = new int[groupCount][];
+        this.fixedSizes = new long[groupCount][];
+        this.variableSizeCodes = new int[groupCount][];
+        this.variableSizeMinLengths = new int[groupCount][];
+
+        for (int streamId = 0; streamId < streamCount; streamId++) {
+            for (int variant = 0; variant < GROUPS_PER_STREAM; variant++) {
+                int group = streamId * GROUPS_PER_STREAM + variant;
+                createGroup(group, streamId, (variant & 1) != 0, (variant & 2) != 0, (variant & 4) != 0);
+            }
+        }
+    }
+
+    /**
+     * Selects frame code for a frame.
+     *
+     * @param streamId  stream id
+     * @param keyframe  true if frame is keyframe
+     * @param eor       true if frame is EOR
+     * @param checksum  true if frame header must have checksum
+     * @param dataSize  frame data size
+     * @param ptsDelta  difference between frame pts and last pts of the stream
+     * @return frame code index in lower 8 bits and flags to code the frame with in higher bits,
+     * or -1 if there is no appropriate frame code
+     */
+    public long select(int streamId, boolean keyframe, boolean eor, boolean checksum, long dataSize,
+                       long ptsDelta) {
+        int group = groupIndex(streamId, keyframe, eor, checksum);
+
+        int best = -1;
+        long bestFlags = 0;
+        int bestLength = Integer.MAX_VALUE;
+
+        int[] candidates = fixedSizeCodes[group];
+        long[] sizes = fixedSizes[group];
+        for (int k = lowerBound(sizes, dataSize); k < sizes.length && sizes[k] == dataSize; k++) {
+            int i = candidates[k];
+            FrameCode ft = frameCodes[i];
+            long flags = ft.flagBits;
+            if ((flags & CODED_PTS) == 0 && ft.ptsDelta != ptsDelta) {
+                continue;
+            }
+
+            // candidates of the same size are sorted by header length and index, the first one is the best
+            best = i;
+            bestFlags = flags;
+            bestLength = headerLength(flags);
+            break;
+        }
+
+        candidates = variableSizeCodes[group];
+        int[] minLengths = variableSizeMinLengths[group];
+        long fdFlags = (keyframe ? KEYFRAME : 0) | (eor ? EOR : 0);
+        for (int k = 0; k < candidates.length; k++) {
+            if (minLengths[k] > bestLength) {
+                break;
+            }
+
+            int i = candidates[k];
+            FrameCode ft = frameCodes[i];
+            long flags = ft.flagBits;
+
+            if ((flags & CODED_FLAGS) != 0) {
+                flags = fdFlags | CODED_FLAGS;
+                if (ft.streamId != streamId) {
+                    flags |= STREAM_ID;
+                }
+                if (ft.ptsDelta != ptsDelta) {
+                    flags |= CODED_PTS;
+                }
+                if (ft.dataSizeLsb != dataSize) {
+                    flags |= SIZE_MSB;
+                }
+                if (checksum) {
+                    flags |= CHECKSUM;
+                }
+            } else if ((flags & CODED_PTS) == 0 && ft.ptsDelta != ptsDelta) {
+                continue;
+            }
+
+            if ((flags & SIZE_MSB) != 0) {
+                if (dataSize < ft.dataSizeLsb || (dataSize - ft.dataSizeLsb) % ft.dataSizeMul != 0) {
+                    continue;
+                }
+            } else if (ft.dataSizeLsb != dataSize) {
+                continue;
+            }
+
+            int length = headerLength(flags);
+            if (length < bestLength || (length == bestLength && i < best)) {
+                best = i;
+                bestFlags = flags;
+                bestLength = length;
+            }
+        }
+
+        if (best == -1) {
+            return -1;
+        }
+        return bestFlags << 8 | best;
+    }
+
+    /**
+     * Filters out frame codes, which can't be used for the group, and sorts the rest.
+     */
+    private void createGroup(int group, int streamId, boolean keyframe, boolean eor, boolean checksum) {
+        long fdFlags = (keyframe ? KEYFRAME : 0) | (eor ? EOR : 0);
+        final List<int[]> fixed = new ArrayList<>();
+        final List<int[]> variable = new ArrayList<>();
+
+        for (int i = 0; i < frameCodes.length; i++) {
+            FrameCode ft = frameCodes[i];
+            long flags = ft.flagBits;
+            if ((flags & INVALID) != 0) {
+                continue;
+            }
+
+            if ((flags & CODED_FLAGS) != 0) {
+                // pts delta and size are checked on selection
+                flags = fdFlags | CODED_FLAGS;
+                if (ft.streamId != streamId) {
+                    flags |= STREAM_ID;
+                }
+                if (checksum) {
+                    flags |= CHECKSUM;
+                }
+                variable.add(new int[]{i, headerLength(flags)});
+                continue;
+            }
+
+            if ((flags & (KEYFRAME | EOR)) != fdFlags) {
+                continue;
+            }
+            if ((flags & STREAM_ID) == 0 && ft.streamId != streamId) {
+                continue;
+            }
+            if (checksum && (flags & CHECKSUM) == 0) {
+                continue;
+            }
+
+            if ((flags & SIZE_MSB) == 0) {
+                fixed.add(new int[]{i, headerLength(flags), ft.dataSizeLsb});
+            } else {
+                variable.add(new int[]{i, headerLength(flags)});
+            }
+        }
+
+        Collections.sort(fixed, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                int result = Integer.compare(o1[2], o2[2]);
+                if (result != 0) {
+                    return result;
+                }
+                result = Integer.compare(o1[1], o2[1]);
+                if (result != 0) {
+                    return result;
+                }
+                return Integer.compare(o1[0], o2[0]);
+            }
+        });
+        Collections.sort(variable, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                int result = Integer.compare(o1[1], o2[1]);
+                if (result != 0) {
+                    return result;
+                }
+                return Integer.compare(o1[0], o2[0]);
+            }
+        });
+
+        fixedSizeCodes[group] = new int[fixed.size()];
+        fixedSizes[group] = new long[fixed.size()];
+        for (int k = 0; k < fixed.size(); k++) {
+            fixedSizeCodes[group][k] = fixed.get(k)[0];
+            fixedSizes[group][k] = fixed.get(k)[2];
+        }
+
+        variableSizeCodes[group] = new int[variable.size()];
+        variableSizeMinLengths[group] = new int[variable.size()];
+        for (int k = 0; k < variable.size(); k++) {
+            variableSizeCodes[group][k] = variable.get(k)[0];
+            variableSizeMinLengths[group][k] = variable.get(k)[1];
+        }
+    }
+
+    private static int groupIndex(int streamId, boolean keyframe, boolean eor, boolean checksum) {
+        return streamId * GROUPS_PER_STREAM + (keyframe ? 1 : 0) + (eor ? 2 : 0) + (checksum ? 4 : 0);
+    }
+
+    /**
+     * @return index of the first element, which is not less than value
+     */
+    private static int lowerBound(long[] values, long value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Estimated header length, it doesn't fully follow specification, but is simple enough.
+     */
+    private static int headerLength(long flags) {
+        int length = 1; // frame code
+        if ((flags & CODED_FLAGS) != 0) {
+            length += 8;
+        }
+        if ((flags & STREAM_ID) != 0) {
+            length += 8;
+        }
+        if ((flags & CODED_PTS) != 0) {
+            length += 8;
+        }
+        if ((flags & SIZE_MSB) != 0) {
+            length += 8;
+        }
+        if ((flags & CHECKSUM) != 0) {
+            length += 4;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ *    Copyright  2017 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+package com.github.kokorin.jaffree.nut;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads NUT file with random access.
+ * <p>
+ * File is memory-mapped if its size allows, otherwise it's read through {@link FileChannel}.
+ * {@link #seek(long, int)} uses keyframe index: it's read from INDEX packet at the end of file if present,
+ * otherwise it's built by scanning syncpoints and frame headers (frame data isn't read) and is cached
+ * next to the file with {@link #INDEX_CACHE_SUFFIX} suffix.
+ */
+public class NutFileReader implements AutoCloseable {
+    private final Path path;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer mapped;
+    private final NutReader reader;
+
+    // header of the frame found by seek, it's returned by the next read
+    private final NutFrameHeader pendingHeader = new NutFrameHeader();
+    private boolean hasPendingHeader = false;
+
+    private NutIndex index;
+    private TimebaseConverter timebaseConverter;
+
+    public static final String INDEX_CACHE_SUFFIX = ".index";
+
+    private static final String INDEX_CACHE_ID = "nut/index";
+    // index_ptr u(64) and checksum u(32) at the end of file
+    private static final int INDEX_PTR_OFFSET = 12;
+    // syncpoint startcode is located within 16 bytes after position in INDEX packet
+    private static final int SYNCPOINT_SEARCH_LENGTH = 16 + 8;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NutFileReader.class);
+
+    public NutFileReader(Path path) throws IOException {
+        this.path = path;
+        this.fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+        this.mapped = map(fileChannel);
+        // positional reads don't affect channel position, so file which isn't mapped is read by the same channel
+        SeekableByteChannel readerChannel = mapped != null ? new ByteBufferChannel(mapped) : fileChannel;
+        this.reader = new NutReader(new NutInputStream(readerChannel));
+    }
+
+    public MainHeader getMainHeader() throws IOException {
+        return reader.getMainHeader();
+    }
+
+    public StreamHeader[] getStreamHeaders() throws IOException {
+        return reader.getStreamHeaders();
+    }
+
+    public Info[] getInfos() throws IOException {
+        return reader.getInfos();
+    }
+
+    /**
+     * @return next frame or null if there are no more frames
+     * @throws IOException if read fails
+     * @see NutReader#readFrame()
+     */
+    public NutFrame readFrame() throws IOException {
+        if (!hasPendingHeader) {
+            return reader.readFrame();
+        }
+
+        hasPendingHeader = false;
+        byte[] data = new byte[pendingHeader.getDataSize()];
+        if (!reader.readFrameData(data, 0)) {
+            data = null;
+        }
+
+        return new NutFrame(pendingHeader.getStreamId(), pendingHeader.getPts(), data,
+                pendingHeader.getSideData(), pendingHeader.getMetaData(), pendingHeader.isKeyframe(),
+                pendingHeader.isEor());
+    }
+
+    /**
+     * @param header descriptor to fill
+     * @return the same descriptor or null if there are no more frames
+     * @throws IOException if read fails
+     * @see NutReader#readFrameHeader(NutFrameHeader)
+     */
+    public NutFrameHeader readFrameHeader(NutFrameHeader header) throws IOException {
+        if (!hasPendingHeader) {
+            return reader.readFrameHeader(header);
+        }
+
+        hasPendingHeader = false;
+        header.set(pendingHeader.getStreamId(), pendingHeader.getPts(), pendingHeader.getDataSize(),
+                pendingHeader.getSideData(), pendingHeader.getMetaData(), pendingHeader.isKeyframe(),
+                pendingHeader.isEor());
+        return header;
+    }
+
+    /**
+     * @see NutReader#readFrameData(byte[], int)
+     */
+    public boolean readFrameData(byte[] dst, int offset) throws IOException {
+        return reader.readFrameData(dst, offset);
+    }
+
+    /**
+     * @see NutReader#readFrameData(ByteBuffer)
+     */
+    public boolean readFrameData(ByteBuffer dst) throws IOException {
+        return reader.readFrameData(dst);
+    }
+
+    /**
+     * Positions reader at the last keyframe of the stream with pts less than or equal to the specified pts
+     * (or at the first keyframe if pts precedes it). Frames of all streams, which precede the keyframe,
+     * are skipped, so the next read returns the keyframe or a frame of other stream with the same
+     * or later timestamp.
+     * <p>
+     * Keyframe is looked up in index with binary search. Index is loaded or built on the first call.
+     *
+     * @param pts      pts in timebase of the stream
+     * @param streamId stream id
+     * @return false if stream has no keyframes or file has ended before the keyframe (index is outdated)
+     * @throws IOException if read fails
+     */
+    public boolean seek(long pts, int streamId) throws IOException {
+        NutIndex index = getIndex();
+        int keyframe = index.findKeyframe(streamId, pts);
+        if (keyframe < 0) {
+            return false;
+        }
+
+        long keyframePts = index.getKeyframePts(streamId, keyframe);
+        StreamHeader[] streamHeaders = reader.getStreamHeaders();
+        int timebaseId = streamHeaders[streamId].timeBaseId;
+
+        reader.seek(findSyncPoint(index.getSyncPointPosition(streamId, keyframe)));
+        hasPendingHeader = false;
+
+        while (reader.readFrameHeader(pendingHeader) != null) {
+            int frameStreamId = pendingHeader.getStreamId();
+            final boolean found;
+            if (frameStreamId == streamId) {
+                found = pendingHeader.isKeyframe() && pendingHeader.getPts() >= keyframePts;
+            } else {
+                int frameTimebaseId = streamHeaders[frameStreamId].timeBaseId;
+                found = timebaseConverter.compare(pendingHeader.getPts(), frameTimebaseId,
+                        keyframePts, timebaseId) >= 0;
+            }
+
+            if (found) {
+                hasPendingHeader = true;
+                return true;
+            }
+        }
+
+        LOGGER.warn("Keyframe {} of stream {} isn't found in {}", keyframePts, streamId, path);
+        return false;
+    }
+
+    /**
+     * Returns keyframe index: from INDEX packet, from index cache or built by scanning the file.
+     *
+     * @return keyframe index
+     * @throws IOException if read fails
+     */
+    public NutIndex getIndex() throws IOException {
+        if (index != null) {
+            return index;
+        }
+
+        // initialize reader and timebase converter
+        timebaseConverter = new TimebaseConverter(reader.getMainHeader().timeBases);
+
+        index = readIndexPacket();
+        if (index == null) {
+            index = readIndexCache();
+        }
+        if (index == null) {
+            index = scanIndex();
+            writeIndexCache(index);
+        }
+
+        return index;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    /**
+     * Reads INDEX packet. index_ptr at the end of file is the distance from index startcode to the end of file.
+     */
+    private NutIndex readIndexPacket() throws IOException {
+        long size = fileChannel.size();
+        if (size < INDEX_PTR_OFFSET) {
+            return null;
+        }
+
+        ByteBuffer indexPtr = ByteBuffer.allocate(8);
+        readAt(indexPtr, size - INDEX_PTR_OFFSET);
+        long indexPosition = size - indexPtr.getLong(0);
+        if (indexPosition < 0 || indexPosition >= size - INDEX_PTR_OFFSET) {
+            return null;
+        }
+
+        try (SeekableByteChannel channel = openChannel()) {
+            return new NutReader(new NutInputStream(channel)).readIndex(indexPosition);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to read index from {}, index will be built", path, e);
+            return null;
+        }
+    }
+
+    private NutIndex readIndexCache() {
+        Path cachePath = getIndexCachePath();
+        if (!Files.exists(cachePath)) {
+            return null;
+        }
+
+        try (NutInputStream input = new NutInputStream(FileChannel.open(cachePath, StandardOpenOption.READ))) {
+            if (!INDEX_CACHE_ID.equals(input.readCString())
+                    || input.readValue() != Files.size(path)
+                    || input.readValue() != Files.getLastModifiedTime(path).toMillis()) {
+                LOGGER.debug("Index cache {} is outdated", cachePath);
+                return null;
+            }
+
+            MainHeader mainHeader = reader.getMainHeader();
+            return NutIndex.read(input, mainHeader.streamCount, mainHeader.timeBases.length);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to read index cache {}", cachePath, e);
+            return null;
+        }
+    }
+
+    private void writeIndexCache(NutIndex index) {
+        Path cachePath = getIndexCachePath();
+        try (NutOutputStream output = new NutOutputStream(FileChannel.open(cachePath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            output.writeCString(INDEX_CACHE_ID);
+            output.writeValue(Files.size(path));
+            output.writeValue(Files.getLastModifiedTime(path).toMillis());
+            index.write(output, reader.getMainHeader().timeBases.length);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to write index cache {}", cachePath, e);
+        }
+    }
+
+    /**
+     * Reads syncpoints and frame headers, frame data is skipped.
+     */
+    private NutIndex scanIndex() throws IOException {
+        LOGGER.debug("Building index of {}", path);
+
+        try (SeekableByteChannel channel = openChannel()) {
+            NutReader scanner = new NutReader(new NutInputStream(channel));
+            MainHeader mainHeader = scanner.getMainHeader();
+            StreamHeader[] streamHeaders = scanner.getStreamHeaders();
+
+            NutIndex.Builder builder = new NutIndex.Builder(mainHeader.streamCount);
+            NutFrameHeader header = new NutFrameHeader();
+            long syncPointPosition = -1;
+            long maxPts = 0;
+            int maxPtsTimebaseId = 0;
+
+            while (scanner.readFrameHeader(header) != null) {
+                if (scanner.getLastSyncPointPosition() != syncPointPosition) {
+                    syncPointPosition = scanner.getLastSyncPointPosition();
+                    builder.addSyncPoint(syncPointPosition);
+                }
+
+                int timebaseId = streamHeaders[header.getStreamId()].timeBaseId;
+                if (timebaseConverter.compare(header.getPts(), timebaseId, maxPts, maxPtsTimebaseId) > 0) {
+                    maxPts = header.getPts();
+                    maxPtsTimebaseId = timebaseId;
+                }
+
+                if (header.isKeyframe() && !header.isEor()) {
+                    builder.addKeyframe(header.getStreamId(), header.getPts());
+                }
+            }
+
+            builder.setMaxPts(new Timestamp(maxPtsTimebaseId, maxPts));
+            return builder.build(channel.size());
+        }
+    }
+
+    /**
+     * Finds syncpoint startcode within 16 bytes after specified position.
+     */
+    private long findSyncPoint(long position) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(SYNCPOINT_SEARCH_LENGTH);
+        readAt(bytes, position);
+
+        for (int offset = 0; offset + 8 <= bytes.limit(); offset++) {
+            if (bytes.getLong(offset) == NutConst.SYNCPOINT_STARTCODE) {
+                return position + offset;
+            }
+        }
+
+        throw new RuntimeException("Syncpoint not found at position " + position + ", index may be outdated");
+    }
+
+    private Path getIndexCachePath() {
+        return path.resolveSibling(path.getFileName() + INDEX_CACHE_SUFFIX);
+    }
+
+    private SeekableByteChannel openChannel() throws IOException {
+        if (mapped != null) {
+            return new ByteBufferChannel(mapped);
+        }
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    /**
+     * Reads as many bytes as possible to the buffer, buffer is flipped afterwards.
+     */
+    private void readAt(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int read = fileChannel.read(dst, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        dst.flip();
+    }
+
+    private static MappedByteBuffer map(FileChannel channel) {
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            LOGGER.debug("Failed to map file, it will be read through FileChannel", e);
+            return null;
+        }
+    }
+}
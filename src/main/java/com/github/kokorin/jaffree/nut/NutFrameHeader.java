@@ -0,0 +1,91 @@
+/*
+ *    Copyright  2017 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.nut;
+
+/**
+ * Mutable frame descriptor, which is filled by {@link NutReader#readFrameHeader(NutFrameHeader)}.
+ * <p>
+ * The same instance can be reused for every frame, frame data is read separately to a caller-supplied buffer.
+ *
+ * @see NutReader#readFrameData(byte[], int)
+ * @see NutReader#readFrameData(java.nio.ByteBuffer)
+ */
+public class NutFrameHeader {
+    private int streamId;
+    private long pts;
+    private int dataSize;
+    private DataItem[] sideData;
+    private DataItem[] metaData;
+    private boolean keyframe;
+    private boolean eor;
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public long getPts() {
+        return pts;
+    }
+
+    /**
+     * @return size of frame data in bytes
+     */
+    public int getDataSize() {
+        return dataSize;
+    }
+
+    public DataItem[] getSideData() {
+        return sideData;
+    }
+
+    public DataItem[] getMetaData() {
+        return metaData;
+    }
+
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    public boolean isEor() {
+        return eor;
+    }
+
+    void set(int streamId, long pts, int dataSize, DataItem[] sideData, DataItem[] metaData, boolean keyframe,
+             boolean eor) {
+        this.streamId = streamId;
+        this.pts = pts;
+        this.dataSize = dataSize;
+        this.sideData = sideData;
+        this.metaData = metaData;
+        this.keyframe = keyframe;
+        this.eor = eor;
+    }
+
+    @Override
+    public String toString() {
+        return "NutFrameHeader{" +
+                "streamId=" + streamId +
+                ", pts=" + pts +
+                ", dataSize=" + dataSize +
+                ", sideData=" + (sideData != null ? sideData.length : "null") +
+                ", metaData=" + (metaData != null ? metaData.length : "null") +
+                ", keyframe=" + keyframe +
+                ", eor=" + eor +
+                '}';
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ *    Copyright  2017 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+package com.github.kokorin.jaffree.nut;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keyframe index of NUT file: for every stream it contains pts of keyframes and positions of syncpoints,
+ * which precede them.
+ * <p>
+ * Index is read from INDEX packet at the end of NUT file or is built by scanning NUT file.
+ *
+ * @see NutFileReader
+ */
+public class NutIndex {
+    /**
+     * Timestamp of the last frame.
+     */
+    public final Timestamp maxPts;
+
+    // positions of syncpoints, positions read from INDEX packet are rounded down to 16 bytes
+    private final long[] syncPointPositions;
+    // for every stream: pts of keyframes and indexes of syncpoints, after which keyframes are located
+    private final long[][] keyframePts;
+    private final int[][] keyframeSyncPoints;
+
+    NutIndex(Timestamp maxPts, long[] syncPointPositions, long[][] keyframePts, int[][] keyframeSyncPoints) {
+        this.maxPts = maxPts;
+        this.syncPointPositions = syncPointPositions;
+        this.keyframePts = keyframePts;
+        this.keyframeSyncPoints = keyframeSyncPoints;
+    }
+
+    public int getKeyframeCount(int streamId) {
+        return keyframePts[streamId].length;
+    }
+
+    public long getKeyframePts(int streamId, int keyframe) {
+        return keyframePts[streamId][keyframe];
+    }
+
+    /**
+     * Returns position of syncpoint, which precedes the keyframe. Syncpoint startcode is located within
+     * 16 bytes after returned position.
+     *
+     * @param streamId stream id
+     * @param keyframe keyframe number
+     * @return position of syncpoint
+     */
+    public long getSyncPointPosition(int streamId, int keyframe) {
+        return syncPointPositions[keyframeSyncPoints[streamId][keyframe]];
+    }
+
+    /**
+     * Finds the last keyframe with pts less than or equal to the specified pts with binary search.
+     *
+     * @param streamId stream id
+     * @param pts      pts in timebase of the stream
+     * @return keyframe number, 0 if pts precedes the first keyframe, or -1 if stream has no keyframes
+     */
+    public int findKeyframe(int streamId, long pts) {
+        long[] streamPts = keyframePts[streamId];
+        if (streamPts.length == 0) {
+            return -1;
+        }
+
+        int index = Arrays.binarySearch(streamPts, pts);
+        if (index >= 0) {
+            return index;
+        }
+
+        // binarySearch returns (-(insertion point) - 1)
+        int insertionPoint = -index - 1;
+        return Math.max(insertionPoint - 1, 0);
+    }
+
+    /*
+        index:
+        max_pts                             t
+        syncpoints                          v
+        for(i=0; i<syncpoints; i++) {
+            syncpoint_pos_div16             v
+        }
+        for(i=0; i<stream_count; i++) {
+            last_pts= -1
+            for(j=0; j<syncpoints; ) {
+                x                           v
+                type= x & 1
+                x>>=1
+                n=j
+                if(type){
+                    flag= x & 1
+                    x>>=1
+                    while(x--)
+                        has_keyframe[n++][i]=flag
+                    has_keyframe[n++][i]=!flag;
+                }else{
+                    while(x != 1){
+                        has_keyframe[n++][i]=x&1;
+                        x>>=1;
+                    }
+                }
+                for(; j<n && j<syncpoints; j++){
+                    if (!has_keyframe[j][i]) continue
+                    A                       v
+                    if(!A){
+                        A                   v
+                        B                   v
+                        eor_pts[j][i] = last_pts + A + B
+                    }else
+                        B=0
+                    keyframe_pts[j][i] = last_pts + A
+                    last_pts += A + B
+                }
+            }
+        }
+        reserved_bytes
+        index_ptr                           u(64)
+
+        Syncpoint positions are delta coded. Like FFmpeg, has_keyframe[j] refers to keyframe after syncpoint j-1.
+     */
+    static NutIndex read(NutInputStream input, int streamCount, int timeBaseCount) throws IOException {
+        Timestamp maxPts = input.readTimestamp(timeBaseCount);
+        int syncPointCount = (int) input.readValue();
+
+        long[] syncPointPositions = new long[syncPointCount];
+        long lastPositionDiv16 = 0;
+        for (int i = 0; i < syncPointCount; i++) {
+            long delta = input.readValue();
+            if (delta <= 0) {
+                throw new RuntimeException("Wrong syncpoint position in index: " + delta);
+            }
+            lastPositionDiv16 += delta;
+            syncPointPositions[i] = lastPositionDiv16 * 16;
+        }
+
+        long[][] keyframePts = new long[streamCount][];
+        int[][] keyframeSyncPoints = new int[streamCount][];
+        boolean[] hasKeyframe = new boolean[syncPointCount + 1];
+        long[] pts = new long[syncPointCount];
+        int[] syncPoints = new int[syncPointCount];
+
+        for (int i = 0; i < streamCount; i++) {
+            long lastPts = -1;
+            int count = 0;
+            for (int j = 0; j < syncPointCount; ) {
+                long x = input.readValue();
+                boolean type = (x & 1) != 0;
+                x >>>= 1;
+                int n = j;
+                if (type) {
+                    boolean flag = (x & 1) != 0;
+                    x >>>= 1;
+                    if (x >= syncPointCount + 1 - n) {
+                        throw new RuntimeException("Index overflow");
+                    }
+                    while (x-- > 0) {
+                        hasKeyframe[n++] = flag;
+                    }
+                    hasKeyframe[n++] = !flag;
+                } else {
+                    if (x <= 1) {
+                        throw new RuntimeException("Wrong keyframe flags in index: " + x);
+                    }
+                    while (x != 1) {
+                        if (n >= syncPointCount + 1) {
+                            throw new RuntimeException("Index overflow");
+                        }
+                        hasKeyframe[n++] = (x & 1) != 0;
+                        x >>>= 1;
+                    }
+                }
+                if (hasKeyframe[0]) {
+                    throw new RuntimeException("Keyframe before the first syncpoint in index");
+                }
+
+                for (; j < n && j < syncPointCount; j++) {
+                    if (!hasKeyframe[j]) {
+                        continue;
+                    }
+                    long a = input.readValue();
+                    long b = 0;
+                    if (a == 0) {
+                        a = input.readValue();
+                        b = input.readValue();
+                    }
+                    pts[count] = lastPts + a;
+                    syncPoints[count] = j - 1;
+                    count++;
+                    lastPts += a + b;
+                }
+            }
+
+            keyframePts[i] = Arrays.copyOf(pts, count);
+            keyframeSyncPoints[i] = Arrays.copyOf(syncPoints, count);
+        }
+
+        return new NutIndex(maxPts, syncPointPositions, keyframePts, keyframeSyncPoints);
+    }
+
+    /**
+     * Writes index in INDEX packet format without reserved_bytes and index_ptr.
+     */
+    void write(NutOutputStream output, int timeBaseCount) throws IOException {
+        output.writeTimestamp(timeBaseCount, maxPts);
+        output.writeValue(syncPointPositions.length);
+
+        long lastPositionDiv16 = 0;
+        for (long position : syncPointPositions) {
+            output.writeValue(position / 16 - lastPositionDiv16);
+            lastPositionDiv16 = position / 16;
+        }
+
+        int syncPointCount = syncPointPositions.length;
+        boolean[] hasKeyframe = new boolean[syncPointCount];
+        long[] pts = new long[syncPointCount];
+
+        for (int i = 0; i < keyframePts.length; i++) {
+            Arrays.fill(hasKeyframe, false);
+            for (int k = 0; k < keyframePts[i].length; k++) {
+                int j = keyframeSyncPoints[i][k] + 1;
+                if (j >= syncPointCount) {
+                    // keyframe after the last syncpoint can't be written
+                    break;
+                }
+                hasKeyframe[j] = true;
+                pts[j] = keyframePts[i][k];
+            }
+
+            // the same run-length coding of keyframe flags as FFmpeg uses
+            long lastPts = -1;
+            for (int j = 0; j < syncPointCount; j++) {
+                boolean flag = hasKeyframe[j] ^ (j + 1 == syncPointCount);
+                int n = 0;
+                for (; j < syncPointCount && hasKeyframe[j] == flag; j++) {
+                    n++;
+                }
+
+                output.writeValue(1 + (flag ? 2 : 0) + 4L * n);
+                for (int k = j - n; k <= j && k < syncPointCount; k++) {
+                    if (!hasKeyframe[k]) {
+                        continue;
+                    }
+                    output.writeValue(pts[k] - lastPts);
+                    lastPts = pts[k];
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects syncpoints and keyframes in order of NUT file.
+     */
+    static class Builder {
+        private long[] syncPointPositions = new long[64];
+        private int syncPointCount = 0;
+        private final long[][] keyframePts;
+        private final int[][] keyframeSyncPoints;
+        private final int[] keyframeCounts;
+        private Timestamp maxPts = new Timestamp(0, 0);
+
+        Builder(int streamCount) {
+            keyframePts = new long[streamCount][16];
+            keyframeSyncPoints = new int[streamCount][16];
+            keyframeCounts = new int[streamCount];
+        }
+
+        void addSyncPoint(long position) {
+            // positions in index are rounded down to 16 bytes and must differ, keyframes after syncpoint,
+            // which is too close to the previous one, are attributed to the previous syncpoint
+            if (syncPointCount > 0 && syncPointPositions[syncPointCount - 1] / 16 == position / 16) {
+                return;
+            }
+            if (syncPointCount == syncPointPositions.length) {
+                syncPointPositions = Arrays.copyOf(syncPointPositions, syncPointCount * 2);
+            }
+            syncPointPositions[syncPointCount++] = position / 16 * 16;
+        }
+
+        /**
+         * Adds keyframe after the last syncpoint, only the first keyframe after syncpoint is indexed.
+         */
+        void addKeyframe(int streamId, long pts) {
+            int count = keyframeCounts[streamId];
+            int syncPoint = syncPointCount - 1;
+            if (syncPoint < 0 || pts < 0) {
+                return;
+            }
+            if (count > 0 && (keyframeSyncPoints[streamId][count - 1] == syncPoint
+                    || keyframePts[streamId][count - 1] >= pts)) {
+                return;
+            }
+
+            if (count == keyframePts[streamId].length) {
+                keyframePts[streamId] = Arrays.copyOf(keyframePts[streamId], count * 2);
+                keyframeSyncPoints[streamId] = Arrays.copyOf(keyframeSyncPoints[streamId], count * 2);
+            }
+            keyframePts[streamId][count] = pts;
+            keyframeSyncPoints[streamId][count] = syncPoint;
+            keyframeCounts[streamId] = count + 1;
+        }
+
+        void setMaxPts(Timestamp maxPts) {
+            this.maxPts = maxPts;
+        }
+
+        /**
+         * @param endPosition end of file, it's added as the last syncpoint position, so keyframes after
+         *                    the last syncpoint can be written to index
+         */
+        NutIndex build(long endPosition) {
+            if (syncPointCount > 0) {
+                endPosition = Math.max(endPosition, (syncPointPositions[syncPointCount - 1] / 16 + 1) * 16);
+            }
+            addSyncPoint(endPosition);
+
+            long[][] resultPts = new long[keyframePts.length][];
+            int[][] resultSyncPoints = new int[keyframePts.length][];
+            for (int i = 0; i < keyframePts.length; i++) {
+                resultPts[i] = Arrays.copyOf(keyframePts[i], keyframeCounts[i]);
+                resultSyncPoints[i] = Arrays.copyOf(keyframeSyncPoints[i], keyframeCounts[i]);
+            }
+
+            return new NutIndex(maxPts, Arrays.copyOf(syncPointPositions, syncPointCount), resultPts,
+                    resultSyncPoints);
+        }
+    }
+}
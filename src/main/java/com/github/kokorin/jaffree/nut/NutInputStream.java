@@ -17,26 +17,54 @@
 
 package com.github.kokorin.jaffree.nut;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads NUT primitives from {@link InputStream} or {@link ReadableByteChannel}.
+ * <p>
+ * Data is read through internal {@link ByteBuffer}: primitives are decoded straight from its array and
+ * large byte arrays are read directly from the source. Reads block till requested data is available,
+ * so a slow producer doesn't break parsing.
+ */
 public class NutInputStream implements AutoCloseable {
-
     private final InputStream input;
-    private long position = 0;
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] array;
+    // stream position of the first byte in the buffer
+    private long bufferStart = 0;
+    private boolean eof = false;
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // unsigned 64-bit value takes at most 10 bytes
+    private static final int MAX_VALUE_LENGTH = 10;
 
     public NutInputStream(InputStream input) {
-        if (!(input instanceof BufferedInputStream)) {
-            input = new BufferedInputStream(input);
-        }
+        this(input, null, DEFAULT_BUFFER_SIZE);
+    }
 
+    public NutInputStream(ReadableByteChannel channel) {
+        this(null, channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    private NutInputStream(InputStream input, ReadableByteChannel channel, int bufferSize) {
         this.input = input;
+        this.channel = channel;
+        this.array = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(array);
+        // buffer is kept in read mode: unread data is between position and limit
+        this.buffer.limit(0);
     }
 
     public long getPosition() {
-        return position;
+        return bufferStart + buffer.position();
     }
 
     /**
@@ -45,20 +73,25 @@ public class NutInputStream implements AutoCloseable {
      * @return unsigned value
      */
     public long readValue() throws IOException {
-        long result = 0;
-
-        while (input.available() > 0) {
-            int tmp = input.read();
-            position++;
-
-            boolean hasMore = (tmp & 0x80) > 0;
-            if (hasMore)
-                result = (result << 7) + tmp - 0x80;
-            else
-                return (result << 7) + tmp;
+        if (buffer.remaining() < MAX_VALUE_LENGTH) {
+            return readValueSlow();
         }
 
-        return -1;
+        // fast path: value is decoded straight from the array without bounds and EOF checks
+        long result = 0;
+        int offset = buffer.position();
+        int end = offset + MAX_VALUE_LENGTH;
+        byte b;
+        do {
+            b = array[offset++];
+            result = (result << 7) | (b & 0x7F);
+        } while (b < 0 && offset < end);
+
+        if (b < 0) {
+            throw new IOException("Variable length value is longer than " + MAX_VALUE_LENGTH + " bytes");
+        }
+        buffer.position(offset);
+        return result;
     }
 
     /**
@@ -83,14 +116,8 @@ public class NutInputStream implements AutoCloseable {
      * @return long
      */
     public long readLong() throws IOException {
-        long result = 0;
-
-        for (int i = 0; i < 8; i++) {
-            result = (result << 8) + input.read();
-            position++;
-        }
-
-        return result;
+        require(8);
+        return buffer.getLong();
     }
 
     /**
@@ -99,28 +126,23 @@ public class NutInputStream implements AutoCloseable {
      *
      * @return int as long
      */
-    long readInt() throws IOException {
-        long result = 0;
-
-        for (int i = 0; i < 4; i++) {
-            result = (result << 8) + input.read();
-            position++;
-        }
-
-        return result;
+    public long readInt() throws IOException {
+        require(4);
+        return buffer.getInt() & 0xFFFFFFFFL;
     }
 
     /**
      * f(n)    (n fixed bits in big-endian order)
      * n == 8
      *
-     * @return byte
+     * @return byte or -1 if there is no more data
      */
     public int readByte() throws IOException {
-        int result = input.read();
-        position++;
+        if (!buffer.hasRemaining() && fill(1) < 1) {
+            return -1;
+        }
 
-        return result;
+        return buffer.get() & 0xFF;
     }
 
     /**
@@ -130,23 +152,38 @@ public class NutInputStream implements AutoCloseable {
      */
     public String readVariableString() throws IOException {
         byte[] bytes = readVariableBytes();
-        return new String(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     /**
      * Reads input till char \0 not found
      */
     public String readCString() throws IOException {
-        try (ByteArrayOutputStream buffer = new ByteArrayOutputStream(32)) {
-
-            int b;
-            while ((b = input.read()) != 0) {
-                buffer.write(b);
-                position++;
+        int start = buffer.position();
+        int offset = start;
+        while (true) {
+            if (offset == buffer.limit()) {
+                int read = offset - start;
+                if (read + 1 > array.length) {
+                    throw new IOException("C string is longer than " + array.length + " bytes");
+                }
+                if (fill(read + 1) < read + 1) {
+                    throw new EOFException("Unexpected end of stream inside C string");
+                }
+                // fill() may have moved data to the beginning of the buffer
+                start = buffer.position();
+                offset = start + read;
             }
-
-            return new String(buffer.toByteArray());
+            if (array[offset] == 0) {
+                break;
+            }
+            offset++;
         }
+
+        String result = new String(array, start, offset - start, StandardCharsets.UTF_8);
+        // terminating zero is consumed too
+        buffer.position(offset + 1);
+        return result;
     }
 
     /**
@@ -173,11 +210,11 @@ public class NutInputStream implements AutoCloseable {
      * @return next byte
      */
     public byte checkNextByte() throws IOException {
-        input.mark(1);
-        byte result = (byte) input.read();
-        input.reset();
+        if (!buffer.hasRemaining() && fill(1) < 1) {
+            return -1;
+        }
 
-        return result;
+        return array[buffer.position()];
     }
 
     /**
@@ -186,40 +223,241 @@ public class NutInputStream implements AutoCloseable {
      * @return next byte
      */
     public boolean hasMoreData() throws IOException {
-        input.mark(1);
-        int result = input.read();
-        input.reset();
-
-        return result != -1;
+        return buffer.hasRemaining() || fill(1) > 0;
     }
 
+    /**
+     * Reads exactly specified number of bytes.
+     *
+     * @param toRead number of bytes to read
+     * @return bytes or null if stream ends before
+     */
     public byte[] readBytes(long toRead) throws IOException {
         byte[] result = new byte[(int) toRead];
-        int start = 0;
-
-        while (start < toRead) {
-            long read = input.read(result, start, (int) toRead - start);
-            if (read == -1) {
-                return null;
-            }
-
-            position += read;
-            start += read;
+        if (!readFully(result, 0, result.length)) {
+            return null;
         }
-
         return result;
     }
 
     public void skipBytes(long toSkip) throws IOException {
+        if (toSkip > buffer.remaining() && channel instanceof SeekableByteChannel) {
+            // skip without reading, e.g. frame data in a file
+            SeekableByteChannel seekable = (SeekableByteChannel) channel;
+            long skipFromSource = toSkip - buffer.remaining();
+            long position = getPosition() + toSkip;
+            long available = seekable.size() - seekable.position();
+            if (skipFromSource > available) {
+                // the same as reading till the end
+                seekable.position(seekable.size());
+                bufferStart += buffer.limit() + available;
+                buffer.position(0);
+                buffer.limit(0);
+                eof = true;
+                throw new EOFException("Unexpected end of stream, " + (skipFromSource - available)
+                        + " bytes left to skip");
+            }
+            seekable.position(seekable.position() + skipFromSource);
+            bufferStart = position;
+            buffer.position(0);
+            buffer.limit(0);
+            return;
+        }
+
         while (toSkip > 0) {
-            long skipped = input.skip(toSkip);
-            position += skipped;
+            int available = fill(1);
+            if (available < 1) {
+                throw new EOFException("Unexpected end of stream, " + toSkip + " bytes left to skip");
+            }
+            int skipped = (int) Math.min(toSkip, available);
+            buffer.position(buffer.position() + skipped);
             toSkip -= skipped;
         }
     }
 
+    /**
+     * Positions stream at the specified position of the underlying {@link SeekableByteChannel}.
+     * After that {@link #getPosition()} returns the same value.
+     *
+     * @param position position in the channel
+     * @throws IOException if the source isn't {@link SeekableByteChannel} or seek fails
+     */
+    void seek(long position) throws IOException {
+        if (!(channel instanceof SeekableByteChannel)) {
+            throw new IOException("Seek requires SeekableByteChannel source");
+        }
+
+        ((SeekableByteChannel) channel).position(position);
+        bufferStart = position;
+        buffer.position(0);
+        buffer.limit(0);
+        eof = false;
+    }
+
     @Override
     public void close() throws IOException {
-        input.close();
+        if (channel != null) {
+            channel.close();
+        } else {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads bytes first from the buffer, then directly from the source to avoid extra copy.
+     *
+     * @return false if stream ends before all bytes are read
+     */
+    boolean readFully(byte[] dst, int offset, int length) throws IOException {
+        int fromBuffer = Math.min(length, buffer.remaining());
+        buffer.get(dst, offset, fromBuffer);
+        offset += fromBuffer;
+        length -= fromBuffer;
+
+        if (length > 0 && length < array.length / 2) {
+            int available = fill(length);
+            int count = Math.min(length, available);
+            buffer.get(dst, offset, count);
+            return count == length;
+        }
+
+        while (length > 0) {
+            int read = readSource(dst, offset, length);
+            if (read < 0) {
+                return false;
+            }
+            offset += read;
+            length -= read;
+            bufferStart += read;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads bytes to the buffer starting at its position, which is advanced by the number of bytes read.
+     * Destination must have at least {@code length} bytes remaining.
+     *
+     * @return false if stream ends before all bytes are read
+     */
+    boolean readFully(ByteBuffer dst, int length) throws IOException {
+        if (dst.hasArray()) {
+            int position = dst.position();
+            if (!readFully(dst.array(), dst.arrayOffset() + position, length)) {
+                return false;
+            }
+            dst.position(position + length);
+            return true;
+        }
+
+        int fromBuffer = Math.min(length, buffer.remaining());
+        dst.put(array, buffer.position(), fromBuffer);
+        buffer.position(buffer.position() + fromBuffer);
+        length -= fromBuffer;
+
+        if (channel != null && length >= array.length / 2) {
+            // large remainder is read directly to the destination
+            int limit = dst.limit();
+            dst.limit(dst.position() + length);
+            try {
+                while (dst.hasRemaining()) {
+                    int read = eof ? -1 : channel.read(dst);
+                    if (read < 0) {
+                        eof = true;
+                        return false;
+                    }
+                    bufferStart += read;
+                }
+            } finally {
+                dst.limit(limit);
+            }
+            return true;
+        }
+
+        while (length > 0) {
+            int available = fill(Math.min(length, array.length));
+            if (available < 1) {
+                return false;
+            }
+            int count = Math.min(length, available);
+            dst.put(array, buffer.position(), count);
+            buffer.position(buffer.position() + count);
+            length -= count;
+        }
+
+        return true;
+    }
+
+    /**
+     * Value near the end of the buffer is decoded byte by byte, so reader doesn't wait for bytes which
+     * producer hasn't sent yet.
+     */
+    private long readValueSlow() throws IOException {
+        long result = 0;
+        int b;
+        do {
+            b = readByte();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of stream inside variable length value");
+            }
+            result = (result << 7) | (b & 0x7F);
+        } while (b >= 0x80);
+
+        return result;
+    }
+
+    /**
+     * Requires at least specified number of bytes to be available in the buffer.
+     */
+    private void require(int count) throws IOException {
+        if (buffer.remaining() < count && fill(count) < count) {
+            throw new EOFException("Unexpected end of stream, " + count + " bytes required");
+        }
+    }
+
+    /**
+     * Reads from the source till the buffer contains at least specified number of bytes or stream ends.
+     *
+     * @return number of bytes available in the buffer
+     */
+    private int fill(int count) throws IOException {
+        if (buffer.remaining() >= count || eof) {
+            return buffer.remaining();
+        }
+
+        bufferStart += buffer.position();
+        buffer.compact();
+        try {
+            while (buffer.position() < count) {
+                int read = readSource(array, buffer.position(), buffer.remaining());
+                if (read < 0) {
+                    eof = true;
+                    break;
+                }
+                buffer.position(buffer.position() + read);
+            }
+        } finally {
+            buffer.flip();
+        }
+
+        return buffer.remaining();
+    }
+
+    private int readSource(byte[] dst, int offset, int length) throws IOException {
+        if (eof) {
+            return -1;
+        }
+
+        int read;
+        if (channel != null) {
+            read = channel.read(ByteBuffer.wrap(dst, offset, length));
+        } else {
+            read = input.read(dst, offset, length);
+        }
+
+        if (read < 0) {
+            eof = true;
+        }
+        return read;
     }
 }
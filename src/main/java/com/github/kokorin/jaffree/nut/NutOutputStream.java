@@ -17,21 +17,49 @@
 
 package com.github.kokorin.jaffree.nut;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Writes NUT primitives to {@link OutputStream} or {@link WritableByteChannel}.
+ * <p>
+ * Primitives are written to internal buffer, CRC is updated in bulk over buffered bytes only when it's
+ * requested or the buffer is flushed. Frame payload written with {@link #writeData(byte[])} isn't covered
+ * by any checksum, so it's excluded from CRC and large payloads are written directly to the target
+ * (together with buffered frame header by single gathering write if target supports it).
+ */
 public class NutOutputStream implements AutoCloseable {
     private final OutputStream output;
+    private final WritableByteChannel channel;
+    private final byte[] array;
+    private final ByteBuffer[] gather = new ByteBuffer[2];
     private final CRC32 crc32 = new CRC32();
+    private int count = 0;
+    // buffered bytes from this index haven't been added to CRC yet
+    private int crcFrom = 0;
     private long position = 0;
 
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // unsigned 64-bit value takes at most 10 bytes
+    private static final int MAX_VALUE_LENGTH = 10;
+
     public NutOutputStream(OutputStream output) {
-        if (!(output instanceof BufferedOutputStream)) {
-            output = new BufferedOutputStream(output);
-        }
+        this(output, null, DEFAULT_BUFFER_SIZE);
+    }
 
+    public NutOutputStream(WritableByteChannel channel) {
+        this(null, channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    private NutOutputStream(OutputStream output, WritableByteChannel channel, int bufferSize) {
         this.output = output;
+        this.channel = channel;
+        this.array = new byte[bufferSize];
     }
 
     public void writeValue(long value) throws IOException {
@@ -43,17 +71,13 @@ public class NutOutputStream implements AutoCloseable {
             }
         }
 
+        ensureCapacity(MAX_VALUE_LENGTH);
+        int start = count;
         for (i -= 7; i > 0; i -= 7) {
-            int b = (int) (0x80 | (value >> i));
-            output.write(b);
-            crc32.update(b);
-            position++;
+            array[count++] = (byte) (0x80 | (value >> i));
         }
-
-        int b = (int) (value & 0x7F);
-        output.write(b);
-        crc32.update(b);
-        position++;
+        array[count++] = (byte) (value & 0x7F);
+        position += count - start;
     }
 
     public void writeSignedValue(long signed) throws IOException {
@@ -68,31 +92,29 @@ public class NutOutputStream implements AutoCloseable {
     }
 
     public void writeLong(long value) throws IOException {
+        ensureCapacity(8);
         for (int i = 7; i >= 0; i--) {
-            int b = (int) ((value >> (8 * i)) & 0xFF);
-            output.write(b);
-            crc32.update(b);
-            position++;
+            array[count++] = (byte) (value >> (8 * i));
         }
+        position += 8;
     }
 
     public void writeInt(long value) throws IOException {
+        ensureCapacity(4);
         for (int i = 3; i >= 0; i--) {
-            int b = (int) ((value >> (8 * i)) & 0xFF);
-            output.write(b);
-            crc32.update(b);
-            position++;
+            array[count++] = (byte) (value >> (8 * i));
         }
+        position += 4;
     }
 
     public void writeByte(int value) throws IOException {
-        output.write(value);
-        crc32.update(value);
+        ensureCapacity(1);
+        array[count++] = (byte) value;
         position++;
     }
 
     public void writeVariablesString(String data) throws IOException{
-        writeVariableBytes(data.getBytes());
+        writeVariableBytes(data.getBytes(StandardCharsets.UTF_8));
     }
 
     public void writeVariableBytes(byte[] data) throws IOException{
@@ -107,21 +129,78 @@ public class NutOutputStream implements AutoCloseable {
     }
 
     public void writeCString(String data) throws IOException{
-        writeBytes(data.getBytes());
+        writeBytes(data.getBytes(StandardCharsets.UTF_8));
         writeByte(0);
     }
 
+    /**
+     * Writes bytes, which are covered by CRC (e.g. packet body).
+     *
+     * @param data bytes
+     */
     public void writeBytes(byte[] data) throws IOException {
-        output.write(data);
-        crc32.update(data);
+        if (data.length <= array.length - count) {
+            System.arraycopy(data, 0, array, count, data.length);
+            count += data.length;
+        } else {
+            flushBuffer();
+            crc32.update(data);
+            writeTarget(data, 0, data.length);
+        }
         position += data.length;
     }
 
+    /**
+     * Writes frame payload, which isn't covered by any checksum, so CRC isn't updated.
+     *
+     * @param data bytes
+     */
+    public void writeData(byte[] data) throws IOException {
+        writeData(data, 0, data.length);
+    }
+
+    /**
+     * Writes frame payload, which isn't covered by any checksum, so CRC isn't updated.
+     *
+     * @param data   bytes
+     * @param offset offset in array
+     * @param length number of bytes to write
+     */
+    public void writeData(byte[] data, int offset, int length) throws IOException {
+        updateCrc();
+
+        if (length <= array.length - count && length < array.length / 2) {
+            System.arraycopy(data, offset, array, count, length);
+            count += length;
+            crcFrom = count;
+        } else if (channel instanceof GatheringByteChannel) {
+            gather[0] = ByteBuffer.wrap(array, 0, count);
+            gather[1] = ByteBuffer.wrap(data, offset, length);
+            try {
+                while (gather[1].hasRemaining()) {
+                    ((GatheringByteChannel) channel).write(gather);
+                }
+            } finally {
+                gather[0] = null;
+                gather[1] = null;
+            }
+            count = 0;
+            crcFrom = 0;
+        } else {
+            flushBuffer();
+            writeTarget(data, offset, length);
+        }
+
+        position += length;
+    }
+
     public void resetCrc32() {
         crc32.reset();
+        crcFrom = count;
     }
 
     public void writeCrc32() throws IOException{
+        updateCrc();
         writeInt(crc32.getValue());
     }
 
@@ -130,11 +209,56 @@ public class NutOutputStream implements AutoCloseable {
     }
 
     public void flush() throws IOException {
-        output.flush();
+        flushBuffer();
+        if (output != null) {
+            output.flush();
+        }
     }
 
     @Override
     public void close() throws Exception {
-        output.close();
+        try {
+            flush();
+        } finally {
+            if (channel != null) {
+                channel.close();
+            } else {
+                output.close();
+            }
+        }
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (array.length - count < length) {
+            flushBuffer();
+        }
+    }
+
+    private void updateCrc() {
+        crc32.update(array, crcFrom, count - crcFrom);
+        crcFrom = count;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count == 0) {
+            return;
+        }
+
+        updateCrc();
+        writeTarget(array, 0, count);
+        count = 0;
+        crcFrom = 0;
+    }
+
+    private void writeTarget(byte[] data, int offset, int length) throws IOException {
+        if (channel == null) {
+            output.write(data, offset, length);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
     }
 }
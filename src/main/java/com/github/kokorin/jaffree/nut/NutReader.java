@@ -19,7 +19,10 @@ package com.github.kokorin.jaffree.nut;
 
 import com.github.kokorin.jaffree.Rational;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 public class NutReader {
@@ -29,6 +32,24 @@ public class NutReader {
     private StreamHeader[] streamHeaders;
     private Info[] infos;
     private long[] lastPts;
+    private TimebaseConverter timebaseConverter;
+    private final NutFrameHeader frameHeader = new NutFrameHeader();
+    // frame data (and elision header) of the current frame, which hasn't been read yet
+    private int frameDataLeft = 0;
+    private long elisionHeaderLeft = 0;
+    private long lastSyncPointPosition = -1;
+
+    private static final long KEYFRAME = FrameCode.Flag.KEYFRAME.code;
+    private static final long EOR = FrameCode.Flag.EOR.code;
+    private static final long CODED_PTS = FrameCode.Flag.CODED_PTS.code;
+    private static final long STREAM_ID = FrameCode.Flag.STREAM_ID.code;
+    private static final long SIZE_MSB = FrameCode.Flag.SIZE_MSB.code;
+    private static final long CHECKSUM = FrameCode.Flag.CHECKSUM.code;
+    private static final long RESERVED = FrameCode.Flag.RESERVED.code;
+    private static final long SM_DATA = FrameCode.Flag.SM_DATA.code;
+    private static final long HEADER_IDX = FrameCode.Flag.HEADER_IDX.code;
+    private static final long MATCH_TIME = FrameCode.Flag.MATCH_TIME.code;
+    private static final long CODED_FLAGS = FrameCode.Flag.CODED_FLAGS.code;
 
     public NutReader(NutInputStream input) {
         this.input = input;
@@ -51,6 +72,8 @@ public class NutReader {
 
     // package-private for tests
     private void readToFrame() throws IOException {
+        skipFrameData();
+
         if (input.getPosition() == 0) {
             String fileId = input.readCString();
             if (!Objects.equals(fileId, NutConst.FILE_ID)) {
@@ -59,11 +82,13 @@ public class NutReader {
         }
 
         while (input.checkNextByte() == (byte) 'N') {
+            long packetPosition = input.getPosition();
             PacketHeader packetHeader = readPacketHeader();
             long nextPacketPosition = input.getPosition() + packetHeader.forwardPtr;
 
             if (packetHeader.startcode == NutConst.MAIN_STARTCODE) {
                 mainHeader = readMainHeader();
+                timebaseConverter = new TimebaseConverter(mainHeader.timeBases);
                 if (streamHeaders == null) {
                     streamHeaders = new StreamHeader[mainHeader.streamCount];
                 }
@@ -89,21 +114,61 @@ public class NutReader {
                     }
                 }
             } else if (packetHeader.startcode == NutConst.SYNCPOINT_STARTCODE) {
+                lastSyncPointPosition = packetPosition;
                 SyncPoint syncPoint = readSyncPoint();
                 long pts = syncPoint.globalKeyPts.pts;
-                Rational ptsTimebase = mainHeader.timeBases[syncPoint.globalKeyPts.timebaseId];
-                for (int i = 0; i < mainHeader.timeBases.length; i++) {
-                    lastPts[i] = Util.convertTimestamp(pts, ptsTimebase, mainHeader.timeBases[i]);
+                int timebaseId = syncPoint.globalKeyPts.timebaseId;
+                for (int i = 0; i < lastPts.length; i++) {
+                    lastPts[i] = timebaseConverter.convert(pts, timebaseId, streamHeaders[i].timeBaseId);
                 }
             }
 
-            // Intentionally ignore these headers: INDEX (and reserved headers also)
+            // Intentionally ignore these headers: INDEX (it's read by NutFileReader) and reserved headers
 
             input.skipBytes(nextPacketPosition - input.getPosition() - 4);
             readPacketFooter();
         }
     }
 
+    /**
+     * Positions reader at a syncpoint of NUT file.
+     *
+     * @param syncPointPosition position of syncpoint startcode
+     * @throws IOException if underlying stream doesn't support seek or seek fails
+     */
+    void seek(long syncPointPosition) throws IOException {
+        frameDataLeft = 0;
+        elisionHeaderLeft = 0;
+        input.seek(syncPointPosition);
+    }
+
+    /**
+     * @return position of the last syncpoint read, or -1
+     */
+    long getLastSyncPointPosition() {
+        return lastSyncPointPosition;
+    }
+
+    /**
+     * Reads INDEX packet. Reader must be positioned at syncpoint with {@link #seek(long)} to read frames
+     * afterwards.
+     *
+     * @param position position of index startcode
+     * @return index or null if there is no INDEX packet at the position
+     * @throws IOException if read fails
+     */
+    NutIndex readIndex(long position) throws IOException {
+        readToFrame();
+        seek(position);
+
+        PacketHeader packetHeader = readPacketHeader();
+        if (packetHeader.startcode != NutConst.INDEX_STARTCODE) {
+            return null;
+        }
+
+        return NutIndex.read(input, mainHeader.streamCount, mainHeader.timeBases.length);
+    }
+
     /*
         packet_header
         startcode                           f(64)
@@ -259,7 +324,40 @@ public class NutReader {
         return new SyncPoint(pts, backPtrDiv16, transmitTs);
     }
 
+    /**
+     * Reads next frame.
+     * <p>
+     * Note: every frame is read to a new byte array, use {@link #readFrameHeader(NutFrameHeader)} to read
+     * frame data to a reusable buffer.
+     *
+     * @return frame or null if there are no more frames
+     * @throws IOException if read fails
+     */
     public NutFrame readFrame() throws IOException {
+        if (readFrameHeader(frameHeader) == null) {
+            return null;
+        }
+
+        byte[] data = new byte[frameHeader.getDataSize()];
+        if (!readFrameData(data, 0)) {
+            data = null;
+        }
+
+        return new NutFrame(frameHeader.getStreamId(), frameHeader.getPts(), data, frameHeader.getSideData(),
+                frameHeader.getMetaData(), frameHeader.isKeyframe(), frameHeader.isEor());
+    }
+
+    /**
+     * Reads header of next frame to the specified descriptor.
+     * <p>
+     * Frame data must be read with {@link #readFrameData(byte[], int)} or {@link #readFrameData(ByteBuffer)},
+     * otherwise it's skipped by the next call.
+     *
+     * @param header descriptor to fill, it can be reused for every frame
+     * @return the same descriptor or null if there are no more frames
+     * @throws IOException if read fails
+     */
+    public NutFrameHeader readFrameHeader(NutFrameHeader header) throws IOException {
         readToFrame();
 
         if (!input.hasMoreData()) {
@@ -269,7 +367,7 @@ public class NutReader {
         int frameCode = input.readByte();
         FrameCode frameTable = mainHeader.frameCodes[frameCode];
 
-        Set<FrameCode.Flag> flags = frameTable.flags;
+        long flags = frameTable.flagBits;
         int streamId = frameTable.streamId;
         final StreamHeader streamHeader;
         final long pts;
@@ -278,23 +376,22 @@ public class NutReader {
         long dataSizeLsb = frameTable.dataSizeLsb;
         long reservedValues = frameTable.reservedCount;
         long matchTimeDelta = frameTable.matchTimeDelta;
-        long elisionHeaderSize = 0;
+        // header_idx defaults to the value from frame code table
+        long elisionHeaderSize = mainHeader.elisionHeaderSize[(int) frameTable.headerIdx];
         DataItem[] sideData = null;
         DataItem[] metaData = null;
 
-        if (flags.contains(FrameCode.Flag.CODED_FLAGS)) {
-            flags = EnumSet.copyOf(flags);
-            Set<FrameCode.Flag> codedFlags = FrameCode.Flag.fromBitCode(input.readValue());
+        if ((flags & CODED_FLAGS) != 0) {
             // flags = flags XOR codedFlags
-            flags = FrameCode.Flag.xor(flags, codedFlags);
+            flags ^= input.readValue();
         }
 
-        if (flags.contains(FrameCode.Flag.STREAM_ID)) {
+        if ((flags & STREAM_ID) != 0) {
             streamId = (int) input.readValue();
         }
         streamHeader = streamHeaders[streamId];
 
-        if (flags.contains(FrameCode.Flag.CODED_PTS)) {
+        if ((flags & CODED_PTS) != 0) {
             /*
             If coded_pts < ( 1 << msb_pts_shift ) then it is an lsb
             pts, otherwise it is a full pts + ( 1 << msb_pts_shift ).
@@ -317,22 +414,22 @@ public class NutReader {
             pts = lastPts[streamId] + frameTable.ptsDelta;
         }
 
-        if (flags.contains(FrameCode.Flag.SIZE_MSB)) {
+        if ((flags & SIZE_MSB) != 0) {
             dataSizeMsb = input.readValue();
         }
 
         // MatchTimeDelta is present in NUT specification, but is absent in FFMPEG NUT implementation
-        if (flags.contains(FrameCode.Flag.MATCH_TIME)) {
+        if ((flags & MATCH_TIME) != 0) {
             matchTimeDelta = input.readSignedValue();
         }
 
         // ElisionHeaders are present in NUT specification, but are absent in FFMPEG NUT implementation
-        if (flags.contains(FrameCode.Flag.HEADER_IDX)) {
+        if ((flags & HEADER_IDX) != 0) {
             int elisionHeaderIdx = (int) input.readValue();
             elisionHeaderSize = mainHeader.elisionHeaderSize[elisionHeaderIdx];
         }
 
-        if (flags.contains(FrameCode.Flag.RESERVED)) {
+        if ((flags & RESERVED) != 0) {
             reservedValues = input.readValue();
         }
 
@@ -341,11 +438,11 @@ public class NutReader {
         }
 
         // checksum is ignored
-        if (flags.contains(FrameCode.Flag.CHECKSUM)) {
+        if ((flags & CHECKSUM) != 0) {
             long checksum = input.readInt();
         }
 
-        if (flags.contains(FrameCode.Flag.SM_DATA)) {
+        if ((flags & SM_DATA) != 0) {
             sideData = readDataItems();
             metaData = readDataItems();
         }
@@ -359,13 +456,86 @@ public class NutReader {
         long dataSizeWithElision = dataSizeLsb + dataSizeMsb * dataSizeMul;
         long dataSize = dataSizeWithElision - elisionHeaderSize;
 
-        byte[] data = input.readBytes(dataSize);
-        input.skipBytes(elisionHeaderSize);
-        boolean keyframe = flags.contains(FrameCode.Flag.KEYFRAME);
-        boolean eor = flags.contains(FrameCode.Flag.EOR) || dataSize == 0;
+        boolean keyframe = (flags & KEYFRAME) != 0;
+        boolean eor = (flags & EOR) != 0 || dataSize == 0;
 
         lastPts[streamId] = pts;
-        return new NutFrame(streamId, pts, data, sideData, metaData, keyframe, eor);
+        frameDataLeft = (int) dataSize;
+        elisionHeaderLeft = elisionHeaderSize;
+        header.set(streamId, pts, (int) dataSize, sideData, metaData, keyframe, eor);
+        return header;
+    }
+
+    /**
+     * Reads data of the frame, which header was read last, to the array.
+     *
+     * @param dst    destination array, must have space for {@link NutFrameHeader#getDataSize()} bytes
+     * @param offset offset in the array
+     * @return false if stream ends before all frame data is read
+     * @throws IOException if read fails
+     */
+    public boolean readFrameData(byte[] dst, int offset) throws IOException {
+        if (offset < 0 || dst.length - offset < frameDataLeft) {
+            throw new IndexOutOfBoundsException("Frame data size: " + frameDataLeft + ", array length: "
+                    + dst.length + ", offset: " + offset);
+        }
+
+        int length = frameDataLeft;
+        frameDataLeft = 0;
+        if (!input.readFully(dst, offset, length)) {
+            return false;
+        }
+        skipElisionHeader();
+        return true;
+    }
+
+    /**
+     * Reads data of the frame, which header was read last, to the buffer starting at its position.
+     * Buffer position is advanced by frame data size.
+     *
+     * @param dst destination buffer, must have at least {@link NutFrameHeader#getDataSize()} bytes remaining
+     * @return false if stream ends before all frame data is read
+     * @throws IOException if read fails
+     */
+    public boolean readFrameData(ByteBuffer dst) throws IOException {
+        if (dst.remaining() < frameDataLeft) {
+            throw new BufferOverflowException();
+        }
+
+        int length = frameDataLeft;
+        frameDataLeft = 0;
+        if (!input.readFully(dst, length)) {
+            return false;
+        }
+        skipElisionHeader();
+        return true;
+    }
+
+    /**
+     * Skips data of the frame, which header was read last, if it hasn't been read yet.
+     *
+     * @throws IOException if read fails
+     */
+    public void skipFrameData() throws IOException {
+        // frame without data can still have elision header
+        if (frameDataLeft == 0 && elisionHeaderLeft == 0) {
+            return;
+        }
+
+        long length = frameDataLeft + elisionHeaderLeft;
+        frameDataLeft = 0;
+        elisionHeaderLeft = 0;
+        try {
+            input.skipBytes(length);
+        } catch (EOFException e) {
+            // the same as truncated frame data
+        }
+    }
+
+    private void skipElisionHeader() throws IOException {
+        long length = elisionHeaderLeft;
+        elisionHeaderLeft = 0;
+        input.skipBytes(length);
     }
 
     private Info readInfo() throws IOException {
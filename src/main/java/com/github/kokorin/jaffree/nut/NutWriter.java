@@ -35,13 +35,47 @@ public class NutWriter {
     // true if last frame of the corresponding stream was EOR frame
     private boolean[] eor;
     private long lastSyncPointPosition = 0;
+    private FrameCodeSelector frameCodeSelector;
+    private TimebaseConverter timebaseConverter;
+    // pts and timebase of the last written non-EOR frame, used to check frame order
+    private long lastFramePts;
+    private int lastFrameTimebaseId = -1;
 
     private boolean initialized = false;
     private boolean closed = false;
 
     private long frameOrderingBufferMillis = 200;
-
-    private final List<TsFrame> frameOrderingBuffer = new ArrayList<>();
+    private boolean adaptiveFrameOrdering = false;
+
+    // Frames ordered by timestamp, frames with equal timestamps are kept in order of writing
+    private final PriorityQueue<TsFrame> frameOrderingBuffer = new PriorityQueue<>(64, new Comparator<TsFrame>() {
+        @Override
+        public int compare(TsFrame o1, TsFrame o2) {
+            int result = timebaseConverter.compare(o1.frame.pts, o1.timebaseId, o2.frame.pts, o2.timebaseId);
+            if (result != 0) {
+                return result;
+            }
+            return Long.compare(o1.sequence, o2.sequence);
+        }
+    });
+    private long frameSequence = 0;
+    // timestamps used by frame ordering buffer are in microseconds
+    private boolean hasFrames = false;
+    private long firstMicros;
+    // the latest timestamp of all buffered frames
+    private long maxMicros;
+    // the largest observed delay of a frame relative to the latest frame written before it
+    private long maxLatenessMicros = 0;
+
+    // adaptive frame ordering buffer uses full window till frames cover this duration
+    private static final long ADAPTIVE_WARM_UP_MICROS = 1_000_000;
+
+    private static final long EOR = Flag.EOR.code;
+    private static final long CODED_PTS = Flag.CODED_PTS.code;
+    private static final long STREAM_ID = Flag.STREAM_ID.code;
+    private static final long SIZE_MSB = Flag.SIZE_MSB.code;
+    private static final long CHECKSUM = Flag.CHECKSUM.code;
+    private static final long CODED_FLAGS = Flag.CODED_FLAGS.code;
 
     private static final long MAJOR_VERSION = 3;
     private static final long MINOR_VERSION = 0;
@@ -64,6 +98,7 @@ public class NutWriter {
                 new long[0],
                 EnumSet.noneOf(MainHeader.Flag.class)
         );
+        this.timebaseConverter = new TimebaseConverter(timebases);
     }
 
     public void setStreamHeaders(StreamHeader[] streamHeaders) {
@@ -89,6 +124,21 @@ public class NutWriter {
         this.frameOrderingBufferMillis = frameOrderingBufferMillis;
     }
 
+    /**
+     * Enables adaptive frame ordering buffer: frame ordering buffer size becomes an upper limit and actual
+     * buffer is twice the largest delay of frames observed so far. This reduces latency and memory when
+     * frames are almost ordered.
+     * <p>
+     * Full buffer is used during the first second of media. If a frame arrives later than the adaptive
+     * buffer allows, writing fails with "Unordered frames" error. By default disabled.
+     *
+     * @param adaptiveFrameOrdering true to enable adaptive frame ordering buffer
+     * @see #setFrameOrderingBufferMillis(long)
+     */
+    public void setAdaptiveFrameOrdering(boolean adaptiveFrameOrdering) {
+        this.adaptiveFrameOrdering = adaptiveFrameOrdering;
+    }
+
     private void initialize() throws IOException {
         if (initialized) {
             return;
@@ -96,6 +146,7 @@ public class NutWriter {
 
         lastPts = new long[mainHeader.streamCount];
         eor = new boolean[mainHeader.streamCount];
+        frameCodeSelector = new FrameCodeSelector(mainHeader.frameCodes, mainHeader.streamCount);
 
         output.writeCString(NutConst.FILE_ID);
         writeMainHeader();
@@ -277,50 +328,60 @@ public class NutWriter {
             throw new RuntimeException("NutWriter is ");
         }
 
-        StreamHeader stream = streamHeaders[frame.streamId];
-        Rational timestamp = mainHeader.timeBases[stream.timeBaseId].multiply(frame.pts);
-        frameOrderingBuffer.add(new TsFrame(timestamp, frame));
-        Collections.sort(frameOrderingBuffer, TsFrame.COMPARATOR);
+        int timebaseId = streamHeaders[frame.streamId].timeBaseId;
+        long micros = timebaseConverter.toMicros(frame.pts, timebaseId);
+        if (!hasFrames) {
+            hasFrames = true;
+            firstMicros = micros;
+            maxMicros = micros;
+        } else if (micros > maxMicros) {
+            maxMicros = micros;
+        } else if (maxMicros - micros > maxLatenessMicros) {
+            maxLatenessMicros = maxMicros - micros;
+        }
+        frameOrderingBuffer.add(new TsFrame(timebaseId, frameSequence++, frame));
 
-        Rational lastFrameTimestamp = frameOrderingBuffer.get(frameOrderingBuffer.size() - 1).timestamp;
-        // Check if we have to remove some frames from buffer and to write them to ouput
-        Iterator<TsFrame> frameIterator = frameOrderingBuffer.iterator();
-        while (frameIterator.hasNext()) {
-            TsFrame tsFrame = frameIterator.next();
+        // Write frames, which are older than the latest one by more than ordering window
+        long windowMicros = getFrameOrderingWindowMicros();
+        while (!frameOrderingBuffer.isEmpty()) {
+            TsFrame tsFrame = frameOrderingBuffer.peek();
             // current frame can't be written yet, as well as all subsequent
-            if (lastFrameTimestamp.subtract(tsFrame.timestamp).lessThanOrEqual(new Rational(frameOrderingBufferMillis, 1000))) {
+            if (maxMicros - timebaseConverter.toMicros(tsFrame.frame.pts, tsFrame.timebaseId) <= windowMicros) {
                 break;
             }
 
-            writeFrameInternal(tsFrame.frame);
-            frameIterator.remove();
+            writeFrameInternal(frameOrderingBuffer.poll().frame);
+        }
+    }
+
+    private long getFrameOrderingWindowMicros() {
+        long windowMicros = frameOrderingBufferMillis * 1000;
+        if (!adaptiveFrameOrdering || maxMicros - firstMicros < ADAPTIVE_WARM_UP_MICROS) {
+            return windowMicros;
         }
+
+        return Math.min(2 * maxLatenessMicros, windowMicros);
     }
 
     private void writeFrameInternal(NutFrame frame) throws IOException {
         initialize();
 
+        StreamHeader sc = streamHeaders[frame.streamId];
+
         // EOR frames by specification use TS of the previous frame in the same stream.
         // TODO do we need this check?
         if (!frame.eor) {
-            Rational maxTs = Rational.ZERO;
-            for (int i = 0; i < mainHeader.timeBases.length; i++) {
-                Rational ts = mainHeader.timeBases[i].multiply(lastPts[i]);
-                if (ts.greaterThan(maxTs)) {
-                    maxTs = ts;
-                }
-            }
-            StreamHeader steam = streamHeaders[frame.streamId];
-            Rational framedTs = mainHeader.timeBases[steam.timeBaseId].multiply(frame.pts);
-            if (framedTs.lessThan(maxTs)) {
+            if (lastFrameTimebaseId != -1
+                    && timebaseConverter.compare(frame.pts, sc.timeBaseId, lastFramePts, lastFrameTimebaseId) < 0) {
+                Rational maxTs = mainHeader.timeBases[lastFrameTimebaseId].multiply(lastFramePts);
+                Rational framedTs = mainHeader.timeBases[sc.timeBaseId].multiply(frame.pts);
                 throw new RuntimeException("Unordered frames! Try to increase frameOrderingBufferMillis. maxTs: " + maxTs + ", but current: " + framedTs);
             }
+            lastFramePts = frame.pts;
+            lastFrameTimebaseId = sc.timeBaseId;
         }
 
-        StreamHeader sc = streamHeaders[frame.streamId];
-
-        int i, ftnum = -1, size = 0, msb_pts = (1 << sc.msbPtsShift);
-        Set<Flag> codedFlags = Collections.emptySet();
+        int msb_pts = (1 << sc.msbPtsShift);
         long coded_pts, pts_delta = frame.pts - lastPts[frame.streamId];
         boolean checksum = false;
 
@@ -337,97 +398,16 @@ public class NutWriter {
             checksum = true;
         }
 
-        for (i = 0; i < 256; i++) {
-            int len = 1; // frame code
-            FrameCode ft = mainHeader.frameCodes[i];
-
-            Set<Flag> flags = ft.flags;
-            if (flags.contains(Flag.INVALID)) {
-                continue;
-            }
-
-            Set<Flag> fdFlags = EnumSet.noneOf(Flag.class);
-            if (frame.keyframe) {
-                fdFlags.add(Flag.KEYFRAME);
-            }
-            if (frame.eor) {
-                fdFlags.add(Flag.EOR);
-            }
-
-            if (flags.contains(Flag.CODED_FLAGS)) {
-                flags = EnumSet.copyOf(fdFlags);
-
-                if (ft.streamId != frame.streamId) {
-                    flags.add(Flag.STREAM_ID);
-                }
-                if (ft.ptsDelta != pts_delta) {
-                    flags.add(Flag.CODED_PTS);
-                }
-                if (ft.dataSizeLsb != frame.data.length) {
-                    flags.add(Flag.SIZE_MSB);
-                }
-                if (checksum) {
-                    flags.add(Flag.CHECKSUM);
-                }
-                flags.add(Flag.CODED_FLAGS);
-            }
-
-
-            // if ((flags ^ fd -> flags) & NUT_API_FLAGS) continue;
-            Set<Flag> xor = Flag.xor(flags, fdFlags);
-            if (xor.contains(Flag.KEYFRAME) || xor.contains(Flag.EOR)) {
-                continue;
-            }
-
-            if (!flags.contains(Flag.STREAM_ID) && ft.streamId != frame.streamId) {
-                continue;
-            }
-
-            if (!flags.contains(Flag.CODED_PTS) && ft.ptsDelta != pts_delta) {
-                continue;
-            }
-
-            if (flags.contains(Flag.SIZE_MSB)) {
-                if ((frame.data.length - ft.dataSizeLsb) % ft.dataSizeMul != 0) {
-                    continue;
-                }
-            } else {
-                if (ft.dataSizeLsb != frame.data.length) {
-                    continue;
-                }
-            }
-
-            if (!flags.contains(Flag.CHECKSUM) && checksum) {
-                continue;
-            }
-
-            // it doesn't fully follow specification, but is simple enough
-            if (flags.contains(Flag.CODED_FLAGS)) {
-                len += 8;
-            }
-            if (flags.contains(Flag.STREAM_ID)) {
-                len += 8;
-            }
-            if (flags.contains(Flag.CODED_PTS)) {
-                len += 8;
-            }
-            if (flags.contains(Flag.SIZE_MSB)) {
-                len += 8;
-            }
-            if (flags.contains(Flag.CHECKSUM)) {
-                len += 4;
-            }
-
-            if (size == 0 || len < size) {
-                ftnum = i;
-                codedFlags = flags;
-                size = len;
-            }
-        }
-
-        if (ftnum == -1) {
+        long selected = frameCodeSelector.select(frame.streamId, frame.keyframe, frame.eor, checksum,
+                frame.data.length, pts_delta);
+        if (selected == -1) {
             throw new IllegalArgumentException("Can't find appropriate FrameCode for " + frame);
         }
+        int ftnum = (int) (selected & 0xFF);
+        long codedFlags = selected >>> 8;
+        // the same estimation as used by FrameCodeSelector
+        int size = 1 + Long.bitCount(codedFlags & (CODED_FLAGS | STREAM_ID | CODED_PTS | SIZE_MSB)) * 8
+                + ((codedFlags & CHECKSUM) != 0 ? 4 : 0);
 
         // Distance between synpoints (in bytes) should be no more that maxDistance
         if (lastSyncPointPosition + mainHeader.maxDistance < output.getPosition() + size + frame.data.length) {
@@ -437,36 +417,33 @@ public class NutWriter {
         output.resetCrc32();
         output.writeByte(ftnum);
         FrameCode ft = mainHeader.frameCodes[ftnum];
-        if (codedFlags.contains(Flag.CODED_FLAGS)) {
-            Set<Flag> codedXor = Flag.xor(codedFlags, ft.flags);
-            output.writeValue(Flag.toBitCode(codedXor));
+        if ((codedFlags & CODED_FLAGS) != 0) {
+            output.writeValue(codedFlags ^ ft.flagBits);
         }
-        if (codedFlags.contains(Flag.STREAM_ID)) {
+        if ((codedFlags & STREAM_ID) != 0) {
             output.writeValue(frame.streamId);
         }
-        if (codedFlags.contains(Flag.CODED_PTS)) {
+        if ((codedFlags & CODED_PTS) != 0) {
             output.writeValue(coded_pts);
         }
-        if (codedFlags.contains(Flag.SIZE_MSB)) {
+        if ((codedFlags & SIZE_MSB) != 0) {
             output.writeValue((frame.data.length - ft.dataSizeLsb) / ft.dataSizeMul);
         }
-        if (codedFlags.contains(Flag.CHECKSUM)) {
+        if ((codedFlags & CHECKSUM) != 0) {
             output.writeCrc32();
         }
 
         // TODO elision headers?
-        output.writeBytes(frame.data);
+        // frame checksum covers only frame header, payload is written without CRC
+        output.writeData(frame.data);
 
         lastPts[frame.streamId] = frame.pts;
-        eor[frame.streamId] = codedFlags.contains(Flag.EOR);
+        eor[frame.streamId] = (codedFlags & EOR) != 0;
     }
 
     public void writeFooter() throws Exception {
         // writeEorFrame uses lastPts, it is updated by writeFrameInternal
-        for (TsFrame tsFrame : frameOrderingBuffer) {
-            writeFrameInternal(tsFrame.frame);
-        }
-        frameOrderingBuffer.clear();
+        flushFrameOrderingBuffer();
 
         for (int streamId = 0; streamId < eor.length; streamId++) {
             if (!eor[streamId]) {
@@ -474,10 +451,7 @@ public class NutWriter {
             }
         }
 
-        for (TsFrame tsFrame : frameOrderingBuffer) {
-            writeFrameInternal(tsFrame.frame);
-        }
-        frameOrderingBuffer.clear();
+        flushFrameOrderingBuffer();
 
         writeMainHeader();
         for (StreamHeader streamHeader : streamHeaders) {
@@ -489,6 +463,13 @@ public class NutWriter {
         closed = true;
     }
 
+    private void flushFrameOrderingBuffer() throws IOException {
+        TsFrame tsFrame;
+        while ((tsFrame = frameOrderingBuffer.poll()) != null) {
+            writeFrameInternal(tsFrame.frame);
+        }
+    }
+
     private void writeEorFrame(int streamId) throws IOException {
         NutFrame frame = new NutFrame(streamId, lastPts[streamId], new byte[0], null, null, true, true);
         writeFrame(frame);
@@ -513,25 +494,22 @@ public class NutWriter {
     }
 
     private void writeSyncPoint() throws IOException {
+        // the latest of last pts of all streams
         long maxPts = lastPts[0];
-        int maxI = 0;
-        for (int i = 1; i < mainHeader.timeBases.length; i++) {
-            long pts = Util.convertTimestamp(lastPts[i], mainHeader.timeBases[i], mainHeader.timeBases[maxI]);
-            if (pts > maxPts) {
+        int maxTimebaseId = streamHeaders[0].timeBaseId;
+        for (int i = 1; i < lastPts.length; i++) {
+            int timebaseId = streamHeaders[i].timeBaseId;
+            if (timebaseConverter.compare(lastPts[i], timebaseId, maxPts, maxTimebaseId) > 0) {
                 maxPts = lastPts[i];
-                maxI = i;
+                maxTimebaseId = timebaseId;
             }
         }
-        Timestamp globalKeyPts = new Timestamp(maxI, maxPts);
+        Timestamp globalKeyPts = new Timestamp(maxTimebaseId, maxPts);
         long backPtr = (output.getPosition() - lastSyncPointPosition) / 16;
         SyncPoint syncPoint = new SyncPoint(globalKeyPts, backPtr);
 
-        for (int i = 0; i < mainHeader.timeBases.length; i++) {
-            if (i == maxI) {
-                continue;
-            }
-            long pts = Util.convertTimestamp(maxPts, mainHeader.timeBases[maxI], mainHeader.timeBases[i]);
-            lastPts[i] = pts;
+        for (int i = 0; i < lastPts.length; i++) {
+            lastPts[i] = timebaseConverter.convert(maxPts, maxTimebaseId, streamHeaders[i].timeBaseId);
         }
 
         buffer.reset();
@@ -610,18 +588,14 @@ public class NutWriter {
 
 
     private static class TsFrame {
-        public final Rational timestamp;
+        public final int timebaseId;
+        // order of writing, keeps frames with equal timestamps in order
+        public final long sequence;
         public final NutFrame frame;
 
-        private static final Comparator<TsFrame> COMPARATOR = new Comparator<TsFrame>() {
-            @Override
-            public int compare(TsFrame o1, TsFrame o2) {
-                return o1.timestamp.compareTo(o2.timestamp);
-            }
-        };
-
-        public TsFrame(Rational timestamp, NutFrame frame) {
-            this.timestamp = timestamp;
+        public TsFrame(int timebaseId, long sequence, NutFrame frame) {
+            this.timebaseId = timebaseId;
+            this.sequence = sequence;
             this.frame = frame;
         }
     }
@@ -0,0 +1,126 @@
+/*
+ *    Copyright  2017 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.nut;
+
+import com.github.kokorin.jaffree.Rational;
+
+/**
+ * Converts and compares timestamps in NUT timebases.
+ * <p>
+ * Scale factors for every pair of timebases are calculated once. Conversion and comparison are exact
+ * even if intermediate products exceed 64 bits (e.g. many hours at 1/90000 compared with 1/48000)
+ * and don't create any objects.
+ */
+public class TimebaseConverter {
+    private final int timebaseCount;
+    // pts in timebase i equals pts * multipliers[i * timebaseCount + j] / divisors[i * timebaseCount + j]
+    // in timebase j, both factors are reduced
+    private final long[] multipliers;
+    private final long[] divisors;
+    // the same for conversion to microseconds
+    private final long[] microsMultipliers;
+    private final long[] microsDivisors;
+
+    private static final Rational MICROSECOND = new Rational(1, 1_000_000);
+
+    public TimebaseConverter(Rational[] timebases) {
+        this.timebaseCount = timebases.length;
+        this.multipliers = new long[timebaseCount * timebaseCount];
+        this.divisors = new long[timebaseCount * timebaseCount];
+        this.microsMultipliers = new long[timebaseCount];
+        this.microsDivisors = new long[timebaseCount];
+
+        for (int i = 0; i < timebaseCount; i++) {
+            if (timebases[i].numerator <= 0) {
+                throw new IllegalArgumentException("Timebase must be positive: " + timebases[i]);
+            }
+        }
+
+        long[] factors = new long[2];
+        for (int i = 0; i < timebaseCount; i++) {
+            for (int j = 0; j < timebaseCount; j++) {
+                scaleFactors(timebases[i], timebases[j], factors);
+                multipliers[i * timebaseCount + j] = factors[0];
+                divisors[i * timebaseCount + j] = factors[1];
+            }
+
+            scaleFactors(timebases[i], MICROSECOND, factors);
+            microsMultipliers[i] = factors[0];
+            microsDivisors[i] = factors[1];
+        }
+    }
+
+    /**
+     * Converts pts from one timebase to another, rounding toward zero.
+     *
+     * @param pts            pts in timebase {@code timebaseIdFrom}
+     * @param timebaseIdFrom timebase id to convert from
+     * @param timebaseIdTo   timebase id to convert to
+     * @return pts in timebase {@code timebaseIdTo}
+     * @throws ArithmeticException if the result overflows a long
+     */
+    public long convert(long pts, int timebaseIdFrom, int timebaseIdTo) {
+        int pair = timebaseIdFrom * timebaseCount + timebaseIdTo;
+        return Util.multiplyDivide(pts, multipliers[pair], divisors[pair]);
+    }
+
+    /**
+     * Compares two timestamps.
+     *
+     * @param pts1        the first pts
+     * @param timebaseId1 timebase id of the first pts
+     * @param pts2        the second pts
+     * @param timebaseId2 timebase id of the second pts
+     * @return the value {@code 0} if timestamps are equal; a value less than {@code 0} if the first timestamp
+     * is earlier; and a value greater than {@code 0} if the first timestamp is later
+     */
+    public int compare(long pts1, int timebaseId1, long pts2, int timebaseId2) {
+        if (timebaseId1 == timebaseId2) {
+            return Long.compare(pts1, pts2);
+        }
+
+        int pair = timebaseId1 * timebaseCount + timebaseId2;
+        return Util.compareProducts(pts1, multipliers[pair], pts2, divisors[pair]);
+    }
+
+    /**
+     * Converts pts to microseconds, rounding toward zero.
+     *
+     * @param pts        pts
+     * @param timebaseId timebase id
+     * @return timestamp in microseconds
+     * @throws ArithmeticException if the result overflows a long
+     */
+    public long toMicros(long pts, int timebaseId) {
+        return Util.multiplyDivide(pts, microsMultipliers[timebaseId], microsDivisors[timebaseId]);
+    }
+
+    /**
+     * Calculates reduced multiplier and divisor to convert pts from one timebase to another.
+     */
+    private static void scaleFactors(Rational from, Rational to, long[] result) {
+        long numeratorGcd = Util.gcd(from.numerator, to.numerator);
+        long denominatorGcd = Util.gcd(from.denominator, to.denominator);
+        long multiplier = Math.multiplyExact(from.numerator / numeratorGcd, to.denominator / denominatorGcd);
+        long divisor = Math.multiplyExact(from.denominator / denominatorGcd, to.numerator / numeratorGcd);
+
+        long gcd = Util.gcd(multiplier, divisor);
+        result[0] = multiplier / gcd;
+        result[1] = divisor / gcd;
+    }
+}
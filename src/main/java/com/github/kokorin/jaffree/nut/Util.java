@@ -17,6 +17,7 @@
 
 package com.github.kokorin.jaffree.nut;
 
+import com.github.kokorin.jaffree.LongMath;
 import com.github.kokorin.jaffree.Rational;
 
 import static java.lang.Long.MIN_VALUE;
@@ -45,12 +46,76 @@ public class Util {
     }
 
 
+    /**
+     * @see LongMath#multiplyHigh(long, long)
+     */
+    public static long multiplyHigh(long x, long y) {
+        return LongMath.multiplyHigh(x, y);
+    }
+
+    /**
+     * @see LongMath#compareProducts(long, long, long, long)
+     */
+    public static int compareProducts(long a, long b, long c, long d) {
+        return LongMath.compareProducts(a, b, c, d);
+    }
+
+    /**
+     * Calculates {@code value * multiplier / divisor} rounding toward zero, intermediate product may
+     * exceed 64 bits.
+     *
+     * @param value      value
+     * @param multiplier multiplier
+     * @param divisor    divisor, must be positive
+     * @return the result
+     * @throws ArithmeticException if the result overflows a long
+     */
+    public static long multiplyDivide(long value, long multiplier, long divisor) {
+        long low = value * multiplier;
+        long high = multiplyHigh(value, multiplier);
+        if (high == (low >> 63)) {
+            // product fits in a long
+            return low / divisor;
+        }
+
+        boolean negative = high < 0;
+        if (negative) {
+            low = -low;
+            high = ~high + (low == 0 ? 1 : 0);
+        }
+        if (compareUnsigned(high, divisor) >= 0) {
+            throw new ArithmeticException("long overflow");
+        }
+
+        // unsigned 128 by 64 bit long division, remainder is always less than divisor
+        long remainder = high;
+        long quotient = 0;
+        for (int i = 63; i >= 0; i--) {
+            remainder = (remainder << 1) | ((low >>> i) & 1);
+            quotient <<= 1;
+            if (compareUnsigned(remainder, divisor) >= 0) {
+                remainder -= divisor;
+                quotient |= 1;
+            }
+        }
+        if (quotient < 0) {
+            throw new ArithmeticException("long overflow");
+        }
+
+        return negative ? -quotient : quotient;
+    }
+
+    /**
+     * @see LongMath#gcd(long, long)
+     */
+    public static long gcd(long a, long b) {
+        return LongMath.gcd(a, b);
+    }
+
     public static long convertTimestamp(long pts, Rational timeBaseFrom, Rational timeBaseTo) {
-        long ln = timeBaseFrom.numerator * pts;
-        long sn = timeBaseTo.denominator;
-        long d1 = timeBaseFrom.denominator;
-        long d2 = timeBaseTo.numerator;
-        return (ln / d1 * sn + ln % d1 * sn / d1) / d2;
+        long numerator = Math.multiplyExact(timeBaseFrom.numerator, timeBaseTo.denominator);
+        long denominator = Math.multiplyExact(timeBaseFrom.denominator, timeBaseTo.numerator);
+        return multiplyDivide(pts, numerator, denominator);
     }
 
     public static long toMillis(long pts, Rational timebase) {
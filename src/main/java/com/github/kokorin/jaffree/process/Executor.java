@@ -23,24 +23,51 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Executes helper {@link Runnable}s (std readers, socket negotiators) in parallel with a process.
+ * <p>
+ * By default every helper gets its own daemon thread. If {@link ExecutorService} is provided,
+ * helpers are submitted to it instead, so threads can be shared between many processes
+ * (see {@link ExecutorServices}).
+ */
 public class Executor {
     private final Thread starter;
     private final String contextName;
+    private final ExecutorService executorService;
 
     private final List<Exception> exceptions = new CopyOnWriteArrayList<>();
-    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private final List<Task> tasks = new CopyOnWriteArrayList<>();
     private final AtomicInteger runningCounter = new AtomicInteger();
+    private final Object completionLock = new Object();
+    private final Object starterLock = new Object();
     private final AtomicBoolean starterInterrupted = new AtomicBoolean();
+    // guarded by starterLock, true if starter's interruption flag has been set by a helper and not consumed yet
+    private boolean starterInterruptionPending = false;
     private volatile boolean stopped = false;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Executor.class);
 
     public Executor(String contextName) {
+        this(contextName, null);
+    }
+
+    /**
+     * Creates Executor.
+     *
+     * @param contextName     context name to prepend thread names with
+     * @param executorService service to execute helpers with, null to start new thread per helper
+     */
+    public Executor(String contextName, ExecutorService executorService) {
         this.starter = Thread.currentThread();
         this.contextName = contextName;
+        this.executorService = executorService;
     }
 
     /**
@@ -57,34 +84,27 @@ public class Executor {
         }
 
         final Thread starter = Thread.currentThread();
+        final Task task = new Task(getThreadName(name), runnable, starter);
 
-        Thread thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                LOGGER.debug("{} thread has started", name);
-                runningCounter.incrementAndGet();
-                try {
-                    runnable.run();
-                } catch (Exception e) {
-                    LOGGER.debug("Exception in thread {}, collecting for later report. Message: {}", name, e.getMessage());
-                    exceptions.add(e);
-
-                    // Starter thread MUST NOT be interrupted multiple times,
-                    // otherwise main thread may be marked for interruption after exiting ProcessHandler logic.
-                    if (!stopped && starterInterrupted.compareAndSet(false, true)) {
-                        LOGGER.warn("Interrupting starter thread ({}) because of exception: {}", starter.getName(), e.getMessage());
-                        starter.interrupt();
-                    }
-                } finally {
-                    runningCounter.decrementAndGet();
-                    LOGGER.debug("{} thread has finished", name);
-                }
-            }
-        }, getThreadName(name));
-        thread.setDaemon(true);
-        thread.start();
+        // Counter is incremented before submitting: with a thread pool a task may wait in a queue
+        // for a while, and it still must be considered as running
+        runningCounter.incrementAndGet();
+        tasks.add(task);
+
+        if (executorService == null) {
+            Thread thread = new Thread(task, task.name);
+            thread.setDaemon(true);
+            thread.start();
+            return;
+        }
 
-        threads.add(thread);
+        try {
+            task.future = executorService.submit(task);
+        } catch (RejectedExecutionException e) {
+            tasks.remove(task);
+            onTaskFinished();
+            throw new RuntimeException("Failed to execute " + task.name, e);
+        }
     }
 
     public Exception getException() {
@@ -101,13 +121,30 @@ public class Executor {
     }
 
     public void stop() {
-        stopped = true;
-        LOGGER.debug("Stopping execution");
-        for (Thread thread : threads) {
-            if (thread.isAlive() && !thread.isInterrupted()) {
-                LOGGER.warn("Interrupting ALIVE thread: {}", thread.getName());
-                thread.interrupt();
+        synchronized (starterLock) {
+            stopped = true;
+
+            // Starter thread may have been interrupted by a helper after it had finished waiting,
+            // such interruption MUST NOT outlive execution. Interruption from other sources is kept.
+            if (starterInterruptionPending && Thread.currentThread() == starter && Thread.interrupted()) {
+                LOGGER.debug("Cleared starter thread interruption");
             }
+            starterInterruptionPending = false;
+        }
+
+        LOGGER.debug("Stopping execution");
+        for (Task task : tasks) {
+            task.interrupt();
+        }
+    }
+
+    /**
+     * Must be invoked by starter thread after it has caught {@link InterruptedException}:
+     * interruption caused by a helper (if any) has been consumed and must not be cleared by {@link #stop()}.
+     */
+    void onStarterInterrupted() {
+        synchronized (starterLock) {
+            starterInterruptionPending = false;
         }
     }
 
@@ -115,17 +152,51 @@ public class Executor {
         return runningCounter.get() > 0;
     }
 
+    /**
+     * Blocks until all executed helpers have finished, or the timeout occurs,
+     * or the current thread is interrupted, whichever happens first.
+     * <p>
+     * Unlike polling {@link #isRunning()} this method returns as soon as the last helper finishes.
+     *
+     * @param timeout maximum time to wait
+     * @param unit    time unit of the timeout argument
+     * @return true if all helpers have finished, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (completionLock) {
+            while (isRunning()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(completionLock, remaining);
+            }
+        }
+
+        return true;
+    }
+
     public List<String> getRunningThreadNames() {
         List<String> result = new ArrayList<>();
-        for (Thread thread : threads) {
-            if (thread.isAlive() && !thread.isInterrupted()) {
-                result.add(thread.getName());
+        for (Task task : tasks) {
+            if (!task.finished) {
+                result.add(task.name);
             }
         }
 
         return result;
     }
 
+    private void onTaskFinished() {
+        if (runningCounter.decrementAndGet() == 0) {
+            synchronized (completionLock) {
+                completionLock.notifyAll();
+            }
+        }
+    }
+
     private String getThreadName(String name) {
         if (contextName == null) {
             return name;
@@ -133,4 +204,98 @@ public class Executor {
 
         return contextName + "-" + name;
     }
+
+    private class Task implements Runnable {
+        private final String name;
+        private final Runnable runnable;
+        private final Thread starter;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile Thread thread;
+        private volatile Future<?> future;
+        private volatile boolean finished = false;
+
+        Task(String name, Runnable runnable, Thread starter) {
+            this.name = name;
+            this.runnable = runnable;
+            this.starter = starter;
+        }
+
+        @Override
+        public void run() {
+            Thread thread = Thread.currentThread();
+            // started and thread are set together, so interrupt() either cancels the task or sees its thread
+            synchronized (this) {
+                if (!started.compareAndSet(false, true)) {
+                    // Task has been stopped before it was started
+                    return;
+                }
+                this.thread = thread;
+            }
+            if (stopped) {
+                LOGGER.debug("Executor has been stopped before {} thread has started", name);
+                synchronized (this) {
+                    finished = true;
+                    this.thread = null;
+                }
+                onTaskFinished();
+                return;
+            }
+
+            // Pooled threads are renamed for the time of execution to keep logs readable
+            String threadName = thread.getName();
+            thread.setName(name);
+
+            LOGGER.debug("{} thread has started", name);
+            try {
+                runnable.run();
+            } catch (Exception e) {
+                LOGGER.debug("Exception in thread {}, collecting for later report. Message: {}", name, e.getMessage());
+                exceptions.add(e);
+
+                // Starter thread MUST NOT be interrupted multiple times,
+                // otherwise main thread may be marked for interruption after exiting ProcessHandler logic.
+                synchronized (starterLock) {
+                    // Already interrupted starter isn't interrupted again: its interruption flag
+                    // belongs to other source and must not be cleared by stop()
+                    if (!stopped && starterInterrupted.compareAndSet(false, true) && !starter.isInterrupted()) {
+                        LOGGER.warn("Interrupting starter thread ({}) because of exception: {}", starter.getName(), e.getMessage());
+                        starterInterruptionPending = true;
+                        starter.interrupt();
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    finished = true;
+                    thread = null;
+                }
+                onTaskFinished();
+                LOGGER.debug("{} thread has finished", name);
+
+                Thread current = Thread.currentThread();
+                current.setName(threadName);
+                if (executorService != null) {
+                    // Clear interruption flag (if any) before returning thread to pool
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        synchronized void interrupt() {
+            if (started.compareAndSet(false, true)) {
+                LOGGER.warn("Cancelling NOT STARTED task: {}", name);
+                finished = true;
+                onTaskFinished();
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+
+            Thread thread = this.thread;
+            if (!finished && thread != null && !thread.isInterrupted()) {
+                LOGGER.warn("Interrupting ALIVE thread: {}", name);
+                thread.interrupt();
+            }
+        }
+    }
 }
@@ -0,0 +1,34 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.process;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Implemented by helper {@link Runnable}s, which start threads of their own (e.g. channel servers),
+ * so they run them with the same {@link ExecutorService} as {@link ProcessHandler} runs helpers.
+ */
+public interface ExecutorServiceAware {
+    /**
+     * Invoked by {@link ProcessHandler} before helper is executed.
+     *
+     * @param executorService executor service, null if every helper gets its own thread
+     * @see ProcessHandler#setExecutorService(ExecutorService)
+     */
+    void setExecutorService(ExecutorService executorService);
+}
@@ -0,0 +1,151 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory methods for {@link ExecutorService}s suitable to run helper threads of many
+ * ffmpeg/ffprobe processes.
+ * <p>
+ * Every process requires several helpers (StdErr &amp; StdOut readers, socket negotiators) which
+ * <b>must</b> run concurrently: e.g. ffmpeg blocks if nobody reads its stderr.
+ * That's why executor passed to {@link ProcessHandler} must never queue helpers.
+ */
+public class ExecutorServices {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutorServices.class);
+
+    private ExecutorServices() {
+    }
+
+    /**
+     * Creates thread pool which keeps at most {@code maxThreads} reusable daemon threads.
+     * <p>
+     * If all pooled threads are busy, task is executed in a new (not pooled) daemon thread.
+     * Tasks are never queued, so helpers of one process can't block each other.
+     *
+     * @param name       thread name prefix
+     * @param maxThreads maximum number of pooled threads
+     * @return executor service
+     */
+    public static ExecutorService newBoundedPool(String name, int maxThreads) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("maxThreads must be positive: " + maxThreads);
+        }
+
+        final ThreadFactory threadFactory = new DaemonThreadFactory(name);
+        RejectedExecutionHandler overflowHandler = new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("Thread pool is shut down");
+                }
+                LOGGER.debug("All {} pooled threads are busy, starting dedicated thread", executor.getMaximumPoolSize());
+                threadFactory.newThread(task).start();
+            }
+        };
+
+        return new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), threadFactory, overflowHandler);
+    }
+
+    /**
+     * Checks if current JVM supports virtual threads (Java 21+).
+     *
+     * @return true if virtual threads are supported
+     */
+    public static boolean isVirtualThreadSupported() {
+        return getVirtualThreadFactoryMethod() != null;
+    }
+
+    /**
+     * Creates executor service which starts new virtual thread for every task.
+     * <p>
+     * Virtual threads are cheap to create and to block, so thread count and stack memory
+     * don't grow with the number of concurrently running processes.
+     *
+     * @return executor service
+     * @throws UnsupportedOperationException if virtual threads are not supported by current JVM
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        Method factoryMethod = getVirtualThreadFactoryMethod();
+        if (factoryMethod == null) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by current JVM: "
+                    + System.getProperty("java.version"));
+        }
+
+        try {
+            return (ExecutorService) factoryMethod.invoke(null);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Creates executor service based on virtual threads if they are supported,
+     * otherwise creates bounded pool.
+     *
+     * @param name       thread name prefix (used only by bounded pool)
+     * @param maxThreads maximum number of pooled threads (used only by bounded pool)
+     * @return executor service
+     * @see #newVirtualThreadExecutor()
+     * @see #newBoundedPool(String, int)
+     */
+    public static ExecutorService newVirtualThreadExecutorOrBoundedPool(String name, int maxThreads) {
+        if (isVirtualThreadSupported()) {
+            return newVirtualThreadExecutor();
+        }
+
+        return newBoundedPool(name, maxThreads);
+    }
+
+    private static Method getVirtualThreadFactoryMethod() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of concurrently running processes.
+ * <p>
+ * Jobs which can't be started immediately are queued. Queued {@link Priority#INTERACTIVE} jobs
+ * are always started before {@link Priority#BATCH} jobs. Among jobs of the same priority
+ * the next job is taken from the tenant with the least number of running jobs
+ * (round-robin between tenants with equal number of running jobs), so one tenant
+ * can't occupy all slots by submitting many jobs at once.
+ * <p>
+ * Cancelling returned future before job is started removes it from the queue: process is never spawned.
+ * <p>
+ * Scheduler must be {@link #shutdown() shut down} if it was created with its own thread pool.
+ */
+public class JobScheduler implements AutoCloseable {
+    private final int maxRunningJobs;
+    private final Executor executor;
+    // thread pool created by this scheduler, null if executor was provided
+    private final ExecutorService ownExecutorService;
+
+    private final Object lock = new Object();
+    private final Map<Priority, LinkedHashMap<String, ArrayDeque<Job<?>>>> queues = new EnumMap<>(Priority.class);
+    private final Map<String, Integer> runningByTenant = new HashMap<>();
+    private int runningJobs = 0;
+    private boolean shutdown = false;
+
+    private long submittedJobs = 0;
+    private long completedJobs = 0;
+    private long cancelledJobs = 0;
+    private final Map<Priority, QueueWaitStats> queueWaitStats = new EnumMap<>(Priority.class);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobScheduler.class);
+
+    /**
+     * Creates scheduler which runs jobs in its own thread pool.
+     *
+     * @param maxRunningJobs maximum number of concurrently running jobs
+     */
+    public JobScheduler(int maxRunningJobs) {
+        this(maxRunningJobs, ExecutorServices.newBoundedPool("JobScheduler", maxRunningJobs), true);
+    }
+
+    /**
+     * Creates scheduler.
+     *
+     * @param maxRunningJobs maximum number of concurrently running jobs
+     * @param executor       executor to run jobs with, it isn't shut down by {@link #shutdown()}
+     */
+    public JobScheduler(int maxRunningJobs, Executor executor) {
+        this(maxRunningJobs, executor, false);
+    }
+
+    private JobScheduler(int maxRunningJobs, Executor executor, boolean ownExecutor) {
+        if (maxRunningJobs <= 0) {
+            throw new IllegalArgumentException("maxRunningJobs must be positive: " + maxRunningJobs);
+        }
+        this.maxRunningJobs = maxRunningJobs;
+        this.executor = executor;
+        this.ownExecutorService = ownExecutor ? (ExecutorService) executor : null;
+
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new LinkedHashMap<String, ArrayDeque<Job<?>>>());
+            queueWaitStats.put(priority, new QueueWaitStats());
+        }
+    }
+
+    /**
+     * Submits process for execution.
+     *
+     * @param processHandler process to execute
+     * @param priority       job priority
+     * @param tenant         tenant which submits job (null is treated as a separate tenant)
+     * @param <T>            result type
+     * @return future which completes with process result
+     */
+    public <T> CompletableFuture<T> submit(final ProcessHandler<T> processHandler, Priority priority, String tenant) {
+        return submit(new Supplier<T>() {
+            @Override
+            public T get() {
+                return processHandler.execute();
+            }
+        }, priority, tenant);
+    }
+
+    /**
+     * Submits job for execution.
+     *
+     * @param job      job to execute, typically it starts a process and waits for it to finish
+     * @param priority job priority
+     * @param tenant   tenant which submits job (null is treated as a separate tenant)
+     * @param <T>      result type
+     * @return future which completes with job result
+     * @throws RejectedExecutionException if scheduler has been shut down
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> job, Priority priority, String tenant) {
+        if (priority == null) {
+            throw new IllegalArgumentException("Priority must be non null");
+        }
+
+        final Job<T> queued = new Job<>(job, priority, String.valueOf(tenant));
+
+        synchronized (lock) {
+            if (shutdown) {
+                throw new RejectedExecutionException("JobScheduler has been shut down");
+            }
+            submittedJobs++;
+            LinkedHashMap<String, ArrayDeque<Job<?>>> tenants = queues.get(priority);
+            ArrayDeque<Job<?>> tenantQueue = tenants.get(queued.tenant);
+            if (tenantQueue == null) {
+                tenantQueue = new ArrayDeque<>();
+                tenants.put(queued.tenant, tenantQueue);
+            }
+            tenantQueue.addLast(queued);
+        }
+
+        queued.future.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable throwable) {
+                if (queued.future.isCancelled()) {
+                    removeIfQueued(queued);
+                }
+            }
+        });
+
+        startQueuedJobs();
+
+        return queued.future;
+    }
+
+    /**
+     * Stops accepting new jobs and cancels queued jobs. Running jobs aren't interrupted.
+     * <p>
+     * Thread pool created by this scheduler is shut down: its threads terminate after running jobs complete.
+     */
+    public void shutdown() {
+        List<Job<?>> queued = new ArrayList<>();
+        synchronized (lock) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+
+            for (LinkedHashMap<String, ArrayDeque<Job<?>>> tenants : queues.values()) {
+                for (ArrayDeque<Job<?>> tenantQueue : tenants.values()) {
+                    queued.addAll(tenantQueue);
+                }
+            }
+        }
+
+        LOGGER.debug("Shutting down, cancelling {} queued jobs", queued.size());
+        // Cancelled jobs are removed from queue and counted as cancelled
+        for (Job<?> job : queued) {
+            job.future.cancel(false);
+        }
+
+        if (ownExecutorService != null) {
+            ownExecutorService.shutdown();
+        }
+    }
+
+    /**
+     * Same as {@link #shutdown()}.
+     */
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    public boolean isShutdown() {
+        synchronized (lock) {
+            return shutdown;
+        }
+    }
+
+    public int getMaxRunningJobs() {
+        return maxRunningJobs;
+    }
+
+    public int getRunningJobCount() {
+        synchronized (lock) {
+            return runningJobs;
+        }
+    }
+
+    public int getQueuedJobCount() {
+        int result = 0;
+        for (Priority priority : Priority.values()) {
+            result += getQueuedJobCount(priority);
+        }
+        return result;
+    }
+
+    public int getQueuedJobCount(Priority priority) {
+        synchronized (lock) {
+            int result = 0;
+            for (ArrayDeque<Job<?>> tenantQueue : queues.get(priority).values()) {
+                result += tenantQueue.size();
+            }
+            return result;
+        }
+    }
+
+    public long getSubmittedJobCount() {
+        synchronized (lock) {
+            return submittedJobs;
+        }
+    }
+
+    public long getCompletedJobCount() {
+        synchronized (lock) {
+            return completedJobs;
+        }
+    }
+
+    /**
+     * Returns number of cancelled jobs, which were never started: cancelled while queued
+     * or right before start. Such jobs aren't counted as completed.
+     *
+     * @return number of jobs cancelled before they were started
+     */
+    public long getCancelledJobCount() {
+        synchronized (lock) {
+            return cancelledJobs;
+        }
+    }
+
+    /**
+     * @param priority job priority
+     * @return number of started jobs with specified priority
+     */
+    public long getStartedJobCount(Priority priority) {
+        synchronized (lock) {
+            return queueWaitStats.get(priority).startedJobs;
+        }
+    }
+
+    /**
+     * Returns average time jobs with specified priority spent in the queue before start.
+     *
+     * @param priority job priority
+     * @param timeUnit time unit
+     * @return average queue wait time, 0 if no jobs have been started yet
+     */
+    public long getAverageQueueWait(Priority priority, TimeUnit timeUnit) {
+        synchronized (lock) {
+            QueueWaitStats stats = queueWaitStats.get(priority);
+            if (stats.startedJobs == 0) {
+                return 0;
+            }
+            return timeUnit.convert(stats.totalWaitNanos / stats.startedJobs, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns maximum time a job with specified priority spent in the queue before start.
+     *
+     * @param priority job priority
+     * @param timeUnit time unit
+     * @return maximum queue wait time
+     */
+    public long getMaxQueueWait(Priority priority, TimeUnit timeUnit) {
+        synchronized (lock) {
+            return timeUnit.convert(queueWaitStats.get(priority).maxWaitNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void startQueuedJobs() {
+        while (true) {
+            Job<?> job;
+            synchronized (lock) {
+                if (shutdown || runningJobs >= maxRunningJobs) {
+                    return;
+                }
+                job = pollNextJob();
+                if (job == null) {
+                    return;
+                }
+
+                runningJobs++;
+                increment(runningByTenant, job.tenant, 1);
+            }
+
+            start(job);
+        }
+    }
+
+    private <T> void start(final Job<T> job) {
+        LOGGER.debug("Starting {} job of tenant {}", job.priority, job.tenant);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Job may be cancelled after it has been taken from queue
+                    if (!onJobStarted(job)) {
+                        LOGGER.debug("Job has been cancelled, skipping");
+                        return;
+                    }
+
+                    T result = null;
+                    Throwable failure = null;
+                    try {
+                        result = job.supplier.get();
+                    } catch (Throwable e) {
+                        failure = e;
+                    }
+
+                    // Statistics are updated before completion, so they are consistent with job result
+                    onJobFinished(job);
+
+                    if (failure != null) {
+                        job.future.completeExceptionally(failure);
+                    } else {
+                        job.future.complete(result);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            job.future.completeExceptionally(e);
+            onJobFinished(job);
+        }
+    }
+
+    /**
+     * @return false if job has been cancelled, in that case its slot is released
+     */
+    private boolean onJobStarted(Job<?> job) {
+        synchronized (lock) {
+            if (!job.future.isDone()) {
+                long waitNanos = System.nanoTime() - job.submittedNanos;
+                queueWaitStats.get(job.priority).onJobStarted(waitNanos);
+                return true;
+            }
+
+            runningJobs--;
+            cancelledJobs++;
+            increment(runningByTenant, job.tenant, -1);
+        }
+
+        startQueuedJobs();
+        return false;
+    }
+
+    private void onJobFinished(Job<?> job) {
+        synchronized (lock) {
+            runningJobs--;
+            completedJobs++;
+            increment(runningByTenant, job.tenant, -1);
+        }
+
+        startQueuedJobs();
+    }
+
+    /**
+     * Must be called under lock.
+     */
+    private Job<?> pollNextJob() {
+        for (Priority priority : Priority.values()) {
+            LinkedHashMap<String, ArrayDeque<Job<?>>> tenants = queues.get(priority);
+
+            String selectedTenant = null;
+            int selectedRunning = Integer.MAX_VALUE;
+            for (String tenant : tenants.keySet()) {
+                Integer running = runningByTenant.get(tenant);
+                int tenantRunning = running == null ? 0 : running;
+                if (tenantRunning < selectedRunning) {
+                    selectedTenant = tenant;
+                    selectedRunning = tenantRunning;
+                }
+            }
+
+            if (selectedTenant == null) {
+                continue;
+            }
+
+            // Tenant is moved to the end of iteration order: round-robin between tenants
+            ArrayDeque<Job<?>> tenantQueue = tenants.remove(selectedTenant);
+            Job<?> result = tenantQueue.pollFirst();
+            if (!tenantQueue.isEmpty()) {
+                tenants.put(selectedTenant, tenantQueue);
+            }
+
+            return result;
+        }
+
+        return null;
+    }
+
+    private void removeIfQueued(Job<?> job) {
+        synchronized (lock) {
+            LinkedHashMap<String, ArrayDeque<Job<?>>> tenants = queues.get(job.priority);
+            ArrayDeque<Job<?>> tenantQueue = tenants.get(job.tenant);
+            if (tenantQueue == null) {
+                return;
+            }
+
+            for (Iterator<Job<?>> iterator = tenantQueue.iterator(); iterator.hasNext(); ) {
+                if (iterator.next() == job) {
+                    iterator.remove();
+                    cancelledJobs++;
+                    LOGGER.debug("Cancelled queued {} job of tenant {}", job.priority, job.tenant);
+                    break;
+                }
+            }
+
+            if (tenantQueue.isEmpty()) {
+                tenants.remove(job.tenant);
+            }
+        }
+    }
+
+    private static void increment(Map<String, Integer> counters, String key, int delta) {
+        Integer value = counters.get(key);
+        int newValue = (value == null ? 0 : value) + delta;
+        if (newValue == 0) {
+            counters.remove(key);
+        } else {
+            counters.put(key, newValue);
+        }
+    }
+
+    public enum Priority {
+        /**
+         * Jobs somebody is waiting for, e.g. thumbnail generation for a web page.
+         */
+        INTERACTIVE,
+
+        /**
+         * Background jobs, started only if there are no queued interactive jobs.
+         */
+        BATCH
+    }
+
+    private static class Job<T> {
+        private final Supplier<T> supplier;
+        private final Priority priority;
+        private final String tenant;
+        private final long submittedNanos = System.nanoTime();
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Job(Supplier<T> supplier, Priority priority, String tenant) {
+            this.supplier = supplier;
+            this.priority = priority;
+            this.tenant = tenant;
+        }
+    }
+
+    private static class QueueWaitStats {
+        private long startedJobs;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        void onJobStarted(long waitNanos) {
+            startedJobs++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+    }
+}
@@ -26,6 +26,8 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class ProcessHandler<T> {
@@ -33,9 +35,12 @@ public class ProcessHandler<T> {
     private final String contextName;
     private StdReader<T> stdOutReader = new GobblingStdReader<>();
     private StdReader<T> stdErrReader = new GobblingStdReader<>();
+    private StdWriter stdInWriter = null;
     private List<Runnable> runnables = null;
     private Stopper stopper = null;
     private List<String> arguments = Collections.emptyList();
+    private ExecutorService executorService = null;
+    private ProcessListener processListener = null;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ProcessHandler.class);
 
@@ -54,6 +59,17 @@ public class ProcessHandler<T> {
         return this;
     }
 
+    /**
+     * Set writer to pass data to process stdin. By default stdin isn't used.
+     *
+     * @param stdInWriter stdin writer
+     * @return this
+     */
+    public synchronized ProcessHandler<T> setStdInWriter(StdWriter stdInWriter) {
+        this.stdInWriter = stdInWriter;
+        return this;
+    }
+
     /**
      * Set extra {@link Runnable}s that must be executed in parallel with process
      *
@@ -75,6 +91,27 @@ public class ProcessHandler<T> {
         return this;
     }
 
+    /**
+     * Set {@link ExecutorService} to run helper threads (std readers and extra {@link Runnable}s) with.
+     * Helpers, which implement {@link ExecutorServiceAware}, run their own threads with it too.
+     * <p>
+     * <b>Note</b>: executor must not queue tasks, all helpers must run concurrently.
+     * By default new thread is started for every helper.
+     *
+     * @param executorService executor service
+     * @return this
+     * @see ExecutorServices
+     */
+    public synchronized ProcessHandler<T> setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
+    public synchronized ProcessHandler<T> setProcessListener(ProcessListener processListener) {
+        this.processListener = processListener;
+        return this;
+    }
+
     public synchronized T execute() {
         List<String> command = new ArrayList<>();
         command.add(executable.toString());
@@ -85,8 +122,14 @@ public class ProcessHandler<T> {
         Process process = null;
         try {
             LOGGER.info("Starting process: {}", executable);
+            if (processListener != null) {
+                processListener.onProcessStarting();
+            }
             process = new ProcessBuilder(command)
                     .start();
+            if (processListener != null) {
+                processListener.onProcessStarted(process);
+            }
             if (stopper != null) {
                 stopper.setProcess(process);
             }
@@ -95,6 +138,7 @@ public class ProcessHandler<T> {
         } catch (IOException e) {
             throw new RuntimeException("Failed to start process.", e);
         } finally {
+            closeRunnables();
             if (process != null) {
                 // TODO on Windows process sometimes doesn't stop and keeps running
                 process.destroy();
@@ -119,11 +163,15 @@ public class ProcessHandler<T> {
             LOGGER.info("Waiting for process to finish");
             status = process.waitFor();
             LOGGER.info("Process has finished with status: {}", status);
+            notifyProcessFinished(status);
 
             waitForExecutorToStop(executor, 10_000);
         } catch (InterruptedException e) {
             LOGGER.warn("Process has been interrupted");
             interrupted = e;
+            if (executor != null) {
+                executor.onStarterInterrupted();
+            }
         } finally {
             if (executor != null) {
                 executor.stop();
@@ -142,7 +190,8 @@ public class ProcessHandler<T> {
             throw new RuntimeException("Failed to execute, was interrupted", interrupted);
         }
 
-        if (!Integer.valueOf(0).equals(status)) {
+        boolean graceStopped = status != null && stopper != null && stopper.isGraceStopStatus(status);
+        if (!Integer.valueOf(0).equals(status) && !graceStopped) {
             throw new RuntimeException("Process execution has ended with non-zero status: " + status);
         }
 
@@ -155,7 +204,7 @@ public class ProcessHandler<T> {
     }
 
     protected Executor startExecution(final Process process, final AtomicReference<T> resultReference) {
-        Executor executor = new Executor(contextName);
+        Executor executor = new Executor(contextName, executorService);
 
         LOGGER.debug("Starting IO interaction with process");
 
@@ -189,9 +238,21 @@ public class ProcessHandler<T> {
             });
         }
 
+        if (stdInWriter != null) {
+            executor.execute("StdIn", new Runnable() {
+                @Override
+                public void run() {
+                    stdInWriter.write(process.getOutputStream());
+                }
+            });
+        }
+
         if (runnables != null) {
             for (int i = 0; i < runnables.size(); i++) {
                 Runnable runnable = runnables.get(i);
+                if (runnable instanceof ExecutorServiceAware) {
+                    ((ExecutorServiceAware) runnable).setExecutorService(executorService);
+                }
                 executor.execute("Runnable-" + i, runnable);
             }
         }
@@ -199,6 +260,35 @@ public class ProcessHandler<T> {
         return executor;
     }
 
+    private void notifyProcessFinished(int status) {
+        if (processListener != null) {
+            processListener.onProcessFinished(status);
+        }
+        if (runnables != null) {
+            for (Runnable runnable : runnables) {
+                if (runnable instanceof ProcessListener) {
+                    ((ProcessListener) runnable).onProcessFinished(status);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes helper {@link Runnable}s, which implement {@link Closeable}. Helpers may have not been started
+     * at all (e.g. if process failed to start), but they still have to release resources.
+     */
+    private void closeRunnables() {
+        if (runnables == null) {
+            return;
+        }
+
+        for (Runnable runnable : runnables) {
+            if (runnable instanceof Closeable) {
+                closeQuietly((Closeable) runnable);
+            }
+        }
+    }
+
     protected static String joinArguments(List<String> arguments) {
         StringBuilder result = new StringBuilder();
         boolean first = true;
@@ -226,17 +316,10 @@ public class ProcessHandler<T> {
     }
 
     private static void waitForExecutorToStop(Executor executor, long timeoutMillis) throws InterruptedException {
-        LOGGER.debug("Waiting for Executor to stop");
+        LOGGER.debug("Waiting for Executor to stop, still running threads: {}", executor.getRunningThreadNames());
 
-        long waitStarted = System.currentTimeMillis();
-        do {
-            if (System.currentTimeMillis() - waitStarted > timeoutMillis) {
-                LOGGER.warn("Executor hasn't stopped in {} millis, won't wait longer", timeoutMillis);
-                break;
-            }
-
-            LOGGER.trace("Executor hasn't yet stopped, still running threads: {}", executor.getRunningThreadNames());
-            Thread.sleep(100);
-        } while (executor.isRunning());
+        if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Executor hasn't stopped in {} millis, won't wait longer", timeoutMillis);
+        }
     }
 }
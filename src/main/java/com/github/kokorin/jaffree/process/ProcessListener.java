@@ -0,0 +1,49 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.process;
+
+/**
+ * Receives process lifecycle events from {@link ProcessHandler}.
+ * All methods do nothing by default, so implementations override only events they need.
+ */
+public interface ProcessListener {
+    /**
+     * Invoked right before process is started.
+     */
+    default void onProcessStarting() {
+    }
+
+    /**
+     * Invoked right after process has been started, before any helper thread is started.
+     *
+     * @param process started process
+     */
+    default void onProcessStarted(Process process) {
+    }
+
+    /**
+     * Invoked right after process has finished, before waiting for helper threads to finish.
+     * <p>
+     * Helper {@link Runnable}s, which implement this interface, are notified too, so helpers which wait
+     * for process connections (e.g. servers) can stop.
+     *
+     * @param status process exit status
+     */
+    default void onProcessFinished(int status) {
+    }
+}
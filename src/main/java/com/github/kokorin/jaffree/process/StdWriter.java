@@ -0,0 +1,32 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.process;
+
+import java.io.OutputStream;
+
+/**
+ * Writes data to process stdin.
+ */
+public interface StdWriter {
+    /**
+     * Writer <b>must</b> close passed {@link OutputStream} when there is no more data.
+     *
+     * @param stdIn process stdin
+     */
+    void write(OutputStream stdIn);
+}
@@ -22,6 +22,16 @@ public interface Stopper {
     void forceStop();
     void setProcess(Process process);
 
+    /**
+     * Some stop methods make process exit with non-zero status (e.g. ffmpeg exits with 255 on SIGINT).
+     *
+     * @param status process exit status
+     * @return true if status is caused by grace stop and execution must be treated as successful
+     */
+    default boolean isGraceStopStatus(int status) {
+        return false;
+    }
+
     interface Factory {
         Stopper createStopper(Process process);
     }
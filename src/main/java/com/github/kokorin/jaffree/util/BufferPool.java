@@ -0,0 +1,93 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct {@link ByteBuffer}s, which are used to copy data between channels.
+ * <p>
+ * Direct buffers are expensive to allocate and are released only by GC, so they are reused across
+ * ffmpeg executions. Pool keeps limited number of idle buffers of every capacity, extra buffers are dropped.
+ */
+public final class BufferPool {
+    private static final int MAX_IDLE_BUFFERS = 16;
+
+    private static final ConcurrentMap<Integer, Pool> POOLS = new ConcurrentHashMap<>();
+
+    private BufferPool() {
+    }
+
+    /**
+     * Returns idle buffer or allocates new one.
+     *
+     * @param capacity buffer capacity
+     * @return cleared direct buffer
+     */
+    public static ByteBuffer acquire(int capacity) {
+        Pool pool = pool(capacity);
+        ByteBuffer result = pool.buffers.poll();
+        if (result == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        pool.idle.decrementAndGet();
+        result.clear();
+        return result;
+    }
+
+    /**
+     * Returns buffer to pool. Buffer must not be used after that.
+     *
+     * @param buffer buffer
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+
+        Pool pool = pool(buffer.capacity());
+        if (pool.idle.incrementAndGet() > MAX_IDLE_BUFFERS) {
+            pool.idle.decrementAndGet();
+            return;
+        }
+        pool.buffers.offer(buffer);
+    }
+
+    private static Pool pool(int capacity) {
+        Pool result = POOLS.get(capacity);
+        if (result == null) {
+            result = new Pool();
+            Pool existing = POOLS.putIfAbsent(capacity, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    private static class Pool {
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idle = new AtomicInteger();
+    }
+}
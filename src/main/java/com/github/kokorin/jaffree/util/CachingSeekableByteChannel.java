@@ -0,0 +1,488 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link SeekableByteChannel} which caches blocks of slow channel (e.g. object storage) in memory.
+ * <p>
+ * ffmpeg reads header, jumps to the end of file, jumps back and reads sequentially, so the same ranges are
+ * requested several times. Blocks are aligned to block size and evicted in LRU order when memory budget is
+ * exceeded. When blocks are read sequentially next blocks are read ahead in background.
+ * <p>
+ * Wrap channel once and pass the same instance to {@link com.github.kokorin.jaffree.ffprobe.FFprobe} and
+ * {@link com.github.kokorin.jaffree.ffmpeg.FFmpeg}, so transcoding reuses blocks read by probing.
+ * <p>
+ * Writes are passed to underlying channel and invalidate cached blocks.
+ */
+public class CachingSeekableByteChannel implements SeekableByteChannel {
+    private final SeekableByteChannel channel;
+    private final int blockSize;
+    private final int maxBlocks;
+    private final int readAheadBlocks;
+    private final ExecutorService readAheadExecutor;
+
+    // LRU cache, access is guarded by itself
+    private final LinkedHashMap<Long, byte[]> blocks;
+    private final Map<Long, Future<byte[]>> pendingBlocks = new HashMap<>();
+    // Incremented by writes, blocks read before write are not cached
+    private long generation = 0;
+    private long lastBlockIndex = -1;
+
+    private long position = 0;
+    private volatile long size = -1;
+    private volatile boolean closed = false;
+
+    private long hitCount;
+    private long missCount;
+    private long readAheadCount;
+    private long evictionCount;
+    private long bytesFetched;
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+    public static final int DEFAULT_READ_AHEAD_BLOCKS = 2;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingSeekableByteChannel.class);
+
+    public CachingSeekableByteChannel(SeekableByteChannel channel) {
+        this(channel, DEFAULT_BLOCK_SIZE, DEFAULT_MEMORY_BUDGET, DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * Creates {@link CachingSeekableByteChannel}.
+     *
+     * @param channel         channel to cache
+     * @param blockSize       size of cached block, channel is read by whole blocks
+     * @param memoryBudget    max size of cached blocks, at least one block is cached
+     * @param readAheadBlocks number of blocks to read ahead in background, 0 disables read-ahead
+     */
+    public CachingSeekableByteChannel(SeekableByteChannel channel, int blockSize, long memoryBudget,
+                                      int readAheadBlocks) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        if (readAheadBlocks < 0) {
+            throw new IllegalArgumentException("Read-ahead blocks must be non-negative: " + readAheadBlocks);
+        }
+
+        this.channel = channel;
+        this.blockSize = blockSize;
+        this.maxBlocks = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / blockSize));
+        this.readAheadBlocks = readAheadBlocks;
+        this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                boolean evict = size() > maxBlocks;
+                if (evict) {
+                    evictionCount++;
+                }
+                return evict;
+            }
+        };
+
+        if (readAheadBlocks > 0) {
+            readAheadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "CachingSeekableByteChannel-ReadAhead");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            readAheadExecutor = null;
+        }
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+
+        long channelSize = size();
+        if (position >= channelSize) {
+            return IOUtil.EOF;
+        }
+
+        int total = 0;
+        while (dst.hasRemaining() && position < channelSize) {
+            long index = position / blockSize;
+            byte[] block = getBlock(index);
+            int offset = (int) (position - index * blockSize);
+            if (offset >= block.length) {
+                // underlying channel has ended before its declared size
+                break;
+            }
+
+            int length = Math.min(dst.remaining(), block.length - offset);
+            dst.put(block, offset, length);
+            position += length;
+            total += length;
+        }
+
+        if (total == 0 && dst.hasRemaining()) {
+            return IOUtil.EOF;
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+
+        long start = position;
+        int written;
+        synchronized (channel) {
+            channel.position(start);
+            written = channel.write(src);
+        }
+        position += written;
+
+        if (written > 0) {
+            invalidate(start / blockSize, (position - 1) / blockSize);
+        }
+        return written;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position must be non-negative: " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+
+        long result = size;
+        if (result < 0) {
+            synchronized (channel) {
+                result = channel.size();
+            }
+            size = result;
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel truncate(long newSize) throws IOException {
+        ensureOpen();
+        synchronized (channel) {
+            channel.truncate(newSize);
+        }
+        if (position > newSize) {
+            position = newSize;
+        }
+        invalidate(0, Long.MAX_VALUE);
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (readAheadExecutor != null) {
+            readAheadExecutor.shutdownNow();
+        }
+        synchronized (blocks) {
+            blocks.clear();
+            List<Future<byte[]>> pending = new ArrayList<>(pendingBlocks.values());
+            pendingBlocks.clear();
+            for (Future<byte[]> future : pending) {
+                future.cancel(false);
+            }
+        }
+        LOGGER.debug("Closing channel: {}", getStatistics());
+        channel.close();
+    }
+
+    /**
+     * Returns statistics of cache usage. Can be invoked while channel is in use.
+     *
+     * @return statistics
+     */
+    public Statistics getStatistics() {
+        synchronized (blocks) {
+            return new Statistics(hitCount, missCount, readAheadCount, evictionCount, bytesFetched);
+        }
+    }
+
+    private byte[] getBlock(long index) throws IOException {
+        byte[] block;
+        Future<byte[]> pending;
+        long blockGeneration;
+        synchronized (blocks) {
+            boolean sequential = index == lastBlockIndex + 1;
+            lastBlockIndex = index;
+            if (sequential) {
+                readAhead(index);
+            }
+
+            block = blocks.get(index);
+            pending = pendingBlocks.get(index);
+            if (block != null || pending != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+            blockGeneration = generation;
+        }
+
+        if (block != null) {
+            return block;
+        }
+        if (pending != null) {
+            block = await(pending);
+            if (block != null) {
+                return block;
+            }
+        }
+
+        block = fetch(index);
+        cache(index, block, blockGeneration);
+        return block;
+    }
+
+    /**
+     * Schedules read-ahead of blocks following the block, should be invoked with lock on blocks.
+     */
+    private void readAhead(long index) {
+        if (readAheadExecutor == null || closed) {
+            return;
+        }
+
+        long lastIndex = (size - 1) / blockSize;
+        for (long next = index + 1; next <= Math.min(index + readAheadBlocks, lastIndex); next++) {
+            if (blocks.containsKey(next) || pendingBlocks.containsKey(next)) {
+                continue;
+            }
+
+            ReadAhead readAhead = new ReadAhead(next, generation);
+            pendingBlocks.put(next, readAhead);
+            readAheadExecutor.execute(readAhead);
+            readAheadCount++;
+        }
+    }
+
+    private byte[] fetch(long index) throws IOException {
+        long start = index * blockSize;
+        int length = (int) Math.min(blockSize, Math.max(0, size() - start));
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        synchronized (channel) {
+            channel.position(start);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == IOUtil.EOF) {
+                    break;
+                }
+            }
+        }
+
+        byte[] block = buffer.array();
+        if (buffer.hasRemaining()) {
+            block = new byte[buffer.position()];
+            System.arraycopy(buffer.array(), 0, block, 0, block.length);
+        }
+
+        synchronized (blocks) {
+            bytesFetched += block.length;
+        }
+        return block;
+    }
+
+    private void cache(long index, byte[] block, long blockGeneration) {
+        synchronized (blocks) {
+            if (!closed && blockGeneration == generation) {
+                blocks.put(index, block);
+            }
+        }
+    }
+
+    private void invalidate(long firstIndex, long lastIndex) {
+        synchronized (blocks) {
+            generation++;
+            size = -1;
+            Iterator<Long> iterator = blocks.keySet().iterator();
+            while (iterator.hasNext()) {
+                long index = iterator.next();
+                if (index >= firstIndex && index <= lastIndex) {
+                    iterator.remove();
+                }
+            }
+
+            // read-ahead in flight may have read the block before write, it must not be awaited
+            Iterator<Map.Entry<Long, Future<byte[]>>> pending = pendingBlocks.entrySet().iterator();
+            while (pending.hasNext()) {
+                Map.Entry<Long, Future<byte[]>> entry = pending.next();
+                if (entry.getKey() >= firstIndex && entry.getKey() <= lastIndex) {
+                    // cancel() invokes done(), so the entry is removed first
+                    pending.remove();
+                    entry.getValue().cancel(false);
+                }
+            }
+        }
+    }
+
+    private static byte[] await(Future<byte[]> pending) throws IOException {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for read-ahead");
+        } catch (ExecutionException e) {
+            throw new IOException("Read-ahead failed", e.getCause());
+        } catch (CancellationException e) {
+            // block has been invalidated, it has to be fetched again
+            return null;
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Reads block in background, removes itself from pending blocks when done.
+     */
+    private class ReadAhead extends FutureTask<byte[]> {
+        private final long index;
+
+        ReadAhead(final long index, final long blockGeneration) {
+            super(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    byte[] block = fetch(index);
+                    cache(index, block, blockGeneration);
+                    return block;
+                }
+            });
+            this.index = index;
+        }
+
+        @Override
+        protected void done() {
+            synchronized (blocks) {
+                // block may have been invalidated and scheduled again
+                pendingBlocks.remove(index, this);
+            }
+        }
+    }
+
+    /**
+     * Statistics of cache usage.
+     */
+    public static final class Statistics {
+        private final long hitCount;
+        private final long missCount;
+        private final long readAheadCount;
+        private final long evictionCount;
+        private final long bytesFetched;
+
+        Statistics(long hitCount, long missCount, long readAheadCount, long evictionCount, long bytesFetched) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.readAheadCount = readAheadCount;
+            this.evictionCount = evictionCount;
+            this.bytesFetched = bytesFetched;
+        }
+
+        /**
+         * @return number of block accesses served from cache or from read-ahead
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return number of block accesses which required reading underlying channel
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * @return number of blocks scheduled to be read ahead
+         */
+        public long getReadAheadCount() {
+            return readAheadCount;
+        }
+
+        /**
+         * @return number of blocks evicted because of memory budget
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * @return number of bytes read from underlying channel
+         */
+        public long getBytesFetched() {
+            return bytesFetched;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{"
+                    + "hits=" + hitCount
+                    + ", misses=" + missCount
+                    + ", readAheads=" + readAheadCount
+                    + ", evictions=" + evictionCount
+                    + ", bytesFetched=" + bytesFetched
+                    + '}';
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+
+package com.github.kokorin.jaffree.util;
+
+import java.net.ServerSocket;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Protocol, which is used to give ffmpeg access to {@link SeekableByteChannel}.
+ */
+public enum ChannelProtocol {
+    /**
+     * Every seek costs several commands (ABOR, EPSV, REST and RETR), but ffmpeg can seek in output,
+     * so formats which require seekable output (e.g. mp4) can be written.
+     */
+    FTP("ftp") {
+        @Override
+        public ChannelServer createServer(SeekableByteChannel channel, ServerSocket serverSocket) {
+            return new FtpServer(channel, serverSocket);
+        }
+
+        @Override
+        public ChannelServer createServer(VirtualFileSystem fileSystem, ServerSocket serverSocket) {
+            return new FtpServer(fileSystem, serverSocket);
+        }
+    },
+
+    /**
+     * Every seek costs single range request. ffmpeg can't seek in HTTP output, so only streaming formats
+     * (e.g. flv, mpegts or nut) can be written.
+     */
+    HTTP("http") {
+        @Override
+        public ChannelServer createServer(SeekableByteChannel channel, ServerSocket serverSocket) {
+            return new HttpServer(channel, serverSocket);
+        }
+
+        @Override
+        public ChannelServer createServer(VirtualFileSystem fileSystem, ServerSocket serverSocket) {
+            return new HttpServer(fileSystem, serverSocket);
+        }
+    };
+
+    private final String scheme;
+
+    ChannelProtocol(String scheme) {
+        this.scheme = scheme;
+    }
+
+    /**
+     * @return URL scheme which is passed to ffmpeg
+     */
+    public String getScheme() {
+        return scheme;
+    }
+
+    /**
+     * Creates server, which serves channel via listening socket.
+     *
+     * @param channel      channel
+     * @param serverSocket listening socket
+     * @return server
+     */
+    public abstract ChannelServer createServer(SeekableByteChannel channel, ServerSocket serverSocket);
+
+    /**
+     * Creates server, which serves files of virtual file system via listening socket.
+     *
+     * @param fileSystem   file system
+     * @param serverSocket listening socket
+     * @return server
+     */
+    public abstract ChannelServer createServer(VirtualFileSystem fileSystem, ServerSocket serverSocket);
+}
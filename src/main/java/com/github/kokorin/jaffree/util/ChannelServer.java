@@ -0,0 +1,709 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Base class for servers, which give ffmpeg access to {@link SeekableByteChannel} via network protocol.
+ * <p>
+ * Server serves either single channel (every path is resolved to it) or {@link VirtualFileSystem}.
+ * <p>
+ * Server accepts any number of concurrent or successive connections, every connection is served in a
+ * separate thread. All connections share channels: {@link FileChannel} is accessed with positional reads
+ * and writes, other channels are accessed in chunks under lock.
+ * <p>
+ * ffmpeg may connect at any moment (e.g. hls muxer uploads segment only when it's complete) and doesn't tell
+ * that it won't connect anymore, so server runs till {@link #stop()} is invoked (or its thread is interrupted),
+ * i.e. till ffmpeg process ends.
+ * <p>
+ * Stopped server lets sessions in progress finish (e.g. uploads are read till the end, even if they wait
+ * for memory budget of {@link StreamingFileSystem}), sessions are closed forcibly only if they don't finish
+ * in {@link #STOP_TIMEOUT_MILLIS} or server thread is interrupted.
+ *
+ * @see ChannelProtocol
+ */
+public abstract class ChannelServer implements Runnable {
+    private final SeekableByteChannel channel;
+    private final VirtualFileSystem fileSystem;
+    private final ServerSocket serverSocket;
+
+    private final Set<Session> sessions = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    // Sessions and transfers in progress
+    private final Set<Future<?>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+    private volatile ExecutorService executorService;
+    private volatile ExecutorService executor;
+    private volatile boolean stopped = false;
+
+    private final Object statisticsLock = new Object();
+    // Ranges of channels which have been sent, start -> end
+    private final Map<SeekableByteChannel, NavigableMap<Long, Long>> sentRanges = new IdentityHashMap<>();
+    private int sessionCount;
+    private int transferCount;
+    private int seekCount;
+    private int abortCount;
+    private long bytesSent;
+    private long bytesReceived;
+    private long bytesReread;
+
+    /**
+     * Time to wait for sessions in progress after server has been stopped, shorter than the time
+     * {@link com.github.kokorin.jaffree.process.ProcessHandler} waits for helpers after process has finished.
+     */
+    public static final int STOP_TIMEOUT_MILLIS = 5_000;
+
+    protected static final int BUFFER_SIZE = 1_000_000;
+    // Bytes of transferTo call, which is interrupted by aborted connection, aren't counted as sent,
+    // so transfer size is limited to keep statistics close to reality
+    private static final long MAX_TRANSFER_SIZE = BUFFER_SIZE;
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChannelServer.class);
+
+    protected ChannelServer(SeekableByteChannel channel, ServerSocket serverSocket) {
+        this.channel = channel;
+        this.fileSystem = null;
+        this.serverSocket = serverSocket;
+    }
+
+    protected ChannelServer(VirtualFileSystem fileSystem, ServerSocket serverSocket) {
+        this.channel = null;
+        this.fileSystem = fileSystem;
+        this.serverSocket = serverSocket;
+    }
+
+    @Override
+    public void run() {
+        LOGGER.debug("Starting {} {}", getClass().getSimpleName(), serverSocket);
+
+        ExecutorService ownExecutor = null;
+        if (executorService == null) {
+            String namePrefix = Thread.currentThread().getName() + "-" + getClass().getSimpleName();
+            ownExecutor = Executors.newCachedThreadPool(threadFactory(namePrefix));
+            executor = ownExecutor;
+        } else {
+            executor = executorService;
+        }
+
+        try (AutoCloseable toClose = serverSocket) {
+            acceptSessions();
+        } catch (ClosedByInterruptException e) {
+            LOGGER.debug("Interrupted, stopping");
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        }
+
+        try {
+            if (!Thread.currentThread().isInterrupted() && !awaitSessions(STOP_TIMEOUT_MILLIS)) {
+                LOGGER.warn("Sessions haven't finished in {} ms, closing", STOP_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Interrupted while waiting for sessions to finish");
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Session session : sessions) {
+                session.close();
+            }
+            for (Future<?> task : tasks) {
+                task.cancel(true);
+            }
+            if (ownExecutor != null) {
+                ownExecutor.shutdownNow();
+            }
+        }
+
+        LOGGER.info("{} has finished: {}", getClass().getSimpleName(), getStatistics());
+
+        Exception exception = failure.get();
+        if (exception != null) {
+            throw new RuntimeException("Failed to serve " + getClass().getSimpleName(), exception);
+        }
+    }
+
+    /**
+     * Sets {@link ExecutorService} to serve connections with, usually the one which runs helper threads
+     * of the process. By default new thread is started for every connection.
+     * <p>
+     * <b>Note</b>: executor must not queue tasks, all sessions and transfers must run concurrently.
+     * Must be invoked before the server is started.
+     *
+     * @param executorService executor service
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Stops accepting connections, sessions in progress are given {@link #STOP_TIMEOUT_MILLIS} to finish.
+     */
+    public void stop() {
+        stopped = true;
+        // wakes up the server if it's waiting for connection
+        closeQuietly(serverSocket);
+    }
+
+    /**
+     * Returns statistics of connections served so far. Can be invoked while server is running.
+     *
+     * @return statistics snapshot
+     */
+    public Statistics getStatistics() {
+        synchronized (statisticsLock) {
+            return new Statistics(sessionCount, transferCount, seekCount, abortCount,
+                    bytesSent, bytesReceived, bytesReread);
+        }
+    }
+
+    /**
+     * Creates session to serve accepted connection.
+     *
+     * @param socket accepted connection
+     * @param id     session id, used for logging
+     * @return session
+     */
+    protected abstract Session createSession(Socket socket, int id);
+
+    /**
+     * Executes task in server's thread pool.
+     *
+     * @param task task
+     * @return future
+     */
+    protected Future<?> submit(Runnable task) {
+        FutureTask<?> future = new FutureTask<Void>(task, null) {
+            @Override
+            protected void done() {
+                tasks.remove(this);
+            }
+        };
+        tasks.add(future);
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            tasks.remove(future);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Reports failure, server stops accepting connections and throws exception when all sessions end.
+     *
+     * @param e exception
+     */
+    protected void onFailure(Exception e) {
+        failure.compareAndSet(null, e);
+        closeQuietly(serverSocket);
+        synchronized (sessions) {
+            sessions.notifyAll();
+        }
+    }
+
+    /**
+     * Resolves file to read.
+     *
+     * @param path requested path
+     * @return channel or null if there is no such file
+     */
+    protected SeekableByteChannel open(String path) {
+        if (fileSystem == null) {
+            return channel;
+        }
+        return fileSystem.get(path);
+    }
+
+    /**
+     * Resolves file to write, creates file in {@link VirtualFileSystem} if there is no such file.
+     * Upload from the beginning replaces content of a file in {@link VirtualFileSystem}.
+     *
+     * @param path     requested path
+     * @param position position to write from
+     * @return channel
+     * @throws IOException if channel can't be truncated
+     */
+    protected SeekableByteChannel create(String path, long position) throws IOException {
+        if (fileSystem == null) {
+            return channel;
+        }
+
+        SeekableByteChannel file = fileSystem.create(path);
+        if (position == 0) {
+            synchronized (file) {
+                file.truncate(0);
+            }
+            // content is replaced, ranges sent before don't matter anymore
+            onFileRemoved(file);
+        }
+        return file;
+    }
+
+    /**
+     * @param path requested path
+     * @return true if file has been deleted, false if there is no such file or deletion is not supported
+     */
+    protected boolean delete(String path) {
+        if (fileSystem == null) {
+            return false;
+        }
+
+        SeekableByteChannel removed = fileSystem.remove(path);
+        if (removed == null) {
+            return false;
+        }
+        onFileRemoved(removed);
+        return true;
+    }
+
+    /**
+     * @param from requested path
+     * @param to   new path
+     * @return true if file has been renamed, false if there is no such file or renaming is not supported
+     */
+    protected boolean rename(String from, String to) {
+        if (fileSystem == null) {
+            return false;
+        }
+
+        SeekableByteChannel replaced = fileSystem.get(to);
+        SeekableByteChannel renamed = fileSystem.get(from);
+        if (!fileSystem.rename(from, to)) {
+            return false;
+        }
+        if (replaced != null && replaced != renamed) {
+            onFileRemoved(replaced);
+        }
+        return true;
+    }
+
+    /**
+     * Invoked when file is deleted, replaced by renaming or its content is replaced by upload.
+     * Drops state kept per channel.
+     *
+     * @param channel channel of removed file
+     */
+    protected void onFileRemoved(SeekableByteChannel channel) {
+        synchronized (statisticsLock) {
+            sentRanges.remove(channel);
+        }
+    }
+
+    /**
+     * @return number of channels, for which sent ranges are tracked
+     */
+    int getTrackedChannelCount() {
+        synchronized (statisticsLock) {
+            return sentRanges.size();
+        }
+    }
+
+    protected long size(SeekableByteChannel channel) throws IOException {
+        if (channel instanceof FileChannel) {
+            return channel.size();
+        }
+        synchronized (channel) {
+            return channel.size();
+        }
+    }
+
+    /**
+     * Sends single chunk of channel content.
+     * <p>
+     * File channels are sent with zero-copy {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+     * other channels are copied with provided buffer. Target failures are reported with
+     * {@link java.net.SocketException}, channel failures are never reported as closed connection
+     * (see {@link IOUtil#isClosedByPeer(IOException)}).
+     *
+     * @param channel  channel to send
+     * @param position position to send from
+     * @param count    maximum number of bytes to send
+     * @param target   channel to send to
+     * @param buffer   buffer to copy with
+     * @return number of bytes sent or -1 if position is at the end of channel
+     * @throws IOException if IO fails
+     */
+    protected long send(SeekableByteChannel channel, long position, long count, WritableByteChannel target,
+                        ByteBuffer buffer) throws IOException {
+        if (channel instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) channel;
+            long size = fileChannel.size();
+            if (position >= size) {
+                return IOUtil.EOF;
+            }
+
+            long transferred;
+            try {
+                transferred = fileChannel.transferTo(position, Math.min(count, Math.min(size - position,
+                        MAX_TRANSFER_SIZE)), target);
+            } catch (IOException e) {
+                // transferTo can't tell which side has failed, file reads practically don't fail
+                throw IOUtil.socketFailure(e);
+            }
+            return transferred > 0 ? transferred : IOUtil.EOF;
+        }
+
+        buffer.clear();
+        if (count < buffer.capacity()) {
+            buffer.limit((int) count);
+        }
+
+        int read;
+        try {
+            synchronized (channel) {
+                channel.position(position);
+                read = channel.read(buffer);
+            }
+        } catch (IOException e) {
+            throw IOUtil.localFailure(e);
+        }
+        if (read <= 0) {
+            return IOUtil.EOF;
+        }
+
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        } catch (IOException e) {
+            throw IOUtil.socketFailure(e);
+        }
+        return read;
+    }
+
+    /**
+     * Writes buffer content to the channel. Failures are never reported as closed connection.
+     *
+     * @param channel  channel to write to
+     * @param src      buffer
+     * @param position position to write at
+     * @throws IOException if IO fails
+     */
+    protected void write(SeekableByteChannel channel, ByteBuffer src, long position) throws IOException {
+        try {
+            if (channel instanceof FileChannel) {
+                FileChannel fileChannel = (FileChannel) channel;
+                while (src.hasRemaining()) {
+                    position += fileChannel.write(src, position);
+                }
+                return;
+            }
+
+            synchronized (channel) {
+                channel.position(position);
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+            }
+        } catch (IOException e) {
+            throw IOUtil.localFailure(e);
+        }
+    }
+
+    protected void onSeek() {
+        synchronized (statisticsLock) {
+            seekCount++;
+        }
+    }
+
+    /**
+     * Updates statistics, notifies {@link VirtualFileSystem} about finished upload.
+     *
+     * @param path    requested path
+     * @param channel transferred channel
+     * @param upload  true for upload
+     * @param start   start position
+     * @param end     position after the last transferred byte
+     * @param aborted true if transfer has been aborted
+     */
+    protected void onTransferFinished(String path, SeekableByteChannel channel, boolean upload,
+                                      long start, long end, boolean aborted) {
+        synchronized (statisticsLock) {
+            transferCount++;
+            if (aborted) {
+                abortCount++;
+            }
+            if (upload) {
+                bytesReceived += end - start;
+            } else {
+                bytesSent += end - start;
+                bytesReread += addSentRange(channel, start, end);
+            }
+        }
+
+        if (upload && fileSystem != null) {
+            fileSystem.onFileClosed(path, channel, aborted);
+        }
+    }
+
+    protected static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close: {}", e.getMessage());
+        }
+    }
+
+    private void acceptSessions() throws IOException {
+        while (failure.get() == null) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // server socket is closed on stop request and on failure
+                if (stopped || failure.get() != null || Thread.currentThread().isInterrupted()) {
+                    LOGGER.debug("Stop requested, stopping");
+                    return;
+                }
+                throw e;
+            }
+            serveSession(socket);
+        }
+    }
+
+    private void serveSession(Socket socket) throws IOException {
+        // replies are small and often written back to back (e.g. 426 and 226 on ABOR),
+        // Nagle's algorithm would delay them until delayed ACK from the client
+        socket.setTcpNoDelay(true);
+
+        int id;
+        synchronized (statisticsLock) {
+            id = ++sessionCount;
+        }
+
+        final Session session = createSession(socket, id);
+        sessions.add(session);
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    session.run();
+                } catch (Exception e) {
+                    onFailure(e);
+                } finally {
+                    synchronized (sessions) {
+                        sessions.remove(session);
+                        sessions.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits till all sessions finish, stops waiting on failure: sessions are closed anyway.
+     *
+     * @return false if the timeout elapsed
+     */
+    private boolean awaitSessions(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (sessions) {
+            while (!sessions.isEmpty() && failure.get() == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(sessions, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merges range into sent ranges.
+     *
+     * @return number of bytes which had been sent already
+     */
+    private long addSentRange(SeekableByteChannel channel, long start, long end) {
+        if (start >= end) {
+            return 0;
+        }
+
+        NavigableMap<Long, Long> ranges = sentRanges.get(channel);
+        if (ranges == null) {
+            ranges = new TreeMap<>();
+            sentRanges.put(channel, ranges);
+        }
+
+        long overlap = 0;
+        long mergedStart = start;
+        long mergedEnd = end;
+
+        Long fromKey = ranges.floorKey(start);
+        if (fromKey == null) {
+            fromKey = start;
+        }
+
+        Iterator<Map.Entry<Long, Long>> iterator = ranges.tailMap(fromKey, true).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> range = iterator.next();
+            if (range.getKey() > end) {
+                break;
+            }
+            if (range.getValue() < start) {
+                continue;
+            }
+
+            overlap += Math.min(end, range.getValue()) - Math.max(start, range.getKey());
+            mergedStart = Math.min(mergedStart, range.getKey());
+            mergedEnd = Math.max(mergedEnd, range.getValue());
+            iterator.remove();
+        }
+
+        ranges.put(mergedStart, mergedEnd);
+        return overlap;
+    }
+
+    private static ThreadFactory threadFactory(final String namePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Serves single connection.
+     */
+    protected interface Session extends Runnable {
+        /**
+         * Closes session forcibly, invoked when server is being stopped.
+         */
+        void close();
+    }
+
+    /**
+     * Statistics of channel server, seeks and re-read bytes show how much seeking costs.
+     */
+    public static final class Statistics {
+        private final int sessionCount;
+        private final int transferCount;
+        private final int seekCount;
+        private final int abortCount;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final long bytesReread;
+
+        Statistics(int sessionCount, int transferCount, int seekCount, int abortCount,
+                   long bytesSent, long bytesReceived, long bytesReread) {
+            this.sessionCount = sessionCount;
+            this.transferCount = transferCount;
+            this.seekCount = seekCount;
+            this.abortCount = abortCount;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.bytesReread = bytesReread;
+        }
+
+        /**
+         * @return number of connections (control connections for FTP)
+         */
+        public int getSessionCount() {
+            return sessionCount;
+        }
+
+        /**
+         * @return number of downloads and uploads
+         */
+        public int getTransferCount() {
+            return transferCount;
+        }
+
+        /**
+         * @return number of transfers which didn't start where the previous transfer stopped
+         */
+        public int getSeekCount() {
+            return seekCount;
+        }
+
+        /**
+         * @return number of transfers which have been aborted or closed by ffmpeg before the end
+         */
+        public int getAbortCount() {
+            return abortCount;
+        }
+
+        /**
+         * @return number of bytes sent to ffmpeg, including bytes buffered in aborted connections
+         */
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * @return number of bytes received from ffmpeg
+         */
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        /**
+         * @return number of bytes which have been sent more than once
+         */
+        public long getBytesReread() {
+            return bytesReread;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{"
+                    + "sessions=" + sessionCount
+                    + ", transfers=" + transferCount
+                    + ", seeks=" + seekCount
+                    + ", aborts=" + abortCount
+                    + ", bytesSent=" + bytesSent
+                    + ", bytesReceived=" + bytesReceived
+                    + ", bytesReread=" + bytesReread
+                    + '}';
+        }
+    }
+}
@@ -25,42 +25,175 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketException;
-import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
-
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Simple FTP server intended to work <b>only</b> with ffmpeg.
  * <p>
  * This class uses knowledge of how ffmpeg operates with FTP input:
+ * <ul>
+ * <li>ffmpeg seeks by aborting current transfer (ABOR) and starting new one (EPSV, REST, RETR).
+ * ABOR closes data connection immediately and EPSV is supported, so seek costs single round trip
+ * per command</li>
+ * <li>ffmpeg may open several control connections to the same URL: concurrently (e.g. mov muxer reads
+ * written data back to move moov atom) or successively (reconnect after failure).
+ * Transfer position is tracked per file, so a transfer which doesn't continue the previous one is a seek</li>
+ * <li>Files of {@link VirtualFileSystem} are resolved by path, STOR to absent path creates a file,
+ * DELE, RNFR and RNTO are used by hls muxer to delete and rename files</li>
+ * </ul>
+ *
+ * @see ChannelServer
  */
-public class FtpServer implements Runnable {
-    private final SeekableByteChannel channel;
-    private final ServerSocket serverSocket;
+public class FtpServer extends ChannelServer {
+    // Positions at which the latest transfers have stopped, transfer from other position is a seek
+    private final Map<SeekableByteChannel, Long> expectedPositions = new IdentityHashMap<>();
 
+    private static final int DATA_BACKLOG = 4;
     private static final byte[] NEW_LINE = "\r\n".getBytes();
     private static final Logger LOGGER = LoggerFactory.getLogger(FtpServer.class);
 
     public FtpServer(SeekableByteChannel channel, ServerSocket serverSocket) {
-        this.channel = channel;
-        this.serverSocket = serverSocket;
+        super(channel, serverSocket);
+    }
+
+    public FtpServer(VirtualFileSystem fileSystem, ServerSocket serverSocket) {
+        super(fileSystem, serverSocket);
+    }
+
+    @Override
+    protected void onFileRemoved(SeekableByteChannel channel) {
+        super.onFileRemoved(channel);
+        synchronized (expectedPositions) {
+            expectedPositions.remove(channel);
+        }
+    }
+
+    /**
+     * @return number of channels, for which transfer positions are tracked
+     */
+    int getExpectedPositionCount() {
+        synchronized (expectedPositions) {
+            return expectedPositions.size();
+        }
     }
 
     @Override
-    public void run() {
-        LOGGER.debug("Starting FTP server {}", serverSocket);
+    protected Session createSession(Socket socket, int id) {
+        return new FtpSession(socket, id);
+    }
+
+    protected void doGreet(OutputStream output) throws IOException {
+        println(output, "220 Service ready for new user.");
+    }
+
+    protected void doUser(OutputStream output, String args) throws IOException {
+        println(output, "230 User logged in, proceed.");
+    }
+
+    private void doType(OutputStream output, String args) throws IOException {
+        if (!"I".equals(args)) {
+            println(output, "504 Command not implemented for that parameter.");
+            return;
+        }
+
+        println(output, "200 OK");
+    }
+
+    private void doPwd(OutputStream output) throws IOException {
+        println(output, "257 \"\"");
+    }
+
+    private void doFeat(OutputStream output) throws IOException {
+        println(output, "211-Features:");
+        println(output, " EPSV");
+        println(output, " PASV");
+        println(output, " REST STREAM");
+        println(output, " SIZE");
+        println(output, "211 End");
+    }
+
+    private void doSize(OutputStream output, String args) throws IOException {
+        SeekableByteChannel channel = open(args);
+        if (channel == null) {
+            doFileNotFound(output);
+            return;
+        }
+        println(output, "213 " + size(channel));
+    }
+
+    private void doDele(OutputStream output, String args) throws IOException {
+        if (!delete(args)) {
+            doFileNotFound(output);
+            return;
+        }
+        println(output, "250 Requested file action okay, completed.");
+    }
+
+    protected void doFileNotFound(OutputStream output) throws IOException {
+        println(output, "550 Requested action not taken. File unavailable.");
+    }
+
+    protected void doNotImplemented(OutputStream output) throws IOException {
+        println(output, "502 Command not implemented.");
+    }
+
+    protected void println(OutputStream output, String line) throws IOException {
+        LOGGER.debug("Responding: {}", line);
+        // Transfer status is sent from transfer thread
+        synchronized (output) {
+            output.write(line.getBytes());
+            output.write(NEW_LINE);
+        }
+    }
 
-        try (AutoCloseable toClose = serverSocket;
-             ServerSocket dataServerSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+    /**
+     * Single control connection.
+     */
+    private class FtpSession implements Session {
+        private final Socket controlSocket;
+        private final int id;
+        private ServerSocketChannel dataServerSocket;
+        private long restPosition = 0;
+        private String renameFrom;
+        private volatile Transfer transfer;
+        private volatile boolean closed = false;
+
+        FtpSession(Socket controlSocket, int id) {
+            this.controlSocket = controlSocket;
+            this.id = id;
+        }
 
-            Socket controlSocket = serverSocket.accept();
-            LOGGER.debug("Control connection established: {}", controlSocket);
+        @Override
+        public void run() {
+            LOGGER.debug("Control connection {} established: {}", id, controlSocket);
+
+            try {
+                serve();
+            } catch (IOException e) {
+                if (IOUtil.isClosedByPeer(e) || closed) {
+                    LOGGER.debug("Control connection {} closed: {}", id, e.getMessage());
+                } else {
+                    onFailure(e);
+                }
+            } finally {
+                finish();
+            }
+        }
 
-            BufferedReader controlReader = new BufferedReader(new InputStreamReader(controlSocket.getInputStream()));
-            OutputStream controlOutput = controlSocket.getOutputStream();
+        private void serve() throws IOException {
+            BufferedReader controlReader = new BufferedReader(new InputStreamReader(
+                    IOUtil.socketStream(controlSocket.getInputStream())));
+            OutputStream controlOutput = IOUtil.socketStream(controlSocket.getOutputStream());
 
             doGreet(controlOutput);
 
@@ -68,7 +201,7 @@ public class FtpServer implements Runnable {
             while (!quit) {
                 String line = controlReader.readLine();
                 if (line == null) {
-                    LOGGER.debug("Closing control connection");
+                    LOGGER.debug("Closing control connection {}", id);
                     break;
                 }
 
@@ -91,6 +224,12 @@ public class FtpServer implements Runnable {
                     case "PWD":
                         doPwd(controlOutput);
                         break;
+                    case "FEAT":
+                        doFeat(controlOutput);
+                        break;
+                    case "NOOP":
+                        println(controlOutput, "200 OK");
+                        break;
                     case "REST":
                         doRest(controlOutput, args);
                         break;
@@ -98,23 +237,31 @@ public class FtpServer implements Runnable {
                         doSize(controlOutput, args);
                         break;
                     case "PASV":
-                        doPasv(controlOutput, dataServerSocket);
+                        doPasv(controlOutput);
+                        break;
+                    case "EPSV":
+                        doEpsv(controlOutput, args);
                         break;
                     case "RETR":
-                        doRetr(controlOutput, dataServerSocket);
+                        doRetr(controlOutput, args);
                         break;
                     case "STOR":
-                        doStor(controlOutput, dataServerSocket, args);
+                        doStor(controlOutput, args);
+                        break;
+                    case "DELE":
+                        doDele(controlOutput, args);
+                        break;
+                    case "RNFR":
+                        doRnfr(controlOutput, args);
+                        break;
+                    case "RNTO":
+                        doRnto(controlOutput, args);
                         break;
                     case "ABOR":
                         doAbor(controlOutput);
                         break;
-                    case "FEAT":
-                    case "EPSV":
-                        // intentional fall through
-                        doNotImplemented(controlOutput);
-                        break;
                     case "QUIT":
+                        println(controlOutput, "221 Service closing control connection.");
                         quit = true;
                         break;
                     default:
@@ -123,117 +270,314 @@ public class FtpServer implements Runnable {
                         break;
                 }
             }
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to serve FTP", e);
         }
-    }
 
-    protected void doGreet(OutputStream output) throws IOException {
-        println(output, "220 Service ready for new user.");
-    }
+        private void doRest(OutputStream output, String args) throws IOException {
+            Long position = null;
 
-    protected void doUser(OutputStream output, String args) throws IOException {
-        println(output, "230 User logged in, proceed.");
-    }
+            try {
+                position = Long.parseLong(args);
+            } catch (NumberFormatException e) {
+                // ignored
+            }
 
-    private void doType(OutputStream output, String args) throws IOException {
-        if (!"I".equals(args)) {
-            println(output, "504 Command not implemented for that parameter.");
-            return;
+            if (position == null || position < 0) {
+                println(output, "450 Requested file action not taken.");
+                return;
+            }
+
+            restPosition = position;
+            println(output, "350 Requested file action pending further information.");
         }
 
-        println(output, "200 OK");
-    }
+        private void doPasv(OutputStream output) throws IOException {
+            int port = getDataPort();
+            int portHi = port >> 8;
+            int portLow = port & 0xFF;
+            println(output, "227 Entering Passive Mode (127,0,0,1," + portHi + "," + portLow + ").");
+        }
 
-    private void doPwd(OutputStream output) throws IOException {
-        println(output, "257 \"\"");
-    }
+        private void doEpsv(OutputStream output, String args) throws IOException {
+            if ("ALL".equalsIgnoreCase(args)) {
+                println(output, "200 EPSV ALL command successful.");
+                return;
+            }
+
+            println(output, "229 Entering Extended Passive Mode (|||" + getDataPort() + "|)");
+        }
 
-    private void doRest(OutputStream output, String args) throws IOException {
-        Long position = null;
+        /**
+         * Data connections of the session are accepted with the same socket, which is kept open till
+         * the end of the session.
+         */
+        private int getDataPort() throws IOException {
+            if (dataServerSocket == null) {
+                dataServerSocket = ServerSocketChannel.open();
+                dataServerSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), DATA_BACKLOG);
+            }
 
-        try {
-            position = Long.parseLong(args);
-        } catch (NumberFormatException e) {
-            // ignored
+            return ((InetSocketAddress) dataServerSocket.getLocalAddress()).getPort();
         }
 
-        if (position == null) {
-            println(output, "450 Requested file action not taken.");
-            return;
+        /**
+         * Sends channel content starting from REST position in a separate thread, so ABOR can be processed
+         * while the transfer is in progress.
+         */
+        private void doRetr(OutputStream output, String path) throws IOException {
+            startTransfer(output, path, false);
         }
 
-        channel.position(position);
-        println(output, "350 Requested file action pending further information.");
-    }
+        private void doStor(OutputStream output, String path) throws IOException {
+            startTransfer(output, path, true);
+        }
 
-    private void doSize(OutputStream output, String args) throws IOException {
-        long size = channel.size();
-        println(output, "213 " + size);
-    }
+        private void doRnfr(OutputStream output, String path) throws IOException {
+            if (open(path) == null) {
+                doFileNotFound(output);
+                return;
+            }
+            renameFrom = path;
+            println(output, "350 Requested file action pending further information.");
+        }
 
-    private void doPasv(OutputStream output, ServerSocket dataServerSocket) throws IOException {
-        int port = dataServerSocket.getLocalPort();
-        int portHi = port >> 8;
-        int portLow = port & 0xFF;
-        println(output, "227 Entering Passive Mode (127,0,0,1," + portHi + "," + portLow + ").");
-    }
+        private void doRnto(OutputStream output, String path) throws IOException {
+            String from = renameFrom;
+            renameFrom = null;
+            if (from == null || !rename(from, path)) {
+                println(output, "553 Requested action not taken. File name not allowed.");
+                return;
+            }
+            println(output, "250 Requested file action okay, completed.");
+        }
 
-    private void doRetr(OutputStream output, ServerSocket dataServerSocket) throws IOException {
-        println(output, "150 File status okay; about to open data connection.");
+        private void startTransfer(OutputStream output, String path, boolean upload) throws IOException {
+            awaitTransfer();
 
-        long copied = 0;
-        try (Socket dataSocket = dataServerSocket.accept()) {
-            LOGGER.debug("Data connection established: {}", dataSocket);
+            // REST applies only to the next transfer
+            long position = restPosition;
+            restPosition = 0;
 
-            copied = IOUtil.copy(Channels.newInputStream(channel), dataSocket.getOutputStream(), 1_000_000);
-        } catch (SocketException e) {
-            // ffmpeg can close connection without fully reading requested data. This is not an error.
-            // "Connection reset" is thrown on Linux (Ubunyu) & Windows
-            // "Broken pipe" is thrown on MacOS
-            String message = e.getMessage();
-            if (message.startsWith("Connection reset") || message.startsWith("Broken pipe")) {
-                LOGGER.debug("Client closed socket: {}", e.getMessage());
-            } else {
-                throw e;
+            if (dataServerSocket == null) {
+                println(output, "425 Use PASV or EPSV first.");
+                return;
             }
 
-        } finally {
-            LOGGER.debug("Copied {} bytes to data socket", copied);
-        }
-    }
+            SeekableByteChannel channel = upload ? create(path, position) : open(path);
+            if (channel == null) {
+                doFileNotFound(output);
+                return;
+            }
 
-    private void doStor(OutputStream output, ServerSocket dataServerSocket, String path) throws IOException {
-        println(output, "150 File status okay; about to open data connection.");
+            synchronized (expectedPositions) {
+                Long expectedPosition = expectedPositions.get(channel);
+                if (position != (expectedPosition == null ? 0 : expectedPosition)) {
+                    onSeek();
+                }
+            }
 
-        long copied = 0;
-        try (Socket dataSocket = dataServerSocket.accept()) {
+            println(output, "150 File status okay; about to open data connection.");
+
+            SocketChannel dataSocket = dataServerSocket.accept();
             LOGGER.debug("Data connection established: {}", dataSocket);
 
-            copied = IOUtil.copy(dataSocket.getInputStream(), Channels.newOutputStream(channel), 1_000_000);
-        } catch (SocketException e) {
-            if (e.getMessage().startsWith("Connection reset by peer")) {
-                LOGGER.debug("Client closed socket: {}", e.getMessage());
-            } else {
-                throw e;
+            Transfer newTransfer = new Transfer(output, dataSocket, path, channel, position, upload);
+            newTransfer.future = submit(newTransfer);
+            transfer = newTransfer;
+        }
+
+        /**
+         * ffmpeg sends ABOR and closes data connection when it seeks. Download is stopped immediately,
+         * upload is completed, since ffmpeg may have written data which hasn't been read yet.
+         * <p>
+         * Transfer in progress replies to ABOR itself: 426 and 226 if it has been aborted,
+         * single 226 if it has completed.
+         */
+        private void doAbor(OutputStream output) throws IOException {
+            Transfer current = transfer;
+            boolean replied = current != null && current.abort();
+            awaitTransfer();
+
+            if (!replied) {
+                println(output, "226 Closing data connection.");
+            }
+        }
+
+        private void awaitTransfer() {
+            Transfer current = transfer;
+            if (current == null) {
+                return;
             }
 
-        } finally {
-            LOGGER.debug("Copied {} bytes from data socket", copied);
+            try {
+                current.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for transfer", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Transfer failed", e.getCause());
+            } finally {
+                transfer = null;
+            }
         }
-    }
 
-    private void doAbor(OutputStream output) throws IOException {
-        println(output, "226 Closing data connection.");
-    }
+        private void finish() {
+            Transfer current = transfer;
+            if (current != null && !closed) {
+                current.abort();
+                try {
+                    awaitTransfer();
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Failed to finish transfer: {}", e.getMessage());
+                }
+            }
 
-    protected void doNotImplemented(OutputStream output) throws IOException {
-        println(output, "502 Command not implemented.");
-    }
+            closeQuietly(dataServerSocket);
+            closeQuietly(controlSocket);
+        }
 
-    protected void println(OutputStream output, String line) throws IOException {
-        LOGGER.debug("Responding: {}", line);
-        output.write(line.getBytes());
-        output.write(NEW_LINE);
+        @Override
+        public void close() {
+            closed = true;
+
+            Transfer current = transfer;
+            if (current != null) {
+                closeQuietly(current.dataSocket);
+            }
+            closeQuietly(dataServerSocket);
+            closeQuietly(controlSocket);
+        }
+
+        private class Transfer implements Runnable {
+            private final OutputStream output;
+            private final SocketChannel dataSocket;
+            private final String path;
+            private final SeekableByteChannel channel;
+            private final long start;
+            private final boolean upload;
+            private volatile boolean aborted = false;
+            private volatile Future<?> future;
+            // guarded by this, true if ABOR has been received before transfer status has been sent
+            private boolean abortRequested = false;
+            // guarded by this
+            private boolean statusSent = false;
+            private long position;
+
+            Transfer(OutputStream output, SocketChannel dataSocket, String path, SeekableByteChannel channel,
+                     long start, boolean upload) {
+                this.output = output;
+                this.dataSocket = dataSocket;
+                this.path = path;
+                this.channel = channel;
+                this.start = start;
+                this.upload = upload;
+                this.position = start;
+            }
+
+            @Override
+            public void run() {
+                boolean completed = false;
+                // Statistics must match transfer status sent to ffmpeg: ABOR may arrive after all data
+                // has been sent, such transfer is reported as complete
+                boolean transferAborted = false;
+                try (SocketChannel toClose = dataSocket) {
+                    try {
+                        if (upload) {
+                            receive();
+                        } else {
+                            send();
+                        }
+                        dataSocket.close();
+                        completed = true;
+                        // ffmpeg waits for transfer status when it reads data till the end
+                        sendStatus(true);
+                    } catch (IOException e) {
+                        // ffmpeg can close connection without fully reading requested data. This is not an error.
+                        if (completed || (!aborted && !closed && !IOUtil.isClosedByPeer(e))) {
+                            throw e;
+                        }
+                        LOGGER.debug("Data connection closed: {}", e.toString());
+                        transferAborted = true;
+                        sendStatus(false);
+                    }
+                } catch (IOException e) {
+                    // ffmpeg may close control connection before transfer status is sent
+                    if (!closed && !IOUtil.isClosedByPeer(e)) {
+                        onFailure(e);
+                    }
+                } finally {
+                    LOGGER.debug("Transferred {} bytes from position {}, upload: {}", position - start, start, upload);
+                    synchronized (expectedPositions) {
+                        expectedPositions.put(channel, position);
+                    }
+                    onTransferFinished(path, channel, upload, start, position, transferAborted);
+                }
+            }
+
+            /**
+             * Aborts download, upload is completed anyway.
+             *
+             * @return true if transfer status hasn't been sent yet, so the transfer replies to ABOR
+             */
+            synchronized boolean abort() {
+                if (statusSent) {
+                    return false;
+                }
+                abortRequested = true;
+                if (!upload) {
+                    aborted = true;
+                    closeQuietly(dataSocket);
+                }
+                return true;
+            }
+
+            private synchronized void sendStatus(boolean completed) throws IOException {
+                statusSent = true;
+                if (completed) {
+                    println(output, "226 Transfer complete.");
+                    return;
+                }
+
+                println(output, "426 Connection closed; transfer aborted.");
+                if (abortRequested) {
+                    println(output, "226 Closing data connection.");
+                }
+            }
+
+            private void send() throws IOException {
+                ByteBuffer buffer = BufferPool.acquire(BUFFER_SIZE);
+                try {
+                    long sent;
+                    while ((sent = FtpServer.this.send(channel, position, Long.MAX_VALUE, dataSocket,
+                            buffer)) != IOUtil.EOF) {
+                        position += sent;
+                    }
+                } finally {
+                    BufferPool.release(buffer);
+                }
+            }
+
+            private int readData(ByteBuffer buffer) throws IOException {
+                try {
+                    return dataSocket.read(buffer);
+                } catch (IOException e) {
+                    throw IOUtil.socketFailure(e);
+                }
+            }
+
+            private void receive() throws IOException {
+                ByteBuffer buffer = BufferPool.acquire(BUFFER_SIZE);
+                try {
+                    while (readData(buffer) != IOUtil.EOF) {
+                        buffer.flip();
+                        int count = buffer.remaining();
+                        write(channel, buffer, position);
+                        position += count;
+                        buffer.clear();
+                    }
+                } finally {
+                    BufferPool.release(buffer);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,466 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Simple HTTP/1.1 server intended to work <b>only</b> with ffmpeg.
+ * <p>
+ * ffmpeg http client seeks by sending new request with {@code Range: bytes=position-} header, so every seek
+ * costs single request instead of ABOR, EPSV, REST and RETR commands of FTP.
+ * <ul>
+ * <li>GET and HEAD support single byte range and keep-alive connections</li>
+ * <li>POST and PUT body (with Content-Length or chunked) is written from the beginning of the channel.
+ * ffmpeg can't seek in HTTP output, so only streaming formats can be written</li>
+ * <li>Files of {@link VirtualFileSystem} are resolved by path, upload to absent path creates a file,
+ * DELETE removes a file</li>
+ * </ul>
+ *
+ * @see ChannelServer
+ */
+public class HttpServer extends ChannelServer {
+    // Positions at which the latest downloads have stopped, download from other position is a seek
+    private final Map<SeekableByteChannel, Long> expectedPositions = new IdentityHashMap<>();
+
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpServer.class);
+
+    public HttpServer(SeekableByteChannel channel, ServerSocket serverSocket) {
+        super(channel, serverSocket);
+    }
+
+    public HttpServer(VirtualFileSystem fileSystem, ServerSocket serverSocket) {
+        super(fileSystem, serverSocket);
+    }
+
+    @Override
+    protected void onFileRemoved(SeekableByteChannel channel) {
+        super.onFileRemoved(channel);
+        synchronized (expectedPositions) {
+            expectedPositions.remove(channel);
+        }
+    }
+
+    /**
+     * @return number of channels, for which download positions are tracked
+     */
+    int getExpectedPositionCount() {
+        synchronized (expectedPositions) {
+            return expectedPositions.size();
+        }
+    }
+
+    @Override
+    protected Session createSession(Socket socket, int id) {
+        return new Connection(socket, id);
+    }
+
+    /**
+     * Reads line terminated with CRLF or LF.
+     *
+     * @return line without terminator, or null if input has ended before the first byte
+     */
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != '\n') {
+            if (b == IOUtil.EOF) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                throw new EOFException("Unexpected end of line");
+            }
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Line is too long");
+            }
+            line.write(b);
+        }
+
+        String result = new String(line.toByteArray(), StandardCharsets.US_ASCII);
+        if (result.endsWith("\r")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Parses single byte range, e.g. {@code bytes=100-}, {@code bytes=100-199} or {@code bytes=-100}.
+     *
+     * @return first and last byte positions (inclusive), or null if range is absent or can't be parsed
+     */
+    static long[] parseRange(String range, long size) {
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+
+        String[] startAndEnd = range.substring("bytes=".length()).trim().split("-", -1);
+        if (startAndEnd.length != 2) {
+            return null;
+        }
+
+        try {
+            String start = startAndEnd[0].trim();
+            String end = startAndEnd[1].trim();
+
+            if (start.isEmpty()) {
+                long suffixLength = Long.parseLong(end);
+                return new long[]{Math.max(0, size - suffixLength), size - 1};
+            }
+
+            long first = Long.parseLong(start);
+            long last = end.isEmpty() ? size - 1 : Math.min(Long.parseLong(end), size - 1);
+            if (first < 0 || (!end.isEmpty() && Long.parseLong(end) < first)) {
+                return null;
+            }
+            return new long[]{first, last};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static class Request {
+        private final String method;
+        private final String path;
+        private final boolean keepAlive;
+        private final Map<String, String> headers;
+
+        Request(String method, String path, String version, Map<String, String> headers) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+
+            String connection = header("Connection");
+            if ("HTTP/1.0".equals(version)) {
+                keepAlive = "keep-alive".equalsIgnoreCase(connection);
+            } else {
+                keepAlive = !"close".equalsIgnoreCase(connection);
+            }
+        }
+
+        String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Single connection, which serves requests one by one.
+     */
+    private class Connection implements Session {
+        private final Socket socket;
+        private final int id;
+        private volatile boolean closed = false;
+
+        Connection(Socket socket, int id) {
+            this.socket = socket;
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            LOGGER.debug("Connection {} established: {}", id, socket);
+
+            try (Socket toClose = socket) {
+                InputStream input = new BufferedInputStream(IOUtil.socketStream(socket.getInputStream()));
+                WritableByteChannel output = socket.getChannel();
+                if (output == null) {
+                    output = Channels.newChannel(socket.getOutputStream());
+                }
+
+                boolean keepAlive = true;
+                while (keepAlive) {
+                    Request request = readRequest(input, output);
+                    if (request == null) {
+                        break;
+                    }
+                    keepAlive = serve(request, input, output);
+                }
+            } catch (IOException e) {
+                if (IOUtil.isClosedByPeer(e) || closed) {
+                    LOGGER.debug("Connection {} closed: {}", id, e.getMessage());
+                } else {
+                    onFailure(e);
+                }
+            }
+
+            LOGGER.debug("Connection {} finished", id);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            closeQuietly(socket);
+        }
+
+        private Request readRequest(InputStream input, WritableByteChannel output) throws IOException {
+            String requestLine = readLine(input);
+            if (requestLine == null) {
+                return null;
+            }
+            LOGGER.debug("Received request: {}", requestLine);
+
+            String[] parts = requestLine.split(" ");
+            if (parts.length != 3) {
+                respond(output, "400 Bad Request", false, 0);
+                return null;
+            }
+
+            Map<String, String> headers = new HashMap<>();
+            String line;
+            while ((line = readLine(input)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                            line.substring(colon + 1).trim());
+                }
+            }
+
+            return new Request(parts[0].toUpperCase(Locale.ROOT), parts[1], parts[2], headers);
+        }
+
+        /**
+         * @return true if connection should be kept alive
+         */
+        private boolean serve(Request request, InputStream input, WritableByteChannel output)
+                throws IOException {
+            switch (request.method) {
+                case "GET":
+                    return doGet(request, output, true);
+                case "HEAD":
+                    return doGet(request, output, false);
+                case "POST":
+                case "PUT":
+                    return doUpload(request, input, output);
+                case "DELETE":
+                    return doDelete(request, output);
+                default:
+                    LOGGER.warn("Method {} not supported", request.method);
+                    respond(output, "405 Method Not Allowed", request.keepAlive, 0,
+                            "Allow: GET, HEAD, POST, PUT, DELETE");
+                    return request.keepAlive;
+            }
+        }
+
+        private boolean doGet(Request request, WritableByteChannel output, boolean withBody) throws IOException {
+            SeekableByteChannel channel = open(request.path);
+            if (channel == null) {
+                respond(output, "404 Not Found", request.keepAlive, 0);
+                return request.keepAlive;
+            }
+
+            long size = size(channel);
+            String rangeHeader = request.header("Range");
+            long[] range = parseRange(rangeHeader, size);
+            if (size == 0) {
+                // no range of empty file is satisfiable, but ffmpeg requests "bytes=0-" anyway
+                range = null;
+            }
+
+            if (rangeHeader != null && range != null && range[0] >= size) {
+                respond(output, "416 Range Not Satisfiable", request.keepAlive, 0,
+                        "Content-Range: bytes */" + size);
+                return request.keepAlive;
+            }
+
+            long start = 0;
+            long length = size;
+            if (range != null) {
+                start = range[0];
+                length = range[1] - range[0] + 1;
+                respond(output, "206 Partial Content", request.keepAlive, length,
+                        "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + size);
+            } else {
+                respond(output, "200 OK", request.keepAlive, length);
+            }
+
+            if (!withBody) {
+                return request.keepAlive;
+            }
+
+            synchronized (expectedPositions) {
+                Long expectedPosition = expectedPositions.get(channel);
+                if (start != (expectedPosition == null ? 0 : expectedPosition)) {
+                    onSeek();
+                }
+            }
+
+            long position = start;
+            long end = start + length;
+            boolean aborted = true;
+            ByteBuffer buffer = BufferPool.acquire(BUFFER_SIZE);
+            try {
+                while (position < end) {
+                    long sent = send(channel, position, end - position, output, buffer);
+                    if (sent == IOUtil.EOF) {
+                        // channel has been truncated, declared Content-Length can't be satisfied
+                        throw new EOFException("Channel has ended at " + position);
+                    }
+                    position += sent;
+                }
+                aborted = false;
+            } finally {
+                BufferPool.release(buffer);
+                LOGGER.debug("Sent {} bytes from position {}", position - start, start);
+                synchronized (expectedPositions) {
+                    expectedPositions.put(channel, position);
+                }
+                onTransferFinished(request.path, channel, false, start, position, aborted);
+            }
+
+            return request.keepAlive;
+        }
+
+        private boolean doUpload(Request request, InputStream input, WritableByteChannel output)
+                throws IOException {
+            if ("100-continue".equalsIgnoreCase(request.header("Expect"))) {
+                writeText(output, "HTTP/1.1 100 Continue\r\n\r\n");
+            }
+
+            String contentLength = request.header("Content-Length");
+            boolean chunked = "chunked".equalsIgnoreCase(request.header("Transfer-Encoding"));
+            boolean keepAlive = request.keepAlive && (chunked || contentLength != null);
+
+            SeekableByteChannel channel = create(request.path, 0);
+            long position = 0;
+            boolean aborted = true;
+            byte[] buffer = new byte[UPLOAD_BUFFER_SIZE];
+            try {
+                if (chunked) {
+                    long chunkSize;
+                    while ((chunkSize = readChunkSize(input)) > 0) {
+                        position = receive(channel, input, buffer, position, chunkSize);
+                        readLine(input);
+                    }
+                    // trailer
+                    String line;
+                    while ((line = readLine(input)) != null && !line.isEmpty()) {
+                        LOGGER.debug("Ignoring trailer: {}", line);
+                    }
+                } else if (contentLength != null) {
+                    position = receive(channel, input, buffer, position, Long.parseLong(contentLength.trim()));
+                } else {
+                    position = receive(channel, input, buffer, position, Long.MAX_VALUE);
+                }
+                aborted = false;
+            } finally {
+                LOGGER.debug("Received {} bytes", position);
+                onTransferFinished(request.path, channel, true, 0, position, aborted);
+            }
+
+            respond(output, "204 No Content", keepAlive, -1);
+            return keepAlive;
+        }
+
+        private boolean doDelete(Request request, WritableByteChannel output) throws IOException {
+            if (delete(request.path)) {
+                respond(output, "204 No Content", request.keepAlive, -1);
+            } else {
+                respond(output, "404 Not Found", request.keepAlive, 0);
+            }
+            return request.keepAlive;
+        }
+
+        private long readChunkSize(InputStream input) throws IOException {
+            String line = readLine(input);
+            if (line == null) {
+                // peer has closed connection in the middle of body
+                throw IOUtil.socketFailure(new EOFException("Chunked body has ended unexpectedly"));
+            }
+
+            int extension = line.indexOf(';');
+            if (extension >= 0) {
+                line = line.substring(0, extension);
+            }
+            return Long.parseLong(line.trim(), 16);
+        }
+
+        /**
+         * @return position after the last written byte
+         */
+        private long receive(SeekableByteChannel channel, InputStream input, byte[] buffer, long position,
+                             long count) throws IOException {
+            long remaining = count;
+            while (remaining > 0) {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == IOUtil.EOF) {
+                    if (count == Long.MAX_VALUE) {
+                        break;
+                    }
+                    throw IOUtil.socketFailure(new EOFException("Body has ended unexpectedly"));
+                }
+                write(channel, ByteBuffer.wrap(buffer, 0, read), position);
+                position += read;
+                remaining -= read;
+            }
+            return position;
+        }
+
+        /**
+         * @param contentLength content length, or -1 if there is no content
+         */
+        private void respond(WritableByteChannel output, String status, boolean keepAlive, long contentLength,
+                             String... headers) throws IOException {
+            LOGGER.debug("Responding: {}", status);
+
+            StringBuilder response = new StringBuilder()
+                    .append("HTTP/1.1 ").append(status).append("\r\n")
+                    .append("Accept-Ranges: bytes\r\n")
+                    .append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+            if (contentLength >= 0) {
+                response.append("Content-Type: application/octet-stream\r\n")
+                        .append("Content-Length: ").append(contentLength).append("\r\n");
+            }
+            for (String header : headers) {
+                response.append(header).append("\r\n");
+            }
+            response.append("\r\n");
+
+            writeText(output, response.toString());
+        }
+
+        private void writeText(WritableByteChannel output, String text) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+            try {
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+            } catch (IOException e) {
+                throw IOUtil.socketFailure(e);
+            }
+        }
+    }
+}
@@ -17,9 +17,20 @@
 
 package com.github.kokorin.jaffree.util;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Kindly borrowed from commons-io.
@@ -30,6 +41,8 @@ public class IOUtil {
 
     public static final int EOF = -1;
     private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
+    // Max bytes transferred with single transferTo call, larger transfers are split by OS anyway
+    private static final long MAX_TRANSFER_SIZE = 64 * 1024 * 1024;
 
     public static long copy(final InputStream input, final OutputStream output)
             throws IOException {
@@ -46,15 +59,19 @@ public class IOUtil {
         return copy(input, output, new byte[bufferSize], length);
     }
 
+    /**
+     * Copies data between streams. Input failures are never reported as closed connection,
+     * see {@link #isClosedByPeer(IOException)}.
+     *
+     * @param input  input stream
+     * @param output output stream
+     * @param buffer buffer to copy with
+     * @return number of bytes copied
+     * @throws IOException if copy fails
+     */
     public static long copy(final InputStream input, final OutputStream output, final byte[] buffer)
             throws IOException {
-        long count = 0;
-        int n;
-        while (EOF != (n = input.read(buffer))) {
-            output.write(buffer, 0, n);
-            count += n;
-        }
-        return count;
+        return copy(input, output, buffer, Long.MAX_VALUE);
     }
 
     public static long copy(final InputStream input, final OutputStream output, final byte[] buffer, long length)
@@ -62,12 +79,239 @@ public class IOUtil {
         long count = 0;
         int n;
         long leftToCopy = length;
-        while (leftToCopy > 0 && EOF != (n = input.read(buffer, 0, (int) Math.min(leftToCopy, buffer.length)))) {
+        while (leftToCopy > 0 && EOF != (n = read(input, buffer, (int) Math.min(leftToCopy, buffer.length)))) {
             output.write(buffer, 0, n);
             count += n;
             leftToCopy -= n;
         }
         return count;
     }
-}
 
+    /**
+     * Copies data between channels bypassing Java heap.
+     * <p>
+     * If input is a {@link FileChannel}, data is transferred with
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so OS can copy data
+     * without passing it to user space (e.g. sendfile). Otherwise pooled direct buffer is used.
+     * <p>
+     * File channel position is respected and updated. Input failures are never reported as closed connection,
+     * output failures are reported with {@link SocketException} if output is a socket,
+     * see {@link #isClosedByPeer(IOException)}.
+     *
+     * @param input      input channel
+     * @param output     output channel
+     * @param bufferSize direct buffer size
+     * @return number of bytes copied
+     * @throws IOException if copy fails
+     */
+    public static long copy(final ReadableByteChannel input, final WritableByteChannel output, final int bufferSize)
+            throws IOException {
+        if (input instanceof FileChannel) {
+            return transferTo((FileChannel) input, output);
+        }
+        // FileChannel.transferFrom from non-file channel copies via small heap buffer, so it's not used
+
+        ByteBuffer buffer = BufferPool.acquire(bufferSize);
+        try {
+            long count = 0;
+            while (read(input, buffer) != EOF) {
+                buffer.flip();
+                try {
+                    while (buffer.hasRemaining()) {
+                        count += output.write(buffer);
+                    }
+                } catch (IOException e) {
+                    throw output instanceof NetworkChannel ? socketFailure(e) : e;
+                }
+                buffer.clear();
+            }
+            return count;
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Returns channel which backs input stream, if any.
+     *
+     * @param input input stream
+     * @return channel or null
+     */
+    public static ReadableByteChannel getChannel(final InputStream input) {
+        if (input instanceof FileInputStream) {
+            return ((FileInputStream) input).getChannel();
+        }
+        if (input instanceof SocketInputStream) {
+            return ((SocketInputStream) input).getChannel();
+        }
+        return null;
+    }
+
+    /**
+     * Returns channel which backs output stream, if any.
+     *
+     * @param output output stream
+     * @return channel or null
+     */
+    public static WritableByteChannel getChannel(final OutputStream output) {
+        if (output instanceof FileOutputStream) {
+            return ((FileOutputStream) output).getChannel();
+        }
+        if (output instanceof SocketOutputStream) {
+            return ((SocketOutputStream) output).getChannel();
+        }
+        return null;
+    }
+
+    /**
+     * Checks if exception is caused by closed connection: {@link SocketException} or
+     * {@link ClosedChannelException} (including {@link java.nio.channels.AsynchronousCloseException}).
+     * <p>
+     * ffmpeg can close connection without fully reading data. Socket channels report it with plain IOException
+     * (its message depends on OS, JDK and locale), so socket IO failures are translated to {@link SocketException}
+     * where the failed side is known: by {@link SocketOutputStream}, by {@code copy} methods of this class
+     * and by channel servers. Failures of local side (e.g. data source) are never translated.
+     *
+     * @param e exception
+     * @return true if connection has been closed
+     */
+    public static boolean isClosedByPeer(final IOException e) {
+        return e instanceof SocketException || e instanceof ClosedChannelException;
+    }
+
+    /**
+     * Translates failure of socket IO, so it's detected by {@link #isClosedByPeer(IOException)}.
+     *
+     * @param e socket IO failure
+     * @return exception to throw
+     */
+    static IOException socketFailure(final IOException e) {
+        if (isClosedByPeer(e)) {
+            return e;
+        }
+
+        SocketException result = new SocketException(e.getMessage());
+        result.initCause(e);
+        return result;
+    }
+
+    /**
+     * Translates failure of local IO (e.g. reading data source), so it's never detected by
+     * {@link #isClosedByPeer(IOException)}, even if local side is a socket.
+     *
+     * @param e local IO failure
+     * @return exception to throw
+     */
+    static IOException localFailure(final IOException e) {
+        if (!isClosedByPeer(e)) {
+            return e;
+        }
+
+        return new IOException("Local IO failure: " + e.getMessage(), e);
+    }
+
+    /**
+     * @param input socket input stream
+     * @return stream which reports failures with {@link SocketException}
+     */
+    static InputStream socketStream(final InputStream input) {
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                try {
+                    return in.read();
+                } catch (IOException e) {
+                    throw socketFailure(e);
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    return in.read(b, off, len);
+                } catch (IOException e) {
+                    throw socketFailure(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param output socket output stream
+     * @return stream which reports failures with {@link SocketException}
+     */
+    static OutputStream socketStream(final OutputStream output) {
+        return new FilterOutputStream(output) {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    out.write(b);
+                } catch (IOException e) {
+                    throw socketFailure(e);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    out.write(b, off, len);
+                } catch (IOException e) {
+                    throw socketFailure(e);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    throw socketFailure(e);
+                }
+            }
+        };
+    }
+
+    private static int read(final InputStream input, final byte[] buffer, final int length) throws IOException {
+        try {
+            return input.read(buffer, 0, length);
+        } catch (IOException e) {
+            throw localFailure(e);
+        }
+    }
+
+    private static int read(final ReadableByteChannel input, final ByteBuffer buffer) throws IOException {
+        try {
+            return input.read(buffer);
+        } catch (IOException e) {
+            throw localFailure(e);
+        }
+    }
+
+    private static long transferTo(final FileChannel input, final WritableByteChannel output) throws IOException {
+        long position = input.position();
+        long size = input.size();
+        long count = 0;
+
+        try {
+            while (position < size) {
+                long transferred;
+                try {
+                    transferred = input.transferTo(position, Math.min(size - position, MAX_TRANSFER_SIZE), output);
+                } catch (IOException e) {
+                    // transferTo can't tell which side has failed, file reads practically don't fail
+                    // unlike sockets, which are closed by ffmpeg
+                    throw output instanceof NetworkChannel ? socketFailure(e) : e;
+                }
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                count += transferred;
+            }
+        } finally {
+            input.position(position);
+        }
+
+        return count;
+    }
+}
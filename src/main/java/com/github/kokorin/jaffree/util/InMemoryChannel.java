@@ -0,0 +1,143 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Growable {@link SeekableByteChannel} backed by byte array, used for files created in
+ * {@link VirtualFileSystem}.
+ */
+class InMemoryChannel implements SeekableByteChannel {
+    private byte[] data;
+    private int size;
+    private long position = 0;
+    private boolean open = true;
+
+    private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+    InMemoryChannel() {
+        this(new byte[0]);
+    }
+
+    InMemoryChannel(byte[] content) {
+        this.data = content;
+        this.size = content.length;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size) {
+            return IOUtil.EOF;
+        }
+
+        int length = (int) Math.min(dst.remaining(), size - position);
+        dst.put(data, (int) position, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        int length = src.remaining();
+        long end = position + length;
+        if (end > MAX_SIZE) {
+            throw new IOException("In-memory file can't be larger than " + MAX_SIZE + " bytes");
+        }
+
+        if (end > data.length) {
+            data = Arrays.copyOf(data, (int) Math.min(MAX_SIZE, Math.max(end, data.length * 2L)));
+        }
+        src.get(data, (int) position, length);
+        position = end;
+        size = (int) Math.max(size, end);
+        return length;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position must be non-negative: " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel truncate(long newSize) throws IOException {
+        ensureOpen();
+        if (newSize < 0) {
+            throw new IllegalArgumentException("Size must be non-negative: " + newSize);
+        }
+        if (newSize < size) {
+            // bytes after the end must be zeroes when channel grows again
+            Arrays.fill(data, (int) newSize, size, (byte) 0);
+            size = (int) newSize;
+        }
+        if (position > newSize) {
+            position = newSize;
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+    }
+
+    synchronized byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Wraps content without copying, channel must not be written afterwards.
+     */
+    synchronized ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(data, 0, size).slice();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -17,15 +17,20 @@
 
 package com.github.kokorin.jaffree.util;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 public class SocketInputStream extends InputStream {
-    private final ServerSocket serverSocket;
-    private final Socket socket;
+    private final Closeable serverSocket;
+    private final Closeable socket;
     private final InputStream inputStream;
+    private final SocketChannel channel;
 
     public SocketInputStream(ServerSocket serverSocket) throws IOException {
         this(serverSocket, serverSocket.accept());
@@ -35,6 +40,21 @@ public class SocketInputStream extends InputStream {
         this.serverSocket = serverSocket;
         this.socket = socket;
         this.inputStream = socket.getInputStream();
+        this.channel = null;
+    }
+
+    public SocketInputStream(ServerSocketChannel serverChannel, SocketChannel channel) {
+        this.serverSocket = serverChannel;
+        this.socket = channel;
+        this.inputStream = Channels.newInputStream(channel);
+        this.channel = channel;
+    }
+
+    /**
+     * @return socket channel to read from directly, or null
+     */
+    public SocketChannel getChannel() {
+        return channel;
     }
 
     @Override
@@ -79,8 +99,8 @@ public class SocketInputStream extends InputStream {
 
     @Override
     public void close() throws IOException {
-        try (ServerSocket toCloseServerSocket = serverSocket;
-             Socket toCloseSocket = socket;
+        try (Closeable toCloseServerSocket = serverSocket;
+             Closeable toCloseSocket = socket;
              InputStream toCloseInputStream = inputStream) {
 
         }
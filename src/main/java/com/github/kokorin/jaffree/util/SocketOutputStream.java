@@ -17,48 +17,92 @@
 
 package com.github.kokorin.jaffree.util;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 public class SocketOutputStream extends OutputStream {
-    private final ServerSocket serverSocket;
-    private final Socket socket;
+    private final Closeable serverSocket;
+    private final Closeable socket;
     private final OutputStream outputStream;
+    private final SocketChannel channel;
 
     public SocketOutputStream(ServerSocket serverSocket, Socket socket) throws IOException {
         this.serverSocket = serverSocket;
         this.socket = socket;
         this.outputStream = socket.getOutputStream();
+        this.channel = null;
+    }
+
+    public SocketOutputStream(ServerSocketChannel serverChannel, SocketChannel channel) {
+        this.serverSocket = serverChannel;
+        this.socket = channel;
+        this.outputStream = Channels.newOutputStream(channel);
+        this.channel = channel;
+    }
+
+    /**
+     * @return socket channel to write to directly (e.g. with FileChannel.transferTo), or null
+     */
+    public SocketChannel getChannel() {
+        return channel;
     }
 
     @Override
     public void write(int b) throws IOException {
-        outputStream.write(b);
+        try {
+            outputStream.write(b);
+        } catch (IOException e) {
+            throw translate(e);
+        }
     }
 
     @Override
     public void write(byte[] b) throws IOException {
-        outputStream.write(b);
+        try {
+            outputStream.write(b);
+        } catch (IOException e) {
+            throw translate(e);
+        }
     }
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        outputStream.write(b, off, len);
+        try {
+            outputStream.write(b, off, len);
+        } catch (IOException e) {
+            throw translate(e);
+        }
     }
 
     @Override
     public void flush() throws IOException {
-        outputStream.flush();
+        try {
+            outputStream.flush();
+        } catch (IOException e) {
+            throw translate(e);
+        }
     }
 
     @Override
     public void close() throws IOException {
-        try (ServerSocket toCloseServerSocket = serverSocket;
-             Socket toCloseSocket = socket;
+        try (Closeable toCloseServerSocket = serverSocket;
+             Closeable toCloseSocket = socket;
              OutputStream toCloseOutputStream = outputStream) {
 
         }
     }
+
+    /**
+     * Socket channels report closed connection with plain IOException, while java.net sockets
+     * throw SocketException, which suppliers rely on.
+     */
+    private static IOException translate(IOException e) {
+        return IOUtil.socketFailure(e);
+    }
 }
@@ -0,0 +1,298 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.util;
+
+import com.github.kokorin.jaffree.OS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+/**
+ * Transport which is used to exchange data with ffmpeg via socket.
+ * <ul>
+ * <li>{@link #tcp()} - loopback TCP socket, supported everywhere</li>
+ * <li>{@link #unix(Path)} - Unix domain socket, ffmpeg connects to it with unix:// protocol.
+ * It avoids TCP stack overhead and doesn't use ephemeral ports. Requires Java 16+ and not supported on Windows</li>
+ * </ul>
+ */
+public abstract class SocketTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SocketTransport.class);
+
+    private static final SocketTransport TCP = new TcpTransport();
+
+    /**
+     * Maximum length of Unix domain socket path is limited (108 bytes on Linux, 104 on Mac).
+     */
+    private static final int MAX_UNIX_PATH_LENGTH = 100;
+
+    private SocketTransport() {
+    }
+
+    /**
+     * Allocates listening socket.
+     *
+     * @return endpoint
+     * @throws IOException if socket allocation fails
+     */
+    public abstract Endpoint listen() throws IOException;
+
+    /**
+     * @return loopback TCP transport
+     */
+    public static SocketTransport tcp() {
+        return TCP;
+    }
+
+    /**
+     * Creates Unix domain socket transport, socket files are created in temporary directory.
+     *
+     * @return unix domain socket transport
+     * @throws IllegalStateException if Unix domain sockets aren't supported
+     * @see #isUnixSupported()
+     */
+    public static SocketTransport unix() {
+        return unix(Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Creates Unix domain socket transport, socket files are created in specified directory and deleted
+     * as soon as ffmpeg connection is accepted with {@link Endpoint#accept()}, or when endpoint is closed.
+     *
+     * @param directory directory to create socket files in
+     * @return unix domain socket transport
+     * @throws IllegalStateException if Unix domain sockets aren't supported
+     * @see #isUnixSupported()
+     */
+    public static SocketTransport unix(Path directory) {
+        if (!isUnixSupported()) {
+            throw new IllegalStateException("Unix domain sockets require Java 16+ and are not supported on Windows");
+        }
+        return new UnixTransport(directory);
+    }
+
+    /**
+     * @return true if Unix domain sockets are supported by JVM and OS
+     */
+    public static boolean isUnixSupported() {
+        return UnixTransport.OPEN != null && !OS.IS_WINDOWS;
+    }
+
+    /**
+     * Listening socket, which ffmpeg connects to.
+     */
+    public abstract static class Endpoint implements Closeable {
+        private final ServerSocketChannel channel;
+
+        Endpoint(ServerSocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return listening channel
+         */
+        public ServerSocketChannel getChannel() {
+            return channel;
+        }
+
+        /**
+         * Builds URL for ffmpeg to connect to.
+         *
+         * @param protocol ffmpeg protocol on top of TCP (e.g. tcp or ftp)
+         * @param suffix   URL suffix, e.g. path
+         * @return URL
+         */
+        public abstract String getUrl(String protocol, String suffix);
+
+        /**
+         * Accepts ffmpeg connection and releases resources which are no longer needed after that,
+         * e.g. Unix domain socket file.
+         *
+         * @return accepted connection
+         * @throws IOException if accept fails
+         */
+        public SocketChannel accept() throws IOException {
+            try {
+                return channel.accept();
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Releases resources which are no longer needed when ffmpeg is connected, e.g. Unix domain socket file.
+         * Doesn't close channel. Invoked by {@link #accept()} and {@link #close()}.
+         */
+        public void release() {
+        }
+
+        /**
+         * Closes listening channel and releases all resources.
+         *
+         * @throws IOException if close fails
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" + getUrl("tcp", "") + "}";
+        }
+    }
+
+    private static class TcpTransport extends SocketTransport {
+        @Override
+        public Endpoint listen() throws IOException {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            try {
+                channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+            final int port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+
+            return new Endpoint(channel) {
+                @Override
+                public String getUrl(String protocol, String suffix) {
+                    return protocol + "://127.0.0.1:" + port + suffix;
+                }
+            };
+        }
+    }
+
+    private static class UnixTransport extends SocketTransport {
+        private final Path directory;
+
+        // Unix domain sockets are available since Java 16, but Jaffree must run on Java 8
+        private static final Method OPEN;
+        private static final Method ADDRESS_OF;
+        private static final ProtocolFamily UNIX_FAMILY;
+
+        static {
+            Method open = null;
+            Method addressOf = null;
+            ProtocolFamily unixFamily = null;
+            try {
+                unixFamily = StandardProtocolFamily.valueOf("UNIX");
+                open = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+                addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+            } catch (IllegalArgumentException | ReflectiveOperationException e) {
+                LOGGER.debug("Unix domain sockets are not supported: {}", e.toString());
+                open = null;
+            }
+
+            OPEN = open;
+            ADDRESS_OF = addressOf;
+            UNIX_FAMILY = unixFamily;
+        }
+
+        UnixTransport(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public Endpoint listen() throws IOException {
+            final Path path = directory.toAbsolutePath().resolve("jaffree-" + UUID.randomUUID() + ".sock");
+            if (path.toString().length() > MAX_UNIX_PATH_LENGTH) {
+                throw new IOException("Unix domain socket path is too long: " + path);
+            }
+
+            ServerSocketChannel channel = open();
+            try {
+                channel.bind(addressOf(path), 1);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+            return new Endpoint(channel) {
+                @Override
+                public String getUrl(String protocol, String suffix) {
+                    if (!"tcp".equals(protocol) || !suffix.isEmpty()) {
+                        throw new IllegalArgumentException("Protocol " + protocol + suffix
+                                + " can't be used with unix domain socket");
+                    }
+                    return "unix:" + path;
+                }
+
+                @Override
+                public void release() {
+                    // Connected sockets keep working after socket file is deleted
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to delete socket file: " + path, e);
+                    }
+                }
+            };
+        }
+
+        private static ServerSocketChannel open() throws IOException {
+            try {
+                return (ServerSocketChannel) OPEN.invoke(null, UNIX_FAMILY);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Failed to open unix domain socket", e);
+            } catch (InvocationTargetException e) {
+                throw unwrap(e);
+            }
+        }
+
+        private static SocketAddress addressOf(Path path) throws IOException {
+            try {
+                return (SocketAddress) ADDRESS_OF.invoke(null, path);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Failed to create unix domain socket address", e);
+            } catch (InvocationTargetException e) {
+                throw unwrap(e);
+            }
+        }
+
+        private static IOException unwrap(InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                return (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            return new IOException(cause);
+        }
+    }
+}
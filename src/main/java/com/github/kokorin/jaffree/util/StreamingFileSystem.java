@@ -0,0 +1,273 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link VirtualFileSystem}, which doesn't keep files written by ffmpeg: every upload is received in memory
+ * and handed to {@link FileConsumer} as soon as it's finished.
+ * <p>
+ * It's intended for muxers which write many short-lived files (hls, dash, segment). Every upload creates
+ * a new file, so files are delivered in order of their completion, including every update of a playlist.
+ * Uploads from a non-zero position aren't supported, output must not be seekable.
+ * <p>
+ * Files are delivered by a single background thread. Files which are being received or haven't been
+ * delivered yet are limited by memory budget: every write to an upload reserves memory first, when budget
+ * is exceeded the server stops reading uploaded data till consumer catches up. So ffmpeg is slowed down
+ * by network backpressure instead of memory growing without bounds, and upload is completed (FTP 226,
+ * HTTP 204) only when all its data fits into the budget. A file larger than the whole budget is accepted
+ * when there is nothing else to deliver. Aborted uploads are dropped.
+ *
+ * @see com.github.kokorin.jaffree.ffmpeg.SegmentOutput
+ */
+public class StreamingFileSystem extends VirtualFileSystem implements Closeable {
+    private final FileConsumer consumer;
+    private final long maxBufferedBytes;
+    private final ExecutorService deliveryExecutor;
+
+    private final Object lock = new Object();
+    // bytes of uploads in progress and of files waiting for delivery
+    private long bufferedBytes = 0;
+    // bytes of files waiting for delivery, only they are released by consumer
+    private long queuedBytes = 0;
+    private volatile Exception failure;
+    private volatile boolean closed = false;
+
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 64L * 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingFileSystem.class);
+
+    public StreamingFileSystem(FileConsumer consumer) {
+        this(consumer, DEFAULT_MAX_BUFFERED_BYTES);
+    }
+
+    /**
+     * Creates {@link StreamingFileSystem}.
+     *
+     * @param consumer         consumer of finished files
+     * @param maxBufferedBytes memory budget of files which haven't been delivered yet
+     */
+    public StreamingFileSystem(FileConsumer consumer, long maxBufferedBytes) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer must be specified");
+        }
+        if (maxBufferedBytes <= 0) {
+            throw new IllegalArgumentException("Max buffered bytes must be positive: " + maxBufferedBytes);
+        }
+
+        this.consumer = consumer;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.deliveryExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "StreamingFileSystem-Delivery");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return number of bytes received (including uploads in progress) but not delivered yet
+     */
+    public long getBufferedBytes() {
+        synchronized (lock) {
+            return bufferedBytes;
+        }
+    }
+
+    /**
+     * Waits till all received files are delivered and stops delivery thread.
+     *
+     * @throws IOException if consumer has failed or waiting was interrupted
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+
+        deliveryExecutor.shutdown();
+        try {
+            while (!deliveryExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+                LOGGER.debug("Waiting for {} bytes to be delivered", getBufferedBytes());
+            }
+        } catch (InterruptedException e) {
+            deliveryExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for delivery", e);
+        }
+
+        Exception exception = failure;
+        if (exception != null) {
+            throw new IOException("File consumer failed", exception);
+        }
+    }
+
+    /**
+     * Every upload gets a new file, so file being delivered is never overwritten.
+     */
+    @Override
+    SeekableByteChannel create(String path) {
+        SeekableByteChannel channel = new Upload();
+        put(path, channel);
+        return channel;
+    }
+
+    @Override
+    void onFileClosed(String path, SeekableByteChannel channel, boolean aborted) {
+        super.onFileClosed(path, channel, aborted);
+        // file may have been replaced already by the next upload to the same path
+        remove(path, channel);
+
+        if (!(channel instanceof Upload)) {
+            LOGGER.warn("File {} hasn't been created by upload, skipping", path);
+            return;
+        }
+
+        Upload upload = (Upload) channel;
+        long reserved = upload.takeReserved();
+        if (aborted) {
+            LOGGER.warn("Upload to {} has been aborted, dropping partial file", path);
+            release(reserved, false);
+            return;
+        }
+        if (failure != null) {
+            LOGGER.debug("Consumer has failed, dropping file {}", path);
+            release(reserved, false);
+            return;
+        }
+
+        synchronized (lock) {
+            queuedBytes += reserved;
+        }
+        try {
+            deliveryExecutor.execute(new Delivery(normalize(path), upload.toByteBuffer(), reserved));
+        } catch (RejectedExecutionException e) {
+            release(reserved, true);
+            LOGGER.warn("File system is closed, dropping file {}", path);
+        }
+    }
+
+    /**
+     * Blocks upload thread while memory budget is exceeded and there are files to deliver.
+     */
+    private void reserve(long size) throws InterruptedIOException {
+        synchronized (lock) {
+            try {
+                while (queuedBytes > 0 && bufferedBytes + size > maxBufferedBytes && failure == null && !closed) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for memory budget");
+            }
+            bufferedBytes += size;
+        }
+    }
+
+    private void release(long size, boolean queued) {
+        synchronized (lock) {
+            bufferedBytes -= size;
+            if (queued) {
+                queuedBytes -= size;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * In-memory file, which reserves memory budget before it grows.
+     */
+    private class Upload extends InMemoryChannel {
+        private long reserved = 0;
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException {
+            long end = position() + src.remaining();
+            if (end > reserved) {
+                reserve(end - reserved);
+                reserved = end;
+            }
+            return super.write(src);
+        }
+
+        /**
+         * @return reserved bytes, which are handed over to caller
+         */
+        synchronized long takeReserved() {
+            long result = reserved;
+            reserved = 0;
+            return result;
+        }
+    }
+
+    private class Delivery implements Runnable {
+        private final String path;
+        private final ByteBuffer content;
+        private final long size;
+
+        Delivery(String path, ByteBuffer content, long size) {
+            this.path = path;
+            this.content = content;
+            this.size = size;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (failure == null) {
+                    consumer.consume(path, content);
+                }
+            } catch (Exception e) {
+                LOGGER.warn("File consumer failed on {}", path, e);
+                failure = e;
+            } finally {
+                release(size, true);
+            }
+        }
+    }
+
+    /**
+     * Consumer of files written by ffmpeg.
+     */
+    public interface FileConsumer {
+        /**
+         * Invoked in delivery thread for every finished upload, in order of completion.
+         *
+         * @param path    file path
+         * @param content file content, it's not used by file system afterwards
+         * @throws Exception if consumer fails, no more files are delivered and ffmpeg invocation fails
+         */
+        void consume(String path, ByteBuffer content) throws Exception;
+    }
+}
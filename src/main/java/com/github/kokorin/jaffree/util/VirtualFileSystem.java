@@ -0,0 +1,224 @@
+/*
+ *    Copyright  2020 Denis Kokorin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package com.github.kokorin.jaffree.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Set of files (path to {@link SeekableByteChannel}), which is served to ffmpeg by single embedded server.
+ * <p>
+ * It allows single ffmpeg invocation to read and write several files without touching disk: concat lists,
+ * image sequences, HLS playlists and segments, etc. Files are resolved relative to the server root, so
+ * relative paths in concat lists and playlists are resolved too.
+ * <p>
+ * Files uploaded by ffmpeg to absent paths are created in memory. Upload from the beginning of a file
+ * replaces its content (like FTP STOR and HTTP PUT), upload from other position (FTP REST) overwrites part
+ * of it.
+ *
+ * @see com.github.kokorin.jaffree.ffmpeg.ChannelInput#fromFileSystem(String, VirtualFileSystem)
+ * @see com.github.kokorin.jaffree.ffmpeg.ChannelOutput#toFileSystem(String, VirtualFileSystem)
+ */
+public class VirtualFileSystem {
+    private final ConcurrentMap<String, SeekableByteChannel> files = new ConcurrentHashMap<>();
+    private volatile FileListener fileListener;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualFileSystem.class);
+
+    /**
+     * Adds file backed by channel. Channel is not closed by file system.
+     *
+     * @param path    file path
+     * @param channel channel
+     * @return this
+     */
+    public VirtualFileSystem put(String path, SeekableByteChannel channel) {
+        files.put(normalize(path), channel);
+        return this;
+    }
+
+    /**
+     * Adds in-memory file.
+     *
+     * @param path    file path
+     * @param content file content, it's not copied
+     * @return this
+     */
+    public VirtualFileSystem put(String path, byte[] content) {
+        return put(path, new InMemoryChannel(content));
+    }
+
+    /**
+     * @param path file path
+     * @return channel or null if there is no such file
+     */
+    public SeekableByteChannel get(String path) {
+        return files.get(normalize(path));
+    }
+
+    /**
+     * Reads whole file content.
+     *
+     * @param path file path
+     * @return content or null if there is no such file
+     * @throws IOException if channel can't be read
+     */
+    public byte[] getBytes(String path) throws IOException {
+        SeekableByteChannel channel = get(path);
+        if (channel == null) {
+            return null;
+        }
+        if (channel instanceof InMemoryChannel) {
+            return ((InMemoryChannel) channel).toByteArray();
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        synchronized (channel) {
+            channel.position(0);
+            while (channel.read(buffer) != IOUtil.EOF) {
+                result.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Removes file. Channel is not closed.
+     *
+     * @param path file path
+     * @return removed channel or null if there was no such file
+     */
+    public SeekableByteChannel remove(String path) {
+        return files.remove(normalize(path));
+    }
+
+    /**
+     * @return sorted paths of all files
+     */
+    public Set<String> getPaths() {
+        return new TreeSet<>(files.keySet());
+    }
+
+    /**
+     * Sets listener, which is notified every time ffmpeg finishes writing a file.
+     *
+     * @param fileListener listener
+     * @return this
+     */
+    public VirtualFileSystem setFileListener(FileListener fileListener) {
+        this.fileListener = fileListener;
+        return this;
+    }
+
+    /**
+     * Returns file for writing, creates in-memory file if there is no such file.
+     */
+    SeekableByteChannel create(String path) {
+        String normalized = normalize(path);
+        SeekableByteChannel channel = files.get(normalized);
+        if (channel != null) {
+            return channel;
+        }
+
+        SeekableByteChannel created = new InMemoryChannel();
+        channel = files.putIfAbsent(normalized, created);
+        if (channel == null) {
+            LOGGER.debug("Created file {}", normalized);
+            channel = created;
+        }
+        return channel;
+    }
+
+    /**
+     * Removes file only if it's still backed by the channel.
+     */
+    boolean remove(String path, SeekableByteChannel channel) {
+        return files.remove(normalize(path), channel);
+    }
+
+    boolean rename(String from, String to) {
+        SeekableByteChannel channel = files.remove(normalize(from));
+        if (channel == null) {
+            return false;
+        }
+        files.put(normalize(to), channel);
+        return true;
+    }
+
+    /**
+     * Notifies listener about finished upload. Aborted upload leaves partial content, listener isn't
+     * notified about it: ffmpeg either uploads the file again or fails.
+     */
+    void onFileClosed(String path, SeekableByteChannel channel, boolean aborted) {
+        if (aborted) {
+            LOGGER.debug("Upload to {} has been aborted", path);
+            return;
+        }
+
+        FileListener listener = fileListener;
+        if (listener == null) {
+            return;
+        }
+
+        try {
+            listener.onFileClosed(normalize(path), channel);
+        } catch (Exception e) {
+            LOGGER.warn("File listener failed", e);
+        }
+    }
+
+    /**
+     * Removes leading slashes, ffmpeg requests paths from server root.
+     */
+    static String normalize(String path) {
+        if (path == null) {
+            return "";
+        }
+
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        return path.substring(start);
+    }
+
+    /**
+     * Listener of files written by ffmpeg.
+     */
+    public interface FileListener {
+        /**
+         * Invoked when ffmpeg successfully finishes upload to the file, aborted uploads aren't reported. Muxers which seek in output (e.g. mp4) may
+         * upload the same file several times.
+         *
+         * @param path    file path
+         * @param channel file channel
+         */
+        void onFileClosed(String path, SeekableByteChannel channel);
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.kokorin.jaffree;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+public class LongMathTest {
+
+    @Test
+    public void multiplyHigh() throws Exception {
+        Random random = new Random(42);
+        long[] special = {0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE, 0xFFFFFFFFL, -0xFFFFFFFFL};
+        for (int i = 0; i < 10_000; i++) {
+            long x = i < special.length ? special[i] : random.nextLong();
+            long y = special[i % special.length] + (i < special.length * special.length ? 0 : random.nextLong());
+
+            BigInteger expected = BigInteger.valueOf(x).multiply(BigInteger.valueOf(y)).shiftRight(64);
+            Assert.assertEquals(x + " * " + y, expected.longValue(), LongMath.multiplyHigh(x, y));
+        }
+    }
+
+    @Test
+    public void compareProducts() throws Exception {
+        Assert.assertEquals(0, Integer.signum(LongMath.compareProducts(Long.MAX_VALUE, 2, 2, Long.MAX_VALUE)));
+        Assert.assertEquals(1, Integer.signum(LongMath.compareProducts(Long.MAX_VALUE, 3, 2, Long.MAX_VALUE)));
+        Assert.assertEquals(-1, Integer.signum(LongMath.compareProducts(Long.MIN_VALUE, 3, 2, Long.MIN_VALUE)));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long a = random.nextLong();
+            long b = random.nextInt();
+            long c = random.nextLong();
+            long d = random.nextInt();
+
+            int expected = BigInteger.valueOf(a).multiply(BigInteger.valueOf(b))
+                    .compareTo(BigInteger.valueOf(c).multiply(BigInteger.valueOf(d)));
+            Assert.assertEquals(expected, Integer.signum(LongMath.compareProducts(a, b, c, d)));
+        }
+    }
+
+    @Test
+    public void gcd() throws Exception {
+        Assert.assertEquals(5, LongMath.gcd(10, 15));
+        Assert.assertEquals(7, LongMath.gcd(7, 0));
+        Assert.assertEquals(1, LongMath.gcd(1_000_000_007L, 998_244_353L));
+    }
+}
@@ -16,6 +16,17 @@ public class RationalTest {
         Assert.assertEquals(0, new Rational(1L, 1L).compareTo(new Rational(2L, 2L)));
     }
 
+    @Test
+    public void compareToDoesNotOverflow() {
+        // 10 hours at 90 kHz vs 10 hours at 48 kHz, cross products exceed 64 bits
+        Rational pts90k = new Rational(10L * 3600 * 90_000 * 1_000_000_000L, 90_000L * 1_000_000_000L);
+        Rational pts48k = new Rational(10L * 3600 * 48_000 * 1_000_000_000L + 1, 48_000L * 1_000_000_000L);
+
+        Assert.assertTrue(pts90k.lessThan(pts48k));
+        Assert.assertTrue(pts48k.greaterThan(pts90k));
+        Assert.assertNotEquals(pts90k, pts48k);
+    }
+
     @Test
     public void valueOf() {
         Assert.assertEquals(Rational.valueOf(1L), Rational.valueOf(1.));
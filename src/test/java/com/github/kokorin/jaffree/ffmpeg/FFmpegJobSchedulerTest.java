@@ -0,0 +1,65 @@
+package com.github.kokorin.jaffree.ffmpeg;
+
+import com.github.kokorin.jaffree.process.JobScheduler;
+import com.github.kokorin.jaffree.process.ProcessHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class FFmpegJobSchedulerTest {
+
+    @Test
+    public void cancelledQueuedJobOpensNoSocket() throws Exception {
+        final AtomicInteger createdHandlers = new AtomicInteger();
+        FFmpeg ffmpeg = new FFmpeg(Paths.get("absent-ffmpeg-executable")) {
+            @Override
+            protected ProcessHandler<FFmpegResult> createProcessHandler() {
+                createdHandlers.incrementAndGet();
+                return super.createProcessHandler();
+            }
+        };
+        // progress socket is opened by process handler
+        ffmpeg.setProgressOverSocket(true);
+
+        try (JobScheduler scheduler = new JobScheduler(1)) {
+            final CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Boolean> blocker = scheduler.submit(new Supplier<Boolean>() {
+                @Override
+                public Boolean get() {
+                    try {
+                        return release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, JobScheduler.Priority.BATCH, "blocker");
+
+            FFmpegResultFuture cancelled = ffmpeg.executeAsync(scheduler, JobScheduler.Priority.BATCH, "test");
+            Assert.assertEquals(1, scheduler.getQueuedJobCount());
+            Assert.assertTrue(cancelled.toCompletableFuture().cancel(false));
+            Assert.assertEquals(0, createdHandlers.get());
+
+            FFmpegResultFuture started = ffmpeg.executeAsync(scheduler, JobScheduler.Priority.BATCH, "test");
+            Assert.assertEquals(0, createdHandlers.get());
+
+            release.countDown();
+            Assert.assertTrue(blocker.get(10, TimeUnit.SECONDS));
+            try {
+                started.get(10, TimeUnit.SECONDS);
+                Assert.fail("ffmpeg executable doesn't exist");
+            } catch (ExecutionException e) {
+                // expected
+            }
+
+            Assert.assertEquals(1, createdHandlers.get());
+            Assert.assertEquals(1, scheduler.getCancelledJobCount());
+        }
+    }
+}
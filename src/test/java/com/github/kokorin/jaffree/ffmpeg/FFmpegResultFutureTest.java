@@ -0,0 +1,75 @@
+package com.github.kokorin.jaffree.ffmpeg;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+public class FFmpegResultFutureTest {
+
+    @Test
+    public void plainFutureIsAdaptedToCompletableFuture() throws Exception {
+        final FFmpegResult expected = new FFmpegResult(1L, 2L, 3L, 4L, 5L, 0.5);
+        FutureTask<FFmpegResult> task = new FutureTask<>(new Callable<FFmpegResult>() {
+            @Override
+            public FFmpegResult call() throws Exception {
+                return expected;
+            }
+        });
+
+        FFmpegResultFuture future = new FFmpegResultFuture(task, null);
+        CompletableFuture<FFmpegResult> completableFuture = future.toCompletableFuture();
+        Assert.assertSame(completableFuture, future.toCompletableFuture());
+        Assert.assertFalse(completableFuture.isDone());
+
+        task.run();
+        Assert.assertSame(expected, completableFuture.get(5, TimeUnit.SECONDS));
+        Assert.assertSame(expected, future.get());
+    }
+
+    @Test
+    public void plainFutureExceptionIsPropagated() throws Exception {
+        FutureTask<FFmpegResult> task = new FutureTask<>(new Callable<FFmpegResult>() {
+            @Override
+            public FFmpegResult call() throws Exception {
+                throw new IllegalStateException("test");
+            }
+        });
+
+        FFmpegResultFuture future = new FFmpegResultFuture(task, null);
+        task.run();
+
+        try {
+            future.toCompletableFuture().get(5, TimeUnit.SECONDS);
+            Assert.fail("Exception expected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void cancellingAdaptedFutureCancelsPlainFuture() throws Exception {
+        FutureTask<FFmpegResult> task = new FutureTask<>(new Callable<FFmpegResult>() {
+            @Override
+            public FFmpegResult call() throws Exception {
+                return null;
+            }
+        });
+
+        FFmpegResultFuture future = new FFmpegResultFuture(task, null);
+        Assert.assertTrue(future.toCompletableFuture().cancel(false));
+        Assert.assertTrue(task.isCancelled());
+        Assert.assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void completableFutureIsReturnedAsIs() throws Exception {
+        CompletableFuture<FFmpegResult> completableFuture = new CompletableFuture<>();
+        FFmpegResultFuture future = new FFmpegResultFuture(completableFuture, null);
+        Assert.assertSame(completableFuture, future.toCompletableFuture());
+    }
+}
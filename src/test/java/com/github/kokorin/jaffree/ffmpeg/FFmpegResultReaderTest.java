@@ -3,7 +3,10 @@ package com.github.kokorin.jaffree.ffmpeg;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class FFmpegResultReaderTest {
     @Test
@@ -158,4 +161,55 @@ public class FFmpegResultReaderTest {
 
         Assert.assertNull(result);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void readResourceUsage() throws Exception {
+        String stderr = "frame=   25 fps=0.0 q=-0.0 Lsize=N/A time=00:00:00.96 bitrate=N/A speed= 107x    \n" +
+                "video:12kB audio:0kB subtitle:0kB other streams:0kB global headers:0kB muxing overhead: unknown\n" +
+                "bench: utime=1.509s stime=0.250s rtime=2.001s\n" +
+                "bench: maxrss=16956kB\n";
+
+        final AtomicReference<ResourceUsage> listened = new AtomicReference<>();
+        FFmpegResultReader reader = new FFmpegResultReader(null, null, new ResourceUsageListener() {
+            @Override
+            public void onResourceUsage(ResourceUsage resourceUsage) {
+                listened.set(resourceUsage);
+            }
+        });
+        reader.onProcessStarting();
+        reader.onProcessStarted(null);
+
+        FFmpegResult result = reader.read(new ByteArrayInputStream(stderr.getBytes(StandardCharsets.UTF_8)));
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals(12_000L, result.getVideoSize().longValue());
+
+        ResourceUsage usage = result.getResourceUsage();
+        Assert.assertNotNull(usage);
+        Assert.assertSame(usage, listened.get());
+        Assert.assertEquals(1509L, usage.getUserCpuTimeMillis().longValue());
+        Assert.assertEquals(250L, usage.getSystemCpuTimeMillis().longValue());
+        Assert.assertEquals(2001L, usage.getRealTimeMillis().longValue());
+        Assert.assertEquals(16956L * 1024, usage.getMaxResidentSetSize().longValue());
+        Assert.assertNotNull(usage.getSpawnTimeMillis());
+        Assert.assertNotNull(usage.getFirstProgressTimeMillis());
+        Assert.assertNotNull(usage.getExitTimeMillis());
+    }
+
+    @Test
+    public void readResourceUsageWithoutBenchmark() throws Exception {
+        String stderr = "video:12kB audio:0kB subtitle:0kB other streams:0kB global headers:0kB muxing overhead: unknown\n" +
+                "bench: maxrss=100KiB\n";
+
+        FFmpegResult result = new FFmpegResultReader(null, null)
+                .read(new ByteArrayInputStream(stderr.getBytes(StandardCharsets.UTF_8)));
+
+        ResourceUsage usage = result.getResourceUsage();
+        Assert.assertNotNull(usage);
+        Assert.assertNull(usage.getUserCpuTimeMillis());
+        Assert.assertEquals(100L * 1024, usage.getMaxResidentSetSize().longValue());
+        // process lifecycle wasn't reported
+        Assert.assertNull(usage.getSpawnTimeMillis());
+        Assert.assertNull(usage.getFirstProgressTimeMillis());
+    }
+}
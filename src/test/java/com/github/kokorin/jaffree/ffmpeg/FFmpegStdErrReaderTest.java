@@ -0,0 +1,79 @@
+package com.github.kokorin.jaffree.ffmpeg;
+
+import com.github.kokorin.jaffree.process.LoggingStdReader;
+import com.github.kokorin.jaffree.process.StdReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class FFmpegStdErrReaderTest {
+
+    @Test
+    public void noArgFactoryMethodDelegates() {
+        final AtomicBoolean invoked = new AtomicBoolean();
+        FFmpeg ffmpeg = new FFmpeg(Paths.get("ffmpeg")) {
+            @Override
+            protected StdReader<FFmpegResult> createStdErrReader(ProgressListener progressListener,
+                                                                 OutputListener outputListener) {
+                invoked.set(true);
+                return new LoggingStdReader<>();
+            }
+        };
+
+        ffmpeg.createStdErrReader();
+        Assert.assertTrue(invoked.get());
+    }
+
+    @Test
+    public void everyExecutionGetsOwnListeners() {
+        final List<ProgressListener> passed = new CopyOnWriteArrayList<>();
+        FFmpeg ffmpeg = new FFmpeg(Paths.get("ffmpeg")) {
+            @Override
+            protected StdReader<FFmpegResult> createStdErrReader(ProgressListener progressListener,
+                                                                 OutputListener outputListener) {
+                passed.add(progressListener);
+                return super.createStdErrReader(progressListener, outputListener);
+            }
+        };
+        ffmpeg.setProgressListener(new ProgressListener() {
+            @Override
+            public void onProgress(FFmpegProgress progress) {
+            }
+        });
+        ffmpeg.setAsyncListeners(new AsyncListeners());
+
+        ffmpeg.createProcessHandler();
+        ffmpeg.createProcessHandler();
+        Assert.assertEquals(2, passed.size());
+        // every execution has its own dispatcher
+        Assert.assertNotSame(passed.get(0), passed.get(1));
+    }
+
+    @Test
+    public void listenersArePassedToFactoryMethod() {
+        final AtomicReference<ProgressListener> passed = new AtomicReference<>();
+        ProgressListener progressListener = new ProgressListener() {
+            @Override
+            public void onProgress(FFmpegProgress progress) {
+            }
+        };
+
+        FFmpeg ffmpeg = new FFmpeg(Paths.get("ffmpeg")) {
+            @Override
+            protected StdReader<FFmpegResult> createStdErrReader(ProgressListener progressListener,
+                                                                 OutputListener outputListener) {
+                passed.set(progressListener);
+                return super.createStdErrReader(progressListener, outputListener);
+            }
+        };
+        ffmpeg.setProgressListener(progressListener);
+
+        ffmpeg.createProcessHandler();
+        Assert.assertSame(progressListener, passed.get());
+    }
+}
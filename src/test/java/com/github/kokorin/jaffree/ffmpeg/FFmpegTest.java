@@ -8,12 +8,21 @@ import com.github.kokorin.jaffree.StreamType;
 import com.github.kokorin.jaffree.ffprobe.FFprobe;
 import com.github.kokorin.jaffree.ffprobe.FFprobeResult;
 import com.github.kokorin.jaffree.ffprobe.Stream;
+import com.github.kokorin.jaffree.process.ExecutorServices;
+import com.github.kokorin.jaffree.process.JobScheduler;
+import com.github.kokorin.jaffree.util.ChannelProtocol;
+import com.github.kokorin.jaffree.util.CachingSeekableByteChannel;
+import com.github.kokorin.jaffree.util.ChannelServer;
+import com.github.kokorin.jaffree.util.SocketTransport;
+import com.github.kokorin.jaffree.util.StreamingFileSystem;
+import com.github.kokorin.jaffree.util.VirtualFileSystem;
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -27,15 +36,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 public class FFmpegTest {
     public static Path BIN;
@@ -169,6 +187,80 @@ public class FFmpegTest {
         Assert.assertTrue(counter.get() > 0);
     }
 
+    @Test
+    public void testProgressOverSocket() throws Exception {
+        final List<FFmpegProgress> progresses = new CopyOnWriteArrayList<>();
+
+        ProgressListener listener = new ProgressListener() {
+            @Override
+            public void onProgress(FFmpegProgress progress) {
+                progresses.add(progress);
+            }
+        };
+
+        FFmpegResult result = FFmpeg.atPath(BIN)
+                .addInput(UrlInput.fromPath(SMALL_MP4))
+                .addOutput(new NullOutput(false))
+                .setLogLevel(LogLevel.ERROR)
+                .setProgressOverSocket(true)
+                .setStatsPeriod(100, TimeUnit.MILLISECONDS)
+                .setProgressListener(listener)
+                .execute();
+
+        Assert.assertNotNull(result);
+        Assert.assertFalse(progresses.isEmpty());
+
+        FFmpegProgress last = progresses.get(progresses.size() - 1);
+        Assert.assertTrue(last.isEnd());
+        Assert.assertTrue(last.getFrame() > 0);
+        Assert.assertTrue(last.getTimeMicros() > 0);
+        Assert.assertFalse(last.getStreamQ().isEmpty());
+    }
+
+    @Test
+    public void testAsyncListeners() throws Exception {
+        final List<FFmpegProgress> progresses = new CopyOnWriteArrayList<>();
+        final AtomicLong outputLines = new AtomicLong();
+
+        AsyncListeners asyncListeners = new AsyncListeners()
+                .setProgressInterval(200, TimeUnit.MILLISECONDS)
+                .setOutputQueueCapacity(1);
+
+        FFmpegResult result = FFmpeg.atPath(BIN)
+                .addInput(UrlInput.fromPath(SMALL_MP4))
+                .addOutput(new NullOutput(false))
+                .setProgressOverSocket(true)
+                .setStatsPeriod(10, TimeUnit.MILLISECONDS)
+                .setAsyncListeners(asyncListeners)
+                .setProgressListener(new ProgressListener() {
+                    @Override
+                    public void onProgress(FFmpegProgress progress) {
+                        progresses.add(progress);
+                    }
+                })
+                .setOutputListener(new OutputListener() {
+                    @Override
+                    public boolean onOutput(String line) {
+                        outputLines.incrementAndGet();
+                        try {
+                            // slow listener must not block ffmpeg
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return false;
+                    }
+                })
+                .execute();
+
+        Assert.assertNotNull(result);
+        Assert.assertNotNull(result.getVideoSize());
+        Assert.assertFalse(progresses.isEmpty());
+        Assert.assertTrue(progresses.get(progresses.size() - 1).isEnd());
+        Assert.assertTrue(outputLines.get() > 0);
+        Assert.assertTrue(asyncListeners.getDroppedOutputLines() > 0);
+    }
+
     @Test
     public void testDuration() throws Exception {
         Path tempDir = Files.createTempDirectory("jaffree");
@@ -206,6 +298,33 @@ public class FFmpegTest {
         Assert.assertEquals(10.0, outputDuration, 0.1);
     }
 
+    @Test
+    public void testResourceUsage() throws Exception {
+        final AtomicReference<ResourceUsage> listened = new AtomicReference<>();
+
+        FFmpegResult result = FFmpeg.atPath(BIN)
+                .addInput(UrlInput.fromPath(SMALL_MP4))
+                .addOutput(new NullOutput())
+                .setBenchmark(true)
+                .setResourceUsageListener(new ResourceUsageListener() {
+                    @Override
+                    public void onResourceUsage(ResourceUsage resourceUsage) {
+                        listened.set(resourceUsage);
+                    }
+                })
+                .execute();
+
+        ResourceUsage usage = result.getResourceUsage();
+        Assert.assertNotNull(usage);
+        Assert.assertSame(usage, listened.get());
+        Assert.assertNotNull(usage.getUserCpuTimeMillis());
+        Assert.assertNotNull(usage.getSystemCpuTimeMillis());
+        Assert.assertNotNull(usage.getRealTimeMillis());
+        Assert.assertTrue(usage.getMaxResidentSetSize() > 0);
+        Assert.assertNotNull(usage.getSpawnTimeMillis());
+        Assert.assertTrue(usage.getExitTimeMillis() >= usage.getRealTimeMillis() - 100);
+    }
+
     @Test
     public void testForceStopWithProgressListenerException() throws Exception {
         expectedException.expect(new StackTraceMatcher("Stop ffmpeg with ProgressListener Exception"));
@@ -635,6 +754,100 @@ public class FFmpegTest {
         Assert.assertTrue(getDuration(outputPath) > 10.);
     }
 
+    @Test
+    public void testSharedExecutorService() throws Exception {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        ExecutorService executorService = ExecutorServices.newBoundedPool("ffmpeg", 2);
+
+        try {
+            List<FFmpegResultFuture> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                FFmpegResultFuture future = FFmpeg.atPath(BIN)
+                        .addInput(PipeInput.pumpFrom(Files.newInputStream(SMALL_MP4)))
+                        .addOutput(UrlOutput.toPath(tempDir.resolve(i + ".mp4")))
+                        .setExecutorService(executorService)
+                        .executeAsync();
+                futures.add(future);
+            }
+
+            for (FFmpegResultFuture future : futures) {
+                FFmpegResult result = future.get(30, TimeUnit.SECONDS);
+                Assert.assertNotNull(result);
+                Assert.assertNotNull(result.getVideoSize());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncComposition() throws Exception {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        final Path outputPath = tempDir.resolve("composed.mp4");
+        final ExecutorService executorService = ExecutorServices.newBoundedPool("composition", 4);
+
+        try {
+            CompletableFuture<FFprobeResult> future = FFprobe.atPath(BIN)
+                    .setShowStreams(true)
+                    .setInput(SMALL_MP4)
+                    .executeAsync(executorService)
+                    .thenCompose(new Function<FFprobeResult, CompletableFuture<FFmpegResult>>() {
+                        @Override
+                        public CompletableFuture<FFmpegResult> apply(FFprobeResult probeResult) {
+                            Assert.assertFalse(probeResult.getStreams().isEmpty());
+                            return FFmpeg.atPath(BIN)
+                                    .addInput(UrlInput.fromPath(SMALL_MP4))
+                                    .addOutput(UrlOutput.toPath(outputPath).copyAllCodecs())
+                                    .executeAsync(executorService)
+                                    .toCompletableFuture();
+                        }
+                    })
+                    .thenCompose(new Function<FFmpegResult, CompletableFuture<FFprobeResult>>() {
+                        @Override
+                        public CompletableFuture<FFprobeResult> apply(FFmpegResult ffmpegResult) {
+                            Assert.assertNotNull(ffmpegResult.getVideoSize());
+                            return FFprobe.atPath(BIN)
+                                    .setShowStreams(true)
+                                    .setInput(outputPath)
+                                    .executeAsync(executorService);
+                        }
+                    });
+
+            FFprobeResult result = future.get(30, TimeUnit.SECONDS);
+            Assert.assertNotNull(result);
+            Assert.assertFalse(result.getStreams().isEmpty());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testJobScheduler() throws Exception {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        try (JobScheduler scheduler = new JobScheduler(1)) {
+            List<FFmpegResultFuture> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(FFmpeg.atPath(BIN)
+                        .addInput(UrlInput.fromPath(SMALL_MP4))
+                        .addOutput(UrlOutput.toPath(tempDir.resolve(i + ".mp4")).copyAllCodecs())
+                        .executeAsync(scheduler, JobScheduler.Priority.BATCH, "test"));
+            }
+            FFmpegResultFuture cancelled = FFmpeg.atPath(BIN)
+                    .addInput(UrlInput.fromPath(SMALL_MP4))
+                    .addOutput(UrlOutput.toPath(tempDir.resolve("cancelled.mp4")).copyAllCodecs())
+                    .executeAsync(scheduler, JobScheduler.Priority.BATCH, "test");
+            Assert.assertTrue(cancelled.toCompletableFuture().cancel(false));
+
+            for (FFmpegResultFuture future : futures) {
+                Assert.assertNotNull(future.get(30, TimeUnit.SECONDS));
+            }
+
+            Assert.assertEquals(3, scheduler.getCompletedJobCount());
+            Assert.assertEquals(1, scheduler.getCancelledJobCount());
+        }
+        Assert.assertFalse(Files.exists(tempDir.resolve("cancelled.mp4")));
+    }
+
     @Test
     public void testPipeOutput() throws IOException {
         Path tempDir = Files.createTempDirectory("jaffree");
@@ -655,6 +868,130 @@ public class FFmpegTest {
         Assert.assertTrue(getExactDuration(outputPath) > 10.);
     }
 
+    @Test
+    public void testPipeInputAndOutputOverUnixSocket() throws IOException {
+        Assume.assumeTrue(SocketTransport.isUnixSupported());
+
+        Path tempDir = Files.createTempDirectory("jaffree");
+        Path flvPath = tempDir.resolve("output.flv");
+
+        FFmpegResult result;
+        try (OutputStream outputStream = Files.newOutputStream(flvPath, CREATE)) {
+            result = FFmpeg.atPath(BIN)
+                    .addInput(UrlInput.fromPath(SMALL_MP4))
+                    .addOutput(PipeOutput.pumpTo(outputStream)
+                            .setTransport(SocketTransport.unix(tempDir))
+                            .setFormat("flv"))
+                    .setOverwriteOutput(true)
+                    .execute();
+        }
+
+        Assert.assertNotNull(result);
+        Assert.assertNotNull(result.getVideoSize());
+        Assert.assertTrue(getExactDuration(flvPath) > 1.);
+
+        try (InputStream inputStream = Files.newInputStream(flvPath)) {
+            result = FFmpeg.atPath(BIN)
+                    .addInput(PipeInput.pumpFrom(inputStream)
+                            .setTransport(SocketTransport.unix(tempDir))
+                            .setFormat("flv"))
+                    .addOutput(new NullOutput())
+                    .execute();
+        }
+
+        Assert.assertNotNull(result);
+        Assert.assertNotNull(result.getVideoSize());
+
+        // socket files are deleted as soon as ffmpeg connects
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(tempDir, "*.sock")) {
+            Assert.assertFalse(files.iterator().hasNext());
+        }
+    }
+
+    @Test
+    public void testPipeInputAndOutputOverStdio() throws IOException {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        Path outputPath = tempDir.resolve("output.flv");
+
+        FFmpegResult result;
+        try (InputStream inputStream = Files.newInputStream(VIDEO_MP4);
+             OutputStream outputStream = Files.newOutputStream(outputPath, CREATE)) {
+            result = FFmpeg.atPath(BIN)
+                    .addInput(PipeInput.pumpFrom(inputStream)
+                            .setStdIn(true)
+                            .setDuration(15, TimeUnit.SECONDS))
+                    .addOutput(PipeOutput.pumpTo(outputStream)
+                            .setStdOut(true)
+                            .setFormat("flv"))
+                    .setOverwriteOutput(true)
+                    .execute();
+        }
+
+        Assert.assertNotNull(result);
+        Assert.assertNotNull(result.getVideoSize());
+
+        double duration = getExactDuration(outputPath);
+        Assert.assertTrue(duration > 10.);
+        Assert.assertTrue(duration < 20.);
+    }
+
+    @Test
+    public void testGraceStopWithStdIn() throws Exception {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        Path outputPath = tempDir.resolve(VIDEO_MP4.getFileName());
+
+        final AtomicReference<FFmpegResultFuture> futureRef = new AtomicReference<>();
+        final ProgressListener progressListener = new ProgressListener() {
+            @Override
+            public void onProgress(FFmpegProgress progress) {
+                if (progress.getTime(TimeUnit.SECONDS) >= 5) {
+                    futureRef.get().graceStop();
+                }
+            }
+        };
+
+        FFmpegResult result;
+        try (InputStream inputStream = Files.newInputStream(VIDEO_MP4)) {
+            FFmpegResultFuture futureResult = FFmpeg.atPath(BIN)
+                    .addInput(PipeInput.pumpFrom(inputStream)
+                            .setStdIn(true)
+                            .setReadAtFrameRate(true))
+                    .setProgressListener(progressListener)
+                    .addOutput(UrlOutput.toPath(outputPath))
+                    .executeAsync();
+            futureRef.set(futureResult);
+
+            result = futureResult.get(30, TimeUnit.SECONDS);
+        }
+
+        Assert.assertNotNull(result);
+
+        // output is finalized
+        double duration = getExactDuration(outputPath);
+        Assert.assertTrue(duration >= 4.);
+        Assert.assertTrue(duration < 20.);
+    }
+
+    @Test
+    public void testPipeInputAndOutputWithFileChannels() throws IOException {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        Path outputPath = tempDir.resolve("output.flv");
+
+        FFmpegResult result;
+        try (FileChannel input = FileChannel.open(VIDEO_MP4);
+             FileChannel output = FileChannel.open(outputPath, CREATE, WRITE)) {
+            result = FFmpeg.atPath(BIN)
+                    .addInput(PipeInput.pumpFrom(input))
+                    .addOutput(PipeOutput.pumpTo(output).setFormat("flv"))
+                    .setOverwriteOutput(true)
+                    .execute();
+        }
+
+        Assert.assertNotNull(result);
+        Assert.assertNotNull(result.getVideoSize());
+        Assert.assertTrue(getExactDuration(outputPath) > 10.);
+    }
+
     @Test
     public void testPipeOutputAsync() throws IOException {
         Path tempDir = Files.createTempDirectory("jaffree");
@@ -716,6 +1053,273 @@ public class FFmpegTest {
         Assert.assertTrue(Files.size(outputPath) > 1000);
     }
 
+    @Test
+    public void testChannelInputWithMoovAtEnd() throws IOException {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        Path moovAtEnd = tempDir.resolve("moov_at_end.mp4");
+
+        // mp4 muxer writes moov atom at the end by default
+        FFmpeg.atPath(BIN)
+                .addInput(UrlInput.fromPath(VIDEO_MP4).setDuration(10, TimeUnit.SECONDS))
+                .addOutput(UrlOutput.toPath(moovAtEnd).copyAllCodecs())
+                .execute();
+
+        ChannelInput input;
+        try (SeekableByteChannel channel = Files.newByteChannel(moovAtEnd, READ)) {
+            input = new ChannelInput("testChannelInputWithMoovAtEnd.mp4", channel);
+            FFmpegResult result = FFmpeg.atPath(BIN)
+                    .addInput(input)
+                    .addOutput(new NullOutput())
+                    .execute();
+
+            Assert.assertNotNull(result);
+            Assert.assertNotNull(result.getVideoSize());
+        }
+
+        ChannelServer.Statistics statistics = input.getStatistics();
+        LOGGER.debug("FTP statistics: {}", statistics);
+        Assert.assertNotNull(statistics);
+        Assert.assertTrue(statistics.getSeekCount() > 0);
+        Assert.assertTrue(statistics.getBytesSent() >= Files.size(moovAtEnd));
+    }
+
+    @Test
+    public void testChannelInputOverHttp() throws IOException {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        Path moovAtEnd = tempDir.resolve("moov_at_end.mp4");
+
+        FFmpeg.atPath(BIN)
+                .addInput(UrlInput.fromPath(VIDEO_MP4).setDuration(10, TimeUnit.SECONDS))
+                .addOutput(UrlOutput.toPath(moovAtEnd).copyAllCodecs())
+                .execute();
+
+        ChannelInput input;
+        try (SeekableByteChannel channel = Files.newByteChannel(moovAtEnd, READ)) {
+            input = ChannelInput.fromChannel("testChannelInputOverHttp.mp4", channel, ChannelProtocol.HTTP);
+            FFmpegResult result = FFmpeg.atPath(BIN)
+                    .addInput(input)
+                    .addOutput(new NullOutput())
+                    .execute();
+
+            Assert.assertNotNull(result);
+            Assert.assertNotNull(result.getVideoSize());
+        }
+
+        ChannelServer.Statistics statistics = input.getStatistics();
+        LOGGER.debug("HTTP statistics: {}", statistics);
+        Assert.assertNotNull(statistics);
+        Assert.assertTrue(statistics.getSeekCount() > 0);
+        Assert.assertTrue(statistics.getBytesSent() >= Files.size(moovAtEnd));
+    }
+
+    @Test
+    public void testChannelOutputOverHttp() throws IOException {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        Path outputPath = tempDir.resolve("channel.flv");
+
+        try (SeekableByteChannel channel = Files.newByteChannel(outputPath, CREATE, WRITE, READ, TRUNCATE_EXISTING)) {
+            FFmpegResult result = FFmpeg.atPath(BIN)
+                    .addInput(UrlInput.fromPath(VIDEO_MP4).setDuration(5, TimeUnit.SECONDS))
+                    .addOutput(
+                            ChannelOutput.toChannel("channel.flv", channel, ChannelProtocol.HTTP)
+                                    .setCodec(StreamType.VIDEO, "flv")
+                                    .setCodec(StreamType.AUDIO, "aac")
+                    )
+                    .execute();
+
+            Assert.assertNotNull(result);
+        }
+
+        FFprobeResult probe = FFprobe.atPath(BIN)
+                .setShowStreams(true)
+                .setInput(outputPath)
+                .execute();
+        Assert.assertEquals(2, probe.getStreams().size());
+    }
+
+    @Test
+    public void testChannelInputWithCache() throws IOException {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        Path moovAtEnd = tempDir.resolve("moov_at_end.mp4");
+
+        FFmpeg.atPath(BIN)
+                .addInput(UrlInput.fromPath(VIDEO_MP4).setDuration(10, TimeUnit.SECONDS))
+                .addOutput(UrlOutput.toPath(moovAtEnd).copyAllCodecs())
+                .execute();
+
+        CachingSeekableByteChannel.Statistics statistics;
+        try (CachingSeekableByteChannel channel = new CachingSeekableByteChannel(
+                Files.newByteChannel(moovAtEnd, READ))) {
+            FFprobeResult probe = FFprobe.atPath(BIN)
+                    .setShowStreams(true)
+                    .setInput(channel)
+                    .execute();
+            Assert.assertEquals(2, probe.getStreams().size());
+
+            FFmpegResult result = FFmpeg.atPath(BIN)
+                    .addInput(ChannelInput.fromChannel("testChannelInputWithCache.mp4", channel))
+                    .addOutput(new NullOutput())
+                    .execute();
+            Assert.assertNotNull(result.getVideoSize());
+
+            statistics = channel.getStatistics();
+        }
+
+        LOGGER.debug("Cache statistics: {}", statistics);
+        // file fits into memory budget, so every block is read from file only once
+        Assert.assertEquals(Files.size(moovAtEnd), statistics.getBytesFetched());
+        Assert.assertTrue(statistics.getHitCount() > statistics.getMissCount());
+    }
+
+    @Test
+    public void testFileSystemConcatInput() throws IOException {
+        VirtualFileSystem fileSystem = new VirtualFileSystem()
+                .put("list.txt", "file 'first.mp4'\nfile 'second.mp4'\n".getBytes(StandardCharsets.UTF_8));
+
+        try (SeekableByteChannel first = Files.newByteChannel(VIDEO_MP4, READ);
+             SeekableByteChannel second = Files.newByteChannel(VIDEO_MP4, READ)) {
+            fileSystem.put("first.mp4", first).put("second.mp4", second);
+
+            FFmpegResult result = FFmpeg.atPath(BIN)
+                    .addInput(ChannelInput.fromFileSystem("list.txt", fileSystem).setFormat("concat"))
+                    .addOutput(new NullOutput().copyAllCodecs())
+                    .execute();
+
+            Assert.assertNotNull(result.getVideoSize());
+        }
+    }
+
+    @Test
+    public void testFileSystemImageSequence() throws IOException {
+        for (ChannelProtocol protocol : ChannelProtocol.values()) {
+            final List<String> closedFiles = new CopyOnWriteArrayList<>();
+            VirtualFileSystem fileSystem = new VirtualFileSystem()
+                    .setFileListener(new VirtualFileSystem.FileListener() {
+                        @Override
+                        public void onFileClosed(String path, SeekableByteChannel channel) {
+                            closedFiles.add(path);
+                        }
+                    });
+
+            FFmpeg.atPath(BIN)
+                    .addInput(UrlInput.fromPath(VIDEO_MP4))
+                    .addOutput(ChannelOutput.toFileSystem("img%03d.png", fileSystem, protocol)
+                            .setFrameCount(StreamType.VIDEO, 5L))
+                    .execute();
+
+            Assert.assertEquals(5, fileSystem.getPaths().size());
+            Assert.assertTrue(fileSystem.getPaths().contains("img005.png"));
+            Assert.assertTrue(closedFiles.contains("img001.png"));
+
+            // ffmpeg can check if image exists with HTTP only
+            final AtomicLong frames = new AtomicLong();
+            FFmpeg.atPath(BIN)
+                    .addInput(ChannelInput.fromFileSystem("img%03d.png", fileSystem, ChannelProtocol.HTTP))
+                    .addOutput(new NullOutput())
+                    .setProgressListener(new ProgressListener() {
+                        @Override
+                        public void onProgress(FFmpegProgress progress) {
+                            frames.set(progress.getFrame());
+                        }
+                    })
+                    .execute();
+            Assert.assertEquals(5, frames.get());
+        }
+    }
+
+    @Test
+    public void testFileSystemHls() throws IOException {
+        VirtualFileSystem fileSystem = new VirtualFileSystem();
+
+        FFmpeg.atPath(BIN)
+                .addInput(UrlInput.fromPath(VIDEO_MP4).setDuration(10, TimeUnit.SECONDS))
+                .addOutput(ChannelOutput.toFileSystem("playlist.m3u8", fileSystem)
+                        // segments must start with keyframes
+                        .setCodec(StreamType.VIDEO, "mpeg2video")
+                        .setCodec(StreamType.AUDIO, "copy")
+                        .addArguments("-g", "25")
+                        .setFormat("hls")
+                        .addArguments("-hls_time", "2")
+                        .addArguments("-hls_list_size", "0"))
+                .execute();
+
+        LOGGER.info("HLS files: {}", fileSystem.getPaths());
+        Assert.assertTrue(fileSystem.getPaths().size() > 2);
+
+        // hls demuxer opens segments only with http or file protocols
+        FFmpegResult result = FFmpeg.atPath(BIN)
+                .addInput(ChannelInput.fromFileSystem("playlist.m3u8", fileSystem, ChannelProtocol.HTTP))
+                .addOutput(new NullOutput().copyAllCodecs())
+                .execute();
+        Assert.assertNotNull(result.getVideoSize());
+    }
+
+    @Test
+    public void testSegmentOutputHls() throws IOException {
+        final List<String> paths = new CopyOnWriteArrayList<>();
+        final AtomicLong segmentBytes = new AtomicLong();
+
+        FFmpeg.atPath(BIN)
+                .addInput(UrlInput.fromPath(VIDEO_MP4).setDuration(10, TimeUnit.SECONDS))
+                .addOutput(SegmentOutput.toConsumer("playlist.m3u8", new StreamingFileSystem.FileConsumer() {
+                            @Override
+                            public void consume(String path, ByteBuffer content) {
+                                paths.add(path);
+                                if (path.endsWith(".ts")) {
+                                    segmentBytes.addAndGet(content.remaining());
+                                }
+                            }
+                        })
+                        .setMaxBufferedBytes(1_000_000)
+                        .setCodec(StreamType.VIDEO, "mpeg2video")
+                        .setCodec(StreamType.AUDIO, "copy")
+                        .addArguments("-g", "25")
+                        .setFormat("hls")
+                        .addArguments("-hls_time", "2")
+                        .addArguments("-hls_list_size", "0"))
+                .execute();
+
+        LOGGER.info("HLS files: {}", paths);
+        Assert.assertTrue(paths.contains("playlist0.ts"));
+        Assert.assertTrue(segmentBytes.get() > 0);
+        // playlist is delivered after every segment
+        Assert.assertEquals("playlist.m3u8", paths.get(paths.size() - 1));
+        Assert.assertTrue(paths.indexOf("playlist0.ts") < paths.indexOf("playlist.m3u8"));
+    }
+
+    @Test
+    public void testChannelOutputWithFaststart() throws IOException {
+        Path tempDir = Files.createTempDirectory("jaffree");
+        Path outputPath = tempDir.resolve("faststart.mp4");
+
+        // mov muxer opens the second connection to read written data back and move moov atom
+        try (SeekableByteChannel channel = Files.newByteChannel(outputPath, CREATE, WRITE, READ, TRUNCATE_EXISTING)) {
+            FFmpegResult result = FFmpeg.atPath(BIN)
+                    .addInput(UrlInput.fromPath(VIDEO_MP4).setDuration(10, TimeUnit.SECONDS))
+                    .addOutput(
+                            ChannelOutput.toChannel("faststart.mp4", channel)
+                                    .copyAllCodecs()
+                                    .addArguments("-movflags", "+faststart")
+                    )
+                    .execute();
+
+            Assert.assertNotNull(result);
+        }
+
+        FFprobeResult probe = FFprobe.atPath(BIN)
+                .setShowStreams(true)
+                .setInput(outputPath)
+                .execute();
+        Assert.assertEquals(2, probe.getStreams().size());
+
+        // moov atom follows ftyp atom
+        byte[] head = new byte[64];
+        try (InputStream inputStream = Files.newInputStream(outputPath)) {
+            Assert.assertEquals(head.length, inputStream.read(head));
+        }
+        Assert.assertTrue(new String(head, StandardCharsets.US_ASCII).contains("moov"));
+    }
+
     @Test
     public void testChannelInputPartialRead() throws IOException {
         Path tempDir = Files.createTempDirectory("jaffree");
@@ -138,6 +138,39 @@ public class FrameIOTest {
         Assert.assertEquals(42L, frameCounter.get());
     }
 
+    @Test
+    public void countFramesOverStdOut() throws Exception {
+        final AtomicLong frameCounter = new AtomicLong();
+        FrameConsumer consumer = new FrameConsumer() {
+
+            @Override
+            public void consumeStreams(List<Stream> tracks) {
+            }
+
+            @Override
+            public void consume(Frame frame) {
+                if (frame != null) {
+                    frameCounter.incrementAndGet();
+                }
+            }
+        };
+
+        FFmpegResult result = FFmpeg.atPath(BIN)
+                .addInput(
+                        UrlInput.fromPath(VIDEO_MP4)
+                )
+                .addOutput(
+                        FrameOutput.withConsumer(consumer)
+                                .setStdOut(true)
+                                .disableStream(StreamType.AUDIO)
+                                .setFrameCount(StreamType.VIDEO, 42L)
+                )
+                .execute();
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals(42L, frameCounter.get());
+    }
+
     @Test
     public void testStreamId() throws Exception {
         expectedException.expect(new StackTraceMatcher("Stream ids must start with 0 and increase by 1 subsequently"));
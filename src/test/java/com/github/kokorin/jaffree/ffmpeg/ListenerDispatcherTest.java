@@ -0,0 +1,166 @@
+package com.github.kokorin.jaffree.ffmpeg;
+
+import com.github.kokorin.jaffree.process.StdReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ListenerDispatcherTest {
+
+    @Test
+    public void progressIsCoalesced() throws Exception {
+        final List<FFmpegProgress> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch firstReceived = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        ProgressListener slowListener = new ProgressListener() {
+            @Override
+            public void onProgress(FFmpegProgress progress) {
+                received.add(progress);
+                firstReceived.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        ListenerDispatcher dispatcher = new ListenerDispatcher(slowListener, null, new AsyncListeners(), 1);
+        Thread helper = new Thread(dispatcher.helperThread());
+        helper.start();
+
+        ProgressListener progressListener = dispatcher.progressListener();
+        progressListener.onProgress(progress(0));
+        Assert.assertTrue(firstReceived.await(10, TimeUnit.SECONDS));
+
+        // listener is blocked, producer is not
+        for (int i = 1; i <= 100; i++) {
+            progressListener.onProgress(progress(i));
+        }
+        release.countDown();
+        finishProducer(dispatcher);
+
+        helper.join(10_000);
+        Assert.assertFalse(helper.isAlive());
+
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals(0L, received.get(0).getFrame().longValue());
+        Assert.assertEquals(100L, received.get(1).getFrame().longValue());
+    }
+
+    @Test
+    public void progressIntervalIsRespected() throws Exception {
+        final List<Long> receivedAt = new CopyOnWriteArrayList<>();
+
+        ProgressListener listener = new ProgressListener() {
+            @Override
+            public void onProgress(FFmpegProgress progress) {
+                receivedAt.add(System.nanoTime());
+            }
+        };
+
+        AsyncListeners settings = new AsyncListeners().setProgressInterval(100, TimeUnit.MILLISECONDS);
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, null, settings, 1);
+        Thread helper = new Thread(dispatcher.helperThread());
+        helper.start();
+
+        ProgressListener progressListener = dispatcher.progressListener();
+        long start = System.nanoTime();
+        for (int i = 0; System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500); i++) {
+            progressListener.onProgress(progress(i));
+            Thread.sleep(1);
+        }
+        finishProducer(dispatcher);
+
+        helper.join(10_000);
+        Assert.assertFalse(helper.isAlive());
+
+        Assert.assertTrue(receivedAt.size() > 1);
+        Assert.assertTrue(receivedAt.size() <= 8);
+        // the last progress is passed when producer finishes, regardless of interval
+        for (int i = 1; i < receivedAt.size() - 1; i++) {
+            long interval = receivedAt.get(i) - receivedAt.get(i - 1);
+            Assert.assertTrue(interval >= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    @Test
+    public void dropOldestOutput() throws Exception {
+        AsyncListeners settings = new AsyncListeners()
+                .setOutputQueueCapacity(3)
+                .setDropPolicy(AsyncListeners.DropPolicy.DROP_OLDEST);
+
+        List<String> received = dispatchOutputWithoutHelper(settings, "1", "2", "3", "4", "5");
+
+        Assert.assertEquals(2, settings.getDroppedOutputLines());
+        Assert.assertEquals(Arrays.asList("3", "4", "5"), received);
+    }
+
+    @Test
+    public void dropNewestOutput() throws Exception {
+        AsyncListeners settings = new AsyncListeners()
+                .setOutputQueueCapacity(3)
+                .setDropPolicy(AsyncListeners.DropPolicy.DROP_NEWEST);
+
+        List<String> received = dispatchOutputWithoutHelper(settings, "1", "2", "3", "4", "5");
+
+        Assert.assertEquals(2, settings.getDroppedOutputLines());
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), received);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacityIsNotAllowed() throws Exception {
+        new AsyncListeners().setOutputQueueCapacity(0);
+    }
+
+    /**
+     * Puts all lines before dispatching starts, so queue overflows deterministically.
+     */
+    private static List<String> dispatchOutputWithoutHelper(AsyncListeners settings, String... lines)
+            throws Exception {
+        final List<String> received = new CopyOnWriteArrayList<>();
+        OutputListener listener = new OutputListener() {
+            @Override
+            public boolean onOutput(String line) {
+                received.add(line);
+                return false;
+            }
+        };
+
+        ListenerDispatcher dispatcher = new ListenerDispatcher(null, listener, settings, 1);
+        OutputListener outputListener = dispatcher.outputListener();
+        for (String line : lines) {
+            Assert.assertTrue(outputListener.onOutput(line));
+        }
+        finishProducer(dispatcher);
+
+        Thread helper = new Thread(dispatcher.helperThread());
+        helper.start();
+        helper.join(10_000);
+        Assert.assertFalse(helper.isAlive());
+
+        return received;
+    }
+
+    private static void finishProducer(ListenerDispatcher dispatcher) {
+        StdReader<Void> reader = dispatcher.producer(new StdReader<Void>() {
+            @Override
+            public Void read(InputStream stdOut) {
+                return null;
+            }
+        });
+        reader.read(new ByteArrayInputStream(new byte[0]));
+    }
+
+    private static FFmpegProgress progress(long frame) {
+        return new FFmpegProgress(frame, null, null, null, null, null, null, null, null);
+    }
+}
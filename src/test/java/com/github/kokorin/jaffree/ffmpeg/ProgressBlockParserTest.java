@@ -0,0 +1,104 @@
+package com.github.kokorin.jaffree.ffmpeg;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ProgressBlockParserTest {
+
+    @Test
+    public void parseBlocks() throws Exception {
+        String output = "frame=0\n" +
+                "fps=0.00\n" +
+                "stream_0_0_q=4.7\n" +
+                "bitrate=N/A\n" +
+                "total_size=0\n" +
+                "out_time_us=0\n" +
+                "out_time_ms=0\n" +
+                "out_time=00:00:00.000000\n" +
+                "dup_frames=0\n" +
+                "drop_frames=0\n" +
+                "speed=   0x\n" +
+                "progress=continue\n" +
+                "frame=75\n" +
+                "fps=0.00\n" +
+                "stream_0_0_q=2.0\n" +
+                "stream_0_1_q=-1.0\n" +
+                "bitrate= 407.8kbits/s\n" +
+                "total_size=152695\n" +
+                "out_time_us=2995374\n" +
+                "out_time_ms=2995374\n" +
+                "out_time=00:00:02.995374\n" +
+                "dup_frames=1\n" +
+                "drop_frames=2\n" +
+                "speed=12.4x\n" +
+                "progress=end\n";
+
+        ProgressBlockParser parser = new ProgressBlockParser();
+        List<FFmpegProgress> progresses = new ArrayList<>();
+        for (String line : output.split("\n")) {
+            FFmpegProgress progress = parser.parseLine(line);
+            if (progress != null) {
+                progresses.add(progress);
+            }
+        }
+
+        Assert.assertEquals(2, progresses.size());
+
+        FFmpegProgress first = progresses.get(0);
+        Assert.assertEquals(0L, first.getFrame().longValue());
+        Assert.assertNull(first.getBitrate());
+        Assert.assertEquals(0., first.getSpeed(), 0.001);
+        Assert.assertEquals(4.7, first.getQ(), 0.001);
+        Assert.assertFalse(first.isEnd());
+
+        FFmpegProgress last = progresses.get(1);
+        Assert.assertEquals(75L, last.getFrame().longValue());
+        Assert.assertEquals(0., last.getFps(), 0.001);
+        Assert.assertEquals(2.0, last.getQ(), 0.001);
+        Assert.assertEquals(2, last.getStreamQ().size());
+        Assert.assertEquals(2.0, last.getStreamQ().get("0:0"), 0.001);
+        Assert.assertEquals(-1.0, last.getStreamQ().get("0:1"), 0.001);
+        Assert.assertEquals(407.8, last.getBitrate(), 0.001);
+        Assert.assertEquals(152_695L, last.getSize().longValue());
+        Assert.assertEquals(2_995_374L, last.getTimeMicros().longValue());
+        Assert.assertEquals(2_995L, last.getTimeMillis().longValue());
+        Assert.assertEquals(2_995_374L, last.getTime(TimeUnit.MICROSECONDS).longValue());
+        Assert.assertEquals(1L, last.getDup().longValue());
+        Assert.assertEquals(2L, last.getDrop().longValue());
+        Assert.assertEquals(12.4, last.getSpeed(), 0.001);
+        Assert.assertTrue(last.isEnd());
+    }
+
+    @Test
+    public void valuesDoNotLeakBetweenBlocks() throws Exception {
+        ProgressBlockParser parser = new ProgressBlockParser();
+
+        Assert.assertNull(parser.parseLine("dup_frames=5"));
+        Assert.assertNull(parser.parseLine("stream_0_0_q=28.0"));
+        Assert.assertNotNull(parser.parseLine("progress=continue"));
+
+        FFmpegProgress progress = parser.parseLine("progress=continue");
+        Assert.assertNotNull(progress);
+        Assert.assertNull(progress.getDup());
+        Assert.assertNull(progress.getQ());
+        Assert.assertTrue(progress.getStreamQ().isEmpty());
+    }
+
+    @Test
+    public void ignoreUnknownLines() throws Exception {
+        ProgressBlockParser parser = new ProgressBlockParser();
+
+        Assert.assertNull(parser.parseLine(""));
+        Assert.assertNull(parser.parseLine("=5"));
+        Assert.assertNull(parser.parseLine("unknown_key=value"));
+        Assert.assertNull(parser.parseLine("frame=abc"));
+
+        FFmpegProgress progress = parser.parseLine("progress=continue");
+        Assert.assertNotNull(progress);
+        Assert.assertNull(progress.getFrame());
+    }
+}
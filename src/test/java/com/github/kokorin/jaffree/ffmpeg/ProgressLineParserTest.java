@@ -0,0 +1,90 @@
+package com.github.kokorin.jaffree.ffmpeg;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProgressLineParserTest {
+
+    @Test
+    public void parserIsReusable() throws Exception {
+        ProgressLineParser parser = new ProgressLineParser();
+
+        Assert.assertTrue(parser.parseProgress("frame=  184 fps=0.0 q=-1.0 size=      38kB time=00:00:07.24 bitrate=  43.4kbits/s dup=73 drop=0 speed=19.5x"));
+        FFmpegProgress first = parser.toProgress();
+        Assert.assertEquals(73L, first.getDup().longValue());
+
+        Assert.assertTrue(parser.parseProgress("frame=  358 fps=0.0 q=-1.0 Lsize=     443kB time=00:00:29.71 bitrate= 122.0kbits/s"));
+        FFmpegProgress second = parser.toProgress();
+        Assert.assertEquals(358L, second.getFrame().longValue());
+        Assert.assertEquals(443_000L, second.getSize().longValue());
+        // values from previous line must not leak
+        Assert.assertNull(second.getDup());
+        Assert.assertNull(second.getSpeed());
+
+        Assert.assertFalse(parser.parseProgress("Press [q] to stop, [?] for help"));
+        Assert.assertNull(parser.toProgress());
+
+        // previously parsed progress object must stay unchanged
+        Assert.assertEquals(184L, first.getFrame().longValue());
+    }
+
+    @Test
+    public void parseProgressWithInvalidValues() throws Exception {
+        ProgressLineParser parser = new ProgressLineParser();
+
+        Assert.assertTrue(parser.parseProgress("frame=1 fps=N/A q=abc size=12 time=00:00 bitrate=N/A speed=N/A"));
+        FFmpegProgress progress = parser.toProgress();
+        Assert.assertEquals(1L, progress.getFrame().longValue());
+        Assert.assertNull(progress.getFps());
+        Assert.assertNull(progress.getQ());
+        Assert.assertNull(progress.getSize());
+        Assert.assertNull(progress.getTimeMillis());
+        Assert.assertNull(progress.getBitrate());
+        Assert.assertNull(progress.getSpeed());
+    }
+
+    @Test
+    public void parseStreamLineIsNotProgress() throws Exception {
+        ProgressLineParser parser = new ProgressLineParser();
+
+        Assert.assertFalse(parser.parseProgress("  Stream #0:0: Video: mpeg4 (mp4v / 0x7634706D), yuv420p(tv, progressive), 320x240 [SAR 1:1 DAR 4:3], q=2-31, 200 kb/s, 25 fps, 12800 tbn"));
+        Assert.assertFalse(parser.parseResult("  Stream #0:0: Video: mpeg4 (mp4v / 0x7634706D), yuv420p(tv, progressive), 320x240 [SAR 1:1 DAR 4:3], q=2-31, 200 kb/s, 25 fps, 12800 tbn"));
+        Assert.assertFalse(parser.parseResult("[aac @ 0x2d30a180] Qavg: 295.845"));
+    }
+
+    @Test
+    public void parseSizeIsRoundedUp() throws Exception {
+        ProgressLineParser parser = new ProgressLineParser();
+
+        Assert.assertTrue(parser.parseResult("video:3K audio:1Ki"));
+        FFmpegResult result = parser.toResult();
+        Assert.assertEquals(375L, result.getVideoSize().longValue());
+        Assert.assertEquals(128L, result.getAudioSize().longValue());
+        Assert.assertNull(result.getSubtitleSize());
+    }
+
+    @Test
+    public void parseLong() throws Exception {
+        Assert.assertEquals(5012L, ProgressLineParser.parseLong("x5012x", 1, 5));
+        Assert.assertEquals(-1L, ProgressLineParser.parseLong("-1", 0, 2));
+        Assert.assertEquals(Long.MIN_VALUE, ProgressLineParser.parseLong("-", 0, 1));
+        Assert.assertEquals(Long.MIN_VALUE, ProgressLineParser.parseLong("1.0", 0, 3));
+        Assert.assertEquals(Long.MIN_VALUE, ProgressLineParser.parseLong("", 0, 0));
+    }
+
+    @Test
+    public void parseDouble() throws Exception {
+        String[] values = {"25.1", "-1.0", "-0.0", "0.0", "1.23e+003", "1296.6", "1030", ".5", "5.", "00.96",
+                "12345678901234567890.5", "1e-30", "0.000000001"};
+        for (String value : values) {
+            double expected = Double.parseDouble(value);
+            Assert.assertEquals(value, expected,
+                    ProgressLineParser.parseDouble(value, 0, value.length()), 2 * Math.ulp(expected));
+        }
+
+        String[] invalid = {"", "-", ".", "N/A", "1.2.3", "1e", "e5", "12x"};
+        for (String value : invalid) {
+            Assert.assertTrue(value, Double.isNaN(ProgressLineParser.parseDouble(value, 0, value.length())));
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.github.kokorin.jaffree.ffprobe;
 import com.github.kokorin.jaffree.*;
 import com.github.kokorin.jaffree.ffprobe.data.DefaultFormatParser;
 import com.github.kokorin.jaffree.ffprobe.data.FlatFormatParser;
+import com.github.kokorin.jaffree.util.ChannelProtocol;
 import junit.framework.AssertionFailedError;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -21,6 +22,7 @@ import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 public class FFprobeTest {
@@ -534,6 +536,37 @@ public class FFprobeTest {
         Assert.assertFalse(result.getStreams().isEmpty());
     }
 
+    @Test
+    public void testInputChannelOverHttp() throws Exception {
+        FFprobeResult result;
+
+        try (SeekableByteChannel channel = Files.newByteChannel(VIDEO_MP4, StandardOpenOption.READ)) {
+            result = FFprobe.atPath(BIN)
+                    .setShowStreams(true)
+                    .setInput(channel, ChannelProtocol.HTTP)
+                    .setFormatParser(new DefaultFormatParser())
+                    .execute();
+        }
+
+        Assert.assertNotNull(result);
+        Assert.assertNotNull(result.getStreams());
+        Assert.assertFalse(result.getStreams().isEmpty());
+    }
+
+    @Test
+    public void testExecuteAsync() throws Exception {
+        CompletableFuture<FFprobeResult> future = FFprobe.atPath(BIN)
+                .setShowStreams(true)
+                .setInput(VIDEO_MP4)
+                .executeAsync();
+
+        FFprobeResult result = future.get(10, TimeUnit.SECONDS);
+
+        Assert.assertNotNull(result);
+        Assert.assertNotNull(result.getStreams());
+        Assert.assertFalse(result.getStreams().isEmpty());
+    }
+
     private static List<? extends Class> noDeepCompare = Arrays.asList(
             int.class, short.class, long.class, float.class, double.class, boolean.class,
             Integer.class, Short.class, Long.class, Float.class, Double.class, Boolean.class,
@@ -0,0 +1,83 @@
+package com.github.kokorin.jaffree.nut;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+public class CRC32Test {
+
+    @Test
+    public void knownValue() {
+        CRC32 crc32 = new CRC32();
+        crc32.update("123456789".getBytes());
+        // check value of MSB-first 0x04C11DB7 with zero initial value and without final xor
+        Assert.assertEquals(0x89A1897FL, crc32.getValue());
+    }
+
+    @Test
+    public void sameAsNibbleImplementation() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < 1000; i++) {
+            byte[] data = new byte[random.nextInt(100)];
+            random.nextBytes(data);
+            long expected = nibbleCrc(data);
+
+            CRC32 bulk = new CRC32();
+            bulk.update(data);
+            Assert.assertEquals(expected, bulk.getValue());
+
+            CRC32 single = new CRC32();
+            for (byte b : data) {
+                single.update(b);
+            }
+            Assert.assertEquals(expected, single.getValue());
+
+            int split = data.length / 3;
+            CRC32 mixed = new CRC32();
+            mixed.update(data, 0, split);
+            mixed.update(ByteBuffer.wrap(data, split, data.length - split));
+            Assert.assertEquals(expected, mixed.getValue());
+
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                ByteBuffer direct = ByteBuffer.allocateDirect(data.length).order(order);
+                direct.put(data).flip();
+                CRC32 fromDirect = new CRC32();
+                fromDirect.update(direct);
+                Assert.assertEquals(expected, fromDirect.getValue());
+                Assert.assertFalse(direct.hasRemaining());
+            }
+        }
+    }
+
+    @Test
+    public void reset() {
+        CRC32 crc32 = new CRC32();
+        crc32.update(new byte[]{1, 2, 3});
+        crc32.reset();
+        Assert.assertEquals(0, crc32.getValue());
+    }
+
+    /**
+     * Original implementation, which processes every byte as two nibbles.
+     */
+    private static long nibbleCrc(byte[] data) {
+        int[] table = {
+                0x00000000, 0x04C11DB7, 0x09823B6E, 0x0D4326D9,
+                0x130476DC, 0x17C56B6B, 0x1A864DB2, 0x1E475005,
+                0x2608EDB8, 0x22C9F00F, 0x2F8AD6D6, 0x2B4BCB61,
+                0x350C9B64, 0x31CD86D3, 0x3C8EA00A, 0x384FBDBD,
+        };
+
+        int crc = 0;
+        for (int value : data) {
+            crc ^= value << 24;
+            crc = (crc << 4) ^ table[crc >>> 28];
+            crc = (crc << 4) ^ table[crc >>> 28];
+        }
+        return (long) crc & 0xffffffffL;
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.kokorin.jaffree.nut;
+
+import com.github.kokorin.jaffree.nut.FrameCode.Flag;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+public class FrameCodeSelectorTest {
+
+    @Test
+    public void codedFlagsFrameCodeIsUsedAsFallback() {
+        FrameCode[] frameCodes = invalidFrameCodes();
+        frameCodes[1] = new FrameCode(EnumSet.of(Flag.CODED_FLAGS), 0, 1, 0, 0, 0, 0, 0);
+        FrameCodeSelector selector = new FrameCodeSelector(frameCodes, 2);
+
+        long selected = selector.select(1, true, false, false, 100, 1);
+        Assert.assertEquals(1, frameCode(selected));
+        Assert.assertEquals(Flag.toBitCode(EnumSet.of(Flag.CODED_FLAGS, Flag.KEYFRAME, Flag.STREAM_ID,
+                Flag.CODED_PTS, Flag.SIZE_MSB)), flags(selected));
+
+        selected = selector.select(0, false, true, true, 0, 0);
+        Assert.assertEquals(1, frameCode(selected));
+        Assert.assertEquals(Flag.toBitCode(EnumSet.of(Flag.CODED_FLAGS, Flag.EOR, Flag.CHECKSUM)),
+                flags(selected));
+    }
+
+    @Test
+    public void shortestHeaderIsSelected() {
+        FrameCode[] frameCodes = invalidFrameCodes();
+        frameCodes[1] = new FrameCode(EnumSet.of(Flag.CODED_FLAGS), 0, 1, 0, 0, 0, 0, 0);
+        frameCodes[2] = new FrameCode(EnumSet.of(Flag.KEYFRAME, Flag.SIZE_MSB), 0, 4, 0, 1, 0, 0, 0);
+        frameCodes[3] = new FrameCode(EnumSet.of(Flag.KEYFRAME), 0, 1, 16, 1, 0, 0, 0);
+        frameCodes[4] = new FrameCode(EnumSet.of(Flag.KEYFRAME), 0, 1, 16, 1, 0, 0, 0);
+        frameCodes[5] = new FrameCode(EnumSet.of(Flag.KEYFRAME, Flag.CHECKSUM), 0, 1, 16, 1, 0, 0, 0);
+        FrameCodeSelector selector = new FrameCodeSelector(frameCodes, 2);
+
+        // fixed size, the first of equal frame codes
+        Assert.assertEquals(3, frameCode(selector.select(0, true, false, false, 16, 1)));
+        // checksum is required
+        Assert.assertEquals(5, frameCode(selector.select(0, true, false, true, 16, 1)));
+        // size is multiple of size_mul
+        Assert.assertEquals(2, frameCode(selector.select(0, true, false, false, 20, 1)));
+        // size isn't multiple of size_mul
+        Assert.assertEquals(1, frameCode(selector.select(0, true, false, false, 21, 1)));
+        // another pts delta
+        Assert.assertEquals(1, frameCode(selector.select(0, true, false, false, 16, 2)));
+        // not a keyframe
+        Assert.assertEquals(1, frameCode(selector.select(0, false, false, false, 16, 1)));
+        // another stream
+        Assert.assertEquals(1, frameCode(selector.select(1, true, false, false, 16, 1)));
+    }
+
+    @Test
+    public void noAppropriateFrameCode() {
+        FrameCode[] frameCodes = invalidFrameCodes();
+        frameCodes[1] = new FrameCode(EnumSet.of(Flag.KEYFRAME), 0, 1, 16, 1, 0, 0, 0);
+        FrameCodeSelector selector = new FrameCodeSelector(frameCodes, 1);
+
+        Assert.assertEquals(1, frameCode(selector.select(0, true, false, false, 16, 1)));
+        Assert.assertEquals(-1, selector.select(0, true, false, false, 17, 1));
+        Assert.assertEquals(-1, selector.select(0, true, false, true, 16, 1));
+    }
+
+    private static FrameCode[] invalidFrameCodes() {
+        FrameCode[] frameCodes = new FrameCode[256];
+        for (int i = 0; i < frameCodes.length; i++) {
+            frameCodes[i] = FrameCode.INVALID;
+        }
+        return frameCodes;
+    }
+
+    private static int frameCode(long selected) {
+        return (int) (selected & 0xFF);
+    }
+
+    private static long flags(long selected) {
+        return selected >>> 8;
+    }
+}
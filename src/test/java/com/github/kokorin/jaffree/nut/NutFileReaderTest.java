@@ -0,0 +1,256 @@
+package com.github.kokorin.jaffree.nut;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class NutFileReaderTest {
+    private Path path;
+    private Path indexPath;
+    private List<NutFrame> expected;
+
+    @Before
+    public void setUp() throws Exception {
+        path = Files.createTempFile("jaffree", ".nut");
+        indexPath = path.resolveSibling(path.getFileName() + NutFileReader.INDEX_CACHE_SUFFIX);
+
+        NutOutputStream output = new NutOutputStream(FileChannel.open(path, StandardOpenOption.WRITE));
+        NutWriter writer = NutWriterTest.createWriter(output);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            byte[] video = new byte[1 + random.nextInt(20_000)];
+            random.nextBytes(video);
+            writer.writeFrame(new NutFrame(0, i, video, null, null, i % 10 == 0, false));
+
+            byte[] audio = new byte[4 * (1 + random.nextInt(1_000))];
+            random.nextBytes(audio);
+            writer.writeFrame(new NutFrame(1, i * 40, audio, null, null, true, false));
+        }
+        writer.writeFooter();
+        output.close();
+
+        expected = NutWriterTest.readFrames(Files.readAllBytes(path));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(indexPath);
+    }
+
+    @Test
+    public void readSequentially() throws Exception {
+        try (NutFileReader reader = new NutFileReader(path)) {
+            Assert.assertEquals(2, reader.getStreamHeaders().length);
+            assertFramesEqual(expected, readAll(reader));
+        }
+    }
+
+    @Test
+    public void seekToVideoKeyframe() throws Exception {
+        try (NutFileReader reader = new NutFileReader(path)) {
+            for (long pts : new long[]{57, 0, 99, 10, 33, 150}) {
+                Assert.assertTrue(reader.seek(pts, 0));
+
+                long keyframePts = Math.min(pts / 10 * 10, 90);
+                List<NutFrame> actual = readAll(reader);
+                NutFrame first = actual.get(0);
+                int index = indexOf(first);
+
+                for (NutFrame frame : expected.subList(0, index)) {
+                    long ms = frame.streamId == 0 ? frame.pts * 40 : frame.pts;
+                    Assert.assertTrue(frame.streamId == 0 ? frame.pts < keyframePts : ms < keyframePts * 40);
+                }
+                Assert.assertTrue(first.streamId == 0 ? first.pts >= keyframePts : first.pts >= keyframePts * 40);
+                assertFramesEqual(expected.subList(index, expected.size()), actual);
+
+                NutFrame keyframe = null;
+                for (NutFrame frame : actual) {
+                    if (frame.streamId == 0) {
+                        keyframe = frame;
+                        break;
+                    }
+                }
+                Assert.assertNotNull(keyframe);
+                Assert.assertEquals(keyframePts, keyframe.pts);
+                Assert.assertTrue(keyframe.keyframe);
+            }
+        }
+    }
+
+    @Test
+    public void seekToAudio() throws Exception {
+        try (NutFileReader reader = new NutFileReader(path)) {
+            NutIndex index = reader.getIndex();
+            long keyframePts = index.getKeyframePts(1, index.findKeyframe(1, 1234));
+            Assert.assertTrue(keyframePts <= 1200);
+
+            Assert.assertTrue(reader.seek(1234, 1));
+
+            NutFrameHeader header = reader.readFrameHeader(new NutFrameHeader());
+            Assert.assertNotNull(header);
+            if (header.getStreamId() == 1) {
+                Assert.assertEquals(keyframePts, header.getPts());
+            } else {
+                Assert.assertTrue(header.getPts() * 40 >= keyframePts);
+            }
+        }
+    }
+
+    @Test
+    public void indexIsCached() throws Exception {
+        Assert.assertFalse(Files.exists(indexPath));
+
+        NutIndex index;
+        try (NutFileReader reader = new NutFileReader(path)) {
+            index = reader.getIndex();
+        }
+        Assert.assertTrue(Files.exists(indexPath));
+        Assert.assertEquals(10, index.getKeyframeCount(0));
+        // only the first keyframe after syncpoint is indexed
+        Assert.assertTrue(index.getKeyframeCount(1) > 10);
+        Assert.assertTrue(index.getKeyframeCount(1) < 100);
+
+        try (NutFileReader reader = new NutFileReader(path)) {
+            NutIndex cached = reader.getIndex();
+            assertIndexEquals(index, cached, 2);
+            Assert.assertTrue(reader.seek(45, 0));
+            Assert.assertEquals(40, firstFrameOfStream(reader, 0).pts);
+        }
+    }
+
+    @Test
+    public void outdatedIndexCacheIsIgnored() throws Exception {
+        Files.write(indexPath, new byte[]{1, 2, 3});
+
+        try (NutFileReader reader = new NutFileReader(path)) {
+            Assert.assertEquals(10, reader.getIndex().getKeyframeCount(0));
+            Assert.assertTrue(reader.seek(45, 0));
+            Assert.assertEquals(40, firstFrameOfStream(reader, 0).pts);
+        }
+    }
+
+    @Test
+    public void seekReturnsFalseIfKeyframeIsNotFound() throws Exception {
+        long syncPointPosition;
+        try (NutFileReader reader = new NutFileReader(path)) {
+            syncPointPosition = reader.getIndex().getSyncPointPosition(0, 9);
+        }
+
+        // outdated index, which refers to keyframe beyond the end of file
+        NutIndex.Builder builder = new NutIndex.Builder(2);
+        builder.addSyncPoint(syncPointPosition);
+        builder.addKeyframe(0, 1_000_000);
+        builder.setMaxPts(new Timestamp(0, 1_000_000));
+        try (NutOutputStream output = new NutOutputStream(FileChannel.open(indexPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            output.writeCString("nut/index");
+            output.writeValue(Files.size(path));
+            output.writeValue(Files.getLastModifiedTime(path).toMillis());
+            builder.build(Files.size(path)).write(output, 2);
+        }
+
+        try (NutFileReader reader = new NutFileReader(path)) {
+            Assert.assertEquals(1_000_000, reader.getIndex().getKeyframePts(0, 0));
+            Assert.assertFalse(reader.seek(1_000_000, 0));
+            Assert.assertNull(reader.readFrame());
+        }
+    }
+
+    @Test
+    public void indexWriteAndRead() throws Exception {
+        NutIndex.Builder builder = new NutIndex.Builder(2);
+        builder.addSyncPoint(100);
+        builder.addKeyframe(0, 0);
+        builder.addKeyframe(1, 0);
+        builder.addSyncPoint(1000);
+        builder.addKeyframe(1, 500);
+        builder.addSyncPoint(5000);
+        builder.addSyncPoint(9000);
+        builder.addKeyframe(0, 100);
+        builder.addKeyframe(1, 1500);
+        builder.setMaxPts(new Timestamp(1, 2000));
+        NutIndex index = builder.build(10_000);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NutOutputStream output = new NutOutputStream(bytes);
+        index.write(output, 2);
+        output.close();
+
+        NutInputStream input = new NutInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        NutIndex actual = NutIndex.read(input, 2, 2);
+
+        assertIndexEquals(index, actual, 2);
+        Assert.assertEquals(2, actual.getKeyframeCount(0));
+        Assert.assertEquals(96, actual.getSyncPointPosition(0, 0));
+        Assert.assertEquals(8992, actual.getSyncPointPosition(0, 1));
+        Assert.assertEquals(992, actual.getSyncPointPosition(1, 1));
+
+        Assert.assertEquals(0, actual.findKeyframe(1, -10));
+        Assert.assertEquals(1, actual.findKeyframe(1, 1499));
+        Assert.assertEquals(2, actual.findKeyframe(1, 1500));
+        Assert.assertEquals(2, actual.findKeyframe(1, Long.MAX_VALUE));
+    }
+
+    private static NutFrame firstFrameOfStream(NutFileReader reader, int streamId) throws Exception {
+        NutFrame frame;
+        while ((frame = reader.readFrame()) != null) {
+            if (frame.streamId == streamId) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private static List<NutFrame> readAll(NutFileReader reader) throws Exception {
+        List<NutFrame> result = new ArrayList<>();
+        NutFrame frame;
+        while ((frame = reader.readFrame()) != null) {
+            result.add(frame);
+        }
+        return result;
+    }
+
+    private int indexOf(NutFrame frame) {
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.get(i).streamId == frame.streamId && expected.get(i).pts == frame.pts) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void assertFramesEqual(List<NutFrame> expected, List<NutFrame> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).streamId, actual.get(i).streamId);
+            Assert.assertEquals(expected.get(i).pts, actual.get(i).pts);
+            Assert.assertEquals(expected.get(i).keyframe, actual.get(i).keyframe);
+            Assert.assertArrayEquals(expected.get(i).data, actual.get(i).data);
+        }
+    }
+
+    private static void assertIndexEquals(NutIndex expected, NutIndex actual, int streamCount) {
+        Assert.assertEquals(expected.maxPts.pts, actual.maxPts.pts);
+        Assert.assertEquals(expected.maxPts.timebaseId, actual.maxPts.timebaseId);
+        for (int i = 0; i < streamCount; i++) {
+            Assert.assertEquals(expected.getKeyframeCount(i), actual.getKeyframeCount(i));
+            for (int j = 0; j < expected.getKeyframeCount(i); j++) {
+                Assert.assertEquals(expected.getKeyframePts(i, j), actual.getKeyframePts(i, j));
+                Assert.assertEquals(expected.getSyncPointPosition(i, j), actual.getSyncPointPosition(i, j));
+            }
+        }
+    }
+}
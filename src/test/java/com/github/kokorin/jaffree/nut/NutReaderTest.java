@@ -0,0 +1,149 @@
+package com.github.kokorin.jaffree.nut;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.Random;
+
+public class NutReaderTest {
+
+    @Test
+    public void readFrameDataToReusableBuffers() throws Exception {
+        byte[] bytes = writeFrames();
+        List<NutFrame> expected = NutWriterTest.readFrames(bytes);
+
+        for (boolean direct : new boolean[]{false, true}) {
+            for (boolean fromChannel : new boolean[]{false, true}) {
+                NutInputStream input = fromChannel
+                        ? new NutInputStream(Channels.newChannel(new ByteArrayInputStream(bytes)))
+                        : new NutInputStream(new ByteArrayInputStream(bytes));
+                NutReader reader = new NutReader(input);
+
+                NutFrameHeader header = new NutFrameHeader();
+                ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(300_000) : ByteBuffer.allocate(300_000);
+                byte[] array = new byte[300_000];
+
+                int i = 0;
+                while (reader.readFrameHeader(header) != null) {
+                    NutFrame frame = expected.get(i);
+                    Assert.assertEquals(frame.streamId, header.getStreamId());
+                    Assert.assertEquals(frame.pts, header.getPts());
+                    Assert.assertEquals(frame.keyframe, header.isKeyframe());
+                    Assert.assertEquals(frame.eor, header.isEor());
+                    Assert.assertEquals(frame.data.length, header.getDataSize());
+
+                    byte[] actual = new byte[header.getDataSize()];
+                    if (i % 2 == 0) {
+                        buffer.clear();
+                        Assert.assertTrue(reader.readFrameData(buffer));
+                        Assert.assertEquals(header.getDataSize(), buffer.position());
+                        buffer.flip();
+                        buffer.get(actual);
+                    } else {
+                        Assert.assertTrue(reader.readFrameData(array, 7));
+                        System.arraycopy(array, 7, actual, 0, actual.length);
+                    }
+                    Assert.assertArrayEquals(frame.data, actual);
+                    i++;
+                }
+
+                Assert.assertEquals(expected.size(), i);
+            }
+        }
+    }
+
+    @Test
+    public void unreadFrameDataIsSkipped() throws Exception {
+        byte[] bytes = writeFrames();
+        List<NutFrame> expected = NutWriterTest.readFrames(bytes);
+
+        NutReader reader = new NutReader(new NutInputStream(new ByteArrayInputStream(bytes)));
+        NutFrameHeader header = new NutFrameHeader();
+
+        int i = 0;
+        while (reader.readFrameHeader(header) != null) {
+            NutFrame frame = expected.get(i);
+            Assert.assertEquals(frame.streamId, header.getStreamId());
+            Assert.assertEquals(frame.pts, header.getPts());
+
+            if (i % 3 == 0) {
+                byte[] actual = new byte[header.getDataSize()];
+                Assert.assertTrue(reader.readFrameData(actual, 0));
+                Assert.assertArrayEquals(frame.data, actual);
+            }
+            i++;
+        }
+
+        Assert.assertEquals(expected.size(), i);
+    }
+
+    @Test(expected = java.nio.BufferOverflowException.class)
+    public void bufferMustFitFrameData() throws Exception {
+        NutReader reader = new NutReader(new NutInputStream(new ByteArrayInputStream(writeFrames())));
+        NutFrameHeader header = new NutFrameHeader();
+        Assert.assertNotNull(reader.readFrameHeader(header));
+
+        reader.readFrameData(ByteBuffer.allocate(header.getDataSize() - 1));
+    }
+
+    @Test
+    public void elisionHeaderOfEmptyFrameIsSkipped() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NutOutputStream output = new NutOutputStream(bytes);
+        NutWriter writer = NutWriterTest.createWriter(output);
+
+        byte[][] data = new byte[3][16];
+        Random random = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            random.nextBytes(data[i]);
+            writer.writeFrame(new NutFrame(0, i, data[i], null, null, true, false));
+        }
+        writer.writeFooter();
+        output.close();
+
+        NutReader reader = new NutReader(new NutInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        NutFrameHeader header = new NutFrameHeader();
+        Assert.assertNotNull(reader.readFrameHeader(header));
+        Assert.assertEquals(0, header.getPts());
+
+        // all stored bytes of the next frame are elision header, so its payload is empty
+        reader.getMainHeader().elisionHeaderSize[0] = data[1].length;
+        Assert.assertNotNull(reader.readFrameHeader(header));
+        Assert.assertEquals(1, header.getPts());
+        Assert.assertEquals(0, header.getDataSize());
+        reader.getMainHeader().elisionHeaderSize[0] = 0;
+
+        Assert.assertNotNull(reader.readFrameHeader(header));
+        Assert.assertEquals(2, header.getPts());
+        byte[] actual = new byte[header.getDataSize()];
+        Assert.assertTrue(reader.readFrameData(actual, 0));
+        Assert.assertArrayEquals(data[2], actual);
+    }
+
+    private static byte[] writeFrames() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NutOutputStream output = new NutOutputStream(bytes);
+        NutWriter writer = NutWriterTest.createWriter(output);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 30; i++) {
+            // large video frames are read directly from the channel
+            byte[] video = new byte[i % 5 == 0 ? 200_000 : 1 + random.nextInt(5_000)];
+            random.nextBytes(video);
+            writer.writeFrame(new NutFrame(0, i, video, null, null, true, false));
+
+            byte[] audio = new byte[4 * (1 + random.nextInt(1_000))];
+            random.nextBytes(audio);
+            writer.writeFrame(new NutFrame(1, i * 40, audio, null, null, true, false));
+        }
+        writer.writeFooter();
+        output.close();
+
+        return bytes.toByteArray();
+    }
+}
@@ -5,6 +5,14 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 public class NutStreamTest {
     private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
@@ -85,6 +93,125 @@ public class NutStreamTest {
     }
 
 
+    @Test
+    public void slowProducer() throws Exception {
+        output.writeValue(0x7ABCDEF012L);
+        output.writeLong(0x123ABCL);
+        output.writeCString("Jaffree");
+        output.writeVariableBytes(new byte[100_000]);
+        output.writeValue(42);
+        output.close();
+
+        final byte[] bytes = outputStream.toByteArray();
+        // returns single byte per read and reports that nothing is available
+        InputStream slowInput = new InputStream() {
+            private int position = 0;
+
+            @Override
+            public int read() {
+                return position < bytes.length ? bytes[position++] & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                int result = read();
+                if (result == -1) {
+                    return -1;
+                }
+                b[off] = (byte) result;
+                return 1;
+            }
+
+            @Override
+            public int available() {
+                return 0;
+            }
+        };
+
+        NutInputStream input = new NutInputStream(slowInput);
+        Assert.assertEquals(0x7ABCDEF012L, input.readValue());
+        Assert.assertEquals(0x123ABCL, input.readLong());
+        Assert.assertEquals("Jaffree", input.readCString());
+        Assert.assertEquals(100_000, input.readVariableBytes().length);
+        Assert.assertEquals(42, input.readValue());
+        Assert.assertEquals(bytes.length, input.getPosition());
+        Assert.assertFalse(input.hasMoreData());
+    }
+
+    @Test
+    public void readFromChannel() throws Exception {
+        output.writeValue(356);
+        output.writeInt(0xABC123);
+        output.writeBytes(new byte[]{1, 2, 3});
+        output.writeValue(1);
+        output.close();
+
+        byte[] bytes = outputStream.toByteArray();
+        NutInputStream input = new NutInputStream(Channels.newChannel(new ByteArrayInputStream(bytes)));
+        Assert.assertEquals(356, input.readValue());
+        Assert.assertEquals(0xABC123, input.readInt());
+        input.skipBytes(3);
+        Assert.assertEquals(1, input.checkNextByte());
+        Assert.assertEquals(1, input.readValue());
+        Assert.assertEquals(bytes.length, input.getPosition());
+        Assert.assertFalse(input.hasMoreData());
+    }
+
+    @Test
+    public void payloadIsExcludedFromCrc() throws Exception {
+        ByteArrayOutputStream withPayload = new ByteArrayOutputStream();
+        NutOutputStream payloadOutput = new NutOutputStream(withPayload);
+        payloadOutput.resetCrc32();
+        payloadOutput.writeValue(356);
+        payloadOutput.writeData(new byte[200_000]);
+        payloadOutput.writeData(new byte[]{1, 2, 3});
+        payloadOutput.writeLong(0x123ABCL);
+        payloadOutput.writeCrc32();
+        payloadOutput.close();
+
+        output.resetCrc32();
+        output.writeValue(356);
+        output.writeLong(0x123ABCL);
+        output.writeCrc32();
+        output.close();
+
+        byte[] expected = outputStream.toByteArray();
+        byte[] actual = withPayload.toByteArray();
+        Assert.assertEquals(expected.length + 200_003, actual.length);
+        // the same CRC at the end
+        Assert.assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 4, expected.length),
+                Arrays.copyOfRange(actual, actual.length - 4, actual.length));
+    }
+
+    @Test
+    public void writeToChannel() throws Exception {
+        byte[] payload = new byte[200_000];
+        payload[payload.length - 1] = 42;
+
+        // FileChannel is gathering, so large payload is written together with buffered header
+        Path channelPath = Files.createTempFile("nut", ".bin");
+        NutOutputStream channelOutput = new NutOutputStream(FileChannel.open(channelPath, StandardOpenOption.WRITE));
+        for (NutOutputStream nutOutput : new NutOutputStream[]{output, channelOutput}) {
+            nutOutput.resetCrc32();
+            nutOutput.writeByte(12);
+            nutOutput.writeCrc32();
+            nutOutput.writeData(payload);
+            nutOutput.writeBytes(new byte[100_000]);
+            nutOutput.writeCrc32();
+            Assert.assertEquals(1 + 4 + 200_000 + 100_000 + 4, nutOutput.getPosition());
+            nutOutput.close();
+        }
+
+        Assert.assertArrayEquals(outputStream.toByteArray(), Files.readAllBytes(channelPath));
+        Files.delete(channelPath);
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedValue() throws Exception {
+        NutInputStream input = new NutInputStream(new ByteArrayInputStream(new byte[]{(byte) 0x81, (byte) 0x82}));
+        input.readValue();
+    }
+
     private static long assertIncreasedPosition(long prevPosition, NutInputStream input) {
         Assert.assertTrue(input.getPosition() > prevPosition);
         return input.getPosition();
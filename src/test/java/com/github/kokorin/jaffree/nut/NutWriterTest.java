@@ -0,0 +1,105 @@
+package com.github.kokorin.jaffree.nut;
+
+import com.github.kokorin.jaffree.Rational;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+public class NutWriterTest {
+    private static final Rational[] TIMEBASES = {new Rational(1, 25), new Rational(1, 1000)};
+
+    @Test
+    public void framesAreReordered() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NutOutputStream output = new NutOutputStream(bytes);
+        NutWriter writer = createWriter(output);
+
+        for (int i = 0; i < 100; i++) {
+            // audio is ahead of video by up to 120 milliseconds
+            writer.writeFrame(new NutFrame(1, i * 40 + 120, new byte[8], null, null, true, false));
+            writer.writeFrame(new NutFrame(1, i * 40 + 100, new byte[8], null, null, true, false));
+            writer.writeFrame(new NutFrame(0, i, new byte[16], null, null, true, false));
+        }
+        writer.writeFooter();
+        output.close();
+
+        List<NutFrame> frames = readFrames(bytes.toByteArray());
+        // 300 frames and 2 EOR frames
+        Assert.assertEquals(302, frames.size());
+
+        Rational previous = Rational.ZERO;
+        for (NutFrame frame : frames) {
+            // EOR frames use timestamp of the previous frame in the same stream
+            if (frame.eor) {
+                continue;
+            }
+            Rational timestamp = TIMEBASES[frame.streamId].multiply(frame.pts);
+            Assert.assertTrue(previous + " > " + timestamp, timestamp.greaterThanOrEqual(previous));
+            previous = timestamp;
+        }
+    }
+
+    @Test
+    public void adaptiveBufferShrinksToObservedJitter() throws Exception {
+        for (boolean adaptive : new boolean[]{false, true}) {
+            NutWriter writer = createWriter(new NutOutputStream(new ByteArrayOutputStream()));
+            writer.setAdaptiveFrameOrdering(adaptive);
+
+            RuntimeException unordered = null;
+            try {
+                // 2 seconds of perfectly ordered frames
+                for (int i = 0; i < 50; i++) {
+                    writer.writeFrame(new NutFrame(0, i, new byte[16], null, null, true, false));
+                    writer.writeFrame(new NutFrame(1, i * 40 + 20, new byte[8], null, null, true, false));
+                }
+                // 100 milliseconds late
+                writer.writeFrame(new NutFrame(1, 49 * 40 - 80, new byte[8], null, null, true, false));
+                writer.writeFooter();
+            } catch (RuntimeException e) {
+                unordered = e;
+            }
+
+            if (adaptive) {
+                Assert.assertNotNull("Adaptive buffer must shrink to zero jitter", unordered);
+                Assert.assertTrue(unordered.getMessage().startsWith("Unordered frames"));
+            } else {
+                Assert.assertNull(unordered);
+            }
+        }
+    }
+
+    static NutWriter createWriter(NutOutputStream output) {
+        FrameCode[] frameCodes = new FrameCode[256];
+        for (int i = 0; i < frameCodes.length; i++) {
+            frameCodes[i] = FrameCode.INVALID;
+        }
+        frameCodes[1] = new FrameCode(EnumSet.of(FrameCode.Flag.CODED_FLAGS), 0, 1, 0, 0, 0, 0, 0);
+
+        StreamHeader[] streamHeaders = new StreamHeader[TIMEBASES.length];
+        for (int i = 0; i < streamHeaders.length; i++) {
+            streamHeaders[i] = new StreamHeader(i, StreamHeader.Type.USER_DATA, new byte[]{'T', 'E', 'S', 'T'}, i, 0,
+                    60_000, 0, EnumSet.noneOf(StreamHeader.Flag.class), new byte[0], null, null);
+        }
+
+        NutWriter writer = new NutWriter(output);
+        writer.setMainHeader(streamHeaders.length, Short.MAX_VALUE, TIMEBASES, frameCodes);
+        writer.setStreamHeaders(streamHeaders);
+        writer.setInfos(new Info[0]);
+        return writer;
+    }
+
+    static List<NutFrame> readFrames(byte[] bytes) throws Exception {
+        NutReader reader = new NutReader(new NutInputStream(new ByteArrayInputStream(bytes)));
+        List<NutFrame> result = new ArrayList<>();
+        NutFrame frame;
+        while ((frame = reader.readFrame()) != null) {
+            result.add(frame);
+        }
+        return result;
+    }
+}
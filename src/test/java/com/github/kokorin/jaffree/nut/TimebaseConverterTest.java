@@ -0,0 +1,52 @@
+package com.github.kokorin.jaffree.nut;
+
+import com.github.kokorin.jaffree.Rational;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimebaseConverterTest {
+    private static final Rational[] TIMEBASES = {
+            new Rational(1, 90_000),
+            new Rational(1, 48_000),
+            new Rational(1001, 30_000),
+            new Rational(1, 1_000_000_000_000L)
+    };
+
+    private final TimebaseConverter converter = new TimebaseConverter(TIMEBASES);
+
+    @Test
+    public void convert() {
+        Assert.assertEquals(48_000, converter.convert(90_000, 0, 1));
+        Assert.assertEquals(90_000, converter.convert(48_000, 1, 0));
+        Assert.assertEquals(30, converter.convert(30_030 * 3, 0, 2));
+        // rounding toward zero
+        Assert.assertEquals(1, converter.convert(2, 0, 1));
+        Assert.assertEquals(-1, converter.convert(-2, 0, 1));
+
+        // 10 hours, intermediate product exceeds 64 bits
+        long tenHours = 10L * 3600;
+        Assert.assertEquals(tenHours * 1_000_000_000_000L, converter.convert(tenHours * 90_000, 0, 3));
+        Assert.assertEquals(tenHours * 48_000, converter.convert(tenHours * 1_000_000_000_000L, 3, 1));
+    }
+
+    @Test
+    public void compare() {
+        long tenHours = 10L * 3600;
+        Assert.assertEquals(0, converter.compare(tenHours * 90_000, 0, tenHours * 48_000, 1));
+        Assert.assertTrue(converter.compare(tenHours * 90_000 + 1, 0, tenHours * 48_000, 1) > 0);
+        Assert.assertTrue(converter.compare(tenHours * 90_000, 0, tenHours * 48_000 + 1, 1) < 0);
+
+        Assert.assertEquals(0, converter.compare(tenHours * 90_000, 0, tenHours * 1_000_000_000_000L, 3));
+        Assert.assertTrue(converter.compare(tenHours * 90_000, 0, tenHours * 1_000_000_000_000L + 1, 3) < 0);
+        Assert.assertTrue(converter.compare(1, 3, 0, 0) > 0);
+        Assert.assertTrue(converter.compare(-1, 3, 0, 0) < 0);
+    }
+
+    @Test
+    public void toMicros() {
+        Assert.assertEquals(1_000_000, converter.toMicros(90_000, 0));
+        Assert.assertEquals(1_001_000, converter.toMicros(30, 2));
+        Assert.assertEquals(0, converter.toMicros(999_999, 3));
+        Assert.assertEquals(10L * 3600 * 1_000_000, converter.toMicros(10L * 3600 * 48_000, 1));
+    }
+}
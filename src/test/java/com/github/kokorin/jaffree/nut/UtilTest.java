@@ -6,8 +6,10 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Random;
 
 public class UtilTest {
 
@@ -27,6 +29,41 @@ public class UtilTest {
         Assert.assertEquals(1000L, result);
     }
 
+    @Test
+    public void convertTimestampWithLargeIntermediateProduct() throws Exception {
+        // 10 hours at 90 kHz
+        long pts = 10L * 3600 * 90_000;
+        long result = Util.convertTimestamp(pts, new Rational(1, 90_000), new Rational(1, 1_000_000_000_000L));
+        Assert.assertEquals(10L * 3600 * 1_000_000_000_000L, result);
+
+        result = Util.convertTimestamp(-pts, new Rational(1, 90_000), new Rational(1, 48_000));
+        Assert.assertEquals(-10L * 3600 * 48_000, result);
+    }
+
+    @Test
+    public void multiplyDivide() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong() >> random.nextInt(64);
+            long multiplier = random.nextLong() >>> random.nextInt(64);
+            long divisor = Math.max(1, random.nextLong() >>> random.nextInt(64));
+
+            // BigInteger division rounds toward zero as well
+            BigInteger expected = BigInteger.valueOf(value).multiply(BigInteger.valueOf(multiplier))
+                    .divide(BigInteger.valueOf(divisor));
+            if (expected.bitLength() > 63) {
+                try {
+                    Util.multiplyDivide(value, multiplier, divisor);
+                    Assert.fail("ArithmeticException expected: " + value + " * " + multiplier + " / " + divisor);
+                } catch (ArithmeticException e) {
+                    // expected
+                }
+            } else {
+                Assert.assertEquals(expected.longValue(), Util.multiplyDivide(value, multiplier, divisor));
+            }
+        }
+    }
+
     @Test
     public void byteBuffer() {
         int v = 0x01020304;
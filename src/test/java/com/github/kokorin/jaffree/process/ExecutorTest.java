@@ -0,0 +1,209 @@
+package com.github.kokorin.jaffree.process;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ExecutorTest {
+
+    @Test
+    public void testThreadPerTask() throws Exception {
+        testExecution(null);
+    }
+
+    @Test
+    public void testBoundedPool() throws Exception {
+        ExecutorService executorService = ExecutorServices.newBoundedPool("test", 2);
+        try {
+            testExecution(executorService);
+            // tasks of the second execution must reuse pooled threads
+            testExecution(executorService);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        if (!ExecutorServices.isVirtualThreadSupported()) {
+            return;
+        }
+
+        ExecutorService executorService = ExecutorServices.newVirtualThreadExecutor();
+        try {
+            testExecution(executorService);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testBoundedPoolDoesNotQueueTasks() throws Exception {
+        ExecutorService executorService = ExecutorServices.newBoundedPool("test", 1);
+        try {
+            Executor executor = new Executor("test", executorService);
+            final CountDownLatch latch = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                executor.execute("Latch-" + i, new Runnable() {
+                    @Override
+                    public void run() {
+                        latch.countDown();
+                        try {
+                            // every task waits for others, so they all must run concurrently
+                            latch.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+            }
+
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testThreadIsNamedAfterTask() throws Exception {
+        ExecutorService executorService = ExecutorServices.newBoundedPool("test", 1);
+        try {
+            Executor executor = new Executor("context", executorService);
+            final AtomicReference<String> threadName = new AtomicReference<>();
+            final CountDownLatch latch = new CountDownLatch(1);
+            executor.execute("Named", new Runnable() {
+                @Override
+                public void run() {
+                    threadName.set(Thread.currentThread().getName());
+                    latch.countDown();
+                }
+            });
+
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals("context-Named", threadName.get());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testAwaitTermination() throws Exception {
+        Executor executor = new Executor("test");
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute("Waiting", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        Assert.assertFalse(executor.awaitTermination(100, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        long started = System.nanoTime();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        Assert.assertFalse(executor.isRunning());
+        Assert.assertTrue("Waited too long: " + waitedMillis, waitedMillis < 50);
+    }
+
+    @Test
+    public void testStopClearsInterruptionByHelper() throws Exception {
+        Executor executor = new Executor("test");
+        executeFailing(executor);
+
+        executor.stop();
+        Assert.assertFalse(Thread.interrupted());
+    }
+
+    @Test
+    public void testStopKeepsCallerInterruption() throws Exception {
+        Executor executor = new Executor("test");
+        Thread.currentThread().interrupt();
+        executor.stop();
+        Assert.assertTrue(Thread.interrupted());
+
+        executor = new Executor("test");
+        Thread.currentThread().interrupt();
+        executeFailing(executor);
+        executor.stop();
+        Assert.assertTrue(Thread.interrupted());
+    }
+
+    private static void executeFailing(Executor executor) {
+        executor.execute("Failing", new Runnable() {
+            @Override
+            public void run() {
+                throw new RuntimeException("Test exception");
+            }
+        });
+
+        // busy waiting, starter may be interrupted and can't sleep
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (executor.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        Assert.assertFalse(executor.isRunning());
+    }
+
+    private void testExecution(ExecutorService executorService) throws Exception {
+        Executor executor = new Executor("test", executorService);
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute("Blocking", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.countDown();
+                    Thread.sleep(60_000);
+                } catch (InterruptedException e) {
+                    // expected, executor must be stopped with interruption
+                }
+            }
+        });
+
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        executor.execute("Failing", new Runnable() {
+            @Override
+            public void run() {
+                throw new RuntimeException("Test exception");
+            }
+        });
+
+        try {
+            Thread.sleep(5_000);
+            Assert.fail("Starter thread must be interrupted");
+        } catch (InterruptedException e) {
+            // expected
+        }
+
+        // wait for failing task to finish
+        for (int i = 0; i < 50 && executor.getRunningThreadNames().size() > 1; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(executor.isRunning());
+        Assert.assertEquals(1, executor.getRunningThreadNames().size());
+        Assert.assertEquals("test-Blocking", executor.getRunningThreadNames().get(0));
+
+        executor.stop();
+        for (int i = 0; i < 50 && executor.isRunning(); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertFalse(executor.isRunning());
+
+        Exception exception = executor.getException();
+        Assert.assertNotNull(exception);
+        Assert.assertEquals("Test exception", exception.getCause().getMessage());
+        Assert.assertFalse(Thread.interrupted());
+    }
+}
@@ -0,0 +1,234 @@
+package com.github.kokorin.jaffree.process;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.github.kokorin.jaffree.process.JobScheduler.Priority.BATCH;
+import static com.github.kokorin.jaffree.process.JobScheduler.Priority.INTERACTIVE;
+
+public class JobSchedulerTest {
+
+    @Test
+    public void testMaxRunningJobs() throws Exception {
+        JobScheduler scheduler = new JobScheduler(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final int value = i;
+            futures.add(scheduler.submit(new Supplier<Integer>() {
+                @Override
+                public Integer get() {
+                    int nowRunning = running.incrementAndGet();
+                    maxRunning.accumulateAndGet(nowRunning, Math::max);
+                    sleep(20);
+                    running.decrementAndGet();
+                    return value;
+                }
+            }, BATCH, "tenant"));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(i), futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+
+        Assert.assertEquals(2, maxRunning.get());
+        Assert.assertEquals(10, scheduler.getSubmittedJobCount());
+        Assert.assertEquals(10, scheduler.getCompletedJobCount());
+        Assert.assertEquals(10, scheduler.getStartedJobCount(BATCH));
+        Assert.assertEquals(0, scheduler.getRunningJobCount());
+        Assert.assertEquals(0, scheduler.getQueuedJobCount());
+        Assert.assertTrue(scheduler.getMaxQueueWait(BATCH, TimeUnit.MILLISECONDS) >= 20);
+    }
+
+    @Test
+    public void testPriorityAndFairness() throws Exception {
+        JobScheduler scheduler = new JobScheduler(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> blocker = scheduler.submit(blockingJob(release, "blocker"), BATCH, "a");
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        futures.add(scheduler.submit(recordingJob(order, "a-batch-1"), BATCH, "a"));
+        futures.add(scheduler.submit(recordingJob(order, "a-batch-2"), BATCH, "a"));
+        futures.add(scheduler.submit(recordingJob(order, "b-batch-1"), BATCH, "b"));
+        futures.add(scheduler.submit(recordingJob(order, "a-interactive-1"), INTERACTIVE, "a"));
+        futures.add(scheduler.submit(recordingJob(order, "a-interactive-2"), INTERACTIVE, "a"));
+        futures.add(scheduler.submit(recordingJob(order, "b-interactive-1"), INTERACTIVE, "b"));
+
+        Assert.assertEquals(3, scheduler.getQueuedJobCount(BATCH));
+        Assert.assertEquals(3, scheduler.getQueuedJobCount(INTERACTIVE));
+
+        release.countDown();
+        Assert.assertEquals("blocker", blocker.get(10, TimeUnit.SECONDS));
+        for (CompletableFuture<String> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals(
+                java.util.Arrays.asList("a-interactive-1", "b-interactive-1", "a-interactive-2",
+                        "a-batch-1", "b-batch-1", "a-batch-2"),
+                order
+        );
+    }
+
+    @Test
+    public void testCancelQueuedJob() throws Exception {
+        JobScheduler scheduler = new JobScheduler(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> blocker = scheduler.submit(blockingJob(release, "blocker"), BATCH, "a");
+
+        final AtomicBoolean started = new AtomicBoolean();
+        CompletableFuture<String> cancelled = scheduler.submit(new Supplier<String>() {
+            @Override
+            public String get() {
+                started.set(true);
+                return "cancelled";
+            }
+        }, BATCH, "a");
+
+        Assert.assertEquals(1, scheduler.getQueuedJobCount());
+        Assert.assertTrue(cancelled.cancel(true));
+        Assert.assertEquals(0, scheduler.getQueuedJobCount());
+        Assert.assertEquals(1, scheduler.getCancelledJobCount());
+
+        release.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+
+        Assert.assertFalse(started.get());
+        Assert.assertTrue(cancelled.isCancelled());
+    }
+
+    @Test
+    public void testCancelJobBeingStarted() throws Exception {
+        final List<Runnable> runnables = new ArrayList<>();
+        JobScheduler scheduler = new JobScheduler(1, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                runnables.add(command);
+            }
+        });
+
+        final AtomicBoolean started = new AtomicBoolean();
+        CompletableFuture<String> cancelled = scheduler.submit(new Supplier<String>() {
+            @Override
+            public String get() {
+                started.set(true);
+                return "cancelled";
+            }
+        }, BATCH, "a");
+        CompletableFuture<String> next = scheduler.submit(recordingJob(new ArrayList<String>(), "next"), BATCH, "a");
+
+        // the first job has been passed to executor, but hasn't been started yet
+        Assert.assertEquals(1, runnables.size());
+        Assert.assertTrue(cancelled.cancel(true));
+        runnables.get(0).run();
+
+        Assert.assertFalse(started.get());
+        Assert.assertEquals(1, scheduler.getCancelledJobCount());
+        Assert.assertEquals(0, scheduler.getCompletedJobCount());
+        Assert.assertEquals(0, scheduler.getStartedJobCount(BATCH));
+
+        // slot must be released
+        Assert.assertEquals(2, runnables.size());
+        runnables.get(1).run();
+        Assert.assertEquals("next", next.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, scheduler.getCompletedJobCount());
+        Assert.assertEquals(1, scheduler.getStartedJobCount(BATCH));
+        Assert.assertEquals(0, scheduler.getRunningJobCount());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        JobScheduler scheduler = new JobScheduler(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> blocker = scheduler.submit(blockingJob(release, "blocker"), BATCH, "a");
+        CompletableFuture<String> queued = scheduler.submit(recordingJob(new ArrayList<String>(), "queued"),
+                INTERACTIVE, "b");
+
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.isShutdown());
+        Assert.assertTrue(queued.isCancelled());
+        Assert.assertEquals(0, scheduler.getQueuedJobCount());
+        Assert.assertEquals(1, scheduler.getCancelledJobCount());
+
+        try {
+            scheduler.submit(recordingJob(new ArrayList<String>(), "rejected"), INTERACTIVE, "b");
+            Assert.fail("Job must be rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        // running job isn't affected
+        release.countDown();
+        Assert.assertEquals("blocker", blocker.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, scheduler.getCompletedJobCount());
+    }
+
+    @Test
+    public void testJobException() throws Exception {
+        JobScheduler scheduler = new JobScheduler(1);
+        CompletableFuture<String> failed = scheduler.submit(new Supplier<String>() {
+            @Override
+            public String get() {
+                throw new RuntimeException("Test exception");
+            }
+        }, INTERACTIVE, null);
+
+        try {
+            failed.get(10, TimeUnit.SECONDS);
+            Assert.fail("Exception expected");
+        } catch (java.util.concurrent.ExecutionException e) {
+            Assert.assertEquals("Test exception", e.getCause().getMessage());
+        }
+
+        // slot must be released after exception
+        Assert.assertEquals("ok", scheduler.submit(recordingJob(new ArrayList<String>(), "ok"), INTERACTIVE, null)
+                .get(10, TimeUnit.SECONDS));
+    }
+
+    private static Supplier<String> blockingJob(final CountDownLatch release, final String result) {
+        return new Supplier<String>() {
+            @Override
+            public String get() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return result;
+            }
+        };
+    }
+
+    private static Supplier<String> recordingJob(final List<String> order, final String name) {
+        return new Supplier<String>() {
+            @Override
+            public String get() {
+                order.add(name);
+                return name;
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.kokorin.jaffree.process;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ProcessHandlerTest {
+
+    @Test
+    public void helpersAreClosedIfProcessFailsToStart() {
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        class ClosableHelper implements Runnable, Closeable {
+            @Override
+            public void run() {
+                started.set(true);
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        }
+
+        ProcessHandler<Object> processHandler = new ProcessHandler<>(Paths.get("/non/existent/ffmpeg"), null)
+                .setRunnables(Collections.<Runnable>singletonList(new ClosableHelper()))
+                .setArguments(Collections.<String>emptyList());
+
+        try {
+            processHandler.execute();
+            Assert.fail("Process must fail to start");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        Assert.assertFalse(started.get());
+        Assert.assertTrue(closed.get());
+    }
+}
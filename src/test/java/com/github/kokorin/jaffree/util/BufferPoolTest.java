@@ -0,0 +1,38 @@
+package com.github.kokorin.jaffree.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class BufferPoolTest {
+
+    @Test
+    public void buffersAreReused() {
+        ByteBuffer buffer = BufferPool.acquire(12345);
+        Assert.assertTrue(buffer.isDirect());
+        Assert.assertEquals(12345, buffer.capacity());
+
+        buffer.put((byte) 1);
+        BufferPool.release(buffer);
+
+        ByteBuffer reused = BufferPool.acquire(12345);
+        Assert.assertSame(buffer, reused);
+        Assert.assertEquals(0, reused.position());
+        Assert.assertEquals(12345, reused.limit());
+
+        ByteBuffer another = BufferPool.acquire(12345);
+        Assert.assertNotSame(reused, another);
+
+        BufferPool.release(reused);
+        BufferPool.release(another);
+    }
+
+    @Test
+    public void heapBuffersAreNotPooled() {
+        ByteBuffer heap = ByteBuffer.allocate(54321);
+        BufferPool.release(heap);
+
+        Assert.assertNotSame(heap, BufferPool.acquire(54321));
+    }
+}
@@ -0,0 +1,286 @@
+package com.github.kokorin.jaffree.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CachingSeekableByteChannelTest {
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private byte[] data;
+    private Path path;
+    private FileChannel fileChannel;
+    private final AtomicLong readCount = new AtomicLong();
+    private final CountDownLatch readAheadPaused = new CountDownLatch(1);
+    private volatile boolean pauseReadAhead;
+    private Object countingChannelLock;
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[BLOCK_SIZE * 10 + 1234];
+        new Random(42).nextBytes(data);
+        path = Files.createTempFile("jaffree", ".bin");
+        Files.write(path, data);
+        fileChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileChannel.close();
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void randomReads() throws Exception {
+        try (CachingSeekableByteChannel channel = cache(BLOCK_SIZE * 4, 2)) {
+            Random random = new Random(1);
+            for (int i = 0; i < 200; i++) {
+                int position = random.nextInt(data.length);
+                int length = random.nextInt(BLOCK_SIZE * 3);
+                int expectedLength = Math.min(length, data.length - position);
+
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                channel.position(position);
+                Assert.assertEquals(expectedLength, read(channel, buffer));
+                Assert.assertArrayEquals(Arrays.copyOfRange(data, position, position + expectedLength),
+                        Arrays.copyOf(buffer.array(), expectedLength));
+            }
+
+            channel.position(data.length);
+            Assert.assertEquals(IOUtil.EOF, channel.read(ByteBuffer.allocate(10)));
+        }
+    }
+
+    @Test
+    public void repeatedReadsAreServedFromCache() throws Exception {
+        try (CachingSeekableByteChannel channel = cache(data.length * 2L, 0)) {
+            Assert.assertArrayEquals(data, readAll(channel));
+            CachingSeekableByteChannel.Statistics first = channel.getStatistics();
+            Assert.assertEquals(11, first.getMissCount());
+            Assert.assertEquals(data.length, first.getBytesFetched());
+
+            long reads = readCount.get();
+            Assert.assertArrayEquals(data, readAll(channel));
+            CachingSeekableByteChannel.Statistics second = channel.getStatistics();
+            Assert.assertEquals(11, second.getMissCount());
+            Assert.assertTrue(second.getHitCount() >= 11);
+            Assert.assertEquals(data.length, second.getBytesFetched());
+            Assert.assertEquals(reads, readCount.get());
+        }
+    }
+
+    @Test
+    public void sequentialReadsTriggerReadAhead() throws Exception {
+        try (CachingSeekableByteChannel channel = cache(data.length * 2L, 3)) {
+            Assert.assertArrayEquals(data, readAll(channel));
+
+            CachingSeekableByteChannel.Statistics statistics = channel.getStatistics();
+            // only the first block is read by caller, others are read ahead
+            Assert.assertEquals(1, statistics.getMissCount());
+            Assert.assertEquals(10, statistics.getReadAheadCount());
+            Assert.assertEquals(data.length, statistics.getBytesFetched());
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedBlockIsEvicted() throws Exception {
+        try (CachingSeekableByteChannel channel = cache(BLOCK_SIZE * 2, 0)) {
+            readBlock(channel, 0);
+            readBlock(channel, 5);
+            readBlock(channel, 0);
+            readBlock(channel, 7);
+            Assert.assertEquals(1, channel.getStatistics().getEvictionCount());
+
+            // block 5 was evicted, block 0 is still cached
+            readBlock(channel, 0);
+            readBlock(channel, 5);
+
+            CachingSeekableByteChannel.Statistics statistics = channel.getStatistics();
+            Assert.assertEquals(2, statistics.getHitCount());
+            Assert.assertEquals(4, statistics.getMissCount());
+            Assert.assertEquals(2, statistics.getEvictionCount());
+        }
+    }
+
+    @Test
+    public void writeInvalidatesCachedBlocks() throws Exception {
+        try (CachingSeekableByteChannel channel = cache(data.length * 2L, 0)) {
+            Assert.assertArrayEquals(data, readAll(channel));
+
+            byte[] update = new byte[100];
+            Arrays.fill(update, (byte) 7);
+            channel.position(BLOCK_SIZE - 50);
+            Assert.assertEquals(update.length, channel.write(ByteBuffer.wrap(update)));
+            System.arraycopy(update, 0, data, BLOCK_SIZE - 50, update.length);
+
+            channel.position(data.length);
+            channel.write(ByteBuffer.wrap(update));
+            byte[] expected = Arrays.copyOf(data, data.length + update.length);
+            System.arraycopy(update, 0, expected, data.length, update.length);
+
+            Assert.assertEquals(expected.length, channel.size());
+            Assert.assertArrayEquals(expected, readAll(channel));
+        }
+    }
+
+    @Test
+    public void writeDiscardsReadAheadInFlight() throws Exception {
+        try (CachingSeekableByteChannel channel = cache(data.length * 2L, 1)) {
+            pauseReadAhead = true;
+            // sequential read of block 0 schedules read-ahead of block 1
+            readBlock(channel, 0);
+            Assert.assertTrue(readAheadPaused.await(5, TimeUnit.SECONDS));
+
+            // read-ahead has fetched block 1 but hasn't completed yet
+            byte[] update = new byte[100];
+            Arrays.fill(update, (byte) 7);
+            channel.position(BLOCK_SIZE + 10);
+            Assert.assertEquals(update.length, channel.write(ByteBuffer.wrap(update)));
+            System.arraycopy(update, 0, data, BLOCK_SIZE + 10, update.length);
+
+            // release read-ahead later, otherwise stale read-ahead would block the read below
+            Thread resumer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    resumeReadAhead();
+                }
+            });
+            resumer.start();
+            try {
+                readBlock(channel, 1);
+            } finally {
+                resumeReadAhead();
+                resumer.join();
+            }
+        }
+    }
+
+    private void resumeReadAhead() {
+        synchronized (countingChannelLock) {
+            pauseReadAhead = false;
+            countingChannelLock.notifyAll();
+        }
+    }
+
+    private CachingSeekableByteChannel cache(long memoryBudget, int readAheadBlocks) {
+        CountingChannel countingChannel = new CountingChannel(fileChannel);
+        countingChannelLock = countingChannel;
+        return new CachingSeekableByteChannel(countingChannel, BLOCK_SIZE, memoryBudget, readAheadBlocks);
+    }
+
+    private void readBlock(SeekableByteChannel channel, int index) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(100);
+        channel.position((long) index * BLOCK_SIZE + 10);
+        Assert.assertEquals(100, read(channel, buffer));
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, index * BLOCK_SIZE + 10, index * BLOCK_SIZE + 110),
+                buffer.array());
+    }
+
+    private static byte[] readAll(SeekableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        channel.position(0);
+        read(channel, buffer);
+        return buffer.array();
+    }
+
+    private static int read(SeekableByteChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            // read size similar to ChannelServer buffer, not aligned to blocks
+            ByteBuffer chunk = buffer.slice();
+            chunk.limit(Math.min(chunk.remaining(), 100_000));
+            int read = channel.read(chunk);
+            if (read == IOUtil.EOF) {
+                break;
+            }
+            buffer.position(buffer.position() + read);
+            total += read;
+        }
+        return total;
+    }
+
+    private class CountingChannel implements SeekableByteChannel {
+        private final FileChannel channel;
+
+        CountingChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            readCount.incrementAndGet();
+            int read = channel.read(dst);
+            if (pauseReadAhead && Thread.currentThread().getName().endsWith("ReadAhead")) {
+                // waiting releases the lock CachingSeekableByteChannel holds while fetching
+                synchronized (this) {
+                    readAheadPaused.countDown();
+                    while (pauseReadAhead) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,640 @@
+package com.github.kokorin.jaffree.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class FtpServerTest {
+    private static final Pattern PASV_PATTERN = Pattern.compile("\\((\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)\\)");
+    private static final Pattern EPSV_PATTERN = Pattern.compile("\\(\\|\\|\\|(\\d+)\\|\\)");
+
+    private byte[] data;
+    private Path path;
+    private FtpServer server;
+    private ServerSocket serverSocket;
+    private Thread serverThread;
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[2_000_000];
+        new Random(42).nextBytes(data);
+        path = Files.createTempFile("jaffree", ".bin");
+        Files.write(path, data);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (serverThread != null) {
+            server.stop();
+            server.stop();
+            serverThread.join(10_000);
+            Assert.assertFalse(serverThread.isAlive());
+        }
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void retrFromFileChannel() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 12345, data.length), retr(channel, 12345));
+        }
+    }
+
+    @Test
+    public void retrFromNonFileChannel() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 12345, data.length), retr(wrap(channel), 12345));
+        }
+    }
+
+    @Test
+    public void featAndEpsv() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client = start(channel);
+            client.command("FEAT", "211-");
+            List<String> features = new ArrayList<>();
+            String line;
+            while (!(line = client.reader.readLine()).startsWith("211 ")) {
+                features.add(line.trim());
+            }
+            Assert.assertTrue(features.contains("EPSV"));
+            Assert.assertTrue(features.contains("REST STREAM"));
+
+            Assert.assertArrayEquals(data, retr(client, client.epsv(), 0));
+            client.quit();
+        }
+    }
+
+    @Test
+    public void restAppliesToNextTransferOnly() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client = start(channel);
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 100, data.length), retr(client, client.pasv(), 100));
+            Assert.assertArrayEquals(data, retr(client, client.pasv(), 0));
+            client.quit();
+        }
+    }
+
+    @Test
+    public void abortAndSeek() throws Exception {
+        int position = data.length / 4;
+        String transferStatus;
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client = start(channel);
+            Socket dataSocket = client.epsv();
+            client.command("RETR file.bin", "150");
+            // at least the first chunk has been sent completely when half of data has been read
+            byte[] firstHalf = new byte[data.length / 2];
+            new DataInputStream(dataSocket.getInputStream()).readFully(firstHalf);
+            Assert.assertArrayEquals(Arrays.copyOf(data, firstHalf.length), firstHalf);
+
+            client.send("ABOR");
+            dataSocket.close();
+            // transfer status goes first, it's 226 if all data fits into socket buffers
+            transferStatus = client.expect("426", "226");
+            if (transferStatus.startsWith("426")) {
+                client.expect("226");
+            }
+            // transfer may have completed before ABOR has been received, then ABOR is replied separately
+            client.send("NOOP");
+            if (client.expect("200", "226").startsWith("226")) {
+                client.expect("200");
+            }
+
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, position, data.length),
+                    retr(client, client.epsv(), position));
+            client.quit();
+            server.stop();
+            serverThread.join(10_000);
+        }
+
+        ChannelServer.Statistics statistics = server.getStatistics();
+        Assert.assertEquals(1, statistics.getSessionCount());
+        Assert.assertEquals(2, statistics.getTransferCount());
+        Assert.assertEquals(1, statistics.getSeekCount());
+        Assert.assertEquals(transferStatus.startsWith("426") ? 1 : 0, statistics.getAbortCount());
+        Assert.assertTrue(statistics.getBytesSent() >= data.length - position);
+        Assert.assertTrue(statistics.getBytesReread() > 0);
+    }
+
+    @Test
+    public void abortedUploadIsRepliedOnce() throws Exception {
+        Path output = Files.createTempFile("jaffree", ".bin");
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Client client = start(channel);
+            Socket dataSocket = client.epsv();
+            client.command("STOR file.bin", "150");
+            OutputStream dataOutput = dataSocket.getOutputStream();
+            dataOutput.write(data);
+            dataOutput.flush();
+
+            client.send("ABOR");
+            // let server receive ABOR while upload is in progress
+            Thread.sleep(200);
+            dataSocket.close();
+
+            // upload is completed, single 226 replies both to STOR and ABOR
+            client.expect("226");
+            client.command("NOOP", "200");
+            client.quit();
+            server.stop();
+            serverThread.join(10_000);
+        }
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(output));
+        Assert.assertEquals(0, server.getStatistics().getAbortCount());
+        Files.delete(output);
+    }
+
+    @Test
+    public void concurrentSessions() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            SeekableByteChannel wrapped = wrap(channel);
+            Client client1 = start(wrapped);
+            Client client2 = connect();
+
+            Socket dataSocket1 = client1.pasv();
+            client1.command("REST 1000", "350");
+            client1.command("RETR file.bin", "150");
+            Socket dataSocket2 = client2.pasv();
+            client2.command("RETR file.bin", "150");
+
+            InputStream input1 = dataSocket1.getInputStream();
+            InputStream input2 = dataSocket2.getInputStream();
+            ByteArrayOutputStream result1 = new ByteArrayOutputStream();
+            ByteArrayOutputStream result2 = new ByteArrayOutputStream();
+            byte[] buffer = new byte[10_000];
+            boolean eof1 = false;
+            boolean eof2 = false;
+            // reads are interleaved, so both sessions access channel concurrently
+            while (!eof1 || !eof2) {
+                eof1 = eof1 || readChunk(input1, buffer, result1);
+                eof2 = eof2 || readChunk(input2, buffer, result2);
+            }
+            client1.expect("226");
+            client2.expect("226");
+
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 1000, data.length), result1.toByteArray());
+            Assert.assertArrayEquals(data, result2.toByteArray());
+
+            client1.quit();
+            client2.quit();
+            server.stop();
+            serverThread.join(10_000);
+        }
+
+        Assert.assertEquals(2, server.getStatistics().getSessionCount());
+    }
+
+    @Test
+    public void successiveSessions() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client = start(channel);
+            Assert.assertArrayEquals(data, retr(client, client.pasv(), 0));
+            client.quit();
+
+            // ffmpeg reconnects right after closing control connection
+            client = connect();
+            Assert.assertArrayEquals(data, retr(client, client.pasv(), 0));
+            client.quit();
+            server.stop();
+            serverThread.join(10_000);
+        }
+
+        Assert.assertEquals(2, server.getStatistics().getSessionCount());
+        Assert.assertEquals(data.length, server.getStatistics().getBytesReread());
+    }
+
+    @Test
+    public void stor() throws Exception {
+        Path output = Files.createTempFile("jaffree", ".bin");
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+            Client client = start(channel);
+            Socket dataSocket = client.pasv();
+            client.command("STOR output.bin", "150");
+            try (OutputStream dataOutput = dataSocket.getOutputStream()) {
+                dataOutput.write(data);
+            }
+            client.expect("226");
+            client.quit();
+            server.stop();
+            serverThread.join(10_000);
+        }
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(output));
+        Files.delete(output);
+    }
+
+    @Test
+    public void fileSystem() throws Exception {
+        final List<String> closedPaths = new CopyOnWriteArrayList<>();
+        VirtualFileSystem fileSystem = new VirtualFileSystem()
+                .put("input.bin", data)
+                .setFileListener(new VirtualFileSystem.FileListener() {
+                    @Override
+                    public void onFileClosed(String path, SeekableByteChannel channel) {
+                        closedPaths.add(path);
+                    }
+                });
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new FtpServer(fileSystem, serverSocket);
+        serverThread = new Thread(server, "FtpServer");
+        serverThread.start();
+        Client client = connect();
+
+        client.command("SIZE /input.bin", "213 " + data.length);
+        client.command("SIZE /absent.bin", "550");
+
+        Socket dataSocket = client.epsv();
+        client.command("STOR /segment.tmp", "150");
+        try (OutputStream dataOutput = dataSocket.getOutputStream()) {
+            dataOutput.write(data, 0, 1000);
+        }
+        client.expect("226");
+
+        client.command("RNFR /segment.tmp", "350");
+        client.command("RNTO /segment.ts", "250");
+        client.command("RNFR /segment.tmp", "550");
+        client.command("RNTO /other.ts", "553");
+        client.command("DELE /input.bin", "250");
+        client.command("DELE /input.bin", "550");
+        client.command("RETR /input.bin", "550");
+        client.quit();
+
+        // file system server runs till it's stopped
+        Thread.sleep(100);
+        Assert.assertTrue(serverThread.isAlive());
+        server.stop();
+        serverThread.join(10_000);
+
+        Assert.assertEquals(Collections.singleton("segment.ts"), fileSystem.getPaths());
+        Assert.assertArrayEquals(Arrays.copyOf(data, 1000), fileSystem.getBytes("segment.ts"));
+        Assert.assertEquals(Collections.singletonList("segment.tmp"), closedPaths);
+    }
+
+    @Test
+    public void stopWaitsForFileSystemUpload() throws Exception {
+        final List<String> closedPaths = new CopyOnWriteArrayList<>();
+        VirtualFileSystem fileSystem = new VirtualFileSystem()
+                .setFileListener(new VirtualFileSystem.FileListener() {
+                    @Override
+                    public void onFileClosed(String path, SeekableByteChannel channel) {
+                        closedPaths.add(path);
+                    }
+                });
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new FtpServer(fileSystem, serverSocket);
+        serverThread = new Thread(server, "FtpServer");
+        serverThread.start();
+        Client client = connect();
+
+        Socket dataSocket = client.epsv();
+        client.command("STOR /last.ts", "150");
+        OutputStream dataOutput = dataSocket.getOutputStream();
+        dataOutput.write(data, 0, data.length / 2);
+        dataOutput.flush();
+
+        // ffmpeg process exits while the final file is still being uploaded
+        server.stop();
+        Thread.sleep(100);
+        dataOutput.write(data, data.length / 2, data.length - data.length / 2);
+        dataSocket.close();
+        client.expect("226");
+        client.quit();
+        serverThread.join(10_000);
+
+        Assert.assertEquals(Collections.singletonList("last.ts"), closedPaths);
+        Assert.assertArrayEquals(data, fileSystem.getBytes("last.ts"));
+        Assert.assertEquals(0, server.getStatistics().getAbortCount());
+    }
+
+    @Test
+    public void uploadOfNextFileIsNotSeek() throws Exception {
+        VirtualFileSystem fileSystem = new VirtualFileSystem();
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new FtpServer(fileSystem, serverSocket);
+        serverThread = new Thread(server, "FtpServer");
+        serverThread.start();
+        Client client = connect();
+
+        for (String path : new String[]{"/segment0.ts", "/segment1.ts"}) {
+            Socket dataSocket = client.epsv();
+            client.command("STOR " + path, "150");
+            try (OutputStream dataOutput = dataSocket.getOutputStream()) {
+                dataOutput.write(data, 0, 1000);
+            }
+            client.expect("226");
+        }
+        // transfer status is sent before transfer is accounted
+        awaitTransferCount(2);
+        Assert.assertEquals(2, server.getExpectedPositionCount());
+
+        client.command("DELE /segment0.ts", "250");
+        Assert.assertEquals(1, server.getExpectedPositionCount());
+        client.quit();
+        server.stop();
+        serverThread.join(10_000);
+
+        ChannelServer.Statistics statistics = server.getStatistics();
+        Assert.assertEquals(2, statistics.getTransferCount());
+        Assert.assertEquals(0, statistics.getSeekCount());
+    }
+
+    @Test
+    public void streamingFileSystemBackpressure() throws Exception {
+        final CountDownLatch consumerStarted = new CountDownLatch(1);
+        final CountDownLatch consumerReleased = new CountDownLatch(1);
+        final List<String> consumedPaths = new CopyOnWriteArrayList<>();
+        StreamingFileSystem fileSystem = new StreamingFileSystem(new StreamingFileSystem.FileConsumer() {
+            @Override
+            public void consume(String path, ByteBuffer content) throws Exception {
+                consumerStarted.countDown();
+                consumerReleased.await();
+                consumedPaths.add(path);
+            }
+        }, 1000);
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new FtpServer(fileSystem, serverSocket);
+        serverThread = new Thread(server, "FtpServer");
+        serverThread.start();
+        final Client client = connect();
+
+        Socket dataSocket = client.epsv();
+        client.command("STOR /segment0.ts", "150");
+        try (OutputStream dataOutput = dataSocket.getOutputStream()) {
+            dataOutput.write(data, 0, 1000);
+        }
+        client.expect("226");
+        Assert.assertTrue(consumerStarted.await(5, TimeUnit.SECONDS));
+
+        dataSocket = client.epsv();
+        client.command("STOR /segment1.ts", "150");
+        try (OutputStream dataOutput = dataSocket.getOutputStream()) {
+            dataOutput.write(data, 0, 1000);
+        }
+
+        final CountDownLatch completed = new CountDownLatch(1);
+        Thread statusReader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.expect("226");
+                    completed.countDown();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        statusReader.start();
+
+        // budget is taken by segment0, which is being consumed: server doesn't read segment1
+        Assert.assertFalse(completed.await(300, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1000, fileSystem.getBufferedBytes());
+
+        consumerReleased.countDown();
+        Assert.assertTrue(completed.await(5, TimeUnit.SECONDS));
+        client.quit();
+        server.stop();
+        serverThread.join(10_000);
+        fileSystem.close();
+
+        Assert.assertEquals(Arrays.asList("segment0.ts", "segment1.ts"), consumedPaths);
+        Assert.assertEquals(0, fileSystem.getBufferedBytes());
+    }
+
+    @Test
+    public void stopWaitsForUploadUnderBackpressure() throws Exception {
+        final CountDownLatch consumerStarted = new CountDownLatch(1);
+        final CountDownLatch consumerReleased = new CountDownLatch(1);
+        final List<String> consumedPaths = new CopyOnWriteArrayList<>();
+        StreamingFileSystem fileSystem = new StreamingFileSystem(new StreamingFileSystem.FileConsumer() {
+            @Override
+            public void consume(String path, ByteBuffer content) throws Exception {
+                consumerStarted.countDown();
+                consumerReleased.await();
+                consumedPaths.add(path);
+            }
+        }, 1000);
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new FtpServer(fileSystem, serverSocket);
+        serverThread = new Thread(server, "FtpServer");
+        serverThread.start();
+        Client client = connect();
+
+        Socket dataSocket = client.epsv();
+        client.command("STOR /segment0.ts", "150");
+        try (OutputStream dataOutput = dataSocket.getOutputStream()) {
+            dataOutput.write(data, 0, 1000);
+        }
+        client.expect("226");
+        Assert.assertTrue(consumerStarted.await(5, TimeUnit.SECONDS));
+
+        // the last file waits for memory budget when ffmpeg exits
+        dataSocket = client.epsv();
+        client.command("STOR /playlist.m3u8", "150");
+        try (OutputStream dataOutput = dataSocket.getOutputStream()) {
+            dataOutput.write(data, 0, 1000);
+        }
+        client.quit();
+        server.stop();
+
+        Thread.sleep(300);
+        Assert.assertTrue(serverThread.isAlive());
+        Assert.assertEquals(1000, fileSystem.getBufferedBytes());
+
+        consumerReleased.countDown();
+        serverThread.join(10_000);
+        fileSystem.close();
+
+        Assert.assertEquals(Arrays.asList("segment0.ts", "playlist.m3u8"), consumedPaths);
+        Assert.assertEquals(0, server.getStatistics().getAbortCount());
+    }
+
+    private void awaitTransferCount(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && server.getStatistics().getTransferCount() < count; i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    private byte[] retr(SeekableByteChannel channel, long position) throws Exception {
+        Client client = start(channel);
+        client.command("TYPE I", "200");
+        client.command("SIZE file.bin", "213 " + data.length);
+        byte[] result = retr(client, client.pasv(), position);
+        client.quit();
+
+        return result;
+    }
+
+    private static byte[] retr(Client client, Socket dataSocket, long position) throws IOException {
+        if (position != 0) {
+            client.command("REST " + position, "350");
+        }
+        client.command("RETR file.bin", "150");
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream dataInput = dataSocket.getInputStream()) {
+            IOUtil.copy(dataInput, result);
+        }
+        client.expect("226");
+
+        return result.toByteArray();
+    }
+
+    private static boolean readChunk(InputStream input, byte[] buffer, ByteArrayOutputStream output)
+            throws IOException {
+        int read = input.read(buffer);
+        if (read < 0) {
+            return true;
+        }
+        output.write(buffer, 0, read);
+        return false;
+    }
+
+    private Client start(SeekableByteChannel channel) throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new FtpServer(channel, serverSocket);
+        serverThread = new Thread(server, "FtpServer");
+        serverThread.start();
+
+        return connect();
+    }
+
+    private Client connect() throws IOException {
+        Client client = new Client(new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()));
+        client.expect("220");
+        return client;
+    }
+
+    private static SeekableByteChannel wrap(final FileChannel channel) {
+        return new SeekableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                return channel.read(dst);
+            }
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                return channel.write(src);
+            }
+
+            @Override
+            public long position() throws IOException {
+                return channel.position();
+            }
+
+            @Override
+            public SeekableByteChannel position(long newPosition) throws IOException {
+                channel.position(newPosition);
+                return this;
+            }
+
+            @Override
+            public long size() throws IOException {
+                return channel.size();
+            }
+
+            @Override
+            public SeekableByteChannel truncate(long size) throws IOException {
+                channel.truncate(size);
+                return this;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    private static class Client {
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final OutputStream output;
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            this.output = socket.getOutputStream();
+        }
+
+        String command(String command, String expectedPrefix) throws IOException {
+            send(command);
+            return expect(expectedPrefix);
+        }
+
+        void send(String command) throws IOException {
+            output.write((command + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+        }
+
+        String expect(String... expectedPrefixes) throws IOException {
+            String line = reader.readLine();
+            Assert.assertNotNull(line);
+            for (String expectedPrefix : expectedPrefixes) {
+                if (line.startsWith(expectedPrefix)) {
+                    return line;
+                }
+            }
+            Assert.fail(line);
+            return line;
+        }
+
+        Socket pasv() throws IOException {
+            Matcher matcher = PASV_PATTERN.matcher(command("PASV", "227"));
+            Assert.assertTrue(matcher.find());
+            int port = Integer.parseInt(matcher.group(5)) * 256 + Integer.parseInt(matcher.group(6));
+            return new Socket(InetAddress.getLoopbackAddress(), port);
+        }
+
+        Socket epsv() throws IOException {
+            Matcher matcher = EPSV_PATTERN.matcher(command("EPSV", "229"));
+            Assert.assertTrue(matcher.find());
+            return new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(matcher.group(1)));
+        }
+
+        void quit() throws IOException {
+            output.write("QUIT\r\n".getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            socket.close();
+        }
+    }
+}
@@ -1,14 +1,62 @@
 package com.github.kokorin.jaffree.util;
 
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class HttpServerTest {
+    private byte[] data;
+    private Path path;
+    private HttpServer server;
+    private ServerSocket serverSocket;
+    private Thread serverThread;
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[2_000_000];
+        new Random(42).nextBytes(data);
+        path = Files.createTempFile("jaffree", ".bin");
+        Files.write(path, data);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (serverThread != null) {
+            server.stop();
+            server.stop();
+            serverThread.join(10_000);
+            Assert.assertFalse(serverThread.isAlive());
+        }
+        Files.deleteIfExists(path);
+    }
+
     @Test
     public void autoPortNumber() throws IOException {
         InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
@@ -18,4 +66,451 @@ public class HttpServerTest {
             Assert.assertNotEquals(0, address.getPort());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void parseRange() {
+        Assert.assertArrayEquals(new long[]{100, 999}, HttpServer.parseRange("bytes=100-", 1000));
+        Assert.assertArrayEquals(new long[]{100, 199}, HttpServer.parseRange("bytes=100-199", 1000));
+        Assert.assertArrayEquals(new long[]{100, 999}, HttpServer.parseRange("bytes=100-5000", 1000));
+        Assert.assertArrayEquals(new long[]{900, 999}, HttpServer.parseRange("bytes=-100", 1000));
+        Assert.assertArrayEquals(new long[]{0, 999}, HttpServer.parseRange("bytes=-5000", 1000));
+
+        Assert.assertNull(HttpServer.parseRange(null, 1000));
+        Assert.assertNull(HttpServer.parseRange("items=100-", 1000));
+        Assert.assertNull(HttpServer.parseRange("bytes=200-100", 1000));
+        Assert.assertNull(HttpServer.parseRange("bytes=0-1,5-6", 1000));
+        Assert.assertNull(HttpServer.parseRange("bytes=abc-", 1000));
+    }
+
+    @Test
+    public void getWithoutRange() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client = start(channel);
+            Response response = client.request("GET", "Connection: close");
+            Assert.assertEquals(200, response.status);
+            Assert.assertEquals("bytes", response.header("Accept-Ranges"));
+            Assert.assertArrayEquals(data, response.body);
+            client.close();
+        }
+    }
+
+    @Test
+    public void getWithRangeFromNonFileChannel() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client = start(wrap(channel));
+            Response response = client.request("GET", "Range: bytes=12345-", "Connection: close");
+            Assert.assertEquals(206, response.status);
+            Assert.assertEquals("bytes 12345-" + (data.length - 1) + "/" + data.length,
+                    response.header("Content-Range"));
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 12345, data.length), response.body);
+            client.close();
+        }
+    }
+
+    @Test
+    public void rangeNotSatisfiable() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client = start(channel);
+            Response response = client.request("GET", "Range: bytes=" + data.length + "-", "Connection: close");
+            Assert.assertEquals(416, response.status);
+            Assert.assertEquals("bytes */" + data.length, response.header("Content-Range"));
+            client.close();
+        }
+    }
+
+    @Test
+    public void rangeOfEmptyFile() throws Exception {
+        Files.write(path, new byte[0]);
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client = start(channel);
+            Response response = client.request("GET", "Range: bytes=0-", "Connection: close");
+            Assert.assertEquals(200, response.status);
+            Assert.assertNull(response.header("Content-Range"));
+            Assert.assertEquals(0, response.body.length);
+            client.close();
+        }
+    }
+
+    @Test
+    public void keepAliveAndSeek() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client = start(channel);
+
+            Response head = client.request("HEAD");
+            Assert.assertEquals(200, head.status);
+            Assert.assertEquals(String.valueOf(data.length), head.header("Content-Length"));
+            Assert.assertEquals(0, head.body.length);
+
+            Response first = client.request("GET", "Range: bytes=0-999");
+            Assert.assertEquals("keep-alive", first.header("Connection"));
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 0, 1000), first.body);
+
+            Response second = client.request("GET", "Range: bytes=1000-1999");
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 1000, 2000), second.body);
+
+            Response third = client.request("GET", "Range: bytes=500-", "Connection: close");
+            Assert.assertEquals("close", third.header("Connection"));
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 500, data.length), third.body);
+            client.close();
+            server.stop();
+            serverThread.join(10_000);
+        }
+
+        ChannelServer.Statistics statistics = server.getStatistics();
+        Assert.assertEquals(1, statistics.getSessionCount());
+        Assert.assertEquals(3, statistics.getTransferCount());
+        Assert.assertEquals(1, statistics.getSeekCount());
+        Assert.assertEquals(1500, statistics.getBytesReread());
+    }
+
+    @Test
+    public void concurrentConnections() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client1 = start(wrap(channel));
+            Client client2 = connect();
+
+            client1.send("GET", "Range: bytes=1000-", "Connection: close");
+            client2.send("GET", "Range: bytes=2000-", "Connection: close");
+            Response response2 = client2.read(true);
+            Response response1 = client1.read(true);
+
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 1000, data.length), response1.body);
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 2000, data.length), response2.body);
+            client1.close();
+            client2.close();
+            server.stop();
+            serverThread.join(10_000);
+        }
+
+        Assert.assertEquals(2, server.getStatistics().getSessionCount());
+    }
+
+    @Test
+    public void chunkedPost() throws Exception {
+        Path output = Files.createTempFile("jaffree", ".bin");
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+            Client client = start(channel);
+            client.send("POST", "Transfer-Encoding: chunked", "Expect: 100-continue", "Connection: close");
+            Assert.assertEquals(100, client.read(false).status);
+
+            int chunkSize = 65_000;
+            for (int offset = 0; offset < data.length; offset += chunkSize) {
+                int length = Math.min(chunkSize, data.length - offset);
+                client.output.write((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                client.output.write(data, offset, length);
+                client.output.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            client.output.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            client.output.flush();
+
+            Assert.assertEquals(204, client.read(false).status);
+            client.close();
+            server.stop();
+            serverThread.join(10_000);
+        }
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(output));
+        Assert.assertEquals(data.length, server.getStatistics().getBytesReceived());
+        Files.delete(output);
+    }
+
+    @Test
+    public void putWithContentLength() throws Exception {
+        Path output = Files.createTempFile("jaffree", ".bin");
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+            Client client = start(channel);
+            client.send("PUT", "Content-Length: " + data.length, "Connection: close");
+            client.output.write(data);
+            client.output.flush();
+
+            Assert.assertEquals(204, client.read(false).status);
+            client.close();
+            server.stop();
+            serverThread.join(10_000);
+        }
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(output));
+        Files.delete(output);
+    }
+
+    @Test
+    public void methodNotAllowed() throws Exception {
+        try (FileChannel channel = FileChannel.open(path)) {
+            Client client = start(channel);
+            Response response = client.request("PATCH", "Connection: close");
+            Assert.assertEquals(405, response.status);
+            Assert.assertEquals("GET, HEAD, POST, PUT, DELETE", response.header("Allow"));
+            client.close();
+        }
+    }
+
+    @Test
+    public void fileSystem() throws Exception {
+        final List<String> closedPaths = new CopyOnWriteArrayList<>();
+        VirtualFileSystem fileSystem = new VirtualFileSystem()
+                .put("file.bin", data)
+                .setFileListener(new VirtualFileSystem.FileListener() {
+                    @Override
+                    public void onFileClosed(String path, SeekableByteChannel channel) {
+                        closedPaths.add(path);
+                    }
+                });
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new HttpServer(fileSystem, serverSocket);
+        serverThread = new Thread(server, "HttpServer");
+        serverThread.start();
+        Client client = connect();
+
+        Response range = client.request("GET", "Range: bytes=100-199");
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, 100, 200), range.body);
+        Assert.assertEquals(404, client.requestPath("GET", "/absent.png").status);
+
+        client.sendTo("PUT", "/img001.png", "Content-Length: 1000");
+        client.output.write(data, 0, 1000);
+        client.output.flush();
+        Assert.assertEquals(204, client.read(false).status);
+
+        Assert.assertEquals(204, client.request("DELETE").status);
+        Assert.assertEquals(404, client.request("DELETE", "Connection: close").status);
+        client.close();
+
+        // file system server runs till it's stopped
+        Thread.sleep(100);
+        Assert.assertTrue(serverThread.isAlive());
+        server.stop();
+        serverThread.join(10_000);
+
+        Assert.assertEquals(Collections.singleton("img001.png"), fileSystem.getPaths());
+        Assert.assertArrayEquals(Arrays.copyOf(data, 1000), fileSystem.getBytes("img001.png"));
+        Assert.assertEquals(Collections.singletonList("img001.png"), closedPaths);
+    }
+
+    @Test
+    public void abortedUploadIsNotReported() throws Exception {
+        final List<String> closedPaths = new CopyOnWriteArrayList<>();
+        VirtualFileSystem fileSystem = new VirtualFileSystem()
+                .setFileListener(new VirtualFileSystem.FileListener() {
+                    @Override
+                    public void onFileClosed(String path, SeekableByteChannel channel) {
+                        closedPaths.add(path);
+                    }
+                });
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new HttpServer(fileSystem, serverSocket);
+        serverThread = new Thread(server, "HttpServer");
+        serverThread.start();
+
+        Client client = connect();
+        client.sendTo("PUT", "/partial.ts", "Content-Length: 1000");
+        client.output.write(data, 0, 500);
+        client.output.flush();
+        client.close();
+        awaitTransferCount(1);
+
+        client = connect();
+        client.sendTo("PUT", "/full.ts", "Content-Length: 1000", "Connection: close");
+        client.output.write(data, 0, 1000);
+        client.output.flush();
+        Assert.assertEquals(204, client.read(false).status);
+        client.close();
+
+        server.stop();
+        serverThread.join(10_000);
+
+        Assert.assertEquals(1, server.getStatistics().getAbortCount());
+        Assert.assertEquals(Collections.singletonList("full.ts"), closedPaths);
+    }
+
+    @Test
+    public void deletedFileIsNotTracked() throws Exception {
+        VirtualFileSystem fileSystem = new VirtualFileSystem()
+                .put("file.bin", data)
+                .put("other.bin", data);
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new HttpServer(fileSystem, serverSocket);
+        serverThread = new Thread(server, "HttpServer");
+        serverThread.start();
+        Client client = connect();
+
+        Assert.assertEquals(100, client.request("GET", "Range: bytes=100-199").body.length);
+        Assert.assertEquals(100, client.requestPath("GET", "/other.bin", "Range: bytes=100-199").body.length);
+        // download is accounted after the response has been sent
+        awaitTransferCount(2);
+        Assert.assertEquals(2, server.getExpectedPositionCount());
+        Assert.assertEquals(2, server.getTrackedChannelCount());
+
+        Assert.assertEquals(204, client.request("DELETE").status);
+        Assert.assertEquals(1, server.getExpectedPositionCount());
+        Assert.assertEquals(1, server.getTrackedChannelCount());
+
+        // upload from the beginning replaces content
+        client.sendTo("PUT", "/other.bin", "Content-Length: 10", "Connection: close");
+        client.output.write(data, 0, 10);
+        client.output.flush();
+        Assert.assertEquals(204, client.read(false).status);
+        client.close();
+
+        Assert.assertEquals(0, server.getExpectedPositionCount());
+        Assert.assertEquals(0, server.getTrackedChannelCount());
+        server.stop();
+    }
+
+    private void awaitTransferCount(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && server.getStatistics().getTransferCount() < count; i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    private Client start(SeekableByteChannel channel) throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new HttpServer(channel, serverSocket);
+        serverThread = new Thread(server, "HttpServer");
+        serverThread.start();
+
+        return connect();
+    }
+
+    private Client connect() throws IOException {
+        return new Client(new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()));
+    }
+
+    private static SeekableByteChannel wrap(final FileChannel channel) {
+        return new SeekableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                return channel.read(dst);
+            }
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                return channel.write(src);
+            }
+
+            @Override
+            public long position() throws IOException {
+                return channel.position();
+            }
+
+            @Override
+            public SeekableByteChannel position(long newPosition) throws IOException {
+                channel.position(newPosition);
+                return this;
+            }
+
+            @Override
+            public long size() throws IOException {
+                return channel.size();
+            }
+
+            @Override
+            public SeekableByteChannel truncate(long size) throws IOException {
+                channel.truncate(size);
+                return this;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    private static class Response {
+        private final int status;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        Response(int status, Map<String, String> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static class Client {
+        private final Socket socket;
+        private final DataInputStream input;
+        private final OutputStream output;
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.output = socket.getOutputStream();
+        }
+
+        Response request(String method, String... headers) throws IOException {
+            return requestPath(method, "/file.bin", headers);
+        }
+
+        Response requestPath(String method, String path, String... headers) throws IOException {
+            sendTo(method, path, headers);
+            return read(!"HEAD".equals(method));
+        }
+
+        void send(String method, String... headers) throws IOException {
+            sendTo(method, "/file.bin", headers);
+        }
+
+        void sendTo(String method, String path, String... headers) throws IOException {
+            StringBuilder request = new StringBuilder(method).append(" ").append(path).append(" HTTP/1.1\r\n")
+                    .append("Host: localhost\r\n");
+            for (String header : headers) {
+                request.append(header).append("\r\n");
+            }
+            request.append("\r\n");
+            output.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+        }
+
+        Response read(boolean withBody) throws IOException {
+            String statusLine = readLine();
+            Assert.assertTrue(statusLine, statusLine.startsWith("HTTP/1.1 "));
+            int status = Integer.parseInt(statusLine.split(" ")[1]);
+
+            Map<String, String> headers = new HashMap<>();
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                int colon = line.indexOf(':');
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        line.substring(colon + 1).trim());
+            }
+
+            byte[] body = new byte[0];
+            String contentLength = headers.get("content-length");
+            if (withBody && contentLength != null) {
+                body = new byte[Integer.parseInt(contentLength)];
+                input.readFully(body);
+            }
+
+            return new Response(status, headers, body);
+        }
+
+        private String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = input.read()) != '\n') {
+                Assert.assertNotEquals("Unexpected end of response", IOUtil.EOF, b);
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.kokorin.jaffree.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+public class IOUtilTest {
+
+    @Test
+    public void copyFromFileChannelRespectsPosition() throws IOException {
+        byte[] data = randomBytes(3_000_000);
+        Path path = Files.createTempFile("jaffree", ".bin");
+        Files.write(path, data);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (FileChannel input = FileChannel.open(path)) {
+            input.position(1000);
+            long copied = IOUtil.copy(input, Channels.newChannel(output), 4096);
+
+            Assert.assertEquals(data.length - 1000, copied);
+            Assert.assertEquals(data.length, input.position());
+        }
+
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, 1000, data.length), output.toByteArray());
+    }
+
+    @Test
+    public void copyToFileChannel() throws IOException {
+        byte[] data = randomBytes(3_000_000);
+        Path path = Files.createTempFile("jaffree", ".bin");
+
+        try (FileChannel output = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            long copied = IOUtil.copy(Channels.newChannel(new ByteArrayInputStream(data)), output, 65536);
+
+            Assert.assertEquals(data.length, copied);
+            Assert.assertEquals(data.length, output.position());
+        }
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(path));
+    }
+
+    @Test
+    public void copyBetweenArbitraryChannels() throws IOException {
+        byte[] data = randomBytes(100_000);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        long copied = IOUtil.copy(
+                Channels.newChannel(new ByteArrayInputStream(data)),
+                Channels.newChannel(output),
+                1000
+        );
+
+        Assert.assertEquals(data.length, copied);
+        Assert.assertArrayEquals(data, output.toByteArray());
+    }
+
+    @Test
+    public void isClosedByPeer() {
+        Assert.assertTrue(IOUtil.isClosedByPeer(new SocketException("Socket closed")));
+        Assert.assertTrue(IOUtil.isClosedByPeer(new ClosedChannelException()));
+        Assert.assertTrue(IOUtil.isClosedByPeer(new AsynchronousCloseException()));
+        // messages aren't matched, they depend on OS, JDK and locale
+        Assert.assertFalse(IOUtil.isClosedByPeer(new IOException("Broken pipe")));
+        Assert.assertFalse(IOUtil.isClosedByPeer(new IOException("No space left on device")));
+        Assert.assertFalse(IOUtil.isClosedByPeer(new IOException()));
+    }
+
+    @Test
+    public void sourceFailureIsNotClosedByPeer() {
+        InputStream failingStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new SocketException("Connection reset");
+            }
+        };
+        ReadableByteChannel failingChannel = new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                throw new ClosedChannelException();
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try {
+            IOUtil.copy(failingStream, new ByteArrayOutputStream(), 100);
+            Assert.fail("Exception expected");
+        } catch (IOException e) {
+            Assert.assertFalse(IOUtil.isClosedByPeer(e));
+        }
+
+        try {
+            IOUtil.copy(failingChannel, Channels.newChannel(new ByteArrayOutputStream()), 100);
+            Assert.fail("Exception expected");
+        } catch (IOException e) {
+            Assert.assertFalse(IOUtil.isClosedByPeer(e));
+        }
+    }
+
+    @Test
+    public void destinationSocketFailureIsClosedByPeer() throws IOException {
+        byte[] data = randomBytes(10_000_000);
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress());
+                 SocketChannel accepted = server.accept()) {
+                // peer resets connection without reading data
+                client.setOption(StandardSocketOptions.SO_LINGER, 0);
+                client.close();
+
+                try {
+                    IOUtil.copy(Channels.newChannel(new ByteArrayInputStream(data)), accepted, 4096);
+                    Assert.fail("Exception expected");
+                } catch (IOException e) {
+                    Assert.assertTrue(e.toString(), IOUtil.isClosedByPeer(e));
+                }
+            }
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] result = new byte[size];
+        new Random(42).nextBytes(result);
+        return result;
+    }
+}
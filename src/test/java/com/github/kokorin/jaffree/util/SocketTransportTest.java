@@ -0,0 +1,76 @@
+package com.github.kokorin.jaffree.util;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class SocketTransportTest {
+
+    @Test
+    public void tcp() throws IOException {
+        try (SocketTransport.Endpoint endpoint = SocketTransport.tcp().listen()) {
+            InetSocketAddress address = (InetSocketAddress) endpoint.getChannel().getLocalAddress();
+            Assert.assertEquals(InetAddress.getLoopbackAddress(), address.getAddress());
+            Assert.assertNotEquals(0, address.getPort());
+
+            Assert.assertEquals("tcp://127.0.0.1:" + address.getPort(), endpoint.getUrl("tcp", ""));
+            Assert.assertEquals("ftp://127.0.0.1:" + address.getPort() + "/", endpoint.getUrl("ftp", "/"));
+        }
+    }
+
+    @Test
+    public void unix() throws IOException {
+        Assume.assumeTrue(SocketTransport.isUnixSupported());
+
+        Path tempDir = Files.createTempDirectory("jaffree");
+        Path socketPath;
+        try (SocketTransport.Endpoint endpoint = SocketTransport.unix(tempDir).listen()) {
+            String url = endpoint.getUrl("tcp", "");
+            Assert.assertTrue(url.startsWith("unix:"));
+
+            socketPath = Paths.get(url.substring("unix:".length()));
+            Assert.assertEquals(tempDir.toAbsolutePath(), socketPath.getParent());
+            Assert.assertTrue(Files.exists(socketPath));
+        }
+
+        Assert.assertFalse(Files.exists(socketPath));
+    }
+
+    @Test
+    public void unixSocketFileIsDeletedAfterAccept() throws Exception {
+        Assume.assumeTrue(SocketTransport.isUnixSupported());
+
+        Path tempDir = Files.createTempDirectory("jaffree");
+        try (SocketTransport.Endpoint endpoint = SocketTransport.unix(tempDir).listen()) {
+            Path socketPath = Paths.get(endpoint.getUrl("tcp", "").substring("unix:".length()));
+
+            // UnixDomainSocketAddress is available since Java 16
+            SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                    .getMethod("of", Path.class)
+                    .invoke(null, socketPath);
+            try (SocketChannel client = SocketChannel.open(address);
+                 SocketChannel accepted = endpoint.accept()) {
+                Assert.assertNotNull(accepted);
+                Assert.assertFalse(Files.exists(socketPath));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unixDoesNotSupportFtp() throws IOException {
+        Assume.assumeTrue(SocketTransport.isUnixSupported());
+
+        try (SocketTransport.Endpoint endpoint = SocketTransport.unix().listen()) {
+            endpoint.getUrl("ftp", "/");
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.kokorin.jaffree.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class StreamingFileSystemTest {
+
+    @Test
+    public void filesAreDeliveredAndRemoved() throws Exception {
+        final List<String> paths = new CopyOnWriteArrayList<>();
+        final List<ByteBuffer> contents = new CopyOnWriteArrayList<>();
+        StreamingFileSystem fileSystem = new StreamingFileSystem(new StreamingFileSystem.FileConsumer() {
+            @Override
+            public void consume(String path, ByteBuffer content) {
+                paths.add(path);
+                contents.add(content);
+            }
+        });
+
+        SeekableByteChannel first = upload(fileSystem, "/playlist.m3u8", new byte[]{1, 2, 3});
+        SeekableByteChannel second = fileSystem.create("playlist.m3u8");
+        // every upload creates new file, so delivered content is never overwritten
+        Assert.assertNotSame(first, second);
+        second.write(ByteBuffer.wrap(new byte[]{4, 5}));
+        fileSystem.onFileClosed("/playlist.m3u8", second, false);
+        fileSystem.close();
+
+        Assert.assertTrue(fileSystem.getPaths().isEmpty());
+        Assert.assertEquals(0, fileSystem.getBufferedBytes());
+        Assert.assertEquals(2, paths.size());
+        Assert.assertEquals("playlist.m3u8", paths.get(0));
+        Assert.assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), contents.get(0));
+        Assert.assertEquals(ByteBuffer.wrap(new byte[]{4, 5}), contents.get(1));
+    }
+
+    @Test
+    public void uploadWaitsForConsumerWhenBudgetIsExceeded() throws Exception {
+        final CountDownLatch consumerStarted = new CountDownLatch(1);
+        final CountDownLatch consumerReleased = new CountDownLatch(1);
+        final StreamingFileSystem fileSystem = new StreamingFileSystem(new StreamingFileSystem.FileConsumer() {
+            @Override
+            public void consume(String path, ByteBuffer content) throws Exception {
+                consumerStarted.countDown();
+                consumerReleased.await();
+            }
+        }, 10);
+
+        // file larger than the budget is accepted when nothing else is buffered
+        upload(fileSystem, "segment0.ts", new byte[16]);
+        Assert.assertTrue(consumerStarted.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(16, fileSystem.getBufferedBytes());
+
+        final CountDownLatch uploaded = new CountDownLatch(1);
+        Thread uploader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    upload(fileSystem, "segment1.ts", new byte[4]);
+                    uploaded.countDown();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        uploader.start();
+
+        Assert.assertFalse(uploaded.await(200, TimeUnit.MILLISECONDS));
+
+        consumerReleased.countDown();
+        Assert.assertTrue(uploaded.await(5, TimeUnit.SECONDS));
+        fileSystem.close();
+        Assert.assertEquals(0, fileSystem.getBufferedBytes());
+    }
+
+    @Test
+    public void consumerFailureIsReportedOnClose() throws Exception {
+        final List<String> paths = new CopyOnWriteArrayList<>();
+        StreamingFileSystem fileSystem = new StreamingFileSystem(new StreamingFileSystem.FileConsumer() {
+            @Override
+            public void consume(String path, ByteBuffer content) {
+                paths.add(path);
+                throw new RuntimeException("Consumer failure");
+            }
+        });
+
+        upload(fileSystem, "segment0.ts", new byte[]{1});
+        upload(fileSystem, "segment1.ts", new byte[]{2});
+
+        try {
+            fileSystem.close();
+            Assert.fail("Consumer failure must be reported");
+        } catch (IOException e) {
+            Assert.assertEquals("Consumer failure", e.getCause().getMessage());
+        }
+        Assert.assertEquals(1, paths.size());
+    }
+
+    @Test
+    public void abortedUploadIsDropped() throws Exception {
+        final List<String> paths = new CopyOnWriteArrayList<>();
+        StreamingFileSystem fileSystem = new StreamingFileSystem(new StreamingFileSystem.FileConsumer() {
+            @Override
+            public void consume(String path, ByteBuffer content) {
+                paths.add(path);
+            }
+        });
+
+        SeekableByteChannel partial = fileSystem.create("segment0.ts");
+        partial.write(ByteBuffer.wrap(new byte[]{1, 2}));
+        fileSystem.onFileClosed("segment0.ts", partial, true);
+        upload(fileSystem, "segment1.ts", new byte[]{3});
+        fileSystem.close();
+
+        Assert.assertTrue(fileSystem.getPaths().isEmpty());
+        Assert.assertEquals(0, fileSystem.getBufferedBytes());
+        Assert.assertEquals(Collections.singletonList("segment1.ts"), paths);
+    }
+
+    private static SeekableByteChannel upload(StreamingFileSystem fileSystem, String path, byte[] content)
+            throws IOException {
+        SeekableByteChannel channel = fileSystem.create(path);
+        channel.write(ByteBuffer.wrap(content));
+        fileSystem.onFileClosed(path, channel, false);
+        return channel;
+    }
+}
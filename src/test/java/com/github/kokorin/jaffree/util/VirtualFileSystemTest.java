@@ -0,0 +1,105 @@
+package com.github.kokorin.jaffree.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class VirtualFileSystemTest {
+
+    @Test
+    public void normalize() {
+        Assert.assertEquals("file.mp4", VirtualFileSystem.normalize("file.mp4"));
+        Assert.assertEquals("file.mp4", VirtualFileSystem.normalize("/file.mp4"));
+        Assert.assertEquals("dir/file.mp4", VirtualFileSystem.normalize("//dir/file.mp4"));
+        Assert.assertEquals("", VirtualFileSystem.normalize(null));
+    }
+
+    @Test
+    public void putAndGet() throws Exception {
+        byte[] content = "content".getBytes(StandardCharsets.US_ASCII);
+        VirtualFileSystem fileSystem = new VirtualFileSystem()
+                .put("/first.txt", content)
+                .put("second.txt", new InMemoryChannel());
+
+        Assert.assertNotNull(fileSystem.get("first.txt"));
+        Assert.assertSame(fileSystem.get("first.txt"), fileSystem.get("/first.txt"));
+        Assert.assertArrayEquals(content, fileSystem.getBytes("first.txt"));
+        Assert.assertArrayEquals(new byte[0], fileSystem.getBytes("second.txt"));
+        Assert.assertNull(fileSystem.get("third.txt"));
+        Assert.assertNull(fileSystem.getBytes("third.txt"));
+        Assert.assertEquals(Arrays.asList("first.txt", "second.txt"), Arrays.asList(
+                fileSystem.getPaths().toArray()));
+    }
+
+    @Test
+    public void createRenameAndRemove() throws Exception {
+        VirtualFileSystem fileSystem = new VirtualFileSystem();
+
+        SeekableByteChannel created = fileSystem.create("/segment.ts.tmp");
+        Assert.assertSame(created, fileSystem.create("segment.ts.tmp"));
+        created.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+
+        Assert.assertTrue(fileSystem.rename("segment.ts.tmp", "/segment.ts"));
+        Assert.assertFalse(fileSystem.rename("segment.ts.tmp", "segment.ts"));
+        Assert.assertNull(fileSystem.get("segment.ts.tmp"));
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, fileSystem.getBytes("segment.ts"));
+
+        Assert.assertSame(created, fileSystem.remove("segment.ts"));
+        Assert.assertNull(fileSystem.remove("segment.ts"));
+        Assert.assertTrue(fileSystem.getPaths().isEmpty());
+    }
+
+    @Test
+    public void fileListener() {
+        final AtomicReference<String> closedPath = new AtomicReference<>();
+        VirtualFileSystem fileSystem = new VirtualFileSystem();
+
+        // no listener
+        fileSystem.onFileClosed("/first.png", new InMemoryChannel(), false);
+
+        fileSystem.setFileListener(new VirtualFileSystem.FileListener() {
+            @Override
+            public void onFileClosed(String path, SeekableByteChannel channel) {
+                closedPath.set(path);
+                throw new RuntimeException("Listener failure must not break the server");
+            }
+        });
+        fileSystem.onFileClosed("/second.png", new InMemoryChannel(), false);
+        Assert.assertEquals("second.png", closedPath.get());
+
+        // partial file isn't reported
+        fileSystem.onFileClosed("/third.png", new InMemoryChannel(), true);
+        Assert.assertEquals("second.png", closedPath.get());
+    }
+
+    @Test
+    public void inMemoryChannel() throws Exception {
+        InMemoryChannel channel = new InMemoryChannel();
+
+        channel.position(4);
+        channel.write(ByteBuffer.wrap(new byte[]{5, 6}));
+        Assert.assertEquals(6, channel.size());
+        Assert.assertArrayEquals(new byte[]{0, 0, 0, 0, 5, 6}, channel.toByteArray());
+
+        channel.position(0);
+        channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}));
+        channel.truncate(2);
+        Assert.assertEquals(2, channel.size());
+        Assert.assertEquals(2, channel.position());
+
+        // bytes beyond truncated size must not reappear
+        channel.position(4);
+        channel.write(ByteBuffer.wrap(new byte[]{7}));
+        Assert.assertArrayEquals(new byte[]{1, 2, 0, 0, 7}, channel.toByteArray());
+
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        channel.position(1);
+        Assert.assertEquals(4, channel.read(buffer));
+        Assert.assertEquals(IOUtil.EOF, channel.read(buffer));
+    }
+}